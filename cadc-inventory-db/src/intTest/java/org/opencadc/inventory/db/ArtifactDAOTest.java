@@ -70,20 +70,31 @@ package org.opencadc.inventory.db;
 import ca.nrc.cadc.db.ConnectionConfig;
 import ca.nrc.cadc.db.DBConfig;
 import ca.nrc.cadc.db.DBUtil;
+import ca.nrc.cadc.db.TransactionManager;
 import ca.nrc.cadc.io.ResourceIterator;
 import ca.nrc.cadc.util.HexUtil;
 import ca.nrc.cadc.util.Log4jInit;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.net.URI;
 import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.sql.DataSource;
 
@@ -93,6 +104,8 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.opencadc.inventory.Artifact;
+import org.opencadc.inventory.ArtifactBatch;
+import org.opencadc.inventory.DeletedArtifactEvent;
 import org.opencadc.inventory.InventoryUtil;
 import org.opencadc.inventory.SiteLocation;
 import org.opencadc.inventory.StorageLocation;
@@ -114,6 +127,7 @@ public class ArtifactDAOTest {
     
     ArtifactDAO dao = new ArtifactDAO();
     ArtifactDAO alt = new ArtifactDAO();
+    Map<String,Object> config = new TreeMap<String,Object>();
     
     public ArtifactDAOTest() throws Exception {
         try {
@@ -121,7 +135,6 @@ public class ArtifactDAOTest {
             ConnectionConfig cc = dbrc.getConnectionConfig(TestUtil.SERVER, TestUtil.DATABASE);
             DBUtil.createJNDIDataSource("jdbc/ArtifactDAOTest", cc);
 
-            Map<String,Object> config = new TreeMap<String,Object>();
             config.put(SQLGenerator.class.getName(), SQLGenerator.class);
             config.put("jndiDataSourceName", "jdbc/ArtifactDAOTest");
             config.put("database", TestUtil.DATABASE);
@@ -211,6 +224,52 @@ public class ArtifactDAOTest {
         }
     }
     
+    @Test
+    public void testPutLastModified() {
+        try {
+            Artifact expected = new Artifact(
+                    URI.create("cadc:ARCHIVE/filename"),
+                    URI.create("md5:d41d8cd98f00b204e9800998ecf8427e"),
+                    new Date(),
+                    new Long(666L));
+            Assert.assertNull(expected.getLastModified());
+            
+            dao.put(expected);
+            Date lm1 = expected.getLastModified();
+            Assert.assertNotNull("insert assigns lastModified", lm1);
+            
+            // no change: same timestamp, also for a fresh instance with no lastModified
+            Thread.sleep(10L);
+            dao.put(expected);
+            Assert.assertEquals("unchanged", lm1, expected.getLastModified());
+            Artifact copy = new Artifact(expected.getID(), expected.getURI(), expected.getContentChecksum(),
+                    expected.getContentLastModified(), expected.getContentLength());
+            dao.put(copy);
+            Assert.assertEquals("unchanged", lm1, copy.getLastModified());
+            Assert.assertEquals(lm1, dao.get(expected.getID()).getLastModified());
+            
+            // real change
+            expected.contentType = "text/plain";
+            dao.put(expected);
+            Date lm2 = expected.getLastModified();
+            Assert.assertTrue("changed", lm2.after(lm1));
+            Artifact actual = dao.get(expected.getID());
+            Assert.assertEquals("text/plain", actual.contentType);
+            Assert.assertEquals(lm2, actual.getLastModified());
+            Assert.assertEquals(expected.getMetaChecksum(), actual.getMetaChecksum());
+            
+            // forced update
+            Thread.sleep(10L);
+            dao.put(expected, true);
+            Date lm3 = expected.getLastModified();
+            Assert.assertTrue("forced", lm3.after(lm2));
+            Assert.assertEquals(lm3, dao.get(expected.getID()).getLastModified());
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    
     @Test
     public void testCopyConstructor() {
         try {
@@ -246,6 +305,45 @@ public class ArtifactDAOTest {
         }
     }
     
+    @Test
+    public void testGetTiming() {
+        // per-call latency and allocation for get(URI); allocation uses the HotSpot extension
+        // of ThreadMXBean and is reported as -1 if not supported
+        final int warmup = 1000;
+        final int num = 10000;
+        try {
+            Artifact expected = new Artifact(
+                    URI.create("cadc:ARCHIVE/filename"),
+                    URI.create("md5:d41d8cd98f00b204e9800998ecf8427e"),
+                    new Date(),
+                    new Long(666L));
+            dao.put(expected);
+            
+            for (int i = 0; i < warmup; i++) {
+                Assert.assertNotNull(dao.get(expected.getURI()));
+            }
+            
+            ThreadMXBean tmx = ManagementFactory.getThreadMXBean();
+            com.sun.management.ThreadMXBean hmx = null;
+            if (tmx instanceof com.sun.management.ThreadMXBean) {
+                hmx = (com.sun.management.ThreadMXBean) tmx;
+            }
+            long tid = Thread.currentThread().getId();
+            long b1 = (hmx != null ? hmx.getThreadAllocatedBytes(tid) : -1L);
+            long t1 = System.nanoTime();
+            for (int i = 0; i < num; i++) {
+                dao.get(expected.getURI());
+            }
+            long dt = System.nanoTime() - t1;
+            long b2 = (hmx != null ? hmx.getThreadAllocatedBytes(tid) : -1L);
+            long bytes = (hmx != null ? (b2 - b1) / num : -1L);
+            log.info("testGetTiming: get(URI) x " + num + ": " + (dt / num / 1000L) + " us/call " + bytes + " bytes/call");
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    
     @Test
     public void testGetPutDeleteStorageLocation() {
         try {
@@ -530,6 +628,290 @@ public class ArtifactDAOTest {
         }
     }
     
+    @Test
+    public void testStoredBatchIterator() {
+        int num = 10;
+        int batchSize = 7;
+        try {
+            SortedSet<Artifact> eset = new TreeSet<>(new StoredArtifactComparator());
+            for (int i = 0; i < 2 * num; i++) {
+                Artifact a = new Artifact(
+                        URI.create("cadc:ARCHIVE/filename" + i),
+                        URI.create("md5:d41d8cd98f00b204e9800998ecf8427e"),
+                        new Date(),
+                        new Long(666L));
+                a.contentType = "application/octet-stream";
+                a.siteLocations.add(new SiteLocation(UUID.randomUUID()));
+                a.storageLocation = new StorageLocation(URI.create("foo:" + UUID.randomUUID()));
+                if (i < num) {
+                    a.storageLocation.storageBucket = InventoryUtil.computeBucket(a.storageLocation.getStorageID(), 3);
+                }
+                dao.put(a);
+                log.debug("put: " + a);
+                eset.add(a);
+            }
+            // no storageLocation
+            for (int i = 2 * num; i < 3 * num; i++) {
+                Artifact a = new Artifact(
+                        URI.create("cadc:ARCHIVE/filename" + i),
+                        URI.create("md5:d41d8cd98f00b204e9800998ecf8427e"),
+                        new Date(),
+                        new Long(666L));
+                dao.put(a);
+                log.debug("put: " + a);
+            }
+            
+            ResourceIterator<ArtifactBatch> iter = dao.storedBatchIterator(null, batchSize);
+            Iterator<Artifact> ei = eset.iterator();
+            int count = 0;
+            while (iter.hasNext()) {
+                ArtifactBatch batch = iter.next();
+                log.info("batch: " + batch.size());
+                Assert.assertTrue(batch.size() > 0);
+                Assert.assertTrue(batch.size() <= batchSize);
+                for (int i = 0; i < batch.size(); i++) {
+                    Artifact expected = ei.next();
+                    Artifact actual = batch.getArtifact(i);
+                    count++;
+                    Assert.assertEquals("order", expected.storageLocation, batch.getStorageLocation(i));
+                    Assert.assertEquals(expected.getID(), batch.getID(i));
+                    Assert.assertEquals(expected.getURI(), batch.getURI(i));
+                    Assert.assertEquals(expected.contentType, actual.contentType);
+                    Assert.assertEquals(expected.siteLocations, actual.siteLocations);
+                    Assert.assertEquals(expected.getLastModified(), actual.getLastModified());
+                    Assert.assertEquals(expected.getMetaChecksum(), actual.getMetaChecksum());
+                    URI mcs2 = actual.computeMetaChecksum(MessageDigest.getInstance("MD5"));
+                    Assert.assertEquals("round trip metachecksum", expected.getMetaChecksum(), mcs2);
+                }
+            }
+            Assert.assertFalse(ei.hasNext());
+            Assert.assertEquals("count", eset.size(), count);
+            
+            iter.close();
+            Assert.assertFalse("no more results", iter.hasNext());
+            
+            iter = dao.unstoredBatchIterator(null, batchSize);
+            count = 0;
+            while (iter.hasNext()) {
+                ArtifactBatch batch = iter.next();
+                for (int i = 0; i < batch.size(); i++) {
+                    Assert.assertNull(batch.getStorageLocation(i));
+                    count++;
+                }
+            }
+            Assert.assertEquals("unstored count", num, count);
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    
+    @Test
+    public void testStoredPageIterator() {
+        int num = 10;
+        try {
+            SortedSet<Artifact> eset = new TreeSet<>(new StoredArtifactComparator());
+            for (int i = 0; i < 2 * num; i++) {
+                Artifact a = new Artifact(
+                        URI.create("cadc:ARCHIVE/filename" + i),
+                        URI.create("md5:d41d8cd98f00b204e9800998ecf8427e"),
+                        new Date(),
+                        new Long(666L));
+                a.storageLocation = new StorageLocation(URI.create("foo:" + UUID.randomUUID()));
+                if (i < num) {
+                    // half with no bucket
+                    a.storageLocation.storageBucket = InventoryUtil.computeBucket(a.storageLocation.getStorageID(), 3);
+                }
+                dao.put(a);
+                eset.add(a);
+            }
+            for (int i = 2 * num; i < 3 * num; i++) {
+                Artifact a = new Artifact(
+                        URI.create("cadc:ARCHIVE/filename" + i),
+                        URI.create("md5:d41d8cd98f00b204e9800998ecf8427e"),
+                        new Date(),
+                        new Long(666L));
+                // no storageLocation
+                dao.put(a);
+            }
+            
+            // page size that does not divide the number of artifacts in either phase
+            for (int pageSize : new int[] { 1, 3, 100 }) {
+                ArtifactPageIterator iter = dao.storedIterator(null, pageSize, null);
+                Assert.assertNull(iter.getResumeToken());
+                Iterator<Artifact> ei = eset.iterator();
+                int count = 0;
+                String token = null;
+                while (ei.hasNext()) {
+                    Artifact expected = ei.next();
+                    Assert.assertTrue(iter.hasNext());
+                    Artifact actual = iter.next();
+                    Assert.assertEquals("order", expected.storageLocation, actual.storageLocation);
+                    Assert.assertEquals(expected.getID(), actual.getID());
+                    count++;
+                    if (count == num + 2) {
+                        // resume from a no-bucket position
+                        token = iter.getResumeToken();
+                        break;
+                    }
+                }
+                iter.close();
+                Assert.assertFalse("closed", iter.hasNext());
+                
+                log.info("resume: " + token);
+                iter = dao.storedIterator(null, pageSize, token);
+                while (ei.hasNext()) {
+                    Artifact expected = ei.next();
+                    Artifact actual = iter.next();
+                    Assert.assertEquals("order", expected.storageLocation, actual.storageLocation);
+                    count++;
+                }
+                Assert.assertFalse("database iterator exhausted", iter.hasNext());
+                Assert.assertEquals("count", eset.size(), count);
+            }
+            
+            int found = 0;
+            for (byte b = 0; b < 16; b++) {
+                String bp = HexUtil.toHex(b).substring(1);
+                ArtifactPageIterator i = dao.storedIterator(bp, 2, null);
+                while (i.hasNext()) {
+                    Artifact a = i.next();
+                    Assert.assertTrue("prefix match", a.storageLocation.storageBucket.startsWith(bp));
+                    found++;
+                }
+            }
+            Assert.assertEquals("found with bucketPrefix", num, found);
+            
+            try {
+                dao.storedIterator(null, 10, "unstored/0/" + UUID.randomUUID());
+                Assert.fail("expected IllegalArgumentException");
+            } catch (IllegalArgumentException expected) {
+                log.info("caught expected: " + expected);
+            }
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    
+    @Test
+    public void testStoredPartitionIterator() {
+        int num = 50;
+        try {
+            SortedSet<Artifact> eset = new TreeSet<>(new StoredArtifactComparator());
+            for (int i = 0; i < num; i++) {
+                Artifact a = new Artifact(
+                        URI.create("cadc:ARCHIVE/filename" + i),
+                        URI.create("md5:d41d8cd98f00b204e9800998ecf8427e"),
+                        new Date(),
+                        new Long(666L));
+                a.storageLocation = new StorageLocation(URI.create("foo:" + UUID.randomUUID()));
+                if (i % 5 != 0) {
+                    // some with no bucket
+                    a.storageLocation.storageBucket = InventoryUtil.computeBucket(a.storageLocation.getStorageID(), 3);
+                }
+                dao.put(a);
+                eset.add(a);
+            }
+            
+            for (int partitions : new int[] { 1, 3, 16 }) {
+                ResourceIterator<Artifact> iter = dao.storedIterator(null, partitions, 4, 8);
+                Iterator<Artifact> ei = eset.iterator();
+                while (ei.hasNext()) {
+                    Artifact expected = ei.next();
+                    Assert.assertTrue(iter.hasNext());
+                    Artifact actual = iter.next();
+                    Assert.assertEquals("order", expected.storageLocation, actual.storageLocation);
+                    Assert.assertEquals(expected.getID(), actual.getID());
+                }
+                Assert.assertFalse("merged iterator exhausted", iter.hasNext());
+                iter.close();
+                
+                List<ResourceIterator<Artifact>> parts = dao.storedPartitionIterators(null, partitions, 4, 8);
+                Assert.assertEquals(partitions, parts.size());
+                Artifact prev = null;
+                int count = 0;
+                for (ResourceIterator<Artifact> p : parts) {
+                    // partitions are contiguous ranges returned in order
+                    while (p.hasNext()) {
+                        Artifact a = p.next();
+                        if (prev != null) {
+                            Assert.assertTrue("order", prev.storageLocation.compareTo(a.storageLocation) < 0);
+                        }
+                        prev = a;
+                        count++;
+                    }
+                    p.close();
+                }
+                Assert.assertEquals("count", eset.size(), count);
+            }
+            
+            // close before exhausted stops the background scans
+            List<ResourceIterator<Artifact>> parts = dao.storedPartitionIterators(null, 4, 1, 1);
+            for (ResourceIterator<Artifact> p : parts) {
+                p.close();
+                Assert.assertFalse(p.hasNext());
+            }
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    
+    @Test
+    public void testUnstoredPageIterator() {
+        int num = 10;
+        try {
+            List<Artifact> expected = new ArrayList<>();
+            for (int i = 0; i < num; i++) {
+                Artifact a = new Artifact(
+                        URI.create("cadc:ARCHIVE/filename" + i),
+                        URI.create("md5:d41d8cd98f00b204e9800998ecf8427e"),
+                        new Date(),
+                        new Long(666L));
+                expected.add(a);
+            }
+            // same lastModified for all: order by id within it
+            dao.put(expected);
+            Collections.sort(expected, new Comparator<Artifact>() {
+                @Override
+                public int compare(Artifact lhs, Artifact rhs) {
+                    int ret = lhs.getLastModified().compareTo(rhs.getLastModified());
+                    if (ret == 0) {
+                        // database uuid order is unsigned: same as the hex string
+                        ret = lhs.getID().toString().compareTo(rhs.getID().toString());
+                    }
+                    return ret;
+                }
+            });
+            
+            ArtifactPageIterator iter = dao.unstoredIterator(null, 3, null);
+            List<Artifact> actual = new ArrayList<>();
+            for (int i = 0; i < num / 2; i++) {
+                actual.add(iter.next());
+            }
+            String token = iter.getResumeToken();
+            log.info("resume: " + token);
+            
+            // storing an artifact that was already returned does not affect the rest
+            Artifact stored = actual.get(0);
+            stored.storageLocation = new StorageLocation(URI.create("foo:" + UUID.randomUUID()));
+            dao.put(stored);
+            
+            iter = dao.unstoredIterator(null, 3, token);
+            while (iter.hasNext()) {
+                actual.add(iter.next());
+            }
+            Assert.assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < num; i++) {
+                Assert.assertEquals("order", expected.get(i).getID(), actual.get(i).getID());
+            }
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    
     @Test
     public void testEmptyUnstoredIterator() {
         try {
@@ -764,6 +1146,843 @@ public class ArtifactDAOTest {
         }
     }
     
+    @Test
+    public void testBatchPutLockDelete() {
+        try {
+            List<Artifact> expected = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                Artifact a = new Artifact(
+                        URI.create("cadc:ARCHIVE/filename" + i),
+                        URI.create("md5:d41d8cd98f00b204e9800998ecf8427e"),
+                        new Date(),
+                        new Long(666L));
+                expected.add(a);
+            }
+            dao.put(expected);
+            
+            for (Artifact a : expected) {
+                Assert.assertNotNull(a.getLastModified());
+                Assert.assertNotNull(a.getMetaChecksum());
+                Artifact actual = dao.get(a.getID());
+                Assert.assertNotNull(actual);
+                Assert.assertEquals(a.getURI(), actual.getURI());
+                Assert.assertEquals(a.getLastModified(), actual.getLastModified());
+                Assert.assertEquals(a.getMetaChecksum(), actual.getMetaChecksum());
+            }
+            
+            // mix of update and no-op
+            Artifact mod = expected.get(0);
+            mod.contentType = "text/plain";
+            URI mcs = expected.get(1).getMetaChecksum();
+            Date lm = expected.get(1).getLastModified();
+            Thread.sleep(10L);
+            dao.put(expected);
+            Artifact actual = dao.get(mod.getID());
+            Assert.assertEquals("text/plain", actual.contentType);
+            Assert.assertEquals(mod.getMetaChecksum(), actual.getMetaChecksum());
+            actual = dao.get(expected.get(1).getID());
+            Assert.assertEquals("unchanged", mcs, actual.getMetaChecksum());
+            Assert.assertEquals("unchanged", lm, actual.getLastModified());
+            
+            TransactionManager txn = dao.getTransactionManager();
+            txn.startTransaction();
+            dao.lock(expected);
+            txn.commitTransaction();
+            
+            int num = dao.delete(Arrays.asList(expected.get(0).getID(), expected.get(1).getID(), UUID.randomUUID()));
+            Assert.assertEquals(2, num);
+            Assert.assertNull(dao.get(expected.get(0).getID()));
+            Assert.assertNull(dao.get(expected.get(1).getID()));
+            Assert.assertNotNull(dao.get(expected.get(2).getID()));
+            
+            txn.startTransaction();
+            try {
+                dao.lock(expected);
+                Assert.fail("expected EntityNotFoundException");
+            } catch (EntityNotFoundException expectedEx) {
+                log.info("caught expected: " + expectedEx);
+                Assert.assertTrue(expectedEx.getMessage().contains(expected.get(0).getID().toString()));
+            } finally {
+                txn.rollbackTransaction();
+            }
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    
+    @Test
+    public void testBatchPutFailure() {
+        try {
+            List<Artifact> batch = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                Artifact a = new Artifact(
+                        URI.create("cadc:ARCHIVE/filename" + i),
+                        URI.create("md5:d41d8cd98f00b204e9800998ecf8427e"),
+                        new Date(),
+                        new Long(666L));
+                batch.add(a);
+            }
+            // same uri, different id: violates unique uri
+            Artifact dupe = new Artifact(
+                    URI.create("cadc:ARCHIVE/filename3"),
+                    URI.create("md5:d41d8cd98f00b204e9800998ecf8427e"),
+                    new Date(),
+                    new Long(666L));
+            batch.add(5, dupe);
+            
+            try {
+                dao.put(batch);
+                Assert.fail("expected EntityBatchException");
+            } catch (EntityBatchException expected) {
+                log.info("caught expected: " + expected);
+                Assert.assertEquals(dupe.getID(), expected.getFailedID());
+            }
+            Assert.assertFalse(dao.getTransactionManager().isOpen());
+            
+            // whole batch rolled back
+            for (Artifact a : batch) {
+                Assert.assertNull(dao.get(a.getID()));
+            }
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    
+    @Test
+    public void testBatchPutLastModified() {
+        try {
+            Artifact existing = new Artifact(
+                    URI.create("cadc:ARCHIVE/filename"),
+                    URI.create("md5:d41d8cd98f00b204e9800998ecf8427e"),
+                    new Date(),
+                    new Long(666L));
+            dao.put(existing);
+            Date lm1 = existing.getLastModified();
+            
+            // row the batch caller did not know about: merged like put(T), not a duplicate key
+            Thread.sleep(10L);
+            Artifact copy = new Artifact(existing.getID(), existing.getURI(), existing.getContentChecksum(),
+                    existing.getContentLastModified(), existing.getContentLength());
+            Artifact added = new Artifact(
+                    URI.create("cadc:ARCHIVE/filename-added"),
+                    URI.create("md5:d41d8cd98f00b204e9800998ecf8427e"),
+                    new Date(),
+                    new Long(666L));
+            List<Artifact> batch = Arrays.asList(copy, added);
+            dao.put(batch);
+            Assert.assertEquals("unchanged", lm1, copy.getLastModified());
+            Assert.assertEquals(lm1, dao.get(existing.getID()).getLastModified());
+            Assert.assertNotNull("insert assigns lastModified", added.getLastModified());
+            Assert.assertEquals(added.getLastModified(), dao.get(added.getID()).getLastModified());
+            
+            // real change
+            copy.contentType = "text/plain";
+            dao.put(batch);
+            Date lm2 = copy.getLastModified();
+            Assert.assertTrue("changed", lm2.after(lm1));
+            Artifact actual = dao.get(copy.getID());
+            Assert.assertEquals("text/plain", actual.contentType);
+            Assert.assertEquals(lm2, actual.getLastModified());
+            Assert.assertEquals(copy.getMetaChecksum(), actual.getMetaChecksum());
+            
+            // forced update
+            Thread.sleep(10L);
+            dao.put(batch, true);
+            Date lm3 = copy.getLastModified();
+            Assert.assertTrue("forced", lm3.after(lm2));
+            Assert.assertEquals(lm3, dao.get(copy.getID()).getLastModified());
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    
+    @Test
+    public void testBatchPutThroughput() {
+        final int total = 1000;
+        try {
+            for (int batchSize : new int[] { 1, 100, 1000 }) {
+                List<Artifact> all = new ArrayList<>();
+                for (int i = 0; i < total; i++) {
+                    Artifact a = new Artifact(
+                            URI.create("cadc:ARCHIVE/batch" + batchSize + "/filename" + i),
+                            URI.create("md5:d41d8cd98f00b204e9800998ecf8427e"),
+                            new Date(),
+                            new Long(666L));
+                    all.add(a);
+                }
+                
+                long t = System.currentTimeMillis();
+                for (int i = 0; i < total; i += batchSize) {
+                    dao.put(all.subList(i, Math.min(total, i + batchSize)));
+                }
+                long putTime = System.currentTimeMillis() - t;
+                
+                List<UUID> ids = new ArrayList<>();
+                for (Artifact a : all) {
+                    ids.add(a.getID());
+                }
+                t = System.currentTimeMillis();
+                int num = 0;
+                for (int i = 0; i < total; i += batchSize) {
+                    num += dao.delete(ids.subList(i, Math.min(total, i + batchSize)));
+                }
+                long delTime = System.currentTimeMillis() - t;
+                Assert.assertEquals(total, num);
+                
+                log.info("testBatchPutThroughput: batchSize=" + batchSize 
+                        + " put: " + putTime + "ms " + (1000L * total / Math.max(1L, putTime)) + " rows/sec"
+                        + " delete: " + delTime + "ms " + (1000L * total / Math.max(1L, delTime)) + " rows/sec");
+            }
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    
+    @Test
+    public void testArtifactCache() {
+        try {
+            Map<String,Object> config = new TreeMap<String,Object>();
+            config.put(SQLGenerator.class.getName(), SQLGenerator.class);
+            config.put("jndiDataSourceName", "jdbc/ArtifactDAOTest");
+            config.put("database", TestUtil.DATABASE);
+            config.put("schema", TestUtil.SCHEMA);
+            config.put("artifactCacheSize", 100);
+            config.put("artifactCacheTTL", 60);
+            config.put("artifactCacheSync", 1);
+            ArtifactDAO cached = new ArtifactDAO();
+            cached.setConfig(config);
+            ArtifactDAO other = new ArtifactDAO();
+            other.setConfig(config);
+            ArtifactCache cache = cached.getArtifactCache();
+            Assert.assertNotNull(cache);
+            Assert.assertSame("shared", cache, other.getArtifactCache());
+            Assert.assertNull("no cache by default", dao.getArtifactCache());
+            cache.clear();
+            
+            Artifact expected = new Artifact(
+                    URI.create("cadc:ARCHIVE/cache/filename"),
+                    URI.create("md5:d41d8cd98f00b204e9800998ecf8427e"),
+                    new Date(),
+                    new Long(666L));
+            cached.put(expected);
+            
+            long misses = cache.getMisses();
+            long hits = cache.getHits();
+            Artifact a1 = cached.get(expected.getURI());
+            Assert.assertNotNull(a1);
+            Assert.assertEquals(misses + 1, cache.getMisses());
+            Artifact a2 = other.get(expected.getURI());
+            Artifact a3 = cached.get(expected.getID());
+            Assert.assertEquals(hits + 2, cache.getHits());
+            Assert.assertEquals(a1.getMetaChecksum(), a2.getMetaChecksum());
+            Assert.assertEquals(a1.getMetaChecksum(), a3.getMetaChecksum());
+            
+            // caller gets a copy
+            a1.contentType = "text/plain";
+            Assert.assertNull(cached.get(expected.getID()).contentType);
+            
+            // local put invalidates
+            cached.put(a1);
+            Assert.assertEquals("text/plain", other.get(expected.getURI()).contentType);
+            
+            // change behind the cache: visible after the next poll
+            Artifact a4 = dao.get(expected.getID());
+            a4.contentEncoding = "gzip";
+            dao.put(a4);
+            Thread.sleep(1100L);
+            Assert.assertEquals("gzip", cached.get(expected.getID()).contentEncoding);
+            
+            // local delete invalidates
+            other.delete(expected.getID());
+            Assert.assertNull(cached.get(expected.getURI()));
+            Assert.assertNull(cached.get(expected.getID()));
+            
+            log.info("testArtifactCache: hits=" + cache.getHits() + " misses=" + cache.getMisses() 
+                    + " invalidations=" + cache.getInvalidations() + " size=" + cache.size());
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+
+    @Test
+    public void testArtifactCacheTrustedCopy() {
+        try {
+            Map<String,Object> config = new TreeMap<String,Object>(this.config);
+            config.put("artifactCacheSize", 100);
+            config.put("artifactCacheTTL", 60);
+            ArtifactDAO cached = new ArtifactDAO();
+            cached.setConfig(config);
+            ArtifactCache cache = cached.getArtifactCache();
+            cache.clear();
+            
+            // zero-length content is rejected by the public constructor but valid stored state
+            UUID s1 = UUID.randomUUID();
+            Artifact expected = InventoryUtil.reconstructArtifact(UUID.randomUUID(), 
+                    URI.create("cadc:ARCHIVE/cache/empty"), null,
+                    URI.create("md5:d41d8cd98f00b204e9800998ecf8427e"), new Date(), 0L);
+            expected.siteLocations.add(new SiteLocation(s1));
+            dao.put(expected);
+            
+            long hits = cache.getHits();
+            Artifact a1 = cached.get(expected.getID()); // miss: read and cached
+            Artifact a2 = cached.get(expected.getURI());
+            Artifact a3 = cached.get(expected.getID());
+            Assert.assertEquals(hits + 2, cache.getHits());
+            for (Artifact a : new Artifact[] { a1, a2, a3 }) {
+                Assert.assertNotNull(a);
+                Assert.assertEquals(0L, a.getContentLength().longValue());
+                Assert.assertEquals(expected.getBucket(), a.getBucket());
+                Assert.assertTrue(a.siteLocations.contains(new SiteLocation(s1)));
+                Assert.assertEquals(expected.getMetaChecksum(), a.getMetaChecksum());
+                Assert.assertEquals(a.getMetaChecksum(), a.computeMetaChecksum(MessageDigest.getInstance("MD5")));
+            }
+            
+            Map<UUID,Artifact> byID = cached.getByID(Collections.singletonList(expected.getID()));
+            Assert.assertEquals(0L, byID.get(expected.getID()).getContentLength().longValue());
+            Map<URI,Artifact> byURI = cached.getByURI(Collections.singletonList(expected.getURI()));
+            Assert.assertEquals(0L, byURI.get(expected.getURI()).getContentLength().longValue());
+            
+            dao.delete(expected.getID());
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    
+    @Test
+    public void testMultiKeyGet() {
+        try {
+            // more than one query per call
+            final int num = 2 * ArtifactDAO.MAX_KEYS_PER_QUERY + 10;
+            List<Artifact> expected = new ArrayList<>();
+            for (int i = 0; i < num; i++) {
+                Artifact a = new Artifact(
+                        URI.create("cadc:ARCHIVE/multi/filename" + i),
+                        URI.create("md5:d41d8cd98f00b204e9800998ecf8427e"),
+                        new Date(),
+                        new Long(666L));
+                expected.add(a);
+            }
+            expected.get(0).storageLocation = new StorageLocation(URI.create("foo:" + UUID.randomUUID()));
+            expected.get(0).siteLocations.add(new SiteLocation(UUID.randomUUID()));
+            dao.put(expected);
+            
+            List<UUID> ids = new ArrayList<>();
+            List<URI> uris = new ArrayList<>();
+            for (Artifact a : expected) {
+                ids.add(a.getID());
+                uris.add(a.getURI());
+            }
+            UUID missingID = UUID.randomUUID();
+            URI missingURI = URI.create("cadc:ARCHIVE/multi/not-found");
+            ids.add(missingID);
+            uris.add(missingURI);
+            ids.add(expected.get(1).getID()); // duplicate
+            
+            Map<UUID,Artifact> byID = dao.getByID(ids);
+            Map<URI,Artifact> byURI = dao.getByURI(uris);
+            Assert.assertEquals(num, byID.size());
+            Assert.assertEquals(num, byURI.size());
+            Assert.assertFalse(byID.containsKey(missingID));
+            Assert.assertFalse(byURI.containsKey(missingURI));
+            for (Artifact e : expected) {
+                Artifact a1 = byID.get(e.getID());
+                Artifact a2 = byURI.get(e.getURI());
+                Assert.assertNotNull(a1);
+                Assert.assertNotNull(a2);
+                Assert.assertEquals(e.getURI(), a1.getURI());
+                Assert.assertEquals(e.getID(), a2.getID());
+                Assert.assertEquals(e.getMetaChecksum(), a1.getMetaChecksum());
+                Assert.assertEquals(e.getMetaChecksum(), a2.getMetaChecksum());
+            }
+            Artifact first = byURI.get(expected.get(0).getURI());
+            Assert.assertEquals(expected.get(0).storageLocation, first.storageLocation);
+            Assert.assertEquals(expected.get(0).siteLocations, first.siteLocations);
+            
+            Assert.assertTrue(dao.getByID(new ArrayList<UUID>()).isEmpty());
+            Assert.assertTrue(dao.getByURI(new ArrayList<URI>()).isEmpty());
+            
+            dao.delete(ids);
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    
+    @Test
+    public void testModifiedIterator() {
+        try {
+            final int num = 20;
+            List<Artifact> expected = new ArrayList<>();
+            for (int i = 0; i < num; i++) {
+                Artifact a = new Artifact(
+                        URI.create("cadc:ARCHIVE/modified/filename" + i),
+                        URI.create("md5:d41d8cd98f00b204e9800998ecf8427e"),
+                        new Date(),
+                        new Long(666L));
+                expected.add(a);
+            }
+            // batch put: many artifacts with the same lastModified so id breaks ties
+            dao.put(expected.subList(0, num / 2));
+            Thread.sleep(10L);
+            for (Artifact a : expected.subList(num / 2, num)) {
+                dao.put(a);
+            }
+            
+            List<Artifact> all = new ArrayList<>();
+            try (ResourceIterator<Artifact> iter = dao.modifiedIterator(null, null, null)) {
+                while (iter.hasNext()) {
+                    all.add(iter.next());
+                }
+            }
+            Assert.assertEquals(num, all.size());
+            for (int i = 1; i < all.size(); i++) {
+                Artifact prev = all.get(i - 1);
+                Artifact cur = all.get(i);
+                int c = prev.getLastModified().compareTo(cur.getLastModified());
+                Assert.assertTrue("order", c < 0 || (c == 0 && prev.getID().toString().compareTo(cur.getID().toString()) < 0));
+            }
+            
+            // resume inside a group of equal timestamps: no artifact missed or repeated
+            for (int k : new int[] { 0, 3, num / 2, num - 1 }) {
+                Artifact pos = all.get(k);
+                List<Artifact> rest = new ArrayList<>();
+                try (ResourceIterator<Artifact> iter = dao.modifiedIterator(pos.getLastModified(), pos.getID(), null)) {
+                    while (iter.hasNext()) {
+                        rest.add(iter.next());
+                    }
+                }
+                Assert.assertEquals("resume at " + k, all.subList(k + 1, num), rest);
+            }
+            
+            // timestamp only: exclusive start, inclusive end
+            Date mid = all.get(num / 2).getLastModified();
+            int before = 0;
+            for (Artifact a : all) {
+                if (!a.getLastModified().after(mid)) {
+                    before++;
+                }
+            }
+            int n = 0;
+            try (ResourceIterator<Artifact> iter = dao.modifiedIterator(null, null, mid)) {
+                while (iter.hasNext()) {
+                    Assert.assertFalse(iter.next().getLastModified().after(mid));
+                    n++;
+                }
+            }
+            Assert.assertEquals(before, n);
+            n = 0;
+            try (ResourceIterator<Artifact> iter = dao.modifiedIterator(mid, null, null)) {
+                while (iter.hasNext()) {
+                    Assert.assertTrue(iter.next().getLastModified().after(mid));
+                    n++;
+                }
+            }
+            Assert.assertEquals(num - before, n);
+            
+            // uriBucket range
+            n = 0;
+            try (ResourceIterator<Artifact> iter = dao.modifiedIterator(null, null, null, "4", "c")) {
+                while (iter.hasNext()) {
+                    String b = iter.next().getBucket();
+                    Assert.assertTrue(b, b.compareTo("4") >= 0 && b.compareTo("c") < 0);
+                    n++;
+                }
+            }
+            int inRange = 0;
+            for (Artifact a : all) {
+                if (a.getBucket().compareTo("4") >= 0 && a.getBucket().compareTo("c") < 0) {
+                    inRange++;
+                }
+            }
+            Assert.assertEquals(inRange, n);
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    
+    @Test
+    public void testSiteLocationUpdate() {
+        try {
+            List<Artifact> expected = new ArrayList<>();
+            List<UUID> ids = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                Artifact a = new Artifact(
+                        URI.create("cadc:ARCHIVE/sites/filename" + i),
+                        URI.create("md5:d41d8cd98f00b204e9800998ecf8427e"),
+                        new Date(),
+                        new Long(666L));
+                expected.add(a);
+                ids.add(a.getID());
+            }
+            dao.put(expected);
+            Artifact orig = dao.get(ids.get(0));
+            
+            UUID s1 = UUID.randomUUID();
+            UUID s2 = UUID.randomUUID();
+            Assert.assertTrue(dao.addSiteLocation(ids.get(0), s1));
+            Assert.assertFalse("already present", dao.addSiteLocation(ids.get(0), s1));
+            Assert.assertTrue(dao.addSiteLocation(ids.get(0), s2));
+            Assert.assertFalse("not found", dao.addSiteLocation(UUID.randomUUID(), s1));
+            
+            Artifact a = dao.get(ids.get(0));
+            Assert.assertEquals(2, a.siteLocations.size());
+            Assert.assertTrue(a.siteLocations.contains(new SiteLocation(s1)));
+            Assert.assertTrue(a.siteLocations.contains(new SiteLocation(s2)));
+            Assert.assertEquals("metadata unchanged", orig.getMetaChecksum(), a.getMetaChecksum());
+            Assert.assertEquals("metadata unchanged", orig.getLastModified(), a.getLastModified());
+            
+            Assert.assertTrue(dao.removeSiteLocation(ids.get(0), s1));
+            Assert.assertFalse("not present", dao.removeSiteLocation(ids.get(0), s1));
+            Assert.assertTrue(dao.removeSiteLocation(ids.get(0), s2));
+            Assert.assertTrue(dao.get(ids.get(0)).siteLocations.isEmpty());
+            
+            // bulk: one artifact already has the site
+            dao.addSiteLocation(ids.get(1), s1);
+            List<UUID> bulk = new ArrayList<>(ids);
+            bulk.add(UUID.randomUUID());
+            Assert.assertEquals(ids.size() - 1, dao.addSiteLocation(bulk, s1));
+            Assert.assertEquals(ids.size(), dao.addSiteLocation(bulk, s2));
+            for (UUID id : ids) {
+                Artifact b = dao.get(id);
+                Assert.assertTrue(b.siteLocations.contains(new SiteLocation(s1)));
+                Assert.assertTrue(b.siteLocations.contains(new SiteLocation(s2)));
+            }
+            Assert.assertEquals(ids.size(), dao.removeSiteLocation(bulk, s1));
+            Assert.assertEquals(0, dao.removeSiteLocation(bulk, s1));
+            for (UUID id : ids) {
+                Artifact b = dao.get(id);
+                Assert.assertEquals(1, b.siteLocations.size());
+                Assert.assertTrue(b.siteLocations.contains(new SiteLocation(s2)));
+            }
+            
+            dao.delete(ids);
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    
+    @Test
+    public void testChecksumEncoding() {
+        try {
+            // md5 and sha-256 are stored as tag + digest, the others as tag + URI text
+            URI[] checksums = new URI[] {
+                URI.create("md5:d41d8cd98f00b204e9800998ecf8427e"),
+                URI.create("sha-256:e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855"),
+                URI.create("md5:D41D8CD98F00B204E9800998ECF8427E"),
+                URI.create("adler32:00000001")
+            };
+            int[] lengths = new int[] { 17, 33, 37, 17 };
+            
+            SQLGenerator gen = dao.getSQLGenerator();
+            String rawSQL = "SELECT octet_length(contentChecksum), octet_length(metaChecksum) FROM " 
+                + gen.getTable(Artifact.class) + " WHERE id = ?";
+            String viewSQL = "SELECT contentChecksum, metaChecksum FROM " 
+                + TestUtil.SCHEMA + ".ArtifactView WHERE id = ?";
+            for (int i = 0; i < checksums.length; i++) {
+                Artifact expected = new Artifact(
+                        URI.create("cadc:ARCHIVE/checksum/filename" + i),
+                        checksums[i],
+                        new Date(),
+                        new Long(666L));
+                dao.put(expected);
+                
+                Artifact actual = dao.get(expected.getID());
+                Assert.assertNotNull(actual);
+                Assert.assertEquals(checksums[i], actual.getContentChecksum());
+                Assert.assertEquals(expected.getMetaChecksum(), actual.getMetaChecksum());
+                URI mcs = actual.computeMetaChecksum(MessageDigest.getInstance("MD5"));
+                Assert.assertEquals("round trip metaChecksum", expected.getMetaChecksum(), mcs);
+                
+                try (Connection con = dao.getDataSource().getConnection()) {
+                    PreparedStatement ps = con.prepareStatement(rawSQL);
+                    ps.setObject(1, expected.getID());
+                    ResultSet rs = ps.executeQuery();
+                    Assert.assertTrue(rs.next());
+                    Assert.assertEquals(checksums[i].toASCIIString(), lengths[i], rs.getInt(1));
+                    Assert.assertEquals("md5 metaChecksum", 17, rs.getInt(2));
+                    
+                    ps = con.prepareStatement(viewSQL);
+                    ps.setObject(1, expected.getID());
+                    rs = ps.executeQuery();
+                    Assert.assertTrue(rs.next());
+                    Assert.assertEquals(checksums[i].toASCIIString(), rs.getString(1));
+                    Assert.assertEquals(expected.getMetaChecksum().toASCIIString(), rs.getString(2));
+                }
+                
+                dao.delete(expected.getID());
+            }
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    
+    @Test
+    public void testDeleteWithEvents() {
+        try {
+            DeletedEventDAO eventDAO = new DeletedEventDAO(dao);
+            ObsoleteStorageLocationDAO locDAO = new ObsoleteStorageLocationDAO(dao);
+            
+            List<Artifact> artifacts = new ArrayList<>();
+            List<UUID> ids = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                Artifact a = new Artifact(
+                        URI.create("cadc:ARCHIVE/bulk-delete/filename" + i),
+                        URI.create("md5:d41d8cd98f00b204e9800998ecf8427e"),
+                        new Date(),
+                        new Long(666L));
+                if (i % 2 == 0) {
+                    a.storageLocation = new StorageLocation(URI.create("ceph:" + UUID.randomUUID()));
+                    a.storageLocation.storageBucket = "abc";
+                }
+                artifacts.add(a);
+                ids.add(a.getID());
+            }
+            dao.put(artifacts);
+            
+            // by ID: events only
+            List<UUID> byID = new ArrayList<>(ids.subList(0, 2));
+            byID.add(UUID.randomUUID());
+            List<UUID> deleted = dao.deleteWithEvents(byID);
+            Assert.assertEquals(2, deleted.size());
+            Assert.assertTrue(deleted.containsAll(ids.subList(0, 2)));
+            for (UUID id : ids.subList(0, 2)) {
+                Assert.assertNull(dao.get(id));
+                DeletedArtifactEvent e = (DeletedArtifactEvent) eventDAO.get(DeletedArtifactEvent.class, id);
+                Assert.assertNotNull(e);
+                Assert.assertNotNull(e.getLastModified());
+                Assert.assertEquals(e.getMetaChecksum(), e.computeMetaChecksum(MessageDigest.getInstance("MD5")));
+            }
+            Assert.assertNull(locDAO.get(artifacts.get(0).storageLocation));
+            Assert.assertTrue("repeat is a no-op", dao.deleteWithEvents(byID).isEmpty());
+            
+            // by artifact (as read) with obsolete storage locations; one has a stale storage location
+            List<Artifact> byArtifact = new ArrayList<>();
+            for (int i = 2; i < 6; i++) {
+                byArtifact.add(dao.get(ids.get(i)));
+            }
+            Artifact stale = byArtifact.get(2);
+            stale.storageLocation = new StorageLocation(URI.create("ceph:" + UUID.randomUUID()));
+            deleted = dao.deleteWithEvents(byArtifact, true);
+            Assert.assertEquals(3, deleted.size());
+            Assert.assertFalse("stale storage location", deleted.contains(stale.getID()));
+            Assert.assertNotNull(dao.get(stale.getID()));
+            Assert.assertNull(eventDAO.get(DeletedArtifactEvent.class, stale.getID()));
+            for (Artifact a : byArtifact) {
+                if (a != stale) {
+                    Assert.assertNull(dao.get(a.getID()));
+                    Assert.assertNotNull(eventDAO.get(DeletedArtifactEvent.class, a.getID()));
+                }
+            }
+            ObsoleteStorageLocation osl = locDAO.get(artifacts.get(2).storageLocation);
+            Assert.assertNotNull(osl);
+            Assert.assertEquals(artifacts.get(2).storageLocation, osl.getLocation());
+            Assert.assertEquals(osl.getMetaChecksum(), osl.computeMetaChecksum(MessageDigest.getInstance("MD5")));
+            Assert.assertNull(locDAO.get(stale.storageLocation));
+            Assert.assertNull(locDAO.get(artifacts.get(4).storageLocation));
+            
+            locDAO.delete(osl.getID());
+            dao.delete(stale.getID());
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+
+    @Test
+    public void testInsertDeleteIfUnchanged() {
+        try {
+            DeletedEventDAO eventDAO = new DeletedEventDAO(dao);
+            ObsoleteStorageLocationDAO locDAO = new ObsoleteStorageLocationDAO(dao);
+            
+            Artifact a = new Artifact(
+                    URI.create("cadc:ARCHIVE/cas/filename"),
+                    URI.create("md5:d41d8cd98f00b204e9800998ecf8427e"),
+                    new Date(),
+                    new Long(666L));
+            a.storageLocation = new StorageLocation(URI.create("ceph:" + UUID.randomUUID()));
+            Assert.assertTrue(dao.insert(a));
+            Assert.assertNotNull(a.getLastModified());
+            Assert.assertEquals(a.getMetaChecksum(), a.computeMetaChecksum(MessageDigest.getInstance("MD5")));
+            
+            // same URI, different ID
+            Artifact dupe = new Artifact(a.getURI(), a.getContentChecksum(), a.getContentLastModified(), a.getContentLength());
+            Assert.assertFalse("duplicate uri", dao.insert(dupe));
+            Assert.assertFalse("duplicate id", dao.insert(a));
+            Assert.assertNull(dao.get(dupe.getID()));
+            
+            Artifact stale = dao.get(a.getID());
+            Artifact cur = dao.get(a.getID());
+            Thread.sleep(10L);
+            cur.contentType = "text/plain";
+            dao.put(cur);
+            
+            ObsoleteStorageLocation osl = new ObsoleteStorageLocation(a.storageLocation);
+            Assert.assertFalse("modified", dao.deleteIfUnchanged(stale, osl));
+            Assert.assertNotNull(dao.get(a.getID()));
+            Assert.assertNull(eventDAO.get(DeletedArtifactEvent.class, a.getID()));
+            Assert.assertNull(locDAO.get(a.storageLocation));
+            
+            // storage location is not part of the metaChecksum but is checked
+            cur = dao.get(a.getID());
+            Artifact moved = dao.get(a.getID());
+            moved.storageLocation = new StorageLocation(URI.create("ceph:" + UUID.randomUUID()));
+            Assert.assertFalse("moved", dao.deleteIfUnchanged(moved, osl));
+            
+            Assert.assertTrue(dao.deleteIfUnchanged(cur, osl));
+            Assert.assertNull(dao.get(a.getID()));
+            Assert.assertNotNull(eventDAO.get(DeletedArtifactEvent.class, a.getID()));
+            Assert.assertNotNull(locDAO.get(a.storageLocation));
+            Assert.assertFalse("deleted", dao.deleteIfUnchanged(cur, osl));
+            
+            // URI is free again
+            Assert.assertTrue(dao.insert(dupe));
+            
+            locDAO.delete(osl.getID());
+            dao.delete(dupe.getID());
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    
+    @Test
+    public void testOverwriteContention() {
+        // compare the previous minoc PUT (lock existing, delete, put event, put) with the
+        // optimistic compare-and-set (deleteIfUnchanged + insert) with parallel overwrites 
+        // of the same artifact URI
+        final int threads = 8;
+        final int writes = 50;
+        try {
+            for (boolean optimistic : new boolean[] { false, true, false, true }) {
+                final URI uri = URI.create("cadc:ARCHIVE/contention/filename");
+                final boolean cas = optimistic;
+                final AtomicInteger ok = new AtomicInteger();
+                final AtomicInteger retries = new AtomicInteger();
+                final AtomicInteger failed = new AtomicInteger();
+                List<Thread> writers = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    final ArtifactDAO wdao = new ArtifactDAO();
+                    wdao.setConfig(config);
+                    writers.add(new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            for (int i = 0; i < writes; i++) {
+                                try {
+                                    if (cas) {
+                                        retries.addAndGet(optimisticOverwrite(wdao, uri));
+                                    } else {
+                                        lockedOverwrite(wdao, uri);
+                                    }
+                                    ok.incrementAndGet();
+                                } catch (Exception ex) {
+                                    log.debug("overwrite failed: " + ex);
+                                    failed.incrementAndGet();
+                                }
+                            }
+                        }
+                    }));
+                }
+                long t1 = System.nanoTime();
+                for (Thread t : writers) {
+                    t.start();
+                }
+                for (Thread t : writers) {
+                    t.join();
+                }
+                long dt = (System.nanoTime() - t1) / 1000000L;
+                log.info("testOverwriteContention: " + (cas ? "optimistic" : "locked") + " threads=" + threads 
+                        + " ok=" + ok.get() + " failed=" + failed.get() + " retries=" + retries.get() 
+                        + " " + dt + "ms " + (1000L * ok.get() / Math.max(1L, dt)) + " writes/sec");
+                
+                Artifact a = dao.get(uri);
+                Assert.assertNotNull(a);
+                Assert.assertEquals(a.getMetaChecksum(), a.computeMetaChecksum(MessageDigest.getInstance("MD5")));
+                dao.delete(a.getID());
+                Assert.assertNull(dao.get(uri));
+            }
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    
+    private Artifact newVersion(URI uri) {
+        Artifact a = new Artifact(uri, URI.create("md5:d41d8cd98f00b204e9800998ecf8427e"), new Date(), new Long(666L));
+        a.storageLocation = new StorageLocation(URI.create("ceph:" + UUID.randomUUID()));
+        return a;
+    }
+    
+    // the previous minoc PutAction sequence
+    private void lockedOverwrite(ArtifactDAO wdao, URI uri) throws Exception {
+        Artifact artifact = newVersion(uri);
+        Artifact existing = wdao.get(uri);
+        ObsoleteStorageLocationDAO locDAO = new ObsoleteStorageLocationDAO(wdao);
+        DeletedEventDAO eventDAO = new DeletedEventDAO(wdao);
+        TransactionManager txn = wdao.getTransactionManager();
+        try {
+            txn.startTransaction();
+            boolean locked = false;
+            while (existing != null && !locked) {
+                try {
+                    wdao.lock(existing);
+                    locked = true;
+                } catch (EntityNotFoundException ex) {
+                    existing = wdao.get(uri);
+                }
+            }
+            if (existing != null) {
+                wdao.delete(existing.getID());
+                eventDAO.put(new DeletedArtifactEvent(existing.getID()));
+                locDAO.put(new ObsoleteStorageLocation(existing.storageLocation));
+            }
+            wdao.put(artifact);
+            txn.commitTransaction();
+        } finally {
+            if (txn.isOpen()) {
+                txn.rollbackTransaction();
+            }
+        }
+    }
+    
+    // the minoc PutAction sequence: returns number of retries
+    private int optimisticOverwrite(ArtifactDAO wdao, URI uri) throws Exception {
+        Artifact artifact = newVersion(uri);
+        Artifact existing = wdao.get(uri);
+        TransactionManager txn = wdao.getTransactionManager();
+        try {
+            for (int attempt = 0; attempt < 5; attempt++) {
+                txn.startTransaction();
+                boolean conflict = false;
+                if (existing != null) {
+                    conflict = !wdao.deleteIfUnchanged(existing, new ObsoleteStorageLocation(existing.storageLocation));
+                }
+                if (!conflict) {
+                    conflict = !wdao.insert(artifact);
+                }
+                if (!conflict) {
+                    txn.commitTransaction();
+                    return attempt;
+                }
+                txn.rollbackTransaction();
+                existing = wdao.get(uri);
+            }
+            throw new RuntimeException("concurrent update: " + uri);
+        } finally {
+            if (txn.isOpen()) {
+                txn.rollbackTransaction();
+            }
+        }
+    }
+    
     private class LastModifiedComparator implements Comparator<Artifact> {
 
         @Override
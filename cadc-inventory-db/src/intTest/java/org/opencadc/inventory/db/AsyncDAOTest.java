@@ -0,0 +1,326 @@
+/*
+************************************************************************
+*******************  CANADIAN ASTRONOMY DATA CENTRE  *******************
+**************  CENTRE CANADIEN DE DONNÉES ASTRONOMIQUES  **************
+*
+*  (c) 2020.                            (c) 2020.
+*  Government of Canada                 Gouvernement du Canada
+*  National Research Council            Conseil national de recherches
+*  Ottawa, Canada, K1A 0R6              Ottawa, Canada, K1A 0R6
+*  All rights reserved                  Tous droits réservés
+*
+*  NRC disclaims any warranties,        Le CNRC dénie toute garantie
+*  expressed, implied, or               énoncée, implicite ou légale,
+*  statutory, of any kind with          de quelque nature que ce
+*  respect to the software,             soit, concernant le logiciel,
+*  including without limitation         y compris sans restriction
+*  any warranty of merchantability      toute garantie de valeur
+*  or fitness for a particular          marchande ou de pertinence
+*  purpose. NRC shall not be            pour un usage particulier.
+*  liable in any event for any          Le CNRC ne pourra en aucun cas
+*  damages, whether direct or           être tenu responsable de tout
+*  indirect, special or general,        dommage, direct ou indirect,
+*  consequential or incidental,         particulier ou général,
+*  arising from the use of the          accessoire ou fortuit, résultant
+*  software.  Neither the name          de l'utilisation du logiciel. Ni
+*  of the National Research             le nom du Conseil National de
+*  Council of Canada nor the            Recherches du Canada ni les noms
+*  names of its contributors may        de ses  participants ne peuvent
+*  be used to endorse or promote        être utilisés pour approuver ou
+*  products derived from this           promouvoir les produits dérivés
+*  software without specific prior      de ce logiciel sans autorisation
+*  written permission.                  préalable et particulière
+*                                       par écrit.
+*
+*  This file is part of the             Ce fichier fait partie du projet
+*  OpenCADC project.                    OpenCADC.
+*
+*  OpenCADC is free software:           OpenCADC est un logiciel libre ;
+*  you can redistribute it and/or       vous pouvez le redistribuer ou le
+*  modify it under the terms of         modifier suivant les termes de
+*  the GNU Affero General Public        la “GNU Affero General Public
+*  License as published by the          License” telle que publiée
+*  Free Software Foundation,            par la Free Software Foundation
+*  either version 3 of the              : soit la version 3 de cette
+*  License, or (at your option)         licence, soit (à votre gré)
+*  any later version.                   toute version ultérieure.
+*
+*  OpenCADC is distributed in the       OpenCADC est distribué
+*  hope that it will be useful,         dans l’espoir qu’il vous
+*  but WITHOUT ANY WARRANTY;            sera utile, mais SANS AUCUNE
+*  without even the implied             GARANTIE : sans même la garantie
+*  warranty of MERCHANTABILITY          implicite de COMMERCIALISABILITÉ
+*  or FITNESS FOR A PARTICULAR          ni d’ADÉQUATION À UN OBJECTIF
+*  PURPOSE.  See the GNU Affero         PARTICULIER. Consultez la Licence
+*  General Public License for           Générale Publique GNU Affero
+*  more details.                        pour plus de détails.
+*
+*  You should have received             Vous devriez avoir reçu une
+*  a copy of the GNU Affero             copie de la Licence Générale
+*  General Public License along         Publique GNU Affero avec
+*  with OpenCADC.  If not, see          OpenCADC ; si ce n’est
+*  <http://www.gnu.org/licenses/>.      pas le cas, consultez :
+*                                       <http://www.gnu.org/licenses/>.
+*
+************************************************************************
+*/
+
+
+package org.opencadc.inventory.db;
+
+import ca.nrc.cadc.db.ConnectionConfig;
+import ca.nrc.cadc.db.DBConfig;
+import ca.nrc.cadc.db.DBUtil;
+import ca.nrc.cadc.util.Log4jInit;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import javax.sql.DataSource;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencadc.inventory.StorageSite;
+import org.opencadc.inventory.db.version.InitDatabase;
+
+/**
+ *
+ * @author pdowler
+ */
+public class AsyncDAOTest {
+    private static final Logger log = Logger.getLogger(AsyncDAOTest.class);
+
+    static {
+        Log4jInit.setLevel("org.opencadc.inventory", Level.INFO);
+        Log4jInit.setLevel("ca.nrc.cadc.db.version", Level.INFO);
+    }
+    
+    StorageSiteDAO dao = new StorageSiteDAO();
+    
+    public AsyncDAOTest() throws Exception {
+        DBConfig dbrc = new DBConfig();
+        ConnectionConfig cc = dbrc.getConnectionConfig(TestUtil.SERVER, TestUtil.DATABASE);
+        DBUtil.createJNDIDataSource("jdbc/AsyncDAOTest", cc);
+        
+        Map<String,Object> config = new TreeMap<String,Object>();
+        config.put(SQLGenerator.class.getName(), SQLGenerator.class);
+        config.put("jndiDataSourceName", "jdbc/AsyncDAOTest");
+        config.put("database", TestUtil.DATABASE);
+        config.put("schema", TestUtil.SCHEMA);
+        dao.setConfig(config);
+    }
+    
+    @Before
+    public void setup() throws Exception {
+        log.info("init database...");
+        InitDatabase init = new InitDatabase(dao.getDataSource(), TestUtil.DATABASE, TestUtil.SCHEMA);
+        init.doInit();
+        log.info("init database... OK");
+        
+        log.info("clearing old content...");
+        SQLGenerator gen = dao.getSQLGenerator();
+        DataSource ds = dao.getDataSource();
+        String sql = "delete from " + gen.getTable(StorageSite.class);
+        log.info("pre-test cleanup: " + sql);
+        ds.getConnection().createStatement().execute(sql);
+        log.info("clearing old content... OK");
+    }
+    
+    @Test
+    public void testFanOut() {
+        AsyncDAO<StorageSiteDAO> async = new AsyncDAO<>(dao, 4, 100, 0L);
+        try {
+            List<StorageSite> sites = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                StorageSite s = new StorageSite(URI.create("ivo://cadc.nrc.ca/site" + i), "Site-" + i);
+                dao.put(s);
+                sites.add(s);
+            }
+            
+            long t1 = System.currentTimeMillis();
+            List<CompletableFuture<StorageSite>> futures = new ArrayList<>();
+            for (final StorageSite s : sites) {
+                futures.add(async.submit(new AsyncDAO.Call<StorageSiteDAO, StorageSite>() {
+                    @Override
+                    public StorageSite call(StorageSiteDAO d) throws Exception {
+                        return d.get(s.getID());
+                    }
+                }));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).join();
+            long dt = System.currentTimeMillis() - t1;
+            log.info("testFanOut: " + sites.size() + " gets in " + dt + "ms");
+            
+            for (int i = 0; i < sites.size(); i++) {
+                StorageSite expected = sites.get(i);
+                StorageSite actual = futures.get(i).get();
+                Assert.assertNotNull(actual);
+                Assert.assertEquals(expected.getID(), actual.getID());
+                Assert.assertEquals(expected.getResourceID(), actual.getResourceID());
+                Assert.assertEquals(expected.getMetaChecksum(), actual.getMetaChecksum());
+            }
+            
+            CompletableFuture<StorageSite> notFound = async.submit(new AsyncDAO.Call<StorageSiteDAO, StorageSite>() {
+                @Override
+                public StorageSite call(StorageSiteDAO d) throws Exception {
+                    return d.get(UUID.randomUUID());
+                }
+            });
+            Assert.assertNull(notFound.get());
+            
+            for (StorageSite s : sites) {
+                dao.delete(s.getID());
+            }
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        } finally {
+            async.shutdown();
+        }
+    }
+    
+    @Test
+    public void testFailure() {
+        AsyncDAO<StorageSiteDAO> async = new AsyncDAO<>(dao, 1, 1, 0L);
+        try {
+            CompletableFuture<Void> fail = async.submit(new AsyncDAO.Call<StorageSiteDAO, Void>() {
+                @Override
+                public Void call(StorageSiteDAO d) throws Exception {
+                    d.put((StorageSite) null);
+                    return null;
+                }
+            });
+            try {
+                fail.get();
+                Assert.fail("expected ExecutionException, got result");
+            } catch (ExecutionException expected) {
+                log.info("caught expected: " + expected.getCause());
+                Assert.assertTrue(expected.getCause() instanceof IllegalArgumentException);
+            }
+            
+            // one busy thread, timeout in the queue
+            final CountDownLatch started = new CountDownLatch(1);
+            CompletableFuture<Void> slow = async.submit(new AsyncDAO.Call<StorageSiteDAO, Void>() {
+                @Override
+                public Void call(StorageSiteDAO d) throws Exception {
+                    started.countDown();
+                    Thread.sleep(2000L);
+                    return null;
+                }
+            });
+            started.await();
+            CompletableFuture<Void> timeout = async.submit(sleep(1L), 100L);
+            try {
+                timeout.get();
+                Assert.fail("expected ExecutionException, got result");
+            } catch (ExecutionException expected) {
+                log.info("caught expected: " + expected.getCause());
+                Assert.assertTrue(expected.getCause() instanceof TimeoutException);
+            }
+            
+            // timed out call removed from the queue: room for one more
+            CompletableFuture<Void> queued = async.submit(sleep(1L));
+            CompletableFuture<Void> rejected = async.submit(sleep(1L));
+            try {
+                rejected.get();
+                Assert.fail("expected ExecutionException, got result");
+            } catch (ExecutionException expected) {
+                log.info("caught expected: " + expected.getCause());
+                Assert.assertTrue(expected.getCause() instanceof RejectedExecutionException);
+            }
+            slow.get();
+            queued.get();
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        } finally {
+            async.shutdown();
+        }
+    }
+    
+    @Test
+    public void testConcurrentBatchPut() {
+        AsyncDAO<StorageSiteDAO> async = new AsyncDAO<>(dao, 4, 100, 0L);
+        try {
+            List<List<StorageSite>> batches = new ArrayList<>();
+            for (int b = 0; b < 8; b++) {
+                List<StorageSite> batch = new ArrayList<>();
+                for (int i = 0; i < 5; i++) {
+                    batch.add(new StorageSite(URI.create("ivo://cadc.nrc.ca/site" + b + "-" + i), "Site-" + b + "-" + i));
+                }
+                batches.add(batch);
+            }
+            // duplicate resourceID: the whole batch must roll back
+            List<StorageSite> fail = new ArrayList<>();
+            fail.add(new StorageSite(URI.create("ivo://cadc.nrc.ca/dupe"), "Dupe-1"));
+            fail.add(new StorageSite(URI.create("ivo://cadc.nrc.ca/dupe"), "Dupe-2"));
+            
+            // async calls must not participate in the caller transaction
+            dao.getTransactionManager().startTransaction();
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (List<StorageSite> batch : batches) {
+                futures.add(async.submit(put(batch)));
+            }
+            CompletableFuture<Void> failed = async.submit(put(fail));
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).join();
+            try {
+                failed.get();
+                Assert.fail("expected ExecutionException, got result");
+            } catch (ExecutionException expected) {
+                log.info("caught expected: " + expected.getCause());
+                Assert.assertTrue(expected.getCause() instanceof EntityBatchException);
+            }
+            Assert.assertTrue(dao.getTransactionManager().isOpen());
+            dao.getTransactionManager().rollbackTransaction();
+            
+            for (List<StorageSite> batch : batches) {
+                for (StorageSite expected : batch) {
+                    StorageSite actual = dao.get(expected.getID());
+                    Assert.assertNotNull(actual);
+                    Assert.assertEquals(expected.getResourceID(), actual.getResourceID());
+                    Assert.assertEquals(expected.getMetaChecksum(), actual.getMetaChecksum());
+                }
+            }
+            for (StorageSite s : fail) {
+                Assert.assertNull(dao.get(s.getID()));
+            }
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        } finally {
+            if (dao.getTransactionManager().isOpen()) {
+                dao.getTransactionManager().rollbackTransaction();
+            }
+            async.shutdown();
+        }
+    }
+    
+    private AsyncDAO.Call<StorageSiteDAO, Void> put(final List<StorageSite> batch) {
+        return new AsyncDAO.Call<StorageSiteDAO, Void>() {
+            @Override
+            public Void call(StorageSiteDAO d) throws Exception {
+                d.put(batch);
+                return null;
+            }
+        };
+    }
+    
+    private AsyncDAO.Call<StorageSiteDAO, Void> sleep(final long millis) {
+        return new AsyncDAO.Call<StorageSiteDAO, Void>() {
+            @Override
+            public Void call(StorageSiteDAO d) throws Exception {
+                Thread.sleep(millis);
+                return null;
+            }
+        };
+    }
+}
@@ -0,0 +1,292 @@
+/*
+************************************************************************
+*******************  CANADIAN ASTRONOMY DATA CENTRE  *******************
+**************  CENTRE CANADIEN DE DONNÉES ASTRONOMIQUES  **************
+*
+*  (c) 2020.                            (c) 2020.
+*  Government of Canada                 Gouvernement du Canada
+*  National Research Council            Conseil national de recherches
+*  Ottawa, Canada, K1A 0R6              Ottawa, Canada, K1A 0R6
+*  All rights reserved                  Tous droits réservés
+*
+*  NRC disclaims any warranties,        Le CNRC dénie toute garantie
+*  expressed, implied, or               énoncée, implicite ou légale,
+*  statutory, of any kind with          de quelque nature que ce
+*  respect to the software,             soit, concernant le logiciel,
+*  including without limitation         y compris sans restriction
+*  any warranty of merchantability      toute garantie de valeur
+*  or fitness for a particular          marchande ou de pertinence
+*  purpose. NRC shall not be            pour un usage particulier.
+*  liable in any event for any          Le CNRC ne pourra en aucun cas
+*  damages, whether direct or           être tenu responsable de tout
+*  indirect, special or general,        dommage, direct ou indirect,
+*  consequential or incidental,         particulier ou général,
+*  arising from the use of the          accessoire ou fortuit, résultant
+*  software.  Neither the name          de l'utilisation du logiciel. Ni
+*  of the National Research             le nom du Conseil National de
+*  Council of Canada nor the            Recherches du Canada ni les noms
+*  names of its contributors may        de ses  participants ne peuvent
+*  be used to endorse or promote        être utilisés pour approuver ou
+*  products derived from this           promouvoir les produits dérivés
+*  software without specific prior      de ce logiciel sans autorisation
+*  written permission.                  préalable et particulière
+*                                       par écrit.
+*
+*  This file is part of the             Ce fichier fait partie du projet
+*  OpenCADC project.                    OpenCADC.
+*
+*  OpenCADC is free software:           OpenCADC est un logiciel libre ;
+*  you can redistribute it and/or       vous pouvez le redistribuer ou le
+*  modify it under the terms of         modifier suivant les termes de
+*  the GNU Affero General Public        la “GNU Affero General Public
+*  License as published by the          License” telle que publiée
+*  Free Software Foundation,            par la Free Software Foundation
+*  either version 3 of the              : soit la version 3 de cette
+*  License, or (at your option)         licence, soit (à votre gré)
+*  any later version.                   toute version ultérieure.
+*
+*  OpenCADC is distributed in the       OpenCADC est distribué
+*  hope that it will be useful,         dans l’espoir qu’il vous
+*  but WITHOUT ANY WARRANTY;            sera utile, mais SANS AUCUNE
+*  without even the implied             GARANTIE : sans même la garantie
+*  warranty of MERCHANTABILITY          implicite de COMMERCIALISABILITÉ
+*  or FITNESS FOR A PARTICULAR          ni d’ADÉQUATION À UN OBJECTIF
+*  PURPOSE.  See the GNU Affero         PARTICULIER. Consultez la Licence
+*  General Public License for           Générale Publique GNU Affero
+*  more details.                        pour plus de détails.
+*
+*  You should have received             Vous devriez avoir reçu une
+*  a copy of the GNU Affero             copie de la Licence Générale
+*  General Public License along         Publique GNU Affero avec
+*  with OpenCADC.  If not, see          OpenCADC ; si ce n’est
+*  <http://www.gnu.org/licenses/>.      pas le cas, consultez :
+*                                       <http://www.gnu.org/licenses/>.
+*
+************************************************************************
+*/
+
+
+package org.opencadc.inventory.db;
+
+import ca.nrc.cadc.db.ConnectionConfig;
+import ca.nrc.cadc.db.DBConfig;
+import ca.nrc.cadc.db.DBUtil;
+import ca.nrc.cadc.util.Log4jInit;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import javax.sql.DataSource;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencadc.inventory.Artifact;
+import org.opencadc.inventory.DeletedArtifactEvent;
+import org.opencadc.inventory.DeletedStorageLocationEvent;
+import org.opencadc.inventory.SiteLocation;
+import org.opencadc.inventory.StorageLocation;
+import org.opencadc.inventory.db.version.InitDatabase;
+
+/**
+ *
+ * @author pdowler
+ */
+public class BulkLoadDAOTest {
+    private static final Logger log = Logger.getLogger(BulkLoadDAOTest.class);
+
+    static {
+        Log4jInit.setLevel("org.opencadc.inventory", Level.INFO);
+        Log4jInit.setLevel("ca.nrc.cadc.db.version", Level.INFO);
+    }
+    
+    BulkLoadDAO dao = new BulkLoadDAO();
+    ArtifactDAO artifactDAO;
+    DeletedEventDAO eventDAO;
+    
+    public BulkLoadDAOTest() throws Exception {
+        DBConfig dbrc = new DBConfig();
+        ConnectionConfig cc = dbrc.getConnectionConfig(TestUtil.SERVER, TestUtil.DATABASE);
+        DBUtil.createJNDIDataSource("jdbc/BulkLoadDAOTest", cc);
+        
+        Map<String,Object> config = new TreeMap<String,Object>();
+        config.put(SQLGenerator.class.getName(), SQLGenerator.class);
+        config.put("jndiDataSourceName", "jdbc/BulkLoadDAOTest");
+        config.put("database", TestUtil.DATABASE);
+        config.put("schema", TestUtil.SCHEMA);
+        dao.setConfig(config);
+        this.artifactDAO = new ArtifactDAO(dao);
+        this.eventDAO = new DeletedEventDAO(dao);
+    }
+    
+    @Before
+    public void setup()
+        throws Exception
+    {
+        log.info("init database...");
+        InitDatabase init = new InitDatabase(dao.getDataSource(), TestUtil.DATABASE, TestUtil.SCHEMA);
+        init.doInit();
+        log.info("init database... OK");
+        
+        log.info("clearing old content...");
+        SQLGenerator gen = dao.getSQLGenerator();
+        DataSource ds = dao.getDataSource();
+        for (Class c : new Class[] { Artifact.class, DeletedArtifactEvent.class, DeletedStorageLocationEvent.class }) {
+            String sql = "delete from " + gen.getTable(c);
+            log.info("pre-test cleanup: " + sql);
+            ds.getConnection().createStatement().execute(sql);
+        }
+        log.info("clearing old content... OK");
+    }
+    
+    private List<Artifact> getArtifacts(String prefix, int num) {
+        List<Artifact> ret = new ArrayList<>();
+        for (int i = 0; i < num; i++) {
+            Artifact a = new Artifact(
+                    URI.create("cadc:ARCHIVE/" + prefix + "/filename" + i),
+                    URI.create("md5:d41d8cd98f00b204e9800998ecf8427e"),
+                    new Date(),
+                    new Long(666L));
+            ret.add(a);
+        }
+        return ret;
+    }
+    
+    @Test
+    public void testLoadArtifacts() {
+        try {
+            List<Artifact> expected = getArtifacts("bulk", 10);
+            Artifact full = expected.get(0);
+            full.contentType = "application/fits";
+            full.contentEncoding = "gzip";
+            full.siteLocations.add(new SiteLocation(UUID.randomUUID()));
+            full.siteLocations.add(new SiteLocation(UUID.randomUUID()));
+            full.storageLocation = new StorageLocation(URI.create("foo:" + UUID.randomUUID()));
+            full.storageLocation.storageBucket = "abc";
+            
+            long num = dao.load(Artifact.class, expected.iterator());
+            Assert.assertEquals(expected.size(), num);
+            
+            for (Artifact e : expected) {
+                Artifact a = artifactDAO.get(e.getID());
+                Assert.assertNotNull(a);
+                Assert.assertEquals(e.getURI(), a.getURI());
+                Assert.assertEquals(e.getContentChecksum(), a.getContentChecksum());
+                Assert.assertEquals(e.getContentLastModified(), a.getContentLastModified());
+                Assert.assertEquals(e.getContentLength(), a.getContentLength());
+                Assert.assertEquals(e.contentType, a.contentType);
+                Assert.assertEquals(e.contentEncoding, a.contentEncoding);
+                Assert.assertEquals(e.siteLocations, a.siteLocations);
+                Assert.assertEquals(e.storageLocation, a.storageLocation);
+                Assert.assertNotNull(a.getLastModified());
+                Assert.assertEquals(e.getMetaChecksum(), a.getMetaChecksum());
+                Assert.assertEquals(a.getMetaChecksum(), a.computeMetaChecksum(MessageDigest.getInstance("MD5")));
+            }
+            
+            // reload: only changed artifacts are updated
+            Artifact orig = artifactDAO.get(full.getID());
+            Artifact unchanged = artifactDAO.get(expected.get(1).getID());
+            Thread.sleep(10L);
+            full.contentType = "text/plain";
+            num = dao.load(Artifact.class, expected.iterator());
+            Assert.assertEquals(1, num);
+            Artifact a = artifactDAO.get(full.getID());
+            Assert.assertEquals("text/plain", a.contentType);
+            Assert.assertTrue(orig.getLastModified().before(a.getLastModified()));
+            Artifact same = artifactDAO.get(expected.get(1).getID());
+            Assert.assertEquals(unchanged.getLastModified(), same.getLastModified());
+            
+            // uri collision with a different ID: whole load fails
+            List<Artifact> bad = getArtifacts("bulk-collide", 3);
+            bad.add(new Artifact(expected.get(2).getURI(), expected.get(2).getContentChecksum(),
+                    expected.get(2).getContentLastModified(), expected.get(2).getContentLength()));
+            try {
+                dao.load(Artifact.class, bad.iterator());
+                Assert.fail("expected load failure");
+            } catch (RuntimeException expectedEx) {
+                log.info("caught expected: " + expectedEx);
+            }
+            Assert.assertNull(artifactDAO.get(bad.get(0).getID()));
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    
+    @Test
+    public void testLoadEvents() {
+        try {
+            List<DeletedArtifactEvent> daes = new ArrayList<>();
+            List<DeletedStorageLocationEvent> dsles = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                daes.add(new DeletedArtifactEvent(UUID.randomUUID()));
+                dsles.add(new DeletedStorageLocationEvent(UUID.randomUUID()));
+            }
+            
+            Assert.assertEquals(daes.size(), dao.load(DeletedArtifactEvent.class, daes.iterator()));
+            Assert.assertEquals(dsles.size(), dao.load(DeletedStorageLocationEvent.class, dsles.iterator()));
+            
+            for (DeletedArtifactEvent e : daes) {
+                DeletedArtifactEvent actual = (DeletedArtifactEvent) eventDAO.get(DeletedArtifactEvent.class, e.getID());
+                Assert.assertNotNull(actual);
+                Assert.assertNotNull(actual.getLastModified());
+                Assert.assertEquals(e.getMetaChecksum(), actual.getMetaChecksum());
+            }
+            for (DeletedStorageLocationEvent e : dsles) {
+                Assert.assertNotNull(eventDAO.get(DeletedStorageLocationEvent.class, e.getID()));
+            }
+            
+            // events are immutable: reload is a no-op
+            Assert.assertEquals(0, dao.load(DeletedArtifactEvent.class, daes.iterator()));
+            
+            // duplicate ID in one load: whole load fails
+            List<DeletedArtifactEvent> dupes = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                dupes.add(new DeletedArtifactEvent(UUID.randomUUID()));
+            }
+            dupes.add(new DeletedArtifactEvent(dupes.get(1).getID()));
+            try {
+                dao.load(DeletedArtifactEvent.class, dupes.iterator());
+                Assert.fail("expected IllegalArgumentException");
+            } catch (IllegalArgumentException expected) {
+                log.info("caught expected: " + expected);
+                Assert.assertTrue(expected.getMessage().contains(dupes.get(1).getID().toString()));
+            }
+            Assert.assertNull(eventDAO.get(DeletedArtifactEvent.class, dupes.get(0).getID()));
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    
+    @Test
+    public void testLoadThroughput() {
+        final int total = 10000;
+        try {
+            List<Artifact> batched = getArtifacts("batch", total);
+            long t = System.currentTimeMillis();
+            for (int i = 0; i < total; i += 1000) {
+                artifactDAO.put(batched.subList(i, Math.min(total, i + 1000)));
+            }
+            long putTime = System.currentTimeMillis() - t;
+            
+            List<Artifact> bulk = getArtifacts("bulk", total);
+            t = System.currentTimeMillis();
+            long num = dao.load(Artifact.class, bulk.iterator());
+            long loadTime = System.currentTimeMillis() - t;
+            Assert.assertEquals(total, num);
+            
+            log.info("testLoadThroughput: " + total + " artifacts"
+                    + " batch put: " + putTime + "ms " + (1000L * total / Math.max(1L, putTime)) + " rows/sec"
+                    + " bulk load: " + loadTime + "ms " + (1000L * total / Math.max(1L, loadTime)) + " rows/sec");
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+}
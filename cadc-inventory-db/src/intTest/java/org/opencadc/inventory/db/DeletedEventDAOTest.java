@@ -70,9 +70,12 @@ package org.opencadc.inventory.db;
 import ca.nrc.cadc.db.ConnectionConfig;
 import ca.nrc.cadc.db.DBConfig;
 import ca.nrc.cadc.db.DBUtil;
+import ca.nrc.cadc.io.ResourceIterator;
 import ca.nrc.cadc.util.Log4jInit;
 import java.net.URI;
 import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.UUID;
@@ -84,6 +87,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.opencadc.inventory.DeletedArtifactEvent;
 import org.opencadc.inventory.DeletedStorageLocationEvent;
+import org.opencadc.inventory.Entity;
 import org.opencadc.inventory.db.version.InitDatabase;
 
 /**
@@ -191,6 +195,74 @@ public class DeletedEventDAOTest {
         }
     }
     
+    @Test
+    public void testModifiedIterator() {
+        try {
+            for (Class c : new Class[] { DeletedArtifactEvent.class, DeletedStorageLocationEvent.class }) {
+                List<Entity> events = new ArrayList<>();
+                for (int i = 0; i < 10; i++) {
+                    if (DeletedArtifactEvent.class.equals(c)) {
+                        events.add(new DeletedArtifactEvent(UUID.randomUUID()));
+                    } else {
+                        events.add(new DeletedStorageLocationEvent(UUID.randomUUID()));
+                    }
+                }
+                dao.put(events);
+                
+                List<Entity> all = new ArrayList<>();
+                try (ResourceIterator<Entity> iter = dao.modifiedIterator(c, null, null, null)) {
+                    while (iter.hasNext()) {
+                        Entity e = iter.next();
+                        Assert.assertEquals(c, e.getClass());
+                        all.add(e);
+                    }
+                }
+                Assert.assertEquals(events.size(), all.size());
+                
+                Entity pos = all.get(4);
+                List<Entity> rest = new ArrayList<>();
+                try (ResourceIterator<Entity> iter = dao.modifiedIterator(c, pos.getLastModified(), pos.getID(), null)) {
+                    while (iter.hasNext()) {
+                        rest.add(iter.next());
+                    }
+                }
+                Assert.assertEquals(all.size() - 5, rest.size());
+                for (int i = 0; i < rest.size(); i++) {
+                    Assert.assertEquals(all.get(i + 5).getID(), rest.get(i).getID());
+                }
+            }
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    
+    @Test
+    public void testBatchPut() {
+        try {
+            List<Entity> expected = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                expected.add(new DeletedArtifactEvent(UUID.randomUUID()));
+                expected.add(new DeletedStorageLocationEvent(UUID.randomUUID()));
+            }
+            
+            dao.put(expected);
+            
+            for (Entity e : expected) {
+                Assert.assertNotNull(e.getLastModified());
+                Assert.assertNotNull(e.getMetaChecksum());
+                Entity actual = dao.get(e.getClass(), e.getID());
+                Assert.assertNotNull(actual);
+                Assert.assertEquals(e.getClass(), actual.getClass());
+                Assert.assertEquals(e.getLastModified(), actual.getLastModified());
+                Assert.assertEquals(e.getMetaChecksum(), actual.getMetaChecksum());
+            }
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    
     @Test
     public void testCopyConstructor() {
         try {
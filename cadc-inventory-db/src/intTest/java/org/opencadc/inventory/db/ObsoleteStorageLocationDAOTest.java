@@ -73,6 +73,8 @@ import ca.nrc.cadc.db.DBUtil;
 import ca.nrc.cadc.util.Log4jInit;
 import java.net.URI;
 import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.UUID;
@@ -174,6 +176,39 @@ public class ObsoleteStorageLocationDAOTest {
         }
     }
     
+    @Test
+    public void testBatchPutDelete() {
+        try {
+            List<ObsoleteStorageLocation> expected = new ArrayList<>();
+            List<UUID> ids = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                ObsoleteStorageLocation o = new ObsoleteStorageLocation(
+                    new StorageLocation(URI.create("uuid:" + UUID.randomUUID())));
+                expected.add(o);
+                ids.add(o.getID());
+            }
+            
+            dao.put(expected);
+            
+            for (ObsoleteStorageLocation o : expected) {
+                ObsoleteStorageLocation actual = dao.get(o.getLocation());
+                Assert.assertNotNull(actual);
+                Assert.assertEquals(o.getID(), actual.getID());
+                Assert.assertEquals(o.getLastModified(), actual.getLastModified());
+                Assert.assertEquals(o.getMetaChecksum(), actual.getMetaChecksum());
+            }
+            
+            int num = dao.delete(ids);
+            Assert.assertEquals(expected.size(), num);
+            for (UUID id : ids) {
+                Assert.assertNull(dao.get(id));
+            }
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    
     @Test
     public void testGetByLocation() {
         try {
@@ -0,0 +1,369 @@
+/*
+************************************************************************
+*******************  CANADIAN ASTRONOMY DATA CENTRE  *******************
+**************  CENTRE CANADIEN DE DONNÉES ASTRONOMIQUES  **************
+*
+*  (c) 2020.                            (c) 2020.
+*  Government of Canada                 Gouvernement du Canada
+*  National Research Council            Conseil national de recherches
+*  Ottawa, Canada, K1A 0R6              Ottawa, Canada, K1A 0R6
+*  All rights reserved                  Tous droits réservés
+*
+*  NRC disclaims any warranties,        Le CNRC dénie toute garantie
+*  expressed, implied, or               énoncée, implicite ou légale,
+*  statutory, of any kind with          de quelque nature que ce
+*  respect to the software,             soit, concernant le logiciel,
+*  including without limitation         y compris sans restriction
+*  any warranty of merchantability      toute garantie de valeur
+*  or fitness for a particular          marchande ou de pertinence
+*  purpose. NRC shall not be            pour un usage particulier.
+*  liable in any event for any          Le CNRC ne pourra en aucun cas
+*  damages, whether direct or           être tenu responsable de tout
+*  indirect, special or general,        dommage, direct ou indirect,
+*  consequential or incidental,         particulier ou général,
+*  arising from the use of the          accessoire ou fortuit, résultant
+*  software.  Neither the name          de l'utilisation du logiciel. Ni
+*  of the National Research             le nom du Conseil National de
+*  Council of Canada nor the            Recherches du Canada ni les noms
+*  names of its contributors may        de ses  participants ne peuvent
+*  be used to endorse or promote        être utilisés pour approuver ou
+*  products derived from this           promouvoir les produits dérivés
+*  software without specific prior      de ce logiciel sans autorisation
+*  written permission.                  préalable et particulière
+*                                       par écrit.
+*
+*  This file is part of the             Ce fichier fait partie du projet
+*  OpenCADC project.                    OpenCADC.
+*
+*  OpenCADC is free software:           OpenCADC est un logiciel libre ;
+*  you can redistribute it and/or       vous pouvez le redistribuer ou le
+*  modify it under the terms of         modifier suivant les termes de
+*  the GNU Affero General Public        la “GNU Affero General Public
+*  License as published by the          License” telle que publiée
+*  Free Software Foundation,            par la Free Software Foundation
+*  either version 3 of the              : soit la version 3 de cette
+*  License, or (at your option)         licence, soit (à votre gré)
+*  any later version.                   toute version ultérieure.
+*
+*  OpenCADC is distributed in the       OpenCADC est distribué
+*  hope that it will be useful,         dans l’espoir qu’il vous
+*  but WITHOUT ANY WARRANTY;            sera utile, mais SANS AUCUNE
+*  without even the implied             GARANTIE : sans même la garantie
+*  warranty of MERCHANTABILITY          implicite de COMMERCIALISABILITÉ
+*  or FITNESS FOR A PARTICULAR          ni d’ADÉQUATION À UN OBJECTIF
+*  PURPOSE.  See the GNU Affero         PARTICULIER. Consultez la Licence
+*  General Public License for           Générale Publique GNU Affero
+*  more details.                        pour plus de détails.
+*
+*  You should have received             Vous devriez avoir reçu une
+*  a copy of the GNU Affero             copie de la Licence Générale
+*  General Public License along         Publique GNU Affero avec
+*  with OpenCADC.  If not, see          OpenCADC ; si ce n’est
+*  <http://www.gnu.org/licenses/>.      pas le cas, consultez :
+*                                       <http://www.gnu.org/licenses/>.
+*
+************************************************************************
+*/
+
+
+package org.opencadc.inventory.db;
+
+import ca.nrc.cadc.db.ConnectionConfig;
+import ca.nrc.cadc.db.DBConfig;
+import ca.nrc.cadc.db.DBUtil;
+import ca.nrc.cadc.db.TransactionManager;
+import ca.nrc.cadc.io.ResourceIterator;
+import ca.nrc.cadc.util.Log4jInit;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.sql.DataSource;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencadc.inventory.Artifact;
+import org.opencadc.inventory.db.version.InitDatabase;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Test ArtifactDAO with the partitioned Artifact table in a separate schema.
+ * 
+ * @author pdowler
+ */
+public class PartitionedArtifactDAOTest {
+    private static final Logger log = Logger.getLogger(PartitionedArtifactDAOTest.class);
+
+    static {
+        Log4jInit.setLevel("org.opencadc.inventory", Level.INFO);
+        Log4jInit.setLevel("org.opencadc.inventory.db", Level.INFO);
+        Log4jInit.setLevel("ca.nrc.cadc.db", Level.INFO);
+    }
+    
+    ArtifactDAO dao = new ArtifactDAO();
+    
+    public PartitionedArtifactDAOTest() throws Exception {
+        try {
+            DBConfig dbrc = new DBConfig();
+            ConnectionConfig cc = dbrc.getConnectionConfig(TestUtil.SERVER, TestUtil.DATABASE);
+            DBUtil.createJNDIDataSource("jdbc/PartitionedArtifactDAOTest", cc);
+
+            Map<String,Object> config = new TreeMap<String,Object>();
+            config.put(SQLGenerator.class.getName(), PartitionedSQLGenerator.class);
+            config.put("jndiDataSourceName", "jdbc/PartitionedArtifactDAOTest");
+            config.put("database", TestUtil.DATABASE);
+            config.put("schema", TestUtil.PARTITIONED_SCHEMA);
+            dao.setConfig(config);
+        } catch (Exception ex) {
+            log.error("setup failed", ex);
+            throw ex;
+        }
+    }
+    
+    @Before
+    public void init_cleanup() throws Exception {
+        log.info("init database...");
+        InitDatabase init = new InitDatabase(dao.getDataSource(), TestUtil.DATABASE, TestUtil.PARTITIONED_SCHEMA, true);
+        init.doInit();
+        log.info("init database... OK");
+        
+        log.info("clearing old content...");
+        SQLGenerator gen = dao.getSQLGenerator();
+        DataSource ds = dao.getDataSource();
+        String sql = "delete from " + gen.getTable(Artifact.class);
+        log.info("pre-test cleanup: " + sql);
+        ds.getConnection().createStatement().execute(sql);
+        log.info("clearing old content... OK");
+    }
+    
+    private List<Artifact> getArtifacts(int num) {
+        List<Artifact> ret = new ArrayList<>();
+        for (int i = 0; i < num; i++) {
+            Artifact a = new Artifact(
+                    URI.create("cadc:ARCHIVE/partitioned/filename" + i),
+                    URI.create("md5:d41d8cd98f00b204e9800998ecf8427e"),
+                    new Date(),
+                    new Long(666L));
+            ret.add(a);
+        }
+        return ret;
+    }
+    
+    @Test
+    public void testPutGetUpdateDelete() {
+        try {
+            List<Artifact> expected = getArtifacts(50);
+            for (Artifact a : expected) {
+                dao.put(a);
+            }
+            for (Artifact e : expected) {
+                Artifact a1 = dao.get(e.getID());
+                Artifact a2 = dao.get(e.getURI());
+                Assert.assertNotNull(a1);
+                Assert.assertNotNull(a2);
+                Assert.assertEquals(e.getID(), a2.getID());
+                Assert.assertEquals(e.getBucket(), a1.getBucket());
+                Assert.assertEquals(e.getMetaChecksum(), a2.getMetaChecksum());
+            }
+            
+            // upsert conflict on (id, uriBucket)
+            Artifact e = expected.get(0);
+            e.contentType = "text/plain";
+            dao.put(e);
+            Assert.assertEquals("text/plain", dao.get(e.getURI()).contentType);
+            
+            List<URI> uris = new ArrayList<>();
+            for (Artifact a : expected) {
+                uris.add(a.getURI());
+            }
+            Assert.assertEquals(expected.size(), dao.getByURI(uris).size());
+            
+            // uri is still unique
+            Artifact dupe = new Artifact(e.getURI(), e.getContentChecksum(), e.getContentLastModified(), e.getContentLength());
+            try {
+                dao.put(dupe);
+                Assert.fail("expected failure: duplicate uri");
+            } catch (RuntimeException expectedEx) {
+                log.info("caught expected: " + expectedEx);
+            }
+            
+            dao.delete(e.getID());
+            Assert.assertNull(dao.get(e.getID()));
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+
+    @Test
+    public void testUniqueID() {
+        try {
+            Artifact a = getArtifacts(1).get(0);
+            dao.put(a);
+            
+            // same id, different uri and uriBucket: no conflict on (id, uriBucket)
+            Artifact dupe = null;
+            for (int i = 0; dupe == null || dupe.getBucket().equals(a.getBucket()); i++) {
+                dupe = new Artifact(a.getID(), URI.create("cadc:ARCHIVE/partitioned/other" + i),
+                        a.getContentChecksum(), a.getContentLastModified(), a.getContentLength());
+            }
+            log.info("testUniqueID: " + a.getBucket() + " vs " + dupe.getBucket());
+            try {
+                dao.put(dupe);
+                Assert.fail("expected failure: duplicate id via put");
+            } catch (DuplicateKeyException expected) {
+                log.info("caught expected: " + expected);
+            }
+            // insert reports the trigger unique_violation as a conflict
+            Assert.assertFalse("duplicate id via insert", dao.insert(dupe));
+            
+            Artifact cur = dao.get(a.getID());
+            Assert.assertNotNull(cur);
+            Assert.assertEquals(a.getURI(), cur.getURI());
+            Assert.assertNull(dao.get(dupe.getURI()));
+            
+            // optimistic replace: conflict, rollback, re-read and retry
+            TransactionManager txn = dao.getTransactionManager();
+            txn.startTransaction();
+            Assert.assertFalse("duplicate id via insert in txn", dao.insert(dupe));
+            txn.rollbackTransaction();
+            txn.startTransaction();
+            Assert.assertTrue(dao.deleteIfUnchanged(dao.get(a.getID()), null));
+            Assert.assertTrue(dao.insert(dupe));
+            txn.commitTransaction();
+            Assert.assertNull(dao.get(a.getURI()));
+            Assert.assertEquals(dupe.getURI(), dao.get(dupe.getID()).getURI());
+            
+            dao.delete(a.getID());
+            Assert.assertNull(dao.get(a.getID()));
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    
+    @Test
+    public void testBucketPrefixIterator() {
+        try {
+            List<Artifact> expected = getArtifacts(200);
+            dao.put(expected);
+            
+            for (String prefix : new String[] { "0", "9", "a", "f", "3c" }) {
+                int num = 0;
+                for (Artifact a : expected) {
+                    if (a.getBucket().startsWith(prefix)) {
+                        num++;
+                    }
+                }
+                int found = 0;
+                try (ResourceIterator<Artifact> iter = dao.unstoredIterator(prefix)) {
+                    while (iter.hasNext()) {
+                        Assert.assertTrue(iter.next().getBucket().startsWith(prefix));
+                        found++;
+                    }
+                }
+                Assert.assertEquals("prefix " + prefix, num, found);
+                
+                found = 0;
+                try (ArtifactPageIterator iter = dao.unstoredIterator(prefix, 7, null)) {
+                    while (iter.hasNext()) {
+                        Assert.assertTrue(iter.next().getBucket().startsWith(prefix));
+                        found++;
+                    }
+                }
+                Assert.assertEquals("prefix " + prefix, num, found);
+            }
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    
+    @Test
+    public void testPartitionArtifact() {
+        try {
+            // re-create the schema with the plain Artifact table
+            JdbcTemplate jdbc = new JdbcTemplate(dao.getDataSource());
+            String[] tables = new String[] {
+                "ModelVersion", "Artifact", "StorageSite", "ObsoleteStorageLocation",
+                "DeletedArtifactEvent", "DeletedStorageLocationEvent", "HarvestState"
+            };
+            for (String t : tables) {
+                jdbc.execute("drop table if exists " + TestUtil.PARTITIONED_SCHEMA + "." + t + " cascade");
+            }
+            InitDatabase init = new InitDatabase(dao.getDataSource(), TestUtil.DATABASE, TestUtil.PARTITIONED_SCHEMA);
+            init.doInit();
+            
+            ArtifactDAO plain = new ArtifactDAO();
+            Map<String,Object> config = new TreeMap<String,Object>();
+            config.put(SQLGenerator.class.getName(), SQLGenerator.class);
+            config.put("jndiDataSourceName", "jdbc/PartitionedArtifactDAOTest");
+            config.put("database", TestUtil.DATABASE);
+            config.put("schema", TestUtil.PARTITIONED_SCHEMA);
+            plain.setConfig(config);
+            List<Artifact> expected = getArtifacts(100);
+            plain.put(expected);
+            
+            Assert.assertTrue(init.partitionArtifact());
+            Assert.assertFalse("already partitioned", init.partitionArtifact());
+            
+            String kind = jdbc.queryForObject("select c.relkind from pg_class c join pg_namespace n on c.relnamespace = n.oid"
+                    + " where n.nspname = ? and c.relname = 'artifact'", String.class, TestUtil.PARTITIONED_SCHEMA.toLowerCase());
+            Assert.assertEquals("p", kind);
+            for (Artifact a : expected) {
+                Artifact actual = dao.get(a.getID());
+                Assert.assertNotNull(actual);
+                Assert.assertEquals(a.getURI(), actual.getURI());
+                Assert.assertEquals(a.getMetaChecksum(), actual.getMetaChecksum());
+            }
+            
+            // id trigger and view re-created
+            Artifact a = expected.get(0);
+            Artifact dupe = null;
+            for (int i = 0; dupe == null || dupe.getBucket().equals(a.getBucket()); i++) {
+                dupe = new Artifact(a.getID(), URI.create("cadc:ARCHIVE/partitioned/other" + i),
+                        a.getContentChecksum(), a.getContentLastModified(), a.getContentLength());
+            }
+            Assert.assertFalse("duplicate id via insert", dao.insert(dupe));
+            Integer num = jdbc.queryForObject("select count(*) from " + TestUtil.PARTITIONED_SCHEMA + ".ArtifactView", Integer.class);
+            Assert.assertEquals(expected.size(), num.intValue());
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    
+    @Test
+    public void testPartitionPruning() {
+        try {
+            String tab = dao.getSQLGenerator().getTable(Artifact.class);
+            JdbcTemplate jdbc = new JdbcTemplate(dao.getDataSource());
+            
+            // same predicate as a uriBucket prefix query
+            String sql = "EXPLAIN SELECT id FROM " + tab 
+                    + " WHERE uriBucket LIKE 'a%' AND uriBucket >= 'a' AND uriBucket < 'ag'";
+            List<String> plan = jdbc.queryForList(sql, String.class);
+            String txt = plan.toString().toLowerCase();
+            log.info("plan: " + txt);
+            Assert.assertTrue(txt, txt.contains("artifact_a"));
+            Assert.assertFalse(txt, txt.contains("artifact_b"));
+            Assert.assertFalse(txt, txt.contains("artifact_9"));
+            
+            // get by uri
+            sql = "EXPLAIN SELECT id FROM " + tab + " WHERE uri = 'cadc:FOO/bar' AND uriBucket = '3c1ab'";
+            plan = jdbc.queryForList(sql, String.class);
+            txt = plan.toString().toLowerCase();
+            log.info("plan: " + txt);
+            Assert.assertTrue(txt, txt.contains("artifact_3"));
+            Assert.assertFalse(txt, txt.contains("artifact_4"));
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+}
@@ -82,6 +82,7 @@ public class TestUtil {
     static String SERVER = "INVENTORY_TEST";
     static String DATABASE = "cadctest";
     static String SCHEMA = "inventory";
+    static String PARTITIONED_SCHEMA = "inventory_part";
     static String TABLE_PREFIX = null;
     
     static {
@@ -102,6 +103,10 @@ public class TestUtil {
                 if (s != null) {
                     SCHEMA = s.trim();
                 }
+                s = props.getProperty("partitionedSchema");
+                if (s != null) {
+                    PARTITIONED_SCHEMA = s.trim();
+                }
                 s = props.getProperty("tablePrefix");
                 if (s != null) {
                     TABLE_PREFIX = s.trim();
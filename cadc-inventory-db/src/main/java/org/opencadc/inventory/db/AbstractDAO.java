@@ -73,21 +73,33 @@ import ca.nrc.cadc.date.DateUtil;
 import ca.nrc.cadc.db.DBUtil;
 import ca.nrc.cadc.db.DatabaseTransactionManager;
 import ca.nrc.cadc.db.TransactionManager;
+import ca.nrc.cadc.util.MultiValuedProperties;
 import java.lang.reflect.Constructor;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.UUID;
 import javax.naming.NamingException;
 import javax.sql.DataSource;
 import org.apache.log4j.Logger;
+import org.opencadc.inventory.Artifact;
 import org.opencadc.inventory.Entity;
 import org.opencadc.inventory.InventoryUtil;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 
@@ -99,11 +111,22 @@ import org.springframework.jdbc.core.RowMapper;
 public abstract class AbstractDAO<T extends Entity> {
 
     private static final Logger log = Logger.getLogger(AbstractDAO.class);
+    
+    // optional artifact cache config keys: see getParams and putArtifactCacheConfig
+    public static final String ARTIFACT_CACHE_SIZE = "artifactCacheSize";
+    public static final String ARTIFACT_CACHE_TTL = "artifactCacheTTL";
+    public static final String ARTIFACT_CACHE_SYNC = "artifactCacheSync";
 
     protected SQLGenerator gen;
     protected DataSource dataSource;
     protected TransactionManager txnManager;
     protected MessageDigest digest;
+    
+    // thread-safe once configured: shared by all calls and by DAOs copied from this one
+    private JdbcTemplate jdbcTemplate;
+    
+    // optional: shared by all DAOs configured with the same DataSource and schema
+    protected ArtifactCache artifactCache;
 
     protected AbstractDAO() {
         try {
@@ -124,6 +147,8 @@ public abstract class AbstractDAO<T extends Entity> {
         this.gen = dao.getSQLGenerator();
         this.dataSource = dao.getDataSource();
         this.txnManager = dao.getTransactionManager();
+        this.jdbcTemplate = dao.getJdbcTemplate();
+        this.artifactCache = dao.artifactCache;
     }
 
     /**
@@ -142,6 +167,16 @@ public abstract class AbstractDAO<T extends Entity> {
         checkInit();
         return gen;
     }
+    
+    /**
+     * Get the JdbcTemplate used to execute statements with the DataSource.
+     * 
+     * @return the JdbcTemplate
+     */
+    protected JdbcTemplate getJdbcTemplate() {
+        checkInit();
+        return jdbcTemplate;
+    }
 
     /**
      * Get the TransactionManager that controls transactions using this DAOs
@@ -163,9 +198,36 @@ public abstract class AbstractDAO<T extends Entity> {
         ret.put("database", String.class);
         ret.put("schema", String.class);
         ret.put(SQLGenerator.class.getName(), Class.class);
+        ret.put(ARTIFACT_CACHE_SIZE, Integer.class); // optional
+        ret.put(ARTIFACT_CACHE_TTL, Integer.class); // optional
+        ret.put(ARTIFACT_CACHE_SYNC, Integer.class); // optional
         return ret;
     }
     
+    /**
+     * Add the optional artifact cache settings from service configuration to a DAO config.
+     * The property names are the config keys qualified with the package name, e.g.
+     * org.opencadc.inventory.db.artifactCacheSize. Missing properties are not added.
+     * 
+     * @param config DAO config to add to
+     * @param props service configuration
+     * @throws IllegalStateException if a value is not an integer
+     */
+    public static void putArtifactCacheConfig(Map<String, Object> config, MultiValuedProperties props) {
+        String[] names = new String[] { ARTIFACT_CACHE_SIZE, ARTIFACT_CACHE_TTL, ARTIFACT_CACHE_SYNC };
+        for (String name : names) {
+            String key = AbstractDAO.class.getPackage().getName() + "." + name;
+            String val = props.getFirstPropertyValue(key);
+            if (val != null) {
+                try {
+                    config.put(name, Integer.valueOf(val.trim()));
+                } catch (NumberFormatException ex) {
+                    throw new IllegalStateException("invalid config: " + key + " = " + val);
+                }
+            }
+        }
+    }
+    
     public void setConfig(Map<String, Object> config) {
         Class<?> genClass = (Class<?>) config.get(SQLGenerator.class.getName());
         if (genClass == null) {
@@ -181,6 +243,7 @@ public abstract class AbstractDAO<T extends Entity> {
         } catch (NamingException ex) {
             throw new IllegalArgumentException("cannot find JNDI DataSource: " + jndiDataSourceName);
         }
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
 
         String database = (String) config.get("database");
         String schema = (String) config.get("schema");
@@ -191,6 +254,21 @@ public abstract class AbstractDAO<T extends Entity> {
             throw new RuntimeException("failed to instantiate SQLGenerator: " + genClass.getName(), ex);
         }
         
+        // artifact cache: max number of artifacts, entry lifetime and change polling interval in seconds
+        Integer cacheSize = (Integer) config.get(ARTIFACT_CACHE_SIZE);
+        if (cacheSize != null && cacheSize > 0) {
+            Integer ttl = (Integer) config.get(ARTIFACT_CACHE_TTL);
+            if (ttl == null) {
+                ttl = 60;
+            }
+            Integer sync = (Integer) config.get(ARTIFACT_CACHE_SYNC);
+            if (sync == null) {
+                sync = 0;
+            }
+            String key = jndiDataSourceName + ":" + gen.getTable(Artifact.class);
+            this.artifactCache = ArtifactCache.getInstance(key, cacheSize, 1000L * ttl, 1000L * sync);
+        }
+        
         try {
             Date now = getCurrentTime();
             log.debug("connection test: " + now);
@@ -208,7 +286,7 @@ public abstract class AbstractDAO<T extends Entity> {
     protected Date getCurrentTime() {
         checkInit();
         String tsSQL = gen.getCurrentTimeSQL();
-        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        JdbcTemplate jdbc = getJdbcTemplate();
 
         Date now = (Date) jdbc.queryForObject(tsSQL, new RowMapper() {
             @Override
@@ -226,7 +304,7 @@ public abstract class AbstractDAO<T extends Entity> {
         long t = System.currentTimeMillis();
 
         try {
-            JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+            JdbcTemplate jdbc = getJdbcTemplate();
             EntityGet<T> get = (EntityGet<T>) gen.getEntityGet(entityClass);
             get.setID(id);
             T e = (T) get.execute(jdbc);
@@ -252,7 +330,7 @@ public abstract class AbstractDAO<T extends Entity> {
         long t = System.currentTimeMillis();
 
         try {
-            JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+            JdbcTemplate jdbc = getJdbcTemplate();
             EntityLock lock = gen.getEntityLock(val.getClass());
             lock.setID(val.getID());
             lock.execute(jdbc);
@@ -275,19 +353,18 @@ public abstract class AbstractDAO<T extends Entity> {
         long t = System.currentTimeMillis();
 
         try {
-            JdbcTemplate jdbc = new JdbcTemplate(dataSource);
-            EntityGet get = gen.getSkeletonEntityGet(val.getClass());
-            get.setID(val.getID());
-            Entity cur = get.execute(jdbc);
-            Date now = getCurrentTime();
-            boolean update = cur != null;
-            boolean delta = updateEntity(val, cur, now, forceUpdate);
-            if (delta) {
-                EntityPut put = gen.getEntityPut(val.getClass(), update);
-                put.setValue(val);
-                put.execute(jdbc);
-            } else {
-                log.debug("no change: " + cur);
+            // single round trip: the server decides insert vs update vs no change
+            // and assigns lastModified (see updateEntity for the rules)
+            digest.reset(); // just in case
+            InventoryUtil.assignMetaChecksum(val, val.computeMetaChecksum(digest));
+            
+            JdbcTemplate jdbc = getJdbcTemplate();
+            EntityUpsert ups = gen.getEntityUpsert(val.getClass());
+            ups.setValue(val);
+            ups.setForceUpdate(forceUpdate);
+            boolean delta = ups.execute(jdbc);
+            if (!delta) {
+                log.debug("no change: " + val);
             }
         } finally {
             long dt = System.currentTimeMillis() - t;
@@ -295,6 +372,176 @@ public abstract class AbstractDAO<T extends Entity> {
         }
     }
     
+    /**
+     * Acquire a write lock on each of the existing entities. Rows are locked in ID
+     * order so concurrent callers locking overlapping sets cannot deadlock. This must
+     * be called inside a transaction.
+     * 
+     * @param vals entity values to lock
+     * @throws EntityNotFoundException if one or more of the entities do not exist
+     */
+    public void lock(Collection<T> vals) throws EntityNotFoundException {
+        if (vals == null) {
+            throw new IllegalArgumentException("entity list cannot be null");
+        }
+        checkInit();
+        if (vals.isEmpty()) {
+            return;
+        }
+        log.debug("LOCK: " + vals.size());
+        long t = System.currentTimeMillis();
+
+        try {
+            JdbcTemplate jdbc = getJdbcTemplate();
+            for (Map.Entry<Class, List<T>> me : groupByClass(vals).entrySet()) {
+                Set<UUID> ids = getIDs(me.getValue());
+                SQLGenerator.EntityListLock lock = gen.getEntityListLock(me.getKey());
+                lock.setIDs(ids);
+                List<UUID> locked = lock.execute(jdbc);
+                if (locked.size() < ids.size()) {
+                    ids.removeAll(locked);
+                    throw new EntityNotFoundException("not found: " + ids);
+                }
+            }
+        } finally {
+            long dt = System.currentTimeMillis() - t;
+            log.debug("LOCK: " + vals.size() + " " + dt + "ms");
+        }
+    }
+    
+    public void put(Collection<T> vals) {
+        put(vals, false);
+    }
+    
+    /**
+     * Put multiple entities. Each entity class is written with a single JDBC batch of the same
+     * upsert statement used by put(T), so the insert vs update decision and the lastModified
+     * rules are the same and a row inserted concurrently is merged rather than failing the batch.
+     * The assigned lastModified values are read back with one query. All batches run inside 
+     * one transaction: either all changes are committed or none. If the caller already has
+     * a transaction open, the put participates in that transaction and the caller is responsible
+     * for commit or rollback.
+     * 
+     * @param vals entities to put
+     * @param forceUpdate force update of the Entity.lastModified timestamp
+     * @throws EntityBatchException if the batch fails: only the first failed entity is identified
+     */
+    public void put(Collection<T> vals, boolean forceUpdate) {
+        if (vals == null) {
+            throw new IllegalArgumentException("entity list cannot be null");
+        }
+        checkInit();
+        if (vals.isEmpty()) {
+            return;
+        }
+        log.debug("PUT: " + vals.size() + " force=" + forceUpdate);
+        long t = System.currentTimeMillis();
+        
+        Map<Class, List<T>> byClass = groupByClass(vals);
+        TransactionManager tm = getTransactionManager();
+        boolean txn = !tm.isOpen();
+        try {
+            if (txn) {
+                tm.startTransaction();
+            }
+            JdbcTemplate jdbc = getJdbcTemplate();
+            for (Map.Entry<Class, List<T>> me : byClass.entrySet()) {
+                List<T> cvals = me.getValue();
+                for (T val : cvals) {
+                    digest.reset(); // just in case
+                    InventoryUtil.assignMetaChecksum(val, val.computeMetaChecksum(digest));
+                }
+                log.debug("PUT: " + me.getKey().getSimpleName() + " batch=" + cvals.size());
+                EntityUpsert ups = gen.getEntityUpsert(me.getKey());
+                ups.setForceUpdate(forceUpdate);
+                executeBatch(jdbc, ups, cvals);
+            }
+            if (txn) {
+                tm.commitTransaction();
+                txn = false;
+            }
+        } finally {
+            if (txn && tm.isOpen()) {
+                log.debug("PUT: rollback " + vals.size());
+                tm.rollbackTransaction();
+            }
+            long dt = System.currentTimeMillis() - t;
+            log.debug("PUT: " + vals.size() + " " + dt + "ms");
+        }
+    }
+    
+    private void executeBatch(JdbcTemplate jdbc, EntityUpsert ups, List<T> vals) {
+        // PostgreSQL aborts the transaction at the first failure and the driver then reports
+        // every batch entry as failed: the savepoint lets us replay the batch to find it
+        final Savepoint sp = jdbc.execute(new ConnectionCallback<Savepoint>() {
+            @Override
+            public Savepoint doInConnection(Connection conn) throws SQLException {
+                return conn.setSavepoint();
+            }
+        });
+        try {
+            ups.execute(jdbc, vals);
+        } catch (DataAccessException ex) {
+            rollback(jdbc, sp);
+            UUID failedID = null;
+            Throwable cause = ex;
+            for (T val : vals) {
+                try {
+                    ups.setValue(val);
+                    ups.execute(jdbc);
+                } catch (DataAccessException replay) {
+                    failedID = val.getID();
+                    cause = replay;
+                    break;
+                }
+            }
+            rollback(jdbc, sp);
+            if (cause.getCause() instanceof SQLException) {
+                cause = cause.getCause();
+            }
+            throw new EntityBatchException("batch put failed: " + vals.size() + " entities, failed: " + failedID
+                    + " reason: " + cause.getMessage(), failedID, ex);
+        }
+    }
+    
+    private void rollback(JdbcTemplate jdbc, final Savepoint sp) {
+        jdbc.execute(new ConnectionCallback<Object>() {
+            @Override
+            public Object doInConnection(Connection conn) throws SQLException {
+                conn.rollback(sp);
+                return null;
+            }
+        });
+    }
+    
+    private Map<Class, List<T>> groupByClass(Collection<T> vals) {
+        Map<Class, List<T>> ret = new LinkedHashMap<>();
+        Set<UUID> ids = new HashSet<>();
+        for (T val : vals) {
+            if (val == null) {
+                throw new IllegalArgumentException("entity cannot be null");
+            }
+            if (!ids.add(val.getID())) {
+                throw new IllegalArgumentException("duplicate entity: " + val.getID());
+            }
+            List<T> cvals = ret.get(val.getClass());
+            if (cvals == null) {
+                cvals = new ArrayList<>();
+                ret.put(val.getClass(), cvals);
+            }
+            cvals.add(val);
+        }
+        return ret;
+    }
+    
+    private Set<UUID> getIDs(List<T> vals) {
+        Set<UUID> ret = new HashSet<>();
+        for (T val : vals) {
+            ret.add(val.getID());
+        }
+        return ret;
+    }
+    
     protected void delete(Class entityClass, UUID id) {
         if (id == null) {
             throw new IllegalArgumentException("id cannot be null");
@@ -304,7 +551,7 @@ public abstract class AbstractDAO<T extends Entity> {
         long t = System.currentTimeMillis();
 
         try {
-            JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+            JdbcTemplate jdbc = getJdbcTemplate();
             EntityDelete del = gen.getEntityDelete(entityClass);
             del.setID(id);
             del.execute(jdbc);
@@ -314,6 +561,35 @@ public abstract class AbstractDAO<T extends Entity> {
         }
     }
     
+    /**
+     * Delete multiple entities with a single statement. IDs that do not exist are ignored.
+     * 
+     * @param entityClass entity type
+     * @param ids IDs of entities to delete
+     * @return number of entities deleted
+     */
+    protected int delete(Class entityClass, Collection<UUID> ids) {
+        if (ids == null) {
+            throw new IllegalArgumentException("id list cannot be null");
+        }
+        checkInit();
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        log.debug("DELETE: " + ids.size());
+        long t = System.currentTimeMillis();
+
+        try {
+            JdbcTemplate jdbc = getJdbcTemplate();
+            SQLGenerator.EntityListDelete del = gen.getEntityListDelete(entityClass);
+            del.setIDs(ids);
+            return del.execute(jdbc);
+        } finally {
+            long dt = System.currentTimeMillis() - t;
+            log.debug("DELETE: " + ids.size() + " " + dt + "ms");
+        }
+    }
+    
     /**
      * 
      * @param entity entity to persist
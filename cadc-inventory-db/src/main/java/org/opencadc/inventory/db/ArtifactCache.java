@@ -0,0 +1,334 @@
+/*
+************************************************************************
+*******************  CANADIAN ASTRONOMY DATA CENTRE  *******************
+**************  CENTRE CANADIEN DE DONNÉES ASTRONOMIQUES  **************
+*
+*  (c) 2020.                            (c) 2020.
+*  Government of Canada                 Gouvernement du Canada
+*  National Research Council            Conseil national de recherches
+*  Ottawa, Canada, K1A 0R6              Ottawa, Canada, K1A 0R6
+*  All rights reserved                  Tous droits réservés
+*
+*  NRC disclaims any warranties,        Le CNRC dénie toute garantie
+*  expressed, implied, or               énoncée, implicite ou légale,
+*  statutory, of any kind with          de quelque nature que ce
+*  respect to the software,             soit, concernant le logiciel,
+*  including without limitation         y compris sans restriction
+*  any warranty of merchantability      toute garantie de valeur
+*  or fitness for a particular          marchande ou de pertinence
+*  purpose. NRC shall not be            pour un usage particulier.
+*  liable in any event for any          Le CNRC ne pourra en aucun cas
+*  damages, whether direct or           être tenu responsable de tout
+*  indirect, special or general,        dommage, direct ou indirect,
+*  consequential or incidental,         particulier ou général,
+*  arising from the use of the          accessoire ou fortuit, résultant
+*  software.  Neither the name          de l'utilisation du logiciel. Ni
+*  of the National Research             le nom du Conseil National de
+*  Council of Canada nor the            Recherches du Canada ni les noms
+*  names of its contributors may        de ses  participants ne peuvent
+*  be used to endorse or promote        être utilisés pour approuver ou
+*  products derived from this           promouvoir les produits dérivés
+*  software without specific prior      de ce logiciel sans autorisation
+*  written permission.                  préalable et particulière
+*                                       par écrit.
+*
+*  This file is part of the             Ce fichier fait partie du projet
+*  OpenCADC project.                    OpenCADC.
+*
+*  OpenCADC is free software:           OpenCADC est un logiciel libre ;
+*  you can redistribute it and/or       vous pouvez le redistribuer ou le
+*  modify it under the terms of         modifier suivant les termes de
+*  the GNU Affero General Public        la “GNU Affero General Public
+*  License as published by the          License” telle que publiée
+*  Free Software Foundation,            par la Free Software Foundation
+*  either version 3 of the              : soit la version 3 de cette
+*  License, or (at your option)         licence, soit (à votre gré)
+*  any later version.                   toute version ultérieure.
+*
+*  OpenCADC is distributed in the       OpenCADC est distribué
+*  hope that it will be useful,         dans l’espoir qu’il vous
+*  but WITHOUT ANY WARRANTY;            sera utile, mais SANS AUCUNE
+*  without even the implied             GARANTIE : sans même la garantie
+*  warranty of MERCHANTABILITY          implicite de COMMERCIALISABILITÉ
+*  or FITNESS FOR A PARTICULAR          ni d’ADÉQUATION À UN OBJECTIF
+*  PURPOSE.  See the GNU Affero         PARTICULIER. Consultez la Licence
+*  General Public License for           Générale Publique GNU Affero
+*  more details.                        pour plus de détails.
+*
+*  You should have received             Vous devriez avoir reçu une
+*  a copy of the GNU Affero             copie de la Licence Générale
+*  General Public License along         Publique GNU Affero avec
+*  with OpenCADC.  If not, see          OpenCADC ; si ce n’est
+*  <http://www.gnu.org/licenses/>.      pas le cas, consultez :
+*                                       <http://www.gnu.org/licenses/>.
+*
+************************************************************************
+*/
+
+
+package org.opencadc.inventory.db;
+
+import java.net.URI;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import org.apache.log4j.Logger;
+import org.opencadc.inventory.Artifact;
+import org.opencadc.inventory.InventoryUtil;
+import org.opencadc.inventory.StorageLocation;
+
+/**
+ * Bounded, least-recently-used cache of Artifact by ID and URI with a time-to-live for 
+ * each entry. One instance is shared by all DAOs with the same DataSource and schema
+ * (see ArtifactDAO). Only found artifacts are cached and callers always get a copy, 
+ * so modifying an artifact from the cache does not modify the cache.
+ * 
+ * <p>Entries are removed by local put, delete, and site location calls through ArtifactDAO,
+ * by expiry, and by polling the database for artifacts and deleted artifact events modified
+ * since the previous poll (see ArtifactDAO.syncCache). Polling only finds changes that 
+ * advance Artifact.lastModified: metadata changes and deletes made by other processes are 
+ * visible after at most the TTL or the poll interval, whichever is smaller, but changes 
+ * to siteLocations (addSiteLocation/removeSiteLocation) and storageLocation made by other 
+ * processes do not change lastModified and are only visible after the TTL.
+ * 
+ * @author pdowler
+ */
+public class ArtifactCache {
+    private static final Logger log = Logger.getLogger(ArtifactCache.class);
+    
+    private static final Map<String,ArtifactCache> INSTANCES = new HashMap<>();
+    
+    private final int maxSize;
+    private final long ttl;
+    private final long syncInterval;
+    
+    private final Map<UUID,CacheEntry> byID;
+    private final Map<URI,UUID> byURI = new HashMap<>();
+    
+    // incremented by every invalidation so a slow reader cannot cache a stale value
+    private long version = 0L;
+    
+    private long hits = 0L;
+    private long misses = 0L;
+    private long evictions = 0L;
+    private long invalidations = 0L;
+    
+    private Date lastSync;
+    private long nextSync;
+    
+    private static class CacheEntry {
+        final Artifact artifact;
+        final long expires;
+        
+        CacheEntry(Artifact artifact, long expires) {
+            this.artifact = artifact;
+            this.expires = expires;
+        }
+    }
+    
+    /**
+     * @param maxSize maximum number of artifacts
+     * @param ttl time-to-live of each entry in milliseconds
+     * @param syncInterval time between polls for changes in milliseconds, 0 to disable
+     */
+    ArtifactCache(int maxSize, long ttl, long syncInterval) {
+        if (maxSize < 1 || ttl < 1L || syncInterval < 0L) {
+            throw new IllegalArgumentException("invalid cache config: maxSize=" + maxSize 
+                    + " ttl=" + ttl + " syncInterval=" + syncInterval);
+        }
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        this.syncInterval = syncInterval;
+        this.byID = new LinkedHashMap<UUID,CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID,CacheEntry> eldest) {
+                if (size() > ArtifactCache.this.maxSize) {
+                    byURI.remove(eldest.getValue().artifact.getURI());
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+    
+    /**
+     * Get the shared cache for the specified key, creating it if necessary. The
+     * configuration of an existing cache is not changed.
+     */
+    static ArtifactCache getInstance(String key, int maxSize, long ttl, long syncInterval) {
+        synchronized (INSTANCES) {
+            ArtifactCache ret = INSTANCES.get(key);
+            if (ret == null) {
+                ret = new ArtifactCache(maxSize, ttl, syncInterval);
+                INSTANCES.put(key, ret);
+                log.debug("created cache: " + key + " " + ret);
+            }
+            return ret;
+        }
+    }
+    
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+    
+    public synchronized int size() {
+        return byID.size();
+    }
+    
+    public int getMaxSize() {
+        return maxSize;
+    }
+    
+    synchronized long getVersion() {
+        return version;
+    }
+    
+    synchronized Artifact get(UUID id) {
+        CacheEntry ce = byID.get(id);
+        return hit(ce);
+    }
+    
+    synchronized Artifact get(URI uri) {
+        UUID id = byURI.get(uri);
+        CacheEntry ce = null;
+        if (id != null) {
+            ce = byID.get(id);
+        }
+        return hit(ce);
+    }
+    
+    private Artifact hit(CacheEntry ce) {
+        if (ce != null && ce.expires <= System.currentTimeMillis()) {
+            byID.remove(ce.artifact.getID());
+            byURI.remove(ce.artifact.getURI());
+            ce = null;
+        }
+        if (ce == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return copy(ce.artifact);
+    }
+    
+    /**
+     * Add an artifact read from the database. The artifact is not added if any
+     * entry was invalidated after the caller got the version (before the read).
+     * 
+     * @param a artifact
+     * @param readVersion value of getVersion() before the artifact was read
+     */
+    synchronized void put(Artifact a, long readVersion) {
+        if (readVersion != version) {
+            log.debug("put: skip " + a.getID() + " version " + readVersion + " != " + version);
+            return;
+        }
+        remove(a.getID());
+        remove(byURI.get(a.getURI())); // same URI with a different ID
+        byID.put(a.getID(), new CacheEntry(copy(a), System.currentTimeMillis() + ttl));
+        byURI.put(a.getURI(), a.getID());
+    }
+    
+    public synchronized void invalidate(UUID id) {
+        version++;
+        invalidations++;
+        remove(id);
+    }
+    
+    public synchronized void invalidate(URI uri) {
+        version++;
+        invalidations++;
+        remove(byURI.get(uri));
+    }
+    
+    public synchronized void clear() {
+        version++;
+        invalidations++;
+        byID.clear();
+        byURI.clear();
+    }
+    
+    private void remove(UUID id) {
+        if (id != null) {
+            CacheEntry ce = byID.remove(id);
+            if (ce != null) {
+                byURI.remove(ce.artifact.getURI());
+            }
+        }
+    }
+    
+    /**
+     * Check if a poll for changes is due. This returns true to at most one caller
+     * per interval; that caller must call endSync or abortSync.
+     * 
+     * @return true if the caller should poll for changes
+     */
+    synchronized boolean startSync() {
+        long now = System.currentTimeMillis();
+        if (syncInterval == 0L || now < nextSync) {
+            return false;
+        }
+        nextSync = now + syncInterval;
+        return true;
+    }
+    
+    /**
+     * @return server time at the start of the previous poll or null if never polled
+     */
+    synchronized Date getLastSync() {
+        return lastSync;
+    }
+    
+    /**
+     * Record a completed poll.
+     * 
+     * @param start server time at the start of the poll
+     */
+    synchronized void endSync(Date start) {
+        this.lastSync = start;
+    }
+    
+    synchronized void abortSync() {
+        this.nextSync = 0L;
+    }
+    
+    // trusted copy: no validation of state that was already validated or read from the database
+    private static Artifact copy(Artifact a) {
+        Artifact ret = InventoryUtil.reconstructArtifact(a.getID(), a.getURI(), a.getBucket(), a.getContentChecksum(), 
+                new Date(a.getContentLastModified().getTime()), a.getContentLength());
+        ret.contentType = a.contentType;
+        ret.contentEncoding = a.contentEncoding;
+        ret.setSiteIDs(a.getSiteIDs());
+        if (a.storageLocation != null) {
+            ret.storageLocation = new StorageLocation(a.storageLocation.getStorageID());
+            ret.storageLocation.storageBucket = a.storageLocation.storageBucket;
+        }
+        if (a.getLastModified() != null) {
+            InventoryUtil.assignLastModified(ret, new Date(a.getLastModified().getTime()));
+        }
+        if (a.getMetaChecksum() != null) {
+            InventoryUtil.assignMetaChecksum(ret, a.getMetaChecksum());
+        }
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        return "ArtifactCache[" + maxSize + "," + ttl + "ms," + syncInterval + "ms]";
+    }
+}
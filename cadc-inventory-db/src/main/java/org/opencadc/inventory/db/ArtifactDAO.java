@@ -69,9 +69,22 @@ package org.opencadc.inventory.db;
 
 import ca.nrc.cadc.io.ResourceIterator;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import org.apache.log4j.Logger;
 import org.opencadc.inventory.Artifact;
+import org.opencadc.inventory.ArtifactBatch;
+import org.opencadc.inventory.DeletedArtifactEvent;
+import org.opencadc.inventory.InventoryUtil;
+import org.opencadc.inventory.StorageLocation;
+import org.opencadc.inventory.StoredArtifactComparator;
 import org.springframework.jdbc.core.JdbcTemplate;
 
 /**
@@ -80,6 +93,16 @@ import org.springframework.jdbc.core.JdbcTemplate;
  */
 public class ArtifactDAO extends AbstractDAO<Artifact> {
     private static final Logger log = Logger.getLogger(ArtifactDAO.class);
+    
+    private static final String HEX = "0123456789abcdef";
+    
+    /**
+     * Maximum number of keys bound in a single multi-key get query.
+     */
+    public static final int MAX_KEYS_PER_QUERY = 1000;
+    
+    // cache sync: re-check changes this far before the previous poll
+    private static final long CACHE_SYNC_OVERLAP = 60 * 1000L;
 
     public ArtifactDAO() {
         super();
@@ -90,7 +113,19 @@ public class ArtifactDAO extends AbstractDAO<Artifact> {
     }
     
     public Artifact get(UUID id) {
-        return super.get(Artifact.class, id);
+        ArtifactCache cache = getCache();
+        if (cache == null) {
+            return super.get(Artifact.class, id);
+        }
+        Artifact ret = cache.get(id);
+        if (ret == null) {
+            long v = cache.getVersion();
+            ret = super.get(Artifact.class, id);
+            if (ret != null) {
+                cache.put(ret, v);
+            }
+        }
+        return ret;
     }
     
     public Artifact get(URI uri) {
@@ -98,11 +133,125 @@ public class ArtifactDAO extends AbstractDAO<Artifact> {
             throw new IllegalArgumentException("uri cannot be null");
         }
         checkInit();
+        ArtifactCache cache = getCache();
+        if (cache == null) {
+            return getImpl(uri);
+        }
+        Artifact ret = cache.get(uri);
+        if (ret == null) {
+            long v = cache.getVersion();
+            ret = getImpl(uri);
+            if (ret != null) {
+                cache.put(ret, v);
+            }
+        }
+        return ret;
+    }
+    
+    /**
+     * Get multiple artifacts by ID. Large inputs are split into queries of at most
+     * MAX_KEYS_PER_QUERY IDs each.
+     * 
+     * @param ids artifact IDs
+     * @return map of the artifacts that were found by ID
+     */
+    public Map<UUID,Artifact> getByID(Collection<UUID> ids) {
+        if (ids == null) {
+            throw new IllegalArgumentException("id list cannot be null");
+        }
+        checkInit();
+        log.debug("get: " + ids.size() + " IDs");
+        long t = System.currentTimeMillis();
+        
+        Map<UUID,Artifact> ret = new HashMap<>();
+        try {
+            ArtifactCache cache = getCache();
+            List<UUID> todo = new ArrayList<>();
+            for (UUID id : new LinkedHashSet<>(ids)) {
+                if (id == null) {
+                    throw new IllegalArgumentException("id cannot be null");
+                }
+                Artifact a = (cache == null ? null : cache.get(id));
+                if (a != null) {
+                    ret.put(id, a);
+                } else {
+                    todo.add(id);
+                }
+            }
+            long v = (cache == null ? 0L : cache.getVersion());
+            JdbcTemplate jdbc = getJdbcTemplate();
+            for (int i = 0; i < todo.size(); i += MAX_KEYS_PER_QUERY) {
+                SQLGenerator.ArtifactListGet get = gen.getArtifactListGet();
+                get.setIDs(todo.subList(i, Math.min(todo.size(), i + MAX_KEYS_PER_QUERY)));
+                for (Artifact a : get.execute(jdbc)) {
+                    ret.put(a.getID(), a);
+                    if (cache != null) {
+                        cache.put(a, v);
+                    }
+                }
+            }
+            return ret;
+        } finally {
+            long dt = System.currentTimeMillis() - t;
+            log.debug("get: " + ids.size() + " IDs found " + ret.size() + " " + dt + "ms");
+        }
+    }
+    
+    /**
+     * Get multiple artifacts by URI. Large inputs are split into queries of at most
+     * MAX_KEYS_PER_QUERY URIs each.
+     * 
+     * @param uris artifact URIs
+     * @return map of the artifacts that were found by URI
+     */
+    public Map<URI,Artifact> getByURI(Collection<URI> uris) {
+        if (uris == null) {
+            throw new IllegalArgumentException("uri list cannot be null");
+        }
+        checkInit();
+        log.debug("get: " + uris.size() + " URIs");
+        long t = System.currentTimeMillis();
+        
+        Map<URI,Artifact> ret = new HashMap<>();
+        try {
+            ArtifactCache cache = getCache();
+            List<URI> todo = new ArrayList<>();
+            for (URI uri : new LinkedHashSet<>(uris)) {
+                if (uri == null) {
+                    throw new IllegalArgumentException("uri cannot be null");
+                }
+                Artifact a = (cache == null ? null : cache.get(uri));
+                if (a != null) {
+                    ret.put(uri, a);
+                } else {
+                    todo.add(uri);
+                }
+            }
+            long v = (cache == null ? 0L : cache.getVersion());
+            JdbcTemplate jdbc = getJdbcTemplate();
+            for (int i = 0; i < todo.size(); i += MAX_KEYS_PER_QUERY) {
+                SQLGenerator.ArtifactListGet get = gen.getArtifactListGet();
+                get.setURIs(todo.subList(i, Math.min(todo.size(), i + MAX_KEYS_PER_QUERY)));
+                for (Artifact a : get.execute(jdbc)) {
+                    ret.put(a.getURI(), a);
+                    if (cache != null) {
+                        cache.put(a, v);
+                    }
+                }
+            }
+            return ret;
+        } finally {
+            long dt = System.currentTimeMillis() - t;
+            log.debug("get: " + uris.size() + " URIs found " + ret.size() + " " + dt + "ms");
+        }
+    }
+    
+    private Artifact getImpl(URI uri) {
         log.debug("get: " + uri);
         long t = System.currentTimeMillis();
 
         try {
-            JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+            JdbcTemplate jdbc = getJdbcTemplate();
             
             SQLGenerator.ArtifactGet get = (SQLGenerator.ArtifactGet) gen.getEntityGet(Artifact.class);
             get.setURI(uri);
@@ -118,7 +267,381 @@ public class ArtifactDAO extends AbstractDAO<Artifact> {
     // caller must also fire an appropriate event via DeletedEventDAO in same txn
     // unless performing this delete in reaction to such an event
     public void delete(UUID id) {
+        invalidate(id);
         super.delete(Artifact.class, id);
+        invalidate(id);
+    }
+    
+    // delete multiple artifacts with a single statement; same event rules as delete(UUID)
+    public int delete(Collection<UUID> ids) {
+        for (UUID id : ids) {
+            invalidate(id);
+        }
+        int ret = super.delete(Artifact.class, ids);
+        for (UUID id : ids) {
+            invalidate(id);
+        }
+        return ret;
+    }
+    
+    /**
+     * Delete artifacts and create a DeletedArtifactEvent for each deleted artifact with a 
+     * single statement per MAX_KEYS_PER_QUERY artifacts. IDs that do not exist are ignored 
+     * and existing events are kept. Each statement is atomic; use a transaction to make
+     * larger inputs atomic.
+     * 
+     * @param ids artifacts to delete
+     * @return IDs of the deleted artifacts
+     */
+    public List<UUID> deleteWithEvents(Collection<UUID> ids) {
+        if (ids == null) {
+            throw new IllegalArgumentException("id list cannot be null");
+        }
+        Map<UUID,Artifact> todo = new HashMap<>();
+        for (UUID id : ids) {
+            if (id == null) {
+                throw new IllegalArgumentException("id cannot be null");
+            }
+            todo.put(id, null);
+        }
+        return deleteWithEvents(todo, false, Collections.<UUID,ObsoleteStorageLocation>emptyMap());
+    }
+    
+    /**
+     * Delete artifacts that have not been modified since they were read and create a 
+     * DeletedArtifactEvent for each deleted artifact with a single statement per 
+     * MAX_KEYS_PER_QUERY artifacts. An artifact is only deleted if the metaChecksum, 
+     * lastModified, and storage location are unchanged; artifacts that are not in the result 
+     * were either already deleted or modified. With obsoleteStorageLocations, the same statement
+     * also creates an ObsoleteStorageLocation for each deleted artifact with a storage location 
+     * (unless one already exists for the location).
+     * 
+     * @param artifacts artifacts to delete, as last read
+     * @param obsoleteStorageLocations true to create ObsoleteStorageLocation(s)
+     * @return IDs of the deleted artifacts
+     */
+    public List<UUID> deleteWithEvents(Collection<Artifact> artifacts, boolean obsoleteStorageLocations) {
+        if (artifacts == null) {
+            throw new IllegalArgumentException("artifact list cannot be null");
+        }
+        Map<UUID,Artifact> todo = new HashMap<>();
+        Map<UUID,ObsoleteStorageLocation> osls = new HashMap<>();
+        for (Artifact a : artifacts) {
+            if (a == null) {
+                throw new IllegalArgumentException("artifact cannot be null");
+            }
+            todo.put(a.getID(), a);
+            if (obsoleteStorageLocations && a.storageLocation != null) {
+                osls.put(a.getID(), new ObsoleteStorageLocation(a.storageLocation));
+            }
+        }
+        return deleteWithEvents(todo, true, osls);
+    }
+    
+    /**
+     * Conditional delete for optimistic concurrency control: delete the artifact if it has 
+     * not been modified since it was read (metaChecksum, lastModified, and storage location 
+     * are unchanged) and create the DeletedArtifactEvent and optional ObsoleteStorageLocation 
+     * with a single statement. The caller should re-read the artifact and retry if this 
+     * returns false.
+     * 
+     * @param expected the artifact as last read
+     * @param obsoleteLocation obsolete storage location to record if deleted, or null; this is
+     *     not created if one already exists for the location
+     * @return true if deleted, false if the artifact was modified or deleted
+     */
+    public boolean deleteIfUnchanged(Artifact expected, ObsoleteStorageLocation obsoleteLocation) {
+        if (expected == null) {
+            throw new IllegalArgumentException("artifact cannot be null");
+        }
+        Map<UUID,ObsoleteStorageLocation> osls = new HashMap<>();
+        if (obsoleteLocation != null) {
+            osls.put(expected.getID(), obsoleteLocation);
+        }
+        return !deleteWithEvents(Collections.singletonMap(expected.getID(), expected), true, osls).isEmpty();
+    }
+    
+    // conditional: delete if unchanged from the artifact values, otherwise by ID (null values)
+    private List<UUID> deleteWithEvents(Map<UUID,Artifact> artifacts, boolean conditional, 
+            Map<UUID,ObsoleteStorageLocation> osls) {
+        checkInit();
+        log.debug("delete with events: " + artifacts.size() + " conditional=" + conditional);
+        long t = System.currentTimeMillis();
+        
+        List<UUID> ret = new ArrayList<>();
+        try {
+            List<UUID> ids = new ArrayList<>(artifacts.keySet());
+            Collections.sort(ids);
+            JdbcTemplate jdbc = getJdbcTemplate();
+            for (int i = 0; i < ids.size(); i += MAX_KEYS_PER_QUERY) {
+                List<UUID> chunk = ids.subList(i, Math.min(ids.size(), i + MAX_KEYS_PER_QUERY));
+                List<DeletedArtifactEvent> events = new ArrayList<>(chunk.size());
+                List<Artifact> expected = new ArrayList<>(chunk.size());
+                List<ObsoleteStorageLocation> obsolete = new ArrayList<>(chunk.size());
+                for (UUID id : chunk) {
+                    invalidate(id);
+                    DeletedArtifactEvent e = new DeletedArtifactEvent(id);
+                    digest.reset();
+                    InventoryUtil.assignMetaChecksum(e, e.computeMetaChecksum(digest));
+                    events.add(e);
+                    if (conditional) {
+                        Artifact a = artifacts.get(id);
+                        if (a.getMetaChecksum() == null || a.getLastModified() == null) {
+                            throw new IllegalArgumentException("expected artifact must have metaChecksum and lastModified: " + a);
+                        }
+                        ObsoleteStorageLocation osl = osls.get(id);
+                        if (osl != null) {
+                            digest.reset();
+                            InventoryUtil.assignMetaChecksum(osl, osl.computeMetaChecksum(digest));
+                        }
+                        expected.add(a);
+                        obsolete.add(osl);
+                    }
+                }
+                SQLGenerator.ArtifactBulkDelete del = gen.getArtifactBulkDelete(conditional);
+                del.setEvents(events);
+                if (conditional) {
+                    del.setExpected(expected, obsolete);
+                }
+                ret.addAll(del.execute(jdbc));
+                for (UUID id : chunk) {
+                    invalidate(id);
+                }
+            }
+            return ret;
+        } finally {
+            long dt = System.currentTimeMillis() - t;
+            log.debug("delete with events: " + artifacts.size() + " deleted " + ret.size() + " " + dt + "ms");
+        }
+    }
+    
+    /**
+     * Insert a new artifact unless an artifact with the same ID or URI already exists. This 
+     * is the insert half of an optimistic replace (see deleteIfUnchanged): a concurrent writer 
+     * that inserted the same URI first makes this return false instead of failing, so the
+     * caller can re-read and retry. The metaChecksum and lastModified are assigned as in put.
+     * 
+     * <p>With a partitioned Artifact table, an artifact with the same ID in a different
+     * uriBucket is rejected by the unique ID trigger; that also returns false but the error 
+     * aborts the current transaction, so the caller must roll back before it retries.
+     * 
+     * @param val the new artifact
+     * @return true if inserted, false if there was a conflicting artifact
+     */
+    public boolean insert(Artifact val) {
+        if (val == null) {
+            throw new IllegalArgumentException("entity cannot be null");
+        }
+        checkInit();
+        log.debug("INSERT: " + val.getID());
+        long t = System.currentTimeMillis();
+        try {
+            invalidate(val.getID());
+            digest.reset();
+            InventoryUtil.assignMetaChecksum(val, val.computeMetaChecksum(digest));
+            SQLGenerator.EntityInsertIfAbsent ins = gen.getEntityInsertIfAbsent(Artifact.class);
+            ins.setValue(val);
+            return ins.execute(getJdbcTemplate());
+        } finally {
+            invalidate(val.getID());
+            long dt = System.currentTimeMillis() - t;
+            log.debug("INSERT: " + val.getID() + " " + dt + "ms");
+        }
+    }
+    
+    @Override
+    public void put(Artifact val, boolean forceUpdate) {
+        if (val != null) {
+            invalidate(val.getID());
+        }
+        super.put(val, forceUpdate);
+        invalidate(val.getID());
+    }
+    
+    @Override
+    public void put(Collection<Artifact> vals, boolean forceUpdate) {
+        if (vals != null) {
+            for (Artifact a : vals) {
+                if (a != null) {
+                    invalidate(a.getID());
+                }
+            }
+        }
+        super.put(vals, forceUpdate);
+        for (Artifact a : vals) {
+            invalidate(a.getID());
+        }
+    }
+    
+    /**
+     * Add a site to Artifact.siteLocations with a single conditional update. This does not
+     * read or lock the artifact and does not change the metaChecksum or lastModified 
+     * (siteLocations is not part of the metadata), so concurrent harvesters of different 
+     * sites do not conflict.
+     * 
+     * @param artifactID artifact to update
+     * @param siteID site to add
+     * @return true if the site was added, false if already present or no such artifact
+     */
+    public boolean addSiteLocation(UUID artifactID, UUID siteID) {
+        return updateSiteLocation(true, artifactID, siteID);
+    }
+    
+    /**
+     * Remove a site from Artifact.siteLocations with a single conditional update. 
+     * 
+     * @param artifactID artifact to update
+     * @param siteID site to remove
+     * @return true if the site was removed, false if not present or no such artifact
+     */
+    public boolean removeSiteLocation(UUID artifactID, UUID siteID) {
+        return updateSiteLocation(false, artifactID, siteID);
+    }
+    
+    /**
+     * Add a site to Artifact.siteLocations of many artifacts. Artifacts that already
+     * include the site and IDs that do not exist are ignored. Large inputs are split into 
+     * statements of at most MAX_KEYS_PER_QUERY artifacts.
+     * 
+     * @param artifactIDs artifacts to update
+     * @param siteID site to add
+     * @return number of artifacts changed
+     */
+    public int addSiteLocation(Collection<UUID> artifactIDs, UUID siteID) {
+        return updateSiteLocation(true, artifactIDs, siteID);
+    }
+    
+    /**
+     * Remove a site from Artifact.siteLocations of many artifacts. Artifacts that do not
+     * include the site and IDs that do not exist are ignored. Large inputs are split into 
+     * statements of at most MAX_KEYS_PER_QUERY artifacts.
+     * 
+     * @param artifactIDs artifacts to update
+     * @param siteID site to remove
+     * @return number of artifacts changed
+     */
+    public int removeSiteLocation(Collection<UUID> artifactIDs, UUID siteID) {
+        return updateSiteLocation(false, artifactIDs, siteID);
+    }
+    
+    private boolean updateSiteLocation(boolean add, UUID artifactID, UUID siteID) {
+        if (artifactID == null || siteID == null) {
+            throw new IllegalArgumentException("artifact ID and site ID cannot be null");
+        }
+        checkInit();
+        log.debug("site location: add=" + add + " " + artifactID + " " + siteID);
+        long t = System.currentTimeMillis();
+        
+        try {
+            invalidate(artifactID);
+            SQLGenerator.SiteLocationUpdate update = gen.getSiteLocationUpdate(add);
+            update.setArtifactID(artifactID);
+            update.setSiteID(siteID);
+            boolean ret = update.execute(getJdbcTemplate()) > 0;
+            invalidate(artifactID);
+            return ret;
+        } finally {
+            long dt = System.currentTimeMillis() - t;
+            log.debug("site location: add=" + add + " " + artifactID + " " + dt + "ms");
+        }
+    }
+    
+    private int updateSiteLocation(boolean add, Collection<UUID> artifactIDs, UUID siteID) {
+        if (artifactIDs == null || siteID == null) {
+            throw new IllegalArgumentException("artifact ID list and site ID cannot be null");
+        }
+        checkInit();
+        log.debug("site location: add=" + add + " " + artifactIDs.size() + " " + siteID);
+        long t = System.currentTimeMillis();
+        
+        int ret = 0;
+        try {
+            List<UUID> ids = new ArrayList<>(new LinkedHashSet<>(artifactIDs));
+            JdbcTemplate jdbc = getJdbcTemplate();
+            for (int i = 0; i < ids.size(); i += MAX_KEYS_PER_QUERY) {
+                List<UUID> chunk = ids.subList(i, Math.min(ids.size(), i + MAX_KEYS_PER_QUERY));
+                for (UUID id : chunk) {
+                    invalidate(id);
+                }
+                SQLGenerator.SiteLocationUpdate update = gen.getSiteLocationUpdate(add);
+                update.setArtifactIDs(chunk);
+                update.setSiteID(siteID);
+                ret += update.execute(jdbc);
+                for (UUID id : chunk) {
+                    invalidate(id);
+                }
+            }
+            return ret;
+        } finally {
+            long dt = System.currentTimeMillis() - t;
+            log.debug("site location: add=" + add + " " + artifactIDs.size() + " changed " + ret + " " + dt + "ms");
+        }
+    }
+    
+    /**
+     * Get the artifact cache. This is null unless the artifactCacheSize config 
+     * value was set.
+     * 
+     * @return the shared cache or null
+     */
+    public ArtifactCache getArtifactCache() {
+        return artifactCache;
+    }
+    
+    /**
+     * Remove artifacts modified or deleted by other processes from the cache. This polls
+     * the database for Artifact and DeletedArtifactEvent rows with a lastModified after 
+     * the previous poll (minus a margin for transactions that were still open) and is
+     * a no-op unless the artifactCacheSync interval has passed. This is called by get 
+     * so callers normally do not need to call it. Changes that do not modify lastModified 
+     * (siteLocations and storageLocation) are not found by the poll; cached values with 
+     * such changes made by other processes are only removed when they expire (TTL).
+     */
+    public void syncCache() {
+        checkInit();
+        if (artifactCache == null || !artifactCache.startSync()) {
+            return;
+        }
+        log.debug("syncCache: START");
+        long t = System.currentTimeMillis();
+        int num = 0;
+        try {
+            Date start = getCurrentTime();
+            Date prev = artifactCache.getLastSync();
+            if (prev == null) {
+                // first poll: anything cached so far could be stale
+                artifactCache.clear();
+            } else {
+                SQLGenerator.ArtifactChangeQuery query = gen.getArtifactChangeQuery();
+                query.setSince(new Date(prev.getTime() - CACHE_SYNC_OVERLAP));
+                for (UUID id : query.execute(getJdbcTemplate())) {
+                    artifactCache.invalidate(id);
+                    num++;
+                }
+            }
+            artifactCache.endSync(start);
+        } catch (RuntimeException ex) {
+            artifactCache.abortSync();
+            throw ex;
+        } finally {
+            long dt = System.currentTimeMillis() - t;
+            log.debug("syncCache: invalidated " + num + " " + dt + "ms");
+        }
+    }
+    
+    // cache is bypassed inside a transaction so uncommitted state is never cached
+    private ArtifactCache getCache() {
+        if (artifactCache == null || (txnManager != null && txnManager.isOpen())) {
+            return null;
+        }
+        syncCache();
+        return artifactCache;
+    }
+    
+    private void invalidate(UUID id) {
+        if (artifactCache != null) {
+            artifactCache.invalidate(id);
+        }
     }
     
     /**
@@ -164,4 +687,197 @@ public class ArtifactDAO extends AbstractDAO<Artifact> {
             log.debug("iterator: " + dt + "ms");
         }
     }
+    
+    /**
+     * Iterate over Artifacts in StorageLocation order one page at a time. This returns the same
+     * artifacts in the same order as storedIterator(String) but each page is a separate short
+     * query, so no cursor or transaction is held open for the duration of the scan.
+     * 
+     * @param storageBucketPrefix null, prefix, or complete storageBucket string
+     * @param pageSize number of artifacts per query
+     * @param resumeToken null to start at the beginning or a token from ArtifactPageIterator.getResumeToken()
+     * @return iterator over artifacts sorted by StorageLocation
+     */
+    public ArtifactPageIterator storedIterator(String storageBucketPrefix, int pageSize, String resumeToken) {
+        checkInit();
+        log.debug("page iterator: " + storageBucketPrefix + " " + pageSize + " " + resumeToken);
+        SQLGenerator.ArtifactPageQuery query = gen.getArtifactPageQuery(true);
+        query.setPrefix(storageBucketPrefix);
+        query.setPageSize(pageSize);
+        return new ArtifactPageIterator(query, getJdbcTemplate(), resumeToken);
+    }
+    
+    /**
+     * Iterate over Artifacts in StorageLocation order using concurrent partition scans. The
+     * prefix is split into up to 16 contiguous sub-prefix ranges (one hex digit); each range 
+     * is scanned by a paged query in a background thread that reads ahead into a bounded 
+     * queue and the ranges are merged back into StorageLocation order.
+     * 
+     * @param storageBucketPrefix null, prefix, or complete storageBucket string
+     * @param partitions number of concurrent scans (1-16)
+     * @param pageSize number of artifacts per query
+     * @param readAhead maximum number of artifacts buffered per partition
+     * @return iterator over artifacts sorted by StorageLocation
+     */
+    public ResourceIterator<Artifact> storedIterator(String storageBucketPrefix, int partitions, int pageSize, int readAhead) {
+        List<ResourceIterator<Artifact>> parts = storedPartitionIterators(storageBucketPrefix, partitions, pageSize, readAhead);
+        return new MergeIterator<>(parts, new StoredArtifactComparator());
+    }
+    
+    /**
+     * Iterate over Artifacts in StorageLocation order as independent partitions. This is the
+     * same as storedIterator(String, int, int, int) without the merge: each iterator covers 
+     * a contiguous range of storageBucket values in StorageLocation order and the ranges are
+     * returned in order, so consumers that can process partitions independently do not wait 
+     * for each other. Artifacts with no storageBucket are included at the end of the last 
+     * partition when the prefix is null. The caller must close all iterators.
+     * 
+     * @param storageBucketPrefix null, prefix, or complete storageBucket string
+     * @param partitions number of partitions (1-16)
+     * @param pageSize number of artifacts per query
+     * @param readAhead maximum number of artifacts buffered per partition
+     * @return list of iterators over artifacts sorted by StorageLocation
+     */
+    public List<ResourceIterator<Artifact>> storedPartitionIterators(String storageBucketPrefix, int partitions, 
+            int pageSize, int readAhead) {
+        if (partitions < 1 || partitions > HEX.length()) {
+            throw new IllegalArgumentException("invalid partitions: " + partitions + " (1-" + HEX.length() + ")");
+        }
+        checkInit();
+        log.debug("partition iterator: " + storageBucketPrefix + " " + partitions + " " + pageSize + " " + readAhead);
+        String pre = (storageBucketPrefix == null ? "" : storageBucketPrefix);
+        List<ResourceIterator<Artifact>> ret = new ArrayList<>(partitions);
+        for (int i = 0; i < partitions; i++) {
+            // [min,max) over the next hex digit: first and last partitions are open so 
+            // buckets that do not continue with a hex digit are not lost
+            String min = null;
+            if (i > 0) {
+                min = pre + HEX.charAt(i * HEX.length() / partitions);
+            }
+            String max = null;
+            if (i < partitions - 1) {
+                max = pre + HEX.charAt((i + 1) * HEX.length() / partitions);
+            }
+            SQLGenerator.ArtifactPageQuery query = gen.getArtifactPageQuery(true);
+            query.setPrefix(storageBucketPrefix);
+            query.setBucketRange(min, max);
+            query.setPageSize(pageSize);
+            ArtifactPageIterator iter = new ArtifactPageIterator(query, getJdbcTemplate(), null);
+            String name = "storedIterator-" + pre + "[" + min + "," + max + ")";
+            ret.add(new ReadAheadIterator<>(iter, readAhead, name));
+        }
+        return ret;
+    }
+    
+    /**
+     * Iterate over Artifacts with no StorageLocation one page at a time. This returns the same
+     * artifacts as unstoredIterator(String) in (lastModified, id) order but each page is a separate 
+     * short query, so no cursor or transaction is held open for the duration of the scan.
+     * 
+     * @param uriBucketPrefix null, prefix, or complete Artifact.uriBucket string
+     * @param pageSize number of artifacts per query
+     * @param resumeToken null to start at the beginning or a token from ArtifactPageIterator.getResumeToken()
+     * @return iterator over artifacts with no StorageLocation
+     */
+    public ArtifactPageIterator unstoredIterator(String uriBucketPrefix, int pageSize, String resumeToken) {
+        checkInit();
+        log.debug("page iterator: " + uriBucketPrefix + " " + pageSize + " " + resumeToken);
+        SQLGenerator.ArtifactPageQuery query = gen.getArtifactPageQuery(false);
+        query.setPrefix(uriBucketPrefix);
+        query.setPageSize(pageSize);
+        return new ArtifactPageIterator(query, getJdbcTemplate(), resumeToken);
+    }
+    
+    /**
+     * Iterate over Artifacts modified after the start position in (lastModified, id) order.
+     * 
+     * @param start exclusive start time or null to start at the beginning
+     * @param startID optional ID of the last artifact seen at the start time
+     * @param end inclusive end time or null for no end
+     * @return iterator over artifacts in (lastModified, id) order
+     */
+    public ResourceIterator<Artifact> modifiedIterator(Date start, UUID startID, Date end) {
+        return modifiedIterator(start, startID, end, null, null);
+    }
+    
+    /**
+     * Iterate over Artifacts modified after the start position in (lastModified, id) order
+     * in a range of uriBucket values. The results are streamed from the a_modified_index 
+     * index so consumers can pull incremental changes without a full table scan; passing 
+     * the lastModified and ID of the last artifact from one iterator as the start of the 
+     * next resumes without missing or repeating artifacts.
+     * 
+     * @param start exclusive start time or null to start at the beginning
+     * @param startID optional ID of the last artifact seen at the start time
+     * @param end inclusive end time or null for no end
+     * @param minBucket inclusive lower bound on Artifact.uriBucket or null
+     * @param maxBucket exclusive upper bound on Artifact.uriBucket or null
+     * @return iterator over artifacts in (lastModified, id) order
+     */
+    public ResourceIterator<Artifact> modifiedIterator(Date start, UUID startID, Date end, String minBucket, String maxBucket) {
+        checkInit();
+        log.debug("modified iterator: " + start + " " + startID + " " + end + " [" + minBucket + "," + maxBucket + ")");
+        long t = System.currentTimeMillis();
+
+        try {
+            SQLGenerator.ModifiedIteratorQuery iter = gen.getModifiedIteratorQuery(Artifact.class);
+            iter.setStart(start, startID);
+            iter.setEnd(end);
+            iter.setBucketRange(minBucket, maxBucket);
+            return (ResourceIterator) iter.query(dataSource);
+        } finally {
+            long dt = System.currentTimeMillis() - t;
+            log.debug("modified iterator: " + dt + "ms");
+        }
+    }
+    
+    /**
+     * Iterate over Artifacts in StorageLocation order in batches. This is the same as
+     * storedIterator(String) but rows are delivered in column-oriented batches for bulk 
+     * processing. The same ArtifactBatch instance is cleared and re-filled by each call
+     * to next() so the caller must finish with a batch before getting the next one.
+     * 
+     * @param storageBucketPrefix null, prefix, or complete storageBucket string
+     * @param batchSize maximum number of artifacts per batch
+     * @return iterator over batches of artifacts sorted by StorageLocation
+     */
+    public ResourceIterator<ArtifactBatch> storedBatchIterator(String storageBucketPrefix, int batchSize) {
+        checkInit();
+        log.debug("batch iterator: " + storageBucketPrefix + " " + batchSize);
+        long t = System.currentTimeMillis();
+
+        try {
+            SQLGenerator.ArtifactIteratorQuery iter = (SQLGenerator.ArtifactIteratorQuery) gen.getEntityIteratorQuery(Artifact.class, true);
+            iter.setPrefix(storageBucketPrefix);
+            return iter.batchQuery(dataSource, batchSize);
+        } finally {
+            long dt = System.currentTimeMillis() - t;
+            log.debug("batch iterator: " + storageBucketPrefix + " " + dt + "ms");
+        }
+    }
+    
+    /**
+     * Iterate over Artifacts with no StorageLocation in batches. This is the same as
+     * unstoredIterator(String) but rows are delivered in column-oriented batches for bulk 
+     * processing. The same ArtifactBatch instance is cleared and re-filled by each call
+     * to next() so the caller must finish with a batch before getting the next one.
+     * 
+     * @param uriBucketPrefix null, prefix, or complete Artifact.uriBucket string
+     * @param batchSize maximum number of artifacts per batch
+     * @return iterator over batches of artifacts with no StorageLocation
+     */
+    public ResourceIterator<ArtifactBatch> unstoredBatchIterator(String uriBucketPrefix, int batchSize) {
+        checkInit();
+        log.debug("batch iterator: " + uriBucketPrefix + " " + batchSize);
+        long t = System.currentTimeMillis();
+
+        try {
+            SQLGenerator.ArtifactIteratorQuery iter = (SQLGenerator.ArtifactIteratorQuery) gen.getEntityIteratorQuery(Artifact.class, false);
+            iter.setPrefix(uriBucketPrefix);
+            return iter.batchQuery(dataSource, batchSize);
+        } finally {
+            long dt = System.currentTimeMillis() - t;
+            log.debug("batch iterator: " + uriBucketPrefix + " " + dt + "ms");
+        }
+    }
 }
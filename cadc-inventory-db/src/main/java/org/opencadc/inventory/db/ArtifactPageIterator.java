@@ -0,0 +1,212 @@
+/*
+************************************************************************
+*******************  CANADIAN ASTRONOMY DATA CENTRE  *******************
+**************  CENTRE CANADIEN DE DONNÉES ASTRONOMIQUES  **************
+*
+*  (c) 2020.                            (c) 2020.
+*  Government of Canada                 Gouvernement du Canada
+*  National Research Council            Conseil national de recherches
+*  Ottawa, Canada, K1A 0R6              Ottawa, Canada, K1A 0R6
+*  All rights reserved                  Tous droits réservés
+*
+*  NRC disclaims any warranties,        Le CNRC dénie toute garantie
+*  expressed, implied, or               énoncée, implicite ou légale,
+*  statutory, of any kind with          de quelque nature que ce
+*  respect to the software,             soit, concernant le logiciel,
+*  including without limitation         y compris sans restriction
+*  any warranty of merchantability      toute garantie de valeur
+*  or fitness for a particular          marchande ou de pertinence
+*  purpose. NRC shall not be            pour un usage particulier.
+*  liable in any event for any          Le CNRC ne pourra en aucun cas
+*  damages, whether direct or           être tenu responsable de tout
+*  indirect, special or general,        dommage, direct ou indirect,
+*  consequential or incidental,         particulier ou général,
+*  arising from the use of the          accessoire ou fortuit, résultant
+*  software.  Neither the name          de l'utilisation du logiciel. Ni
+*  of the National Research             le nom du Conseil National de
+*  Council of Canada nor the            Recherches du Canada ni les noms
+*  names of its contributors may        de ses  participants ne peuvent
+*  be used to endorse or promote        être utilisés pour approuver ou
+*  products derived from this           promouvoir les produits dérivés
+*  software without specific prior      de ce logiciel sans autorisation
+*  written permission.                  préalable et particulière
+*                                       par écrit.
+*
+*  This file is part of the             Ce fichier fait partie du projet
+*  OpenCADC project.                    OpenCADC.
+*
+*  OpenCADC is free software:           OpenCADC est un logiciel libre ;
+*  you can redistribute it and/or       vous pouvez le redistribuer ou le
+*  modify it under the terms of         modifier suivant les termes de
+*  the GNU Affero General Public        la “GNU Affero General Public
+*  License as published by the          License” telle que publiée
+*  Free Software Foundation,            par la Free Software Foundation
+*  either version 3 of the              : soit la version 3 de cette
+*  License, or (at your option)         licence, soit (à votre gré)
+*  any later version.                   toute version ultérieure.
+*
+*  OpenCADC is distributed in the       OpenCADC est distribué
+*  hope that it will be useful,         dans l’espoir qu’il vous
+*  but WITHOUT ANY WARRANTY;            sera utile, mais SANS AUCUNE
+*  without even the implied             GARANTIE : sans même la garantie
+*  warranty of MERCHANTABILITY          implicite de COMMERCIALISABILITÉ
+*  or FITNESS FOR A PARTICULAR          ni d’ADÉQUATION À UN OBJECTIF
+*  PURPOSE.  See the GNU Affero         PARTICULIER. Consultez la Licence
+*  General Public License for           Générale Publique GNU Affero
+*  more details.                        pour plus de détails.
+*
+*  You should have received             Vous devriez avoir reçu une
+*  a copy of the GNU Affero             copie de la Licence Générale
+*  General Public License along         Publique GNU Affero avec
+*  with OpenCADC.  If not, see          OpenCADC ; si ce n’est
+*  <http://www.gnu.org/licenses/>.      pas le cas, consultez :
+*                                       <http://www.gnu.org/licenses/>.
+*
+************************************************************************
+*/
+
+
+package org.opencadc.inventory.db;
+
+import ca.nrc.cadc.io.ResourceIterator;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import org.apache.log4j.Logger;
+import org.opencadc.inventory.Artifact;
+import org.opencadc.inventory.StorageLocation;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Iterator over artifacts that fetches one page at a time with a keyset query. No database
+ * connection or transaction is held between pages so long scans do not pin a snapshot on 
+ * the server. Artifacts that are modified during the scan may be skipped or returned again
+ * depending on how the modification changes their position in the sort order.
+ * 
+ * <p>The resume token is an opaque string that can be persisted and passed to a new 
+ * iterator to continue after the last artifact returned by next().
+ * 
+ * @author pdowler
+ */
+public class ArtifactPageIterator implements ResourceIterator<Artifact> {
+    private static final Logger log = Logger.getLogger(ArtifactPageIterator.class);
+
+    private static final String STORED = "stored";
+    private static final String UNSTORED = "unstored";
+    private static final String NULL_BUCKET = "~"; // URLEncoder always escapes ~
+    
+    private final SQLGenerator.ArtifactPageQuery query;
+    private final JdbcTemplate jdbc;
+    private Iterator<Artifact> page;
+    private String resumeToken;
+    private boolean closed = false;
+    
+    ArtifactPageIterator(SQLGenerator.ArtifactPageQuery query, JdbcTemplate jdbc, String resumeToken) {
+        this.query = query;
+        this.jdbc = jdbc;
+        this.resumeToken = resumeToken;
+        if (resumeToken != null) {
+            setPosition(resumeToken);
+        }
+    }
+
+    /**
+     * Get a token for the current position: the last artifact returned by next(). This is
+     * the token passed to the constructor if next() has not been called and null if the
+     * iterator started from the beginning.
+     * 
+     * @return resume token or null
+     */
+    public String getResumeToken() {
+        return resumeToken;
+    }
+    
+    @Override
+    public boolean hasNext() {
+        while (!closed && (page == null || !page.hasNext())) {
+            if (query.isDone()) {
+                return false;
+            }
+            page = query.nextPage(jdbc).iterator();
+        }
+        return !closed;
+    }
+
+    @Override
+    public Artifact next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Artifact ret = page.next();
+        this.resumeToken = toResumeToken(ret);
+        return ret;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // nothing is held open between pages
+        this.closed = true;
+        this.page = null;
+    }
+    
+    private String toResumeToken(Artifact a) {
+        StringBuilder sb = new StringBuilder();
+        if (query.isWithStorageLocation()) {
+            StorageLocation loc = a.storageLocation;
+            sb.append(STORED).append("/");
+            if (loc.storageBucket == null) {
+                sb.append(NULL_BUCKET);
+            } else {
+                sb.append(encode(loc.storageBucket));
+            }
+            sb.append("/").append(encode(loc.getStorageID().toASCIIString()));
+        } else {
+            sb.append(UNSTORED).append("/").append(a.getLastModified().getTime());
+            sb.append("/").append(a.getID());
+        }
+        return sb.toString();
+    }
+    
+    private void setPosition(String token) {
+        String[] parts = token.split("/");
+        try {
+            if (parts.length == 3 && query.isWithStorageLocation() && STORED.equals(parts[0])) {
+                StorageLocation loc = new StorageLocation(URI.create(decode(parts[2])));
+                if (!NULL_BUCKET.equals(parts[1])) {
+                    loc.storageBucket = decode(parts[1]);
+                }
+                query.setPosition(loc);
+                return;
+            }
+            if (parts.length == 3 && !query.isWithStorageLocation() && UNSTORED.equals(parts[0])) {
+                query.setPosition(new Date(Long.parseLong(parts[1])), UUID.fromString(parts[2]));
+                return;
+            }
+        } catch (IllegalArgumentException ex) {
+            log.debug("invalid resume token: " + token, ex);
+        }
+        throw new IllegalArgumentException("invalid resume token: " + token);
+    }
+    
+    private static String encode(String s) {
+        try {
+            return URLEncoder.encode(s, "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new RuntimeException("BUG: UTF-8 encoding not supported", ex);
+        }
+    }
+    
+    private static String decode(String s) {
+        try {
+            return URLDecoder.decode(s, "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new RuntimeException("BUG: UTF-8 encoding not supported", ex);
+        }
+    }
+}
@@ -0,0 +1,285 @@
+/*
+************************************************************************
+*******************  CANADIAN ASTRONOMY DATA CENTRE  *******************
+**************  CENTRE CANADIEN DE DONNÉES ASTRONOMIQUES  **************
+*
+*  (c) 2020.                            (c) 2020.
+*  Government of Canada                 Gouvernement du Canada
+*  National Research Council            Conseil national de recherches
+*  Ottawa, Canada, K1A 0R6              Ottawa, Canada, K1A 0R6
+*  All rights reserved                  Tous droits réservés
+*
+*  NRC disclaims any warranties,        Le CNRC dénie toute garantie
+*  expressed, implied, or               énoncée, implicite ou légale,
+*  statutory, of any kind with          de quelque nature que ce
+*  respect to the software,             soit, concernant le logiciel,
+*  including without limitation         y compris sans restriction
+*  any warranty of merchantability      toute garantie de valeur
+*  or fitness for a particular          marchande ou de pertinence
+*  purpose. NRC shall not be            pour un usage particulier.
+*  liable in any event for any          Le CNRC ne pourra en aucun cas
+*  damages, whether direct or           être tenu responsable de tout
+*  indirect, special or general,        dommage, direct ou indirect,
+*  consequential or incidental,         particulier ou général,
+*  arising from the use of the          accessoire ou fortuit, résultant
+*  software.  Neither the name          de l'utilisation du logiciel. Ni
+*  of the National Research             le nom du Conseil National de
+*  Council of Canada nor the            Recherches du Canada ni les noms
+*  names of its contributors may        de ses  participants ne peuvent
+*  be used to endorse or promote        être utilisés pour approuver ou
+*  products derived from this           promouvoir les produits dérivés
+*  software without specific prior      de ce logiciel sans autorisation
+*  written permission.                  préalable et particulière
+*                                       par écrit.
+*
+*  This file is part of the             Ce fichier fait partie du projet
+*  OpenCADC project.                    OpenCADC.
+*
+*  OpenCADC is free software:           OpenCADC est un logiciel libre ;
+*  you can redistribute it and/or       vous pouvez le redistribuer ou le
+*  modify it under the terms of         modifier suivant les termes de
+*  the GNU Affero General Public        la “GNU Affero General Public
+*  License as published by the          License” telle que publiée
+*  Free Software Foundation,            par la Free Software Foundation
+*  either version 3 of the              : soit la version 3 de cette
+*  License, or (at your option)         licence, soit (à votre gré)
+*  any later version.                   toute version ultérieure.
+*
+*  OpenCADC is distributed in the       OpenCADC est distribué
+*  hope that it will be useful,         dans l’espoir qu’il vous
+*  but WITHOUT ANY WARRANTY;            sera utile, mais SANS AUCUNE
+*  without even the implied             GARANTIE : sans même la garantie
+*  warranty of MERCHANTABILITY          implicite de COMMERCIALISABILITÉ
+*  or FITNESS FOR A PARTICULAR          ni d’ADÉQUATION À UN OBJECTIF
+*  PURPOSE.  See the GNU Affero         PARTICULIER. Consultez la Licence
+*  General Public License for           Générale Publique GNU Affero
+*  more details.                        pour plus de détails.
+*
+*  You should have received             Vous devriez avoir reçu une
+*  a copy of the GNU Affero             copie de la Licence Générale
+*  General Public License along         Publique GNU Affero avec
+*  with OpenCADC.  If not, see          OpenCADC ; si ce n’est
+*  <http://www.gnu.org/licenses/>.      pas le cas, consultez :
+*                                       <http://www.gnu.org/licenses/>.
+*
+************************************************************************
+*/
+
+package org.opencadc.inventory.db;
+
+import ca.nrc.cadc.db.DatabaseTransactionManager;
+import java.lang.reflect.Constructor;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import org.apache.log4j.Logger;
+
+/**
+ * Non-blocking facade over a DAO. Calls are executed by a dedicated, bounded pool of 
+ * threads and the result is returned as a CompletableFuture so the caller can overlap 
+ * independent database calls with each other and with other I/O. Each pool thread uses 
+ * its own copy of the DAO (same DataSource, SQLGenerator, and artifact cache) because
+ * DAO instances are not thread-safe.
+ * 
+ * <p>The number of threads should be no larger than the number of connections in the 
+ * DataSource pool that can be spared from request threads; extra threads would only wait
+ * for a connection. When all threads are busy and the queue is full, submit returns a 
+ * future that has failed with a RejectedExecutionException.
+ * 
+ * <p>Each DAO copy also has its own TransactionManager over the same DataSource, so calls 
+ * never participate in a transaction started by the caller: each statement is committed by 
+ * itself and methods that manage their own transaction (e.g. put(Collection) and 
+ * BulkLoadDAO.load) commit or roll back independently of the caller and of other calls.
+ * 
+ * <p>A timeout completes the future with a TimeoutException: a queued call is removed from
+ * the queue and a running call is interrupted; a statement already running in the database 
+ * may still run to completion.
+ * 
+ * @author pdowler
+ * @param <D> DAO type
+ */
+public class AsyncDAO<D extends AbstractDAO> {
+    private static final Logger log = Logger.getLogger(AsyncDAO.class);
+
+    /**
+     * A DAO call to execute asynchronously.
+     * 
+     * @param <D> DAO type
+     * @param <T> result type
+     */
+    public interface Call<D, T> {
+        T call(D dao) throws Exception;
+    }
+    
+    private final D dao;
+    private final Constructor<D> copy;
+    private final long timeout;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledThreadPoolExecutor timer;
+    
+    // DAO copy for each pool thread
+    private final ThreadLocal<D> threadDAO = new ThreadLocal<D>() {
+        @Override
+        protected D initialValue() {
+            return newDAO();
+        }
+    };
+    
+    /**
+     * @param dao configured DAO to copy config from; the class must have a copy constructor
+     * @param threads maximum number of concurrent calls
+     * @param maxQueued maximum number of calls waiting for a thread
+     * @param timeout default timeout in milliseconds, 0 for none
+     */
+    public AsyncDAO(D dao, int threads, int maxQueued, long timeout) {
+        if (dao == null) {
+            throw new IllegalArgumentException("dao cannot be null");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("invalid number of threads: " + threads);
+        }
+        if (maxQueued < 1) {
+            throw new IllegalArgumentException("invalid max queued calls: " + maxQueued);
+        }
+        if (timeout < 0L) {
+            throw new IllegalArgumentException("invalid timeout: " + timeout);
+        }
+        this.dao = dao;
+        try {
+            this.copy = (Constructor<D>) dao.getClass().getConstructor(AbstractDAO.class);
+        } catch (NoSuchMethodException ex) {
+            throw new IllegalArgumentException("no copy constructor: " + dao.getClass().getName(), ex);
+        }
+        newDAO(); // fail now if not configured
+        this.timeout = timeout;
+        
+        String name = "AsyncDAO-" + dao.getClass().getSimpleName();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(maxQueued), new DaemonThreadFactory(name));
+        executor.allowCoreThreadTimeOut(true);
+        this.timer = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory(name + "-timer"));
+        timer.setRemoveOnCancelPolicy(true);
+    }
+    
+    /**
+     * Execute a call with the default timeout.
+     * 
+     * @param <T> result type
+     * @param call the call
+     * @return future result
+     */
+    public <T> CompletableFuture<T> submit(Call<D, T> call) {
+        return submit(call, timeout);
+    }
+    
+    /**
+     * Execute a call.
+     * 
+     * @param <T> result type
+     * @param call the call
+     * @param timeout timeout in milliseconds, 0 for none
+     * @return future result
+     */
+    public <T> CompletableFuture<T> submit(final Call<D, T> call, final long timeout) {
+        if (call == null) {
+            throw new IllegalArgumentException("call cannot be null");
+        }
+        if (timeout < 0L) {
+            throw new IllegalArgumentException("invalid timeout: " + timeout);
+        }
+        final CompletableFuture<T> ret = new CompletableFuture<>();
+        final FutureTask<Void> task = new FutureTask<>(new Runnable() {
+            @Override
+            public void run() {
+                if (ret.isDone()) {
+                    return; // cancelled or timed out while queued
+                }
+                try {
+                    ret.complete(call.call(threadDAO.get()));
+                } catch (Throwable ex) {
+                    ret.completeExceptionally(ex);
+                }
+            }
+        }, null);
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ex) {
+            log.debug("rejected: active=" + executor.getActiveCount() + " queued=" + executor.getQueue().size());
+            ret.completeExceptionally(ex);
+            return ret;
+        }
+        
+        final ScheduledFuture<?> expiry;
+        if (timeout > 0L) {
+            expiry = timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    // free the queue slot before the caller can see the timeout
+                    executor.remove(task);
+                    if (ret.completeExceptionally(new TimeoutException("timeout after " + timeout + "ms"))) {
+                        task.cancel(true);
+                    }
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+        } else {
+            expiry = null;
+        }
+        ret.whenComplete(new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(T result, Throwable failure) {
+                if (expiry != null) {
+                    expiry.cancel(false);
+                }
+                if (ret.isCancelled()) {
+                    executor.remove(task);
+                    task.cancel(true);
+                }
+            }
+        });
+        return ret;
+    }
+    
+    /**
+     * Stop accepting calls. Calls already submitted are still executed.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        timer.shutdown();
+    }
+    
+    private D newDAO() {
+        try {
+            D ret = copy.newInstance(dao);
+            // transaction state must not be shared with the caller or other pool threads
+            ret.txnManager = new DatabaseTransactionManager(ret.getDataSource());
+            return ret;
+        } catch (Exception ex) {
+            throw new IllegalStateException("failed to copy DAO: " + dao.getClass().getName(), ex);
+        }
+    }
+    
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger num = new AtomicInteger();
+        
+        DaemonThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, name + "-" + num.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
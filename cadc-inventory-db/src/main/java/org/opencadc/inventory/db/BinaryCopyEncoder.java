@@ -0,0 +1,230 @@
+/*
+************************************************************************
+*******************  CANADIAN ASTRONOMY DATA CENTRE  *******************
+**************  CENTRE CANADIEN DE DONNÉES ASTRONOMIQUES  **************
+*
+*  (c) 2020.                            (c) 2020.
+*  Government of Canada                 Gouvernement du Canada
+*  National Research Council            Conseil national de recherches
+*  Ottawa, Canada, K1A 0R6              Ottawa, Canada, K1A 0R6
+*  All rights reserved                  Tous droits réservés
+*
+*  NRC disclaims any warranties,        Le CNRC dénie toute garantie
+*  expressed, implied, or               énoncée, implicite ou légale,
+*  statutory, of any kind with          de quelque nature que ce
+*  respect to the software,             soit, concernant le logiciel,
+*  including without limitation         y compris sans restriction
+*  any warranty of merchantability      toute garantie de valeur
+*  or fitness for a particular          marchande ou de pertinence
+*  purpose. NRC shall not be            pour un usage particulier.
+*  liable in any event for any          Le CNRC ne pourra en aucun cas
+*  damages, whether direct or           être tenu responsable de tout
+*  indirect, special or general,        dommage, direct ou indirect,
+*  consequential or incidental,         particulier ou général,
+*  arising from the use of the          accessoire ou fortuit, résultant
+*  software.  Neither the name          de l'utilisation du logiciel. Ni
+*  of the National Research             le nom du Conseil National de
+*  Council of Canada nor the            Recherches du Canada ni les noms
+*  names of its contributors may        de ses  participants ne peuvent
+*  be used to endorse or promote        être utilisés pour approuver ou
+*  products derived from this           promouvoir les produits dérivés
+*  software without specific prior      de ce logiciel sans autorisation
+*  written permission.                  préalable et particulière
+*                                       par écrit.
+*
+*  This file is part of the             Ce fichier fait partie du projet
+*  OpenCADC project.                    OpenCADC.
+*
+*  OpenCADC is free software:           OpenCADC est un logiciel libre ;
+*  you can redistribute it and/or       vous pouvez le redistribuer ou le
+*  modify it under the terms of         modifier suivant les termes de
+*  the GNU Affero General Public        la “GNU Affero General Public
+*  License as published by the          License” telle que publiée
+*  Free Software Foundation,            par la Free Software Foundation
+*  either version 3 of the              : soit la version 3 de cette
+*  License, or (at your option)         licence, soit (à votre gré)
+*  any later version.                   toute version ultérieure.
+*
+*  OpenCADC is distributed in the       OpenCADC est distribué
+*  hope that it will be useful,         dans l’espoir qu’il vous
+*  but WITHOUT ANY WARRANTY;            sera utile, mais SANS AUCUNE
+*  without even the implied             GARANTIE : sans même la garantie
+*  warranty of MERCHANTABILITY          implicite de COMMERCIALISABILITÉ
+*  or FITNESS FOR A PARTICULAR          ni d’ADÉQUATION À UN OBJECTIF
+*  PURPOSE.  See the GNU Affero         PARTICULIER. Consultez la Licence
+*  General Public License for           Générale Publique GNU Affero
+*  more details.                        pour plus de détails.
+*
+*  You should have received             Vous devriez avoir reçu une
+*  a copy of the GNU Affero             copie de la Licence Générale
+*  General Public License along         Publique GNU Affero avec
+*  with OpenCADC.  If not, see          OpenCADC ; si ce n’est
+*  <http://www.gnu.org/licenses/>.      pas le cas, consultez :
+*                                       <http://www.gnu.org/licenses/>.
+*
+************************************************************************
+*/
+
+
+package org.opencadc.inventory.db;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.UUID;
+import org.postgresql.copy.CopyIn;
+
+/**
+ * Encoder for the PostgreSQL binary COPY format. Rows are encoded into a buffer that is
+ * written to the CopyIn stream when it fills up. Timestamps are encoded as microseconds
+ * since 2000-01-01 (server built with integer datetimes, the default since 8.4) and 
+ * Date values are written as UTC wall clock time to match timestamp columns written
+ * with a UTC Calendar.
+ * 
+ * @author pdowler
+ */
+class BinaryCopyEncoder {
+    
+    private static final byte[] SIGNATURE = new byte[] {
+        'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xff, '\r', '\n', 0
+    };
+    
+    // 2000-01-01T00:00:00Z in unix epoch milliseconds
+    private static final long PG_EPOCH_MILLIS = 946684800000L;
+    
+    private static final int UUID_OID = 2950;
+    
+    private static final int FLUSH_SIZE = 64 * 1024;
+    
+    private final CopyIn copy;
+    private byte[] buf = new byte[2 * FLUSH_SIZE];
+    private int len = 0;
+    
+    BinaryCopyEncoder(CopyIn copy) {
+        this.copy = copy;
+    }
+    
+    void writeHeader() throws SQLException {
+        ensure(SIGNATURE.length + 8);
+        System.arraycopy(SIGNATURE, 0, buf, len, SIGNATURE.length);
+        len += SIGNATURE.length;
+        putInt(0); // flags
+        putInt(0); // header extension length
+    }
+    
+    void startRow(int numFields) throws SQLException {
+        if (len >= FLUSH_SIZE) {
+            flush();
+        }
+        ensure(2);
+        putShort(numFields);
+    }
+    
+    void writeNull() {
+        ensure(4);
+        putInt(-1);
+    }
+    
+    void writeString(String s) {
+        if (s == null) {
+            writeNull();
+            return;
+        }
+        writeBytes(s.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    void writeBytes(byte[] b) {
+        if (b == null) {
+            writeNull();
+            return;
+        }
+        ensure(4 + b.length);
+        putInt(b.length);
+        System.arraycopy(b, 0, buf, len, b.length);
+        len += b.length;
+    }
+    
+    void writeLong(long v) {
+        ensure(12);
+        putInt(8);
+        putLong(v);
+    }
+    
+    void writeTimestamp(Date d) {
+        if (d == null) {
+            writeNull();
+            return;
+        }
+        ensure(12);
+        putInt(8);
+        putLong((d.getTime() - PG_EPOCH_MILLIS) * 1000L);
+    }
+    
+    void writeUUID(UUID id) {
+        ensure(20);
+        putInt(16);
+        putLong(id.getMostSignificantBits());
+        putLong(id.getLeastSignificantBits());
+    }
+    
+    void writeUUIDArray(UUID[] ids) {
+        if (ids == null || ids.length == 0) {
+            writeNull();
+            return;
+        }
+        int size = 20 + 20 * ids.length;
+        ensure(4 + size);
+        putInt(size);
+        putInt(1); // dimensions
+        putInt(0); // no null elements
+        putInt(UUID_OID);
+        putInt(ids.length);
+        putInt(1); // lower bound
+        for (UUID id : ids) {
+            putInt(16);
+            putLong(id.getMostSignificantBits());
+            putLong(id.getLeastSignificantBits());
+        }
+    }
+    
+    /**
+     * Write the trailer and any buffered rows.
+     */
+    void finish() throws SQLException {
+        ensure(2);
+        putShort(-1);
+        flush();
+    }
+    
+    private void flush() throws SQLException {
+        if (len > 0) {
+            copy.writeToCopy(buf, 0, len);
+            len = 0;
+        }
+    }
+    
+    private void ensure(int n) {
+        if (len + n > buf.length) {
+            byte[] nb = new byte[Math.max(2 * buf.length, len + n)];
+            System.arraycopy(buf, 0, nb, 0, len);
+            buf = nb;
+        }
+    }
+    
+    private void putShort(int v) {
+        buf[len++] = (byte) (v >>> 8);
+        buf[len++] = (byte) v;
+    }
+    
+    private void putInt(int v) {
+        buf[len++] = (byte) (v >>> 24);
+        buf[len++] = (byte) (v >>> 16);
+        buf[len++] = (byte) (v >>> 8);
+        buf[len++] = (byte) v;
+    }
+    
+    private void putLong(long v) {
+        putInt((int) (v >>> 32));
+        putInt((int) v);
+    }
+}
@@ -0,0 +1,241 @@
+/*
+************************************************************************
+*******************  CANADIAN ASTRONOMY DATA CENTRE  *******************
+**************  CENTRE CANADIEN DE DONNÉES ASTRONOMIQUES  **************
+*
+*  (c) 2020.                            (c) 2020.
+*  Government of Canada                 Gouvernement du Canada
+*  National Research Council            Conseil national de recherches
+*  Ottawa, Canada, K1A 0R6              Ottawa, Canada, K1A 0R6
+*  All rights reserved                  Tous droits réservés
+*
+*  NRC disclaims any warranties,        Le CNRC dénie toute garantie
+*  expressed, implied, or               énoncée, implicite ou légale,
+*  statutory, of any kind with          de quelque nature que ce
+*  respect to the software,             soit, concernant le logiciel,
+*  including without limitation         y compris sans restriction
+*  any warranty of merchantability      toute garantie de valeur
+*  or fitness for a particular          marchande ou de pertinence
+*  purpose. NRC shall not be            pour un usage particulier.
+*  liable in any event for any          Le CNRC ne pourra en aucun cas
+*  damages, whether direct or           être tenu responsable de tout
+*  indirect, special or general,        dommage, direct ou indirect,
+*  consequential or incidental,         particulier ou général,
+*  arising from the use of the          accessoire ou fortuit, résultant
+*  software.  Neither the name          de l'utilisation du logiciel. Ni
+*  of the National Research             le nom du Conseil National de
+*  Council of Canada nor the            Recherches du Canada ni les noms
+*  names of its contributors may        de ses  participants ne peuvent
+*  be used to endorse or promote        être utilisés pour approuver ou
+*  products derived from this           promouvoir les produits dérivés
+*  software without specific prior      de ce logiciel sans autorisation
+*  written permission.                  préalable et particulière
+*                                       par écrit.
+*
+*  This file is part of the             Ce fichier fait partie du projet
+*  OpenCADC project.                    OpenCADC.
+*
+*  OpenCADC is free software:           OpenCADC est un logiciel libre ;
+*  you can redistribute it and/or       vous pouvez le redistribuer ou le
+*  modify it under the terms of         modifier suivant les termes de
+*  the GNU Affero General Public        la “GNU Affero General Public
+*  License as published by the          License” telle que publiée
+*  Free Software Foundation,            par la Free Software Foundation
+*  either version 3 of the              : soit la version 3 de cette
+*  License, or (at your option)         licence, soit (à votre gré)
+*  any later version.                   toute version ultérieure.
+*
+*  OpenCADC is distributed in the       OpenCADC est distribué
+*  hope that it will be useful,         dans l’espoir qu’il vous
+*  but WITHOUT ANY WARRANTY;            sera utile, mais SANS AUCUNE
+*  without even the implied             GARANTIE : sans même la garantie
+*  warranty of MERCHANTABILITY          implicite de COMMERCIALISABILITÉ
+*  or FITNESS FOR A PARTICULAR          ni d’ADÉQUATION À UN OBJECTIF
+*  PURPOSE.  See the GNU Affero         PARTICULIER. Consultez la Licence
+*  General Public License for           Générale Publique GNU Affero
+*  more details.                        pour plus de détails.
+*
+*  You should have received             Vous devriez avoir reçu une
+*  a copy of the GNU Affero             copie de la Licence Générale
+*  General Public License along         Publique GNU Affero avec
+*  with OpenCADC.  If not, see          OpenCADC ; si ce n’est
+*  <http://www.gnu.org/licenses/>.      pas le cas, consultez :
+*                                       <http://www.gnu.org/licenses/>.
+*
+************************************************************************
+*/
+
+
+package org.opencadc.inventory.db;
+
+import ca.nrc.cadc.db.TransactionManager;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import org.apache.log4j.Logger;
+import org.opencadc.inventory.Artifact;
+import org.opencadc.inventory.DeletedArtifactEvent;
+import org.opencadc.inventory.DeletedStorageLocationEvent;
+import org.opencadc.inventory.Entity;
+import org.opencadc.inventory.InventoryUtil;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+
+/**
+ * Bulk load of Artifact, DeletedArtifactEvent, and DeletedStorageLocationEvent. Entities
+ * are streamed to a temporary staging table with binary COPY and then merged into the 
+ * entity table with a single statement, all in one transaction. The merge follows the same
+ * rules as put: new entities are inserted, existing artifacts are updated when the 
+ * metaChecksum differs, and existing deleted events are left alone. The lastModified
+ * timestamp of the stored entity is assigned by the server during the merge so the 
+ * values in the loaded entities are not modified.
+ * 
+ * <p>This requires the PostgreSQL JDBC driver and a server with integer datetimes (the default).
+ * 
+ * @author pdowler
+ */
+public class BulkLoadDAO extends AbstractDAO<Entity> {
+    private static final Logger log = Logger.getLogger(BulkLoadDAO.class);
+
+    public BulkLoadDAO() {
+        super();
+    }
+    
+    public BulkLoadDAO(AbstractDAO<?> dao) {
+        super(dao);
+    }
+    
+    /**
+     * Load entities of one type. If the caller already has a transaction open, the load
+     * participates in that transaction and the caller is responsible for commit or rollback.
+     * 
+     * @param <E> entity type
+     * @param c entity class: Artifact, DeletedArtifactEvent, or DeletedStorageLocationEvent
+     * @param vals entities to load; IDs must be unique
+     * @return number of rows inserted or updated
+     * @throws IllegalArgumentException if an entity is null or an ID occurs more than once
+     */
+    public <E extends Entity> long load(Class<E> c, Iterator<E> vals) {
+        if (c == null || vals == null) {
+            throw new IllegalArgumentException("entity class and values cannot be null");
+        }
+        if (!Artifact.class.equals(c) && !DeletedArtifactEvent.class.equals(c) 
+                && !DeletedStorageLocationEvent.class.equals(c)) {
+            throw new IllegalArgumentException("unsupported bulk load: " + c.getName());
+        }
+        checkInit();
+        log.debug("LOAD: " + c.getSimpleName());
+        long t = System.currentTimeMillis();
+        long num = 0L;
+        long ret = 0L;
+        
+        TransactionManager tm = getTransactionManager();
+        boolean txn = !tm.isOpen();
+        Connection con = null;
+        CopyIn copy = null;
+        try {
+            if (txn) {
+                tm.startTransaction();
+            }
+            con = DataSourceUtils.getConnection(dataSource);
+            try (Statement st = con.createStatement()) {
+                for (String sql : gen.getBulkStageSQL(c)) {
+                    st.execute(sql);
+                }
+            }
+            
+            copy = con.unwrap(PGConnection.class).getCopyAPI().copyIn(gen.getBulkCopyInSQL(c));
+            BinaryCopyEncoder enc = new BinaryCopyEncoder(copy);
+            enc.writeHeader();
+            while (vals.hasNext()) {
+                E val = vals.next();
+                if (val == null) {
+                    throw new IllegalArgumentException("entity cannot be null");
+                }
+                digest.reset();
+                InventoryUtil.assignMetaChecksum(val, val.computeMetaChecksum(digest));
+                if (val instanceof Artifact) {
+                    writeArtifact(enc, (Artifact) val);
+                } else {
+                    writeEvent(enc, val);
+                }
+                num++;
+            }
+            enc.finish();
+            copy.endCopy();
+            copy = null;
+            
+            // checked in the database so memory use does not grow with the size of the load
+            try (Statement st = con.createStatement(); ResultSet rs = st.executeQuery(gen.getBulkDuplicateSQL(c))) {
+                if (rs.next()) {
+                    throw new IllegalArgumentException("duplicate entity: " + Util.getUUID(rs, 1));
+                }
+            }
+            try (Statement st = con.createStatement()) {
+                ret = st.executeUpdate(gen.getBulkMergeSQL(c));
+            }
+            log.debug("LOAD: " + c.getSimpleName() + " copy=" + num + " merge=" + ret);
+            
+            if (txn) {
+                tm.commitTransaction();
+                txn = false;
+            }
+            if (artifactCache != null && Artifact.class.equals(c)) {
+                artifactCache.clear();
+            }
+            return ret;
+        } catch (SQLException ex) {
+            throw new RuntimeException("bulk load failed: " + c.getSimpleName() + " after " + num + " entities", ex);
+        } finally {
+            if (copy != null && copy.isActive()) {
+                try {
+                    copy.cancelCopy();
+                } catch (SQLException ex) {
+                    log.debug("failed to cancel copy: " + ex);
+                }
+            }
+            if (con != null) {
+                DataSourceUtils.releaseConnection(con, dataSource);
+            }
+            if (txn && tm.isOpen()) {
+                log.debug("LOAD: rollback " + c.getSimpleName());
+                tm.rollbackTransaction();
+            }
+            long dt = System.currentTimeMillis() - t;
+            log.debug("LOAD: " + c.getSimpleName() + " " + num + " " + dt + "ms");
+        }
+    }
+    
+    // column order: SQLGenerator columnMap
+    private void writeArtifact(BinaryCopyEncoder enc, Artifact a) throws SQLException {
+        enc.startRow(13);
+        enc.writeString(a.getURI().toASCIIString());
+        enc.writeString(a.getBucket());
+        enc.writeBytes(ChecksumCodec.encode(a.getContentChecksum()));
+        enc.writeTimestamp(a.getContentLastModified());
+        enc.writeLong(a.getContentLength());
+        enc.writeString(a.contentType);
+        enc.writeString(a.contentEncoding);
+        enc.writeUUIDArray(a.getSiteIDs());
+        if (a.storageLocation != null) {
+            enc.writeString(a.storageLocation.getStorageID().toASCIIString());
+            enc.writeString(a.storageLocation.storageBucket);
+        } else {
+            enc.writeNull();
+            enc.writeNull();
+        }
+        enc.writeTimestamp(a.getLastModified());
+        enc.writeBytes(ChecksumCodec.encode(a.getMetaChecksum()));
+        enc.writeUUID(a.getID());
+    }
+    
+    private void writeEvent(BinaryCopyEncoder enc, Entity e) throws SQLException {
+        enc.startRow(3);
+        enc.writeTimestamp(e.getLastModified());
+        enc.writeString(e.getMetaChecksum().toASCIIString());
+        enc.writeUUID(e.getID());
+    }
+}
@@ -0,0 +1,209 @@
+/*
+************************************************************************
+*******************  CANADIAN ASTRONOMY DATA CENTRE  *******************
+**************  CENTRE CANADIEN DE DONNÉES ASTRONOMIQUES  **************
+*
+*  (c) 2020.                            (c) 2020.
+*  Government of Canada                 Gouvernement du Canada
+*  National Research Council            Conseil national de recherches
+*  Ottawa, Canada, K1A 0R6              Ottawa, Canada, K1A 0R6
+*  All rights reserved                  Tous droits réservés
+*
+*  NRC disclaims any warranties,        Le CNRC dénie toute garantie
+*  expressed, implied, or               énoncée, implicite ou légale,
+*  statutory, of any kind with          de quelque nature que ce
+*  respect to the software,             soit, concernant le logiciel,
+*  including without limitation         y compris sans restriction
+*  any warranty of merchantability      toute garantie de valeur
+*  or fitness for a particular          marchande ou de pertinence
+*  purpose. NRC shall not be            pour un usage particulier.
+*  liable in any event for any          Le CNRC ne pourra en aucun cas
+*  damages, whether direct or           être tenu responsable de tout
+*  indirect, special or general,        dommage, direct ou indirect,
+*  consequential or incidental,         particulier ou général,
+*  arising from the use of the          accessoire ou fortuit, résultant
+*  software.  Neither the name          de l'utilisation du logiciel. Ni
+*  of the National Research             le nom du Conseil National de
+*  Council of Canada nor the            Recherches du Canada ni les noms
+*  names of its contributors may        de ses  participants ne peuvent
+*  be used to endorse or promote        être utilisés pour approuver ou
+*  products derived from this           promouvoir les produits dérivés
+*  software without specific prior      de ce logiciel sans autorisation
+*  written permission.                  préalable et particulière
+*                                       par écrit.
+*
+*  This file is part of the             Ce fichier fait partie du projet
+*  OpenCADC project.                    OpenCADC.
+*
+*  OpenCADC is free software:           OpenCADC est un logiciel libre ;
+*  you can redistribute it and/or       vous pouvez le redistribuer ou le
+*  modify it under the terms of         modifier suivant les termes de
+*  the GNU Affero General Public        la “GNU Affero General Public
+*  License as published by the          License” telle que publiée
+*  Free Software Foundation,            par la Free Software Foundation
+*  either version 3 of the              : soit la version 3 de cette
+*  License, or (at your option)         licence, soit (à votre gré)
+*  any later version.                   toute version ultérieure.
+*
+*  OpenCADC is distributed in the       OpenCADC est distribué
+*  hope that it will be useful,         dans l’espoir qu’il vous
+*  but WITHOUT ANY WARRANTY;            sera utile, mais SANS AUCUNE
+*  without even the implied             GARANTIE : sans même la garantie
+*  warranty of MERCHANTABILITY          implicite de COMMERCIALISABILITÉ
+*  or FITNESS FOR A PARTICULAR          ni d’ADÉQUATION À UN OBJECTIF
+*  PURPOSE.  See the GNU Affero         PARTICULIER. Consultez la Licence
+*  General Public License for           Générale Publique GNU Affero
+*  more details.                        pour plus de détails.
+*
+*  You should have received             Vous devriez avoir reçu une
+*  a copy of the GNU Affero             copie de la Licence Générale
+*  General Public License along         Publique GNU Affero avec
+*  with OpenCADC.  If not, see          OpenCADC ; si ce n’est
+*  <http://www.gnu.org/licenses/>.      pas le cas, consultez :
+*                                       <http://www.gnu.org/licenses/>.
+*
+************************************************************************
+*/
+
+
+package org.opencadc.inventory.db;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import org.opencadc.inventory.ContentChecksum;
+
+/**
+ * Compact binary (bytea) encoding of checksum URIs. A checksum with a known algorithm 
+ * and lower case hex value is stored as a one byte algorithm tag followed by the raw 
+ * digest (17 bytes instead of 36 for md5); any other URI is stored as tag 0 followed
+ * by the URI in UTF-8 so that values always round-trip exactly. The tags must match 
+ * the conversion in inventory.upgrade-0.10.sql and inventory.views.sql.
+ * 
+ * @author pdowler
+ */
+final class ChecksumCodec {
+    
+    static final byte TAG_URI = 0;
+    
+    // tag of ALGORITHMS[i] is i + 1
+    private static final ContentChecksum.Algorithm[] ALGORITHMS = new ContentChecksum.Algorithm[] {
+        ContentChecksum.Algorithm.MD5,
+        ContentChecksum.Algorithm.SHA1,
+        ContentChecksum.Algorithm.SHA256,
+        ContentChecksum.Algorithm.SHA512
+    };
+    
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    
+    private ChecksumCodec() { 
+    }
+    
+    /**
+     * @param uri checksum URI
+     * @return encoded value
+     */
+    static byte[] encode(URI uri) {
+        String s = uri.toASCIIString();
+        int i = s.indexOf(':');
+        if (i > 0) {
+            String scheme = s.substring(0, i);
+            for (int t = 0; t < ALGORITHMS.length; t++) {
+                ContentChecksum.Algorithm a = ALGORITHMS[t];
+                if (a.getScheme().equals(scheme) && s.length() - i - 1 == 2 * a.getLength()) {
+                    byte[] ret = encodeHex(s, i + 1, t + 1);
+                    if (ret != null) {
+                        return ret;
+                    }
+                    break;
+                }
+            }
+        }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        byte[] ret = new byte[1 + b.length];
+        ret[0] = TAG_URI;
+        System.arraycopy(b, 0, ret, 1, b.length);
+        return ret;
+    }
+    
+    /**
+     * @param uri checksum URI
+     * @return encoded value in hex (for decode(?, 'hex') where a bytea parameter
+     *     cannot be used, e.g. in arrays)
+     */
+    static String encodeHex(URI uri) {
+        byte[] b = encode(uri);
+        char[] c = new char[2 * b.length];
+        for (int i = 0; i < b.length; i++) {
+            c[2 * i] = HEX[(b[i] >> 4) & 0xf];
+            c[2 * i + 1] = HEX[b[i] & 0xf];
+        }
+        return new String(c);
+    }
+    
+    // null if the value is not lower case hex
+    private static byte[] encodeHex(String s, int off, int tag) {
+        byte[] ret = new byte[1 + (s.length() - off) / 2];
+        ret[0] = (byte) tag;
+        for (int i = 1; i < ret.length; i++) {
+            int hi = lowerHexDigit(s.charAt(off++));
+            int lo = lowerHexDigit(s.charAt(off++));
+            if (hi < 0 || lo < 0) {
+                return null;
+            }
+            ret[i] = (byte) ((hi << 4) | lo);
+        }
+        return ret;
+    }
+    
+    private static int lowerHexDigit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        return -1;
+    }
+    
+    /**
+     * @param b encoded value
+     * @return checksum URI in string form
+     * @throws IllegalArgumentException if the value is not a valid encoded checksum
+     */
+    static String decodeString(byte[] b) {
+        if (b.length == 0) {
+            throw new IllegalArgumentException("invalid encoded checksum: empty");
+        }
+        int tag = b[0];
+        if (tag == TAG_URI) {
+            return new String(b, 1, b.length - 1, StandardCharsets.UTF_8);
+        }
+        if (tag < 0 || tag > ALGORITHMS.length) {
+            throw new IllegalArgumentException("invalid encoded checksum: unknown tag " + tag);
+        }
+        ContentChecksum.Algorithm a = ALGORITHMS[tag - 1];
+        if (b.length != 1 + a.getLength()) {
+            throw new IllegalArgumentException("invalid encoded checksum: " + (b.length - 1) 
+                + " bytes -- expected " + a.getLength() + " for " + a.getScheme());
+        }
+        String scheme = a.getScheme();
+        char[] c = new char[scheme.length() + 1 + 2 * a.getLength()];
+        scheme.getChars(0, scheme.length(), c, 0);
+        int n = scheme.length();
+        c[n++] = ':';
+        for (int i = 1; i < b.length; i++) {
+            c[n++] = HEX[(b[i] >> 4) & 0xf];
+            c[n++] = HEX[b[i] & 0xf];
+        }
+        return new String(c);
+    }
+    
+    /**
+     * @param b encoded value
+     * @return checksum URI
+     * @throws IllegalArgumentException if the value is not a valid encoded checksum
+     */
+    static URI decode(byte[] b) {
+        return URI.create(decodeString(b));
+    }
+}
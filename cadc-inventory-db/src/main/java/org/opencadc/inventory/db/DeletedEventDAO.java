@@ -67,6 +67,10 @@
 
 package org.opencadc.inventory.db;
 
+import ca.nrc.cadc.io.ResourceIterator;
+import java.util.Date;
+import java.util.UUID;
+import org.apache.log4j.Logger;
 import org.opencadc.inventory.Entity;
 
 
@@ -76,6 +80,8 @@ import org.opencadc.inventory.Entity;
  * @author pdowler
  */
 public class DeletedEventDAO<T extends Entity> extends AbstractDAO<T> {
+    private static final Logger log = Logger.getLogger(DeletedEventDAO.class);
+    
     public DeletedEventDAO() { 
         super();
     }
@@ -83,4 +89,31 @@ public class DeletedEventDAO<T extends Entity> extends AbstractDAO<T> {
     public DeletedEventDAO(AbstractDAO<?> dao) {
         super(dao);
     }
+    
+    /**
+     * Iterate over events created after the start position in (lastModified, id) order.
+     * Passing the lastModified and ID of the last event from one iterator as the start 
+     * of the next resumes without missing or repeating events.
+     * 
+     * @param c DeletedArtifactEvent or DeletedStorageLocationEvent
+     * @param start exclusive start time or null to start at the beginning
+     * @param startID optional ID of the last event seen at the start time
+     * @param end inclusive end time or null for no end
+     * @return iterator over events in (lastModified, id) order
+     */
+    public ResourceIterator<T> modifiedIterator(Class<T> c, Date start, UUID startID, Date end) {
+        checkInit();
+        log.debug("modified iterator: " + c.getSimpleName() + " " + start + " " + startID + " " + end);
+        long t = System.currentTimeMillis();
+
+        try {
+            SQLGenerator.ModifiedIteratorQuery iter = gen.getModifiedIteratorQuery(c);
+            iter.setStart(start, startID);
+            iter.setEnd(end);
+            return (ResourceIterator) iter.query(dataSource);
+        } finally {
+            long dt = System.currentTimeMillis() - t;
+            log.debug("modified iterator: " + dt + "ms");
+        }
+    }
 }
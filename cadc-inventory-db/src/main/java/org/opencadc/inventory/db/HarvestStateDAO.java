@@ -102,7 +102,7 @@ public class HarvestStateDAO extends AbstractDAO<HarvestState> {
         long t = System.currentTimeMillis();
 
         try {
-            JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+            JdbcTemplate jdbc = getJdbcTemplate();
             
             SQLGenerator.HarvestStateGet get = ( SQLGenerator.HarvestStateGet) gen.getEntityGet(HarvestState.class);
             get.setSource(name, resourceID);
@@ -0,0 +1,161 @@
+/*
+************************************************************************
+*******************  CANADIAN ASTRONOMY DATA CENTRE  *******************
+**************  CENTRE CANADIEN DE DONNÉES ASTRONOMIQUES  **************
+*
+*  (c) 2020.                            (c) 2020.
+*  Government of Canada                 Gouvernement du Canada
+*  National Research Council            Conseil national de recherches
+*  Ottawa, Canada, K1A 0R6              Ottawa, Canada, K1A 0R6
+*  All rights reserved                  Tous droits réservés
+*
+*  NRC disclaims any warranties,        Le CNRC dénie toute garantie
+*  expressed, implied, or               énoncée, implicite ou légale,
+*  statutory, of any kind with          de quelque nature que ce
+*  respect to the software,             soit, concernant le logiciel,
+*  including without limitation         y compris sans restriction
+*  any warranty of merchantability      toute garantie de valeur
+*  or fitness for a particular          marchande ou de pertinence
+*  purpose. NRC shall not be            pour un usage particulier.
+*  liable in any event for any          Le CNRC ne pourra en aucun cas
+*  damages, whether direct or           être tenu responsable de tout
+*  indirect, special or general,        dommage, direct ou indirect,
+*  consequential or incidental,         particulier ou général,
+*  arising from the use of the          accessoire ou fortuit, résultant
+*  software.  Neither the name          de l'utilisation du logiciel. Ni
+*  of the National Research             le nom du Conseil National de
+*  Council of Canada nor the            Recherches du Canada ni les noms
+*  names of its contributors may        de ses  participants ne peuvent
+*  be used to endorse or promote        être utilisés pour approuver ou
+*  products derived from this           promouvoir les produits dérivés
+*  software without specific prior      de ce logiciel sans autorisation
+*  written permission.                  préalable et particulière
+*                                       par écrit.
+*
+*  This file is part of the             Ce fichier fait partie du projet
+*  OpenCADC project.                    OpenCADC.
+*
+*  OpenCADC is free software:           OpenCADC est un logiciel libre ;
+*  you can redistribute it and/or       vous pouvez le redistribuer ou le
+*  modify it under the terms of         modifier suivant les termes de
+*  the GNU Affero General Public        la “GNU Affero General Public
+*  License as published by the          License” telle que publiée
+*  Free Software Foundation,            par la Free Software Foundation
+*  either version 3 of the              : soit la version 3 de cette
+*  License, or (at your option)         licence, soit (à votre gré)
+*  any later version.                   toute version ultérieure.
+*
+*  OpenCADC is distributed in the       OpenCADC est distribué
+*  hope that it will be useful,         dans l’espoir qu’il vous
+*  but WITHOUT ANY WARRANTY;            sera utile, mais SANS AUCUNE
+*  without even the implied             GARANTIE : sans même la garantie
+*  warranty of MERCHANTABILITY          implicite de COMMERCIALISABILITÉ
+*  or FITNESS FOR A PARTICULAR          ni d’ADÉQUATION À UN OBJECTIF
+*  PURPOSE.  See the GNU Affero         PARTICULIER. Consultez la Licence
+*  General Public License for           Générale Publique GNU Affero
+*  more details.                        pour plus de détails.
+*
+*  You should have received             Vous devriez avoir reçu une
+*  a copy of the GNU Affero             copie de la Licence Générale
+*  General Public License along         Publique GNU Affero avec
+*  with OpenCADC.  If not, see          OpenCADC ; si ce n’est
+*  <http://www.gnu.org/licenses/>.      pas le cas, consultez :
+*                                       <http://www.gnu.org/licenses/>.
+*
+************************************************************************
+*/
+
+
+package org.opencadc.inventory.db;
+
+import ca.nrc.cadc.io.ResourceIterator;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * K-way merge of iterators that are each sorted with the same comparator.
+ * 
+ * @author pdowler
+ * @param <E> element type
+ */
+class MergeIterator<E> implements ResourceIterator<E> {
+
+    // current element of one source
+    private static class Head<E> {
+        final Iterator<E> source;
+        E value;
+        
+        Head(Iterator<E> source) {
+            this.source = source;
+        }
+    }
+    
+    private final List<? extends Iterator<E>> sources;
+    private final PriorityQueue<Head<E>> heads;
+    private boolean init = false;
+    
+    MergeIterator(List<? extends Iterator<E>> sources, final Comparator<? super E> comp) {
+        this.sources = sources;
+        this.heads = new PriorityQueue<>(Math.max(1, sources.size()), new Comparator<Head<E>>() {
+            @Override
+            public int compare(Head<E> lhs, Head<E> rhs) {
+                return comp.compare(lhs.value, rhs.value);
+            }
+        });
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!init) {
+            for (Iterator<E> i : sources) {
+                if (i.hasNext()) {
+                    Head<E> h = new Head<>(i);
+                    h.value = i.next();
+                    heads.add(h);
+                }
+            }
+            init = true;
+        }
+        return !heads.isEmpty();
+    }
+
+    @Override
+    public E next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Head<E> h = heads.poll();
+        E ret = h.value;
+        if (h.source.hasNext()) {
+            h.value = h.source.next();
+            heads.add(h);
+        }
+        return ret;
+    }
+
+    @Override
+    public void close() throws IOException {
+        heads.clear();
+        init = true;
+        IOException first = null;
+        for (Iterator<E> i : sources) {
+            if (i instanceof Closeable) {
+                try {
+                    ((Closeable) i).close();
+                } catch (IOException ex) {
+                    if (first == null) {
+                        first = ex;
+                    }
+                }
+            }
+        }
+        if (first != null) {
+            throw first;
+        }
+    }
+}
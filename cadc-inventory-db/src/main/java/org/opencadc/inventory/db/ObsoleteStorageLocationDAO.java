@@ -67,6 +67,7 @@
 
 package org.opencadc.inventory.db;
 
+import java.util.Collection;
 import java.util.UUID;
 import org.apache.log4j.Logger;
 import org.opencadc.inventory.Artifact;
@@ -102,7 +103,7 @@ public class ObsoleteStorageLocationDAO extends AbstractDAO<ObsoleteStorageLocat
         long t = System.currentTimeMillis();
 
         try {
-            JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+            JdbcTemplate jdbc = getJdbcTemplate();
             
             SQLGenerator.ObsoleteStorageLocationGet get = ( SQLGenerator.ObsoleteStorageLocationGet) gen.getEntityGet(ObsoleteStorageLocation.class);
             get.setLocation(loc);
@@ -117,4 +118,8 @@ public class ObsoleteStorageLocationDAO extends AbstractDAO<ObsoleteStorageLocat
     public void delete(UUID id) {
         super.delete(ObsoleteStorageLocation.class, id);
     }
+    
+    public int delete(Collection<UUID> ids) {
+        return super.delete(ObsoleteStorageLocation.class, ids);
+    }
 }
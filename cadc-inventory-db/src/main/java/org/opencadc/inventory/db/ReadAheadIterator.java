@@ -0,0 +1,203 @@
+/*
+************************************************************************
+*******************  CANADIAN ASTRONOMY DATA CENTRE  *******************
+**************  CENTRE CANADIEN DE DONNÉES ASTRONOMIQUES  **************
+*
+*  (c) 2020.                            (c) 2020.
+*  Government of Canada                 Gouvernement du Canada
+*  National Research Council            Conseil national de recherches
+*  Ottawa, Canada, K1A 0R6              Ottawa, Canada, K1A 0R6
+*  All rights reserved                  Tous droits réservés
+*
+*  NRC disclaims any warranties,        Le CNRC dénie toute garantie
+*  expressed, implied, or               énoncée, implicite ou légale,
+*  statutory, of any kind with          de quelque nature que ce
+*  respect to the software,             soit, concernant le logiciel,
+*  including without limitation         y compris sans restriction
+*  any warranty of merchantability      toute garantie de valeur
+*  or fitness for a particular          marchande ou de pertinence
+*  purpose. NRC shall not be            pour un usage particulier.
+*  liable in any event for any          Le CNRC ne pourra en aucun cas
+*  damages, whether direct or           être tenu responsable de tout
+*  indirect, special or general,        dommage, direct ou indirect,
+*  consequential or incidental,         particulier ou général,
+*  arising from the use of the          accessoire ou fortuit, résultant
+*  software.  Neither the name          de l'utilisation du logiciel. Ni
+*  of the National Research             le nom du Conseil National de
+*  Council of Canada nor the            Recherches du Canada ni les noms
+*  names of its contributors may        de ses  participants ne peuvent
+*  be used to endorse or promote        être utilisés pour approuver ou
+*  products derived from this           promouvoir les produits dérivés
+*  software without specific prior      de ce logiciel sans autorisation
+*  written permission.                  préalable et particulière
+*                                       par écrit.
+*
+*  This file is part of the             Ce fichier fait partie du projet
+*  OpenCADC project.                    OpenCADC.
+*
+*  OpenCADC is free software:           OpenCADC est un logiciel libre ;
+*  you can redistribute it and/or       vous pouvez le redistribuer ou le
+*  modify it under the terms of         modifier suivant les termes de
+*  the GNU Affero General Public        la “GNU Affero General Public
+*  License as published by the          License” telle que publiée
+*  Free Software Foundation,            par la Free Software Foundation
+*  either version 3 of the              : soit la version 3 de cette
+*  License, or (at your option)         licence, soit (à votre gré)
+*  any later version.                   toute version ultérieure.
+*
+*  OpenCADC is distributed in the       OpenCADC est distribué
+*  hope that it will be useful,         dans l’espoir qu’il vous
+*  but WITHOUT ANY WARRANTY;            sera utile, mais SANS AUCUNE
+*  without even the implied             GARANTIE : sans même la garantie
+*  warranty of MERCHANTABILITY          implicite de COMMERCIALISABILITÉ
+*  or FITNESS FOR A PARTICULAR          ni d’ADÉQUATION À UN OBJECTIF
+*  PURPOSE.  See the GNU Affero         PARTICULIER. Consultez la Licence
+*  General Public License for           Générale Publique GNU Affero
+*  more details.                        pour plus de détails.
+*
+*  You should have received             Vous devriez avoir reçu une
+*  a copy of the GNU Affero             copie de la Licence Générale
+*  General Public License along         Publique GNU Affero avec
+*  with OpenCADC.  If not, see          OpenCADC ; si ce n’est
+*  <http://www.gnu.org/licenses/>.      pas le cas, consultez :
+*                                       <http://www.gnu.org/licenses/>.
+*
+************************************************************************
+*/
+
+
+package org.opencadc.inventory.db;
+
+import ca.nrc.cadc.io.ResourceIterator;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import org.apache.log4j.Logger;
+
+/**
+ * Iterator that reads from a source iterator in a background thread into a bounded
+ * queue. An exception thrown by the source is re-thrown to the caller of hasNext();
+ * an Error in the background thread is wrapped in a RuntimeException.
+ * 
+ * @author pdowler
+ * @param <E> element type
+ */
+class ReadAheadIterator<E> implements ResourceIterator<E> {
+    private static final Logger log = Logger.getLogger(ReadAheadIterator.class);
+
+    // end of the source: failure is null for normal completion
+    private static class End {
+        final RuntimeException failure;
+        
+        End(RuntimeException failure) {
+            this.failure = failure;
+        }
+    }
+    
+    private final Iterator<E> source;
+    private final BlockingQueue<Object> queue;
+    private final Thread producer;
+    private volatile boolean closed = false;
+    private Object cur;
+    private boolean done = false;
+    
+    /**
+     * @param source iterator to read from
+     * @param capacity maximum number of elements read ahead
+     * @param name name of the background thread
+     */
+    ReadAheadIterator(Iterator<E> source, int capacity, String name) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("invalid read-ahead capacity: " + capacity);
+        }
+        this.source = source;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                produce();
+            }
+        }, name);
+        producer.setDaemon(true);
+        producer.start();
+    }
+    
+    // always ends with an End in the queue (unless closed) so the consumer cannot block forever
+    private void produce() {
+        RuntimeException failure = null;
+        try {
+            while (!closed && source.hasNext()) {
+                queue.put(source.next());
+            }
+        } catch (InterruptedException ex) {
+            log.debug(producer.getName() + " interrupted");
+            failure = new RuntimeException(producer.getName() + " interrupted", ex);
+        } catch (RuntimeException ex) {
+            failure = ex;
+        } catch (Throwable t) {
+            // e.g. OutOfMemoryError
+            log.error(producer.getName() + " failed", t);
+            failure = new RuntimeException(producer.getName() + " failed: " + t, t);
+        } finally {
+            try {
+                if (!closed) {
+                    queue.put(new End(failure));
+                }
+            } catch (InterruptedException ex) {
+                log.debug(producer.getName() + " interrupted");
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (cur != null) {
+            return true;
+        }
+        if (done || closed) {
+            return false;
+        }
+        try {
+            Object o = queue.take();
+            if (o instanceof End) {
+                done = true;
+                RuntimeException failure = ((End) o).failure;
+                if (failure != null) {
+                    throw failure;
+                }
+                return false;
+            }
+            cur = o;
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while waiting for " + producer.getName(), ex);
+        }
+    }
+
+    @Override
+    public E next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        E ret = (E) cur;
+        cur = null;
+        return ret;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            this.closed = true;
+            producer.interrupt();
+            queue.clear();
+            cur = null;
+            if (source instanceof Closeable) {
+                ((Closeable) source).close();
+            }
+        }
+    }
+}
@@ -77,27 +77,40 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import javax.sql.DataSource;
 import org.apache.log4j.Logger;
 import org.opencadc.inventory.Artifact;
+import org.opencadc.inventory.ArtifactBatch;
 import org.opencadc.inventory.DeletedArtifactEvent;
 import org.opencadc.inventory.DeletedStorageLocationEvent;
 import org.opencadc.inventory.Entity;
 import org.opencadc.inventory.InventoryUtil;
-import org.opencadc.inventory.SiteLocation;
 import org.opencadc.inventory.StorageLocation;
 import org.opencadc.inventory.StorageSite;
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
 import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.jdbc.core.RowMapper;
 
@@ -114,6 +127,40 @@ public class SQLGenerator {
     protected final String database; // currently not used in SQL
     protected final String schema; // may be null
     
+    // SQL text is generated once (constructor or first use): statements only bind values
+    private final Map<Class,EntitySQL> sqlMap;
+    private final String oslByLocationSQL;
+    private final String oslByLocationNullBucketSQL;
+    private final String harvestStateBySourceSQL;
+    private final String artifactChangedSQL;
+    private final String storedIteratorSQL;
+    private final String storedPrefixIteratorSQL;
+    private final String unstoredIteratorSQL;
+    private final String unstoredPrefixIteratorSQL;
+    private final String siteLocationAddSQL;
+    private final String siteLocationAddMultiSQL;
+    private final String siteLocationRemoveSQL;
+    private final String siteLocationRemoveMultiSQL;
+    private final String artifactBulkDeleteSQL;
+    private final String artifactConditionalDeleteSQL;
+    
+    // queries with many combinations of optional conditions: SQL text is generated on first use
+    private final ConcurrentMap<QueryVariant,String> artifactPageSQL = new ConcurrentHashMap<>();
+    private final ConcurrentMap<QueryVariant,String> modifiedSQL = new ConcurrentHashMap<>();
+    
+    private static final Set<Class> MODIFIED_ITERATOR_CLASSES = new HashSet<Class>(Arrays.asList(
+            Artifact.class, DeletedArtifactEvent.class, DeletedStorageLocationEvent.class));
+    
+    // Artifact table partitioned by uriBucket: see PartitionedSQLGenerator
+    private final boolean partitioned;
+    
+    // Artifact.URI_BUCKET_LENGTH
+    private static final int URI_BUCKET_LENGTH = 5;
+    
+    // uriBucket prefix: the range is redundant with LIKE but can be used for partition pruning
+    // and index range scans; all characters after the prefix are hex digits so they sort before 'g'
+    private static final String URI_BUCKET_PREFIX_SQL = "uriBucket LIKE ? AND uriBucket >= ? AND uriBucket < ?";
+    
     /**
      * Constructor. The database name is currently not used in any generated SQL; code assumes
      * that the DataSource is connected to the right database already and cross-database statements
@@ -126,9 +173,219 @@ public class SQLGenerator {
      * @param schema schema name (may be null)
      */
     public SQLGenerator(String database, String schema) { 
+        this(database, schema, false);
+    }
+    
+    /**
+     * Constructor for subclasses.
+     * 
+     * @param database database name (may be null)
+     * @param schema schema name (may be null)
+     * @param partitioned true if the Artifact table is partitioned by uriBucket
+     */
+    protected SQLGenerator(String database, String schema, boolean partitioned) { 
         this.database = database;
         this.schema = schema;
+        this.partitioned = partitioned;
         init();
+        
+        Map<Class,EntitySQL> sql = new HashMap<>();
+        for (Class c : tableMap.keySet()) {
+            if (columnMap.containsKey(c)) {
+                sql.put(c, new EntitySQL(c));
+            }
+        }
+        this.sqlMap = Collections.unmodifiableMap(sql);
+        
+        String[] cols = columnMap.get(ObsoleteStorageLocation.class);
+        String sel = getSelectFromSQL(ObsoleteStorageLocation.class, false).toString();
+        this.oslByLocationSQL = sel + " WHERE " + cols[0] + " = ? AND " + cols[1] + " = ?";
+        this.oslByLocationNullBucketSQL = sel + " WHERE " + cols[0] + " = ? AND " + cols[1] + " IS NULL";
+        
+        cols = columnMap.get(HarvestState.class);
+        sel = getSelectFromSQL(HarvestState.class, false).toString();
+        this.harvestStateBySourceSQL = sel + " WHERE " + cols[0] + " = ? AND " + cols[1] + " = ?";
+        
+        this.artifactChangedSQL = "SELECT id FROM " + tableMap.get(Artifact.class) + " WHERE lastModified >= ?"
+                + " UNION ALL SELECT id FROM " + tableMap.get(DeletedArtifactEvent.class) + " WHERE lastModified >= ?";
+        
+        this.storedIteratorSQL = getArtifactIteratorSQL(true, false);
+        this.storedPrefixIteratorSQL = getArtifactIteratorSQL(true, true);
+        this.unstoredIteratorSQL = getArtifactIteratorSQL(false, false);
+        this.unstoredPrefixIteratorSQL = getArtifactIteratorSQL(false, true);
+        
+        this.siteLocationAddSQL = getSiteLocationSQL(true, false);
+        this.siteLocationAddMultiSQL = getSiteLocationSQL(true, true);
+        this.siteLocationRemoveSQL = getSiteLocationSQL(false, false);
+        this.siteLocationRemoveMultiSQL = getSiteLocationSQL(false, true);
+        
+        this.artifactBulkDeleteSQL = getArtifactBulkDeleteSQL(false);
+        this.artifactConditionalDeleteSQL = getArtifactBulkDeleteSQL(true);
+    }
+    
+    // optional conditions of the page and modified queries
+    enum Cond {
+        STORED,       // page: stored artifacts in storage location order (default: unstored)
+        PREFIX,       // page: bucket prefix
+        MIN_BUCKET,   // inclusive lower bound: storageBucket (page) or uriBucket (modified)
+        MAX_BUCKET,   // exclusive upper bound: storageBucket (page) or uriBucket (modified)
+        NULL_BUCKET,  // page: stored artifacts with no storageBucket
+        AFTER,        // keyset position: after the last row of the previous page or iterator
+        AFTER_TIME,   // modified: after a lastModified with no ID
+        END           // modified: inclusive lastModified upper bound
+    }
+    
+    /**
+     * Key for the SQL text of a query variant: entity class and the set of optional 
+     * conditions it uses.
+     */
+    static final class QueryVariant {
+        final Class entityClass;
+        private final Set<Cond> conds;
+        
+        QueryVariant(Class entityClass, Set<Cond> conds) {
+            this.entityClass = entityClass;
+            this.conds = Collections.unmodifiableSet(conds.isEmpty() ? EnumSet.noneOf(Cond.class) : EnumSet.copyOf(conds));
+        }
+        
+        boolean has(Cond c) {
+            return conds.contains(c);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof QueryVariant) {
+                QueryVariant v = (QueryVariant) o;
+                return entityClass.equals(v.entityClass) && conds.equals(v.conds);
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * entityClass.hashCode() + conds.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "QueryVariant[" + entityClass.getSimpleName() + "," + conds + "]";
+        }
+    }
+    
+    private String getArtifactPageSQL(QueryVariant v) {
+        String ret = artifactPageSQL.get(v);
+        if (ret == null) {
+            ret = buildArtifactPageSQL(v);
+            artifactPageSQL.putIfAbsent(v, ret);
+        }
+        return ret;
+    }
+    
+    private String getModifiedSQL(QueryVariant v) {
+        String ret = modifiedSQL.get(v);
+        if (ret == null) {
+            ret = buildModifiedSQL(v);
+            modifiedSQL.putIfAbsent(v, ret);
+        }
+        return ret;
+    }
+    
+    /**
+     * Immutable SQL text for the standard statements of one entity class.
+     */
+    private class EntitySQL {
+        final int numColumns;
+        final String selectByID;
+        final String selectByKey; // logical key: only some classes
+        final String selectByIDs;
+        final String selectByKeys; // logical key: only some classes
+        final String selectAll;
+        final String skeletonByID;
+        final String skeletonByIDs;
+        final String insert;
+        final String update;
+        final String upsert;
+        final String upsertBatch;
+        final String insertIfAbsent;
+        final String delete;
+        final String deleteByIDs;
+        final String lock;
+        final String lockByIDs;
+        final String[] bulkStage;
+        final String bulkCopyIn;
+        final String bulkDuplicate;
+        final String bulkMerge;
+        
+        EntitySQL(Class c) {
+            String pk = getKeyColumn(c, true);
+            String tab = tableMap.get(c);
+            this.numColumns = columnMap.get(c).length;
+            this.selectAll = getSelectFromSQL(c, false).toString();
+            this.selectByID = selectAll + " WHERE " + pk + " = ?";
+            if (Artifact.class.equals(c) || StorageSite.class.equals(c)) {
+                String key = getKeyColumn(c, false);
+                if (partitioned && Artifact.class.equals(c)) {
+                    // include the partition key so only one partition is searched
+                    this.selectByKey = selectAll + " WHERE " + key + " = ? AND uriBucket = ?";
+                    this.selectByKeys = selectAll + " WHERE " + key + " = ANY(?) AND uriBucket = ANY(?)";
+                } else {
+                    this.selectByKey = selectAll + " WHERE " + key + " = ?";
+                    this.selectByKeys = selectAll + " WHERE " + key + " = ANY(?)";
+                }
+            } else {
+                this.selectByKey = null;
+                this.selectByKeys = null;
+            }
+            this.selectByIDs = selectAll + " WHERE " + pk + " = ANY(?)";
+            String skel = getSelectFromSQL(c, true).toString();
+            this.skeletonByID = skel + " WHERE " + pk + " = ?";
+            this.skeletonByIDs = skel + " WHERE " + pk + " = ANY(?)";
+            this.insert = getInsertSQL(c);
+            this.update = getUpdateSQL(c);
+            this.upsert = getUpsertSQL(c);
+            this.upsertBatch = getUpsertWriteSQL(c);
+            this.insertIfAbsent = getInsertIfAbsentSQL(c);
+            this.delete = getDeleteSQL(c);
+            this.deleteByIDs = "DELETE FROM " + tab + " WHERE " + pk + " = ANY(?)";
+            this.lock = getLockSQL(c);
+            this.lockByIDs = "SELECT " + pk + " FROM " + tab + " WHERE " + pk + " = ANY(?)"
+                    + " ORDER BY " + pk + " FOR UPDATE";
+            String stage = getStageTable(c);
+            this.bulkStage = new String[] {
+                "DROP TABLE IF EXISTS " + stage, // previous load in the same transaction
+                "CREATE TEMP TABLE " + stage + " (LIKE " + tab + ") ON COMMIT DROP",
+                "ALTER TABLE " + stage + " ALTER COLUMN lastModified DROP NOT NULL" // assigned in merge
+            };
+            this.bulkCopyIn = getCopyInSQL(c);
+            this.bulkDuplicate = "SELECT id FROM " + stage + " GROUP BY id HAVING count(*) > 1 LIMIT 1";
+            this.bulkMerge = buildBulkMergeSQL(c);
+        }
+    }
+    
+    // bulk load statements: create staging table, COPY into it, check for duplicate IDs, 
+    // merge into the entity table
+    String[] getBulkStageSQL(Class c) {
+        return getEntitySQL(c).bulkStage;
+    }
+    
+    String getBulkCopyInSQL(Class c) {
+        return getEntitySQL(c).bulkCopyIn;
+    }
+    
+    String getBulkDuplicateSQL(Class c) {
+        return getEntitySQL(c).bulkDuplicate;
+    }
+    
+    String getBulkMergeSQL(Class c) {
+        return getEntitySQL(c).bulkMerge;
+    }
+    
+    private EntitySQL getEntitySQL(Class c) {
+        EntitySQL ret = sqlMap.get(c);
+        if (ret == null) {
+            throw new IllegalArgumentException("BUG: no table/columns for class " + c.getName());
+        }
+        return ret;
     }
     
     protected void init() {
@@ -236,6 +493,10 @@ public class SQLGenerator {
         throw new UnsupportedOperationException("entity-get: " + c.getName());
     }
     
+    public ArtifactPageQuery getArtifactPageQuery(boolean withStorageLocation) {
+        return new ArtifactPageQuery(withStorageLocation);
+    }
+    
     public EntityIteratorQuery getEntityIteratorQuery(Class c, boolean withStorageLocation) {
         if (Artifact.class.equals(c)) {
             return new ArtifactIteratorQuery(withStorageLocation);
@@ -243,6 +504,13 @@ public class SQLGenerator {
         throw new UnsupportedOperationException("entity-list: " + c.getName());
     }
     
+    public ModifiedIteratorQuery getModifiedIteratorQuery(Class c) {
+        if (!MODIFIED_ITERATOR_CLASSES.contains(c)) {
+            throw new UnsupportedOperationException("modified-iterator: " + c.getName());
+        }
+        return new ModifiedIteratorQuery(c);
+    }
+    
     public EntityList getEntityList(Class c) {
         if (StorageSite.class.equals(c)) {
             return new StorageSiteList();
@@ -261,6 +529,34 @@ public class SQLGenerator {
         EntityGet ret = new SkeletonGet(c);
         return ret;
     }
+    
+    public SiteLocationUpdate getSiteLocationUpdate(boolean add) {
+        return new SiteLocationUpdate(add);
+    }
+    
+    public ArtifactBulkDelete getArtifactBulkDelete(boolean conditional) {
+        return new ArtifactBulkDelete(conditional);
+    }
+    
+    public ArtifactListGet getArtifactListGet() {
+        return new ArtifactListGet();
+    }
+    
+    public SkeletonListGet getSkeletonEntityListGet(Class c) {
+        return new SkeletonListGet(c);
+    }
+    
+    public EntityListLock getEntityListLock(Class c) {
+        return new EntityListLock(c);
+    }
+    
+    public EntityListDelete getEntityListDelete(Class c) {
+        return new EntityListDelete(c);
+    }
+    
+    public ArtifactChangeQuery getArtifactChangeQuery() {
+        return new ArtifactChangeQuery();
+    }
 
     public EntityPut getEntityPut(Class c, boolean update) {
         if (Artifact.class.equals(c)) {
@@ -270,10 +566,10 @@ public class SQLGenerator {
             return new StorageSitePut(update);
         }
         if (DeletedArtifactEvent.class.equals(c)) {
-            return new DeletedEventPut(update);
+            return new DeletedEventPut(c, update);
         }
         if (DeletedStorageLocationEvent.class.equals(c)) {
-            return new DeletedEventPut(update);
+            return new DeletedEventPut(c, update);
         }
         if (ObsoleteStorageLocation.class.equals(c)) {
             return new ObsoleteStorageLocationPut(update);
@@ -284,6 +580,14 @@ public class SQLGenerator {
         throw new UnsupportedOperationException("entity-put: " + c.getName());
     }
     
+    public EntityUpsert getEntityUpsert(Class c) {
+        return new EntityUpsertImpl((AbstractEntityPut) getEntityPut(c, false));
+    }
+    
+    EntityInsertIfAbsent getEntityInsertIfAbsent(Class c) {
+        return new EntityInsertIfAbsent((AbstractEntityPut) getEntityPut(c, false));
+    }
+    
     public EntityDelete getEntityDelete(Class c) {
         return new EntityDeleteImpl(c);
     }
@@ -312,7 +616,7 @@ public class SQLGenerator {
         
         @Override
         public PreparedStatement createPreparedStatement(Connection conn) throws SQLException {
-            String sql = getLockSQL(entityClass);
+            String sql = getEntitySQL(entityClass).lock;
             log.debug("EntityLockImpl: " + sql);
             PreparedStatement prep = conn.prepareStatement(sql);
             int col = 1;
@@ -338,16 +642,12 @@ public class SQLGenerator {
 
         @Override
         public Entity execute(JdbcTemplate jdbc) {
-            return (Entity) jdbc.query(this, new SkeletonEntityExtractor());
+            return (Entity) jdbc.query(this, new SkeletonEntityExtractor(entityClass));
         }
 
         @Override
         public PreparedStatement createPreparedStatement(Connection conn) throws SQLException {
-            StringBuilder sb = getSelectFromSQL(entityClass, true);
-            sb.append(" WHERE ");
-            String col = getKeyColumn(entityClass, true);
-            sb.append(col).append(" = ?");
-            String sql = sb.toString();
+            String sql = getEntitySQL(entityClass).skeletonByID;
             log.debug("SkeletonGet: " + sql);
             PreparedStatement prep = conn.prepareStatement(sql);
             prep.setObject(1, id);
@@ -402,22 +702,14 @@ public class SQLGenerator {
                 throw new IllegalStateException("BUG: execute called with no value for ID or StorageLocation"); 
             }
             
-            StringBuilder sb = getSelectFromSQL(ObsoleteStorageLocation.class, false);
-            sb.append(" WHERE ");
+            String sql;
             if (id != null) {
-                String col = getKeyColumn(ObsoleteStorageLocation.class, true);
-                sb.append(col).append(" = ?");
+                sql = getEntitySQL(ObsoleteStorageLocation.class).selectByID;
+            } else if (loc.storageBucket != null) {
+                sql = oslByLocationSQL;
             } else {
-                String[] cols = columnMap.get(ObsoleteStorageLocation.class);
-                sb.append(cols[0]).append(" = ?");
-                sb.append(" AND ");
-                if (loc.storageBucket != null) {
-                    sb.append(cols[1]).append(" = ?");
-                } else {
-                    sb.append(cols[1]).append(" IS NULL");
-                }
+                sql = oslByLocationNullBucketSQL;
             }
-            String sql = sb.toString();
             log.debug("DeletedStorageLocationGet: " + sql);
             PreparedStatement prep = conn.prepareStatement(sql);
             if (id != null) {
@@ -459,18 +751,12 @@ public class SQLGenerator {
                 throw new IllegalStateException("BUG: execute called with no value for ID or name/resourceID"); 
             }
             
-            StringBuilder sb = getSelectFromSQL(HarvestState.class, false);
-            sb.append(" WHERE ");
+            String sql;
             if (id != null) {
-                String col = getKeyColumn(HarvestState.class, true);
-                sb.append(col).append(" = ?");
+                sql = getEntitySQL(HarvestState.class).selectByID;
             } else {
-                String[] cols = columnMap.get(HarvestState.class);
-                sb.append(cols[0]).append(" = ?");
-                sb.append(" AND ");
-                sb.append(cols[1]).append(" = ?");
+                sql = harvestStateBySourceSQL;
             }
-            String sql = sb.toString();
             log.debug("HarvestStateGet: " + sql);
             PreparedStatement prep = conn.prepareStatement(sql);
             if (id != null) {
@@ -504,321 +790,673 @@ public class SQLGenerator {
 
         @Override
         public PreparedStatement createPreparedStatement(Connection conn) throws SQLException {
-            StringBuilder sb = getSelectFromSQL(Artifact.class, false);
-            sb.append(" WHERE ");
+            String sql;
             if (id != null) {
-                String col = getKeyColumn(Artifact.class, true);
-                sb.append(col).append(" = ?");
+                sql = getEntitySQL(Artifact.class).selectByID;
             } else {
-                String col = getKeyColumn(Artifact.class, false);
-                sb.append(col).append(" = ?");
+                sql = getEntitySQL(Artifact.class).selectByKey;
             }
-            String sql = sb.toString();
             log.debug("ArtifactGet: " + sql);
             PreparedStatement prep = conn.prepareStatement(sql);
             if (id != null) {
                 prep.setObject(1, id);
             } else {
                 prep.setString(1, uri.toASCIIString());
+                if (partitioned) {
+                    prep.setString(2, InventoryUtil.computeBucket(uri, URI_BUCKET_LENGTH));
+                }
             }
             return prep;
         }
     }
     
-    class ArtifactIteratorQuery implements EntityIteratorQuery<Artifact> {
-
-        private boolean withStorageLocation;
-        private String prefix;
-
-        public ArtifactIteratorQuery(boolean withStorageLocation) {
-            this.withStorageLocation = withStorageLocation;
+    // add or remove a site ID in Artifact.siteLocations for one or more artifacts
+    class SiteLocationUpdate implements PreparedStatementCreator {
+        private final boolean add;
+        private UUID siteID;
+        private UUID artifactID;
+        private Collection<UUID> artifactIDs;
+        
+        SiteLocationUpdate(boolean add) {
+            this.add = add;
         }
-
         
-        public void setPrefix(String prefix) {
-            this.prefix = prefix;
+        public void setSiteID(UUID siteID) {
+            this.siteID = siteID;
         }
         
-        @Override
-        public ResourceIterator<Artifact> query(DataSource ds) {
-            
-            StringBuilder sb = getSelectFromSQL(Artifact.class, false);
-            sb.append(" WHERE ");
-            
-            if (withStorageLocation) {
-                if (prefix != null) {
-                    sb.append("storageLocation_storageBucket LIKE ? AND");
-                }
-                sb.append(" storageLocation_storageID IS NOT NULL");
-            
-                // NOTE: StorageLocation.compare() specifies the correct order
-                // null storageBucket to come after non-null
-                // postgresql: the default order is equivalent to explicitly specifying ASC NULLS LAST
-                // default behaviour may not be db-agnostic
-                sb.append(" ORDER BY storageLocation_storageBucket, storageLocation_storageID");
-            } else {
-                if (prefix != null) {
-                    sb.append("uriBucket LIKE ? AND");
-                }
-                sb.append(" storageLocation_storageID IS NULL");
-                sb.append(" ORDER BY lastModified");
-            }
-            String sql = sb.toString();
-            log.debug("sql: " + sql);
-            
-            try {
-                Connection con = ds.getConnection();
-                log.debug("ArtifactIterator: setAutoCommit(false)");
-                con.setAutoCommit(false);
-                // defaults for options: ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY
-                PreparedStatement ps = con.prepareStatement(sql);
-                ps.setFetchSize(1000);
-                ps.setFetchDirection(ResultSet.FETCH_FORWARD);
-                if (prefix != null) {
-                    String val = prefix + "%";
-                    log.debug("value: " + val);
-                    ps.setString(1, val);
-                }
-                ResultSet rs = ps.executeQuery();
-                
-                return new ArtifactResultSetIterator(con, rs);
-            } catch (SQLException ex) {
-                throw new RuntimeException("BUG: artifact iterator query failed", ex);
-            }
+        public void setArtifactID(UUID artifactID) {
+            this.artifactID = artifactID;
+            this.artifactIDs = null;
         }
         
-    }
-    
-    private class StorageSiteGet implements EntityGet<StorageSite> {
-        private UUID id;
-        private URI uri;
-
-        @Override
-        public void setID(UUID id) {
-            this.id = id;
+        public void setArtifactIDs(Collection<UUID> artifactIDs) {
+            this.artifactIDs = artifactIDs;
+            this.artifactID = null;
         }
-
-        @Override
-        public StorageSite execute(JdbcTemplate jdbc) {
-            return (StorageSite) jdbc.query(this, new StorageSiteExtractor());
+        
+        /**
+         * @param jdbc template to execute with
+         * @return number of artifacts changed
+         */
+        public int execute(JdbcTemplate jdbc) {
+            return jdbc.update(this);
         }
-
+        
         @Override
         public PreparedStatement createPreparedStatement(Connection conn) throws SQLException {
-            StringBuilder sb = getSelectFromSQL(StorageSite.class, false);
-            sb.append(" WHERE ");
-            if (id != null) {
-                String col = getKeyColumn(StorageSite.class, true);
-                sb.append(col).append(" = ?");
+            boolean multi = (artifactIDs != null);
+            String sql;
+            if (add) {
+                sql = (multi ? siteLocationAddMultiSQL : siteLocationAddSQL);
             } else {
-                throw new IllegalStateException("primary key is null");
+                sql = (multi ? siteLocationRemoveMultiSQL : siteLocationRemoveSQL);
             }
-            String sql = sb.toString();
-            log.debug("StorageSiteGet: " + sql);
-            PreparedStatement prep = conn.prepareStatement(sql);
-            prep.setObject(1, id);
-            return prep;
-        }
-    }
-
-    private class StorageSiteList implements EntityList<StorageSite> {
-
-        @Override
-        public Set<StorageSite> query(JdbcTemplate jdbc) {
-            List<StorageSite> sites = (List<StorageSite>) jdbc.query(this, new StorageSiteRowMapper());
-            Set<StorageSite> ret = new TreeSet<>();
-            ret.addAll(sites);
-            return ret;
-        }
-
-        @Override
-        public PreparedStatement createPreparedStatement(Connection conn) throws SQLException {
-            StringBuilder sb = getSelectFromSQL(StorageSite.class, false);
-            String sql = sb.toString();
-            log.debug("StorageSiteList: " + sql);
+            log.debug("SiteLocationUpdate: " + sql);
             PreparedStatement prep = conn.prepareStatement(sql);
+            int col = 1;
+            prep.setObject(col++, siteID);
+            if (multi) {
+                setIDArray(prep, col++, artifactIDs);
+                prep.setObject(col++, siteID);
+            } else {
+                prep.setObject(col++, artifactID);
+            }
+            prep.setObject(col++, siteID);
             return prep;
         }
     }
     
-    private void safeSetString(PreparedStatement prep, int col, String value) throws SQLException {
-        log.debug("safeSetString: " + col + " " + value);
-        if (value != null) {
-            prep.setString(col, value);
-        } else {
-            prep.setNull(col, Types.VARCHAR);
+    // delete artifacts and create the matching events in one statement
+    class ArtifactBulkDelete implements PreparedStatementCreator {
+        private final boolean conditional;
+        private List<DeletedArtifactEvent> events;
+        private List<Artifact> expected;
+        private List<ObsoleteStorageLocation> obsoleteLocations;
+        
+        ArtifactBulkDelete(boolean conditional) {
+            this.conditional = conditional;
         }
-    }
-    
-    private class ArtifactPut implements EntityPut<Artifact> {
-        private final Calendar utc = Calendar.getInstance(DateUtil.UTC);
-        private final boolean update;
-        private Artifact value;
         
-        ArtifactPut(boolean update) {
-            this.update = update;
+        /**
+         * @param events one event (with metaChecksum) for each artifact to delete
+         */
+        public void setEvents(List<DeletedArtifactEvent> events) {
+            this.events = events;
         }
-
-        @Override
-        public void setValue(Artifact value) {
-            this.value = value;
+        
+        /**
+         * Set the expected current state of each artifact and the obsolete location to 
+         * create if it is deleted (conditional mode only).
+         * 
+         * @param expected artifact as last read, in the same order as the events
+         * @param obsoleteLocations obsolete location to create (null: none) in the same order as the events
+         */
+        public void setExpected(List<Artifact> expected, List<ObsoleteStorageLocation> obsoleteLocations) {
+            this.expected = expected;
+            this.obsoleteLocations = obsoleteLocations;
         }
         
-        @Override
-        public void execute(JdbcTemplate jdbc) {
-            jdbc.update(this);
+        /**
+         * @param jdbc template to execute with
+         * @return IDs of the deleted artifacts
+         */
+        public List<UUID> execute(JdbcTemplate jdbc) {
+            return jdbc.query(this, new RowMapper<UUID>() {
+                @Override
+                public UUID mapRow(ResultSet rs, int i) throws SQLException {
+                    return Util.getUUID(rs, 1);
+                }
+            });
         }
         
         @Override
         public PreparedStatement createPreparedStatement(Connection conn) throws SQLException {
-            String sql = null;
-            if (update) {
-                sql = getUpdateSQL(Artifact.class);
-                       
-            } else {
-                sql = getInsertSQL(Artifact.class);
-            }
-            log.debug("ArtifactPut: " + sql);
+            String sql = (conditional ? artifactConditionalDeleteSQL : artifactBulkDeleteSQL);
+            log.debug("ArtifactBulkDelete: " + sql);
             PreparedStatement prep = conn.prepareStatement(sql);
+            int n = events.size();
+            UUID[] ids = new UUID[n];
+            String[] eventChecksums = new String[n];
+            for (int i = 0; i < n; i++) {
+                DeletedArtifactEvent e = events.get(i);
+                ids[i] = e.getID();
+                eventChecksums[i] = e.getMetaChecksum().toASCIIString();
+            }
             int col = 1;
-            prep.setString(col++, value.getURI().toASCIIString());
-            prep.setString(col++, value.getBucket());
-            prep.setString(col++, value.getContentChecksum().toASCIIString());
-            prep.setTimestamp(col++, new Timestamp(value.getContentLastModified().getTime()), utc);
-            prep.setLong(col++, value.getContentLength());
-            safeSetString(prep, col++, value.contentType);
-            safeSetString(prep, col++, value.contentEncoding);
-            
-            if (!value.siteLocations.isEmpty()) {
-                UUID[] ua = new UUID[value.siteLocations.size()];
-                int i = 0;
-                for (SiteLocation si : value.siteLocations) {
-                    ua[i++] = si.getSiteID();
+            prep.setArray(col++, conn.createArrayOf("uuid", ids));
+            prep.setArray(col++, conn.createArrayOf("varchar", eventChecksums));
+            if (conditional) {
+                String[] metaChecksums = new String[n];
+                Long[] lastModified = new Long[n];
+                String[] storageIDs = new String[n];
+                String[] storageBuckets = new String[n];
+                UUID[] oslIDs = new UUID[n];
+                String[] oslChecksums = new String[n];
+                for (int i = 0; i < n; i++) {
+                    Artifact a = expected.get(i);
+                    metaChecksums[i] = ChecksumCodec.encodeHex(a.getMetaChecksum());
+                    lastModified[i] = a.getLastModified().getTime();
+                    if (a.storageLocation != null) {
+                        storageIDs[i] = a.storageLocation.getStorageID().toASCIIString();
+                        storageBuckets[i] = a.storageLocation.storageBucket;
+                    }
+                    ObsoleteStorageLocation osl = obsoleteLocations.get(i);
+                    if (osl != null) {
+                        oslIDs[i] = osl.getID();
+                        oslChecksums[i] = osl.getMetaChecksum().toASCIIString();
+                    }
                 }
-                java.sql.Array arr = prep.getConnection().createArrayOf("uuid", ua);
-                prep.setObject(col++, arr);
-            } else {
-                prep.setObject(col++, null); // siteLocations uuid[]
+                prep.setArray(col++, conn.createArrayOf("varchar", metaChecksums));
+                prep.setArray(col++, conn.createArrayOf("bigint", lastModified));
+                prep.setArray(col++, conn.createArrayOf("varchar", storageIDs));
+                prep.setArray(col++, conn.createArrayOf("varchar", storageBuckets));
+                prep.setArray(col++, conn.createArrayOf("uuid", oslIDs));
+                prep.setArray(col++, conn.createArrayOf("varchar", oslChecksums));
             }
-            if (value.storageLocation != null) {
-                prep.setString(col++, value.storageLocation.getStorageID().toASCIIString());
-                safeSetString(prep, col++, value.storageLocation.storageBucket);
-            } else {
-                prep.setNull(col++, Types.VARCHAR); // storageLocation.storageID
-                prep.setNull(col++, Types.VARCHAR); // storageLocation.storageBucket
-            }
-            
-            prep.setTimestamp(col++, new Timestamp(value.getLastModified().getTime()), utc);
-            prep.setString(col++, value.getMetaChecksum().toASCIIString());
-            prep.setObject(col++, value.getID());
-            
             return prep;
         }
-        
     }
-
-    private class StorageSitePut implements EntityPut<StorageSite> {
-        private final Calendar utc = Calendar.getInstance(DateUtil.UTC);
-        private final boolean update;
-        private StorageSite value;
+    
+    // multiple artifacts by ID or URI in one query
+    class ArtifactListGet implements PreparedStatementCreator {
+        private Collection<UUID> ids;
+        private Collection<URI> uris;
         
-        StorageSitePut(boolean update) {
-            this.update = update;
+        public void setIDs(Collection<UUID> ids) {
+            this.ids = ids;
+            this.uris = null;
         }
-
-        @Override
-        public void setValue(StorageSite value) {
-            this.value = value;
+        
+        public void setURIs(Collection<URI> uris) {
+            this.uris = uris;
+            this.ids = null;
         }
         
-        @Override
-        public void execute(JdbcTemplate jdbc) {
-            jdbc.update(this);
+        public List<Artifact> execute(JdbcTemplate jdbc) {
+            return jdbc.query(this, new RowMapper<Artifact>() {
+                final Calendar utc = Calendar.getInstance(DateUtil.UTC);
+                
+                @Override
+                public Artifact mapRow(ResultSet rs, int i) throws SQLException {
+                    return mapRowToArtifact(rs, utc);
+                }
+            });
         }
         
         @Override
         public PreparedStatement createPreparedStatement(Connection conn) throws SQLException {
-            String sql = null;
-            if (update) {
-                sql = getUpdateSQL(StorageSite.class);
-                       
+            PreparedStatement prep;
+            if (ids != null) {
+                String sql = getEntitySQL(Artifact.class).selectByIDs;
+                log.debug("ArtifactListGet: " + sql + " n=" + ids.size());
+                prep = conn.prepareStatement(sql);
+                setIDArray(prep, 1, ids);
             } else {
-                sql = getInsertSQL(StorageSite.class);
+                String sql = getEntitySQL(Artifact.class).selectByKeys;
+                log.debug("ArtifactListGet: " + sql + " n=" + uris.size());
+                prep = conn.prepareStatement(sql);
+                String[] arr = new String[uris.size()];
+                Set<String> buckets = new TreeSet<>();
+                int i = 0;
+                for (URI u : uris) {
+                    arr[i++] = u.toASCIIString();
+                    if (partitioned) {
+                        buckets.add(InventoryUtil.computeBucket(u, URI_BUCKET_LENGTH));
+                    }
+                }
+                prep.setArray(1, conn.createArrayOf("varchar", arr));
+                if (partitioned) {
+                    prep.setArray(2, conn.createArrayOf("varchar", buckets.toArray(new String[buckets.size()])));
+                }
             }
-            log.debug("StorageSitePut: " + sql);
-            PreparedStatement prep = conn.prepareStatement(sql);
-            int col = 1;
-            prep.setString(col++, value.getResourceID().toASCIIString());
-            prep.setString(col++, value.getName());
-            
-            prep.setTimestamp(col++, new Timestamp(value.getLastModified().getTime()), utc);
-            prep.setString(col++, value.getMetaChecksum().toASCIIString());
-            prep.setObject(col++, value.getID());
-            
             return prep;
         }
-        
     }
     
-    private class ObsoleteStorageLocationPut implements EntityPut<ObsoleteStorageLocation> {
+    /**
+     * Incremental query: entities modified after a position in (lastModified, id) order and
+     * optionally up to an end time (inclusive). Artifacts can also be restricted to a 
+     * [min, max) range of uriBucket values. Results are streamed with a cursor from a 
+     * dedicated connection that is closed when the iterator is done or closed.
+     */
+    class ModifiedIteratorQuery implements EntityIteratorQuery<Entity> {
         private final Calendar utc = Calendar.getInstance(DateUtil.UTC);
-        private final boolean update;
-        private ObsoleteStorageLocation value;
+        private final Class entityClass;
+        private Date start;
+        private UUID startID;
+        private Date end;
+        private String minBucket;
+        private String maxBucket;
         
-        ObsoleteStorageLocationPut(boolean update) {
-            this.update = update;
+        ModifiedIteratorQuery(Class entityClass) {
+            this.entityClass = entityClass;
         }
-
+        
+        /**
+         * @param start exclusive start time or null to start at the beginning
+         * @param startID optional ID of the last entity at the start time
+         */
+        public void setStart(Date start, UUID startID) {
+            if (start == null && startID != null) {
+                throw new IllegalArgumentException("start ID requires a start time");
+            }
+            this.start = start;
+            this.startID = startID;
+        }
+        
+        /**
+         * @param end inclusive end time or null for no end
+         */
+        public void setEnd(Date end) {
+            this.end = end;
+        }
+        
+        /**
+         * @param minBucket inclusive lower bound or null
+         * @param maxBucket exclusive upper bound or null
+         */
+        public void setBucketRange(String minBucket, String maxBucket) {
+            if ((minBucket != null || maxBucket != null) && !Artifact.class.equals(entityClass)) {
+                throw new IllegalArgumentException("bucket range not supported: " + entityClass.getSimpleName());
+            }
+            this.minBucket = minBucket;
+            this.maxBucket = maxBucket;
+        }
+        
         @Override
-        public void setValue(ObsoleteStorageLocation value) {
-            this.value = value;
+        public ResourceIterator<Entity> query(DataSource ds) {
+            Connection con = null;
+            try {
+                con = ds.getConnection();
+                con.setAutoCommit(false);
+                Set<Cond> conds = EnumSet.noneOf(Cond.class);
+                if (start != null) {
+                    conds.add(startID == null ? Cond.AFTER_TIME : Cond.AFTER);
+                }
+                if (end != null) {
+                    conds.add(Cond.END);
+                }
+                if (minBucket != null) {
+                    conds.add(Cond.MIN_BUCKET);
+                }
+                if (maxBucket != null) {
+                    conds.add(Cond.MAX_BUCKET);
+                }
+                String sql = getModifiedSQL(new QueryVariant(entityClass, conds));
+                log.debug("ModifiedIteratorQuery: " + sql);
+                PreparedStatement ps = con.prepareStatement(sql);
+                ps.setFetchSize(1000);
+                ps.setFetchDirection(ResultSet.FETCH_FORWARD);
+                int col = 1;
+                if (start != null) {
+                    ps.setTimestamp(col++, new Timestamp(start.getTime()), utc);
+                    if (startID != null) {
+                        ps.setObject(col++, startID);
+                    }
+                }
+                if (end != null) {
+                    ps.setTimestamp(col++, new Timestamp(end.getTime()), utc);
+                }
+                if (minBucket != null) {
+                    ps.setString(col++, minBucket);
+                }
+                if (maxBucket != null) {
+                    ps.setString(col++, maxBucket);
+                }
+                return new EntityResultSetIterator(con, ps.executeQuery(), entityClass);
+            } catch (SQLException ex) {
+                if (con != null) {
+                    try {
+                        con.close();
+                    } catch (SQLException ignore) {
+                        log.debug("failed to close connection: " + ignore);
+                    }
+                }
+                throw new RuntimeException("BUG: modified iterator query failed", ex);
+            }
+        }
+    }
+    
+    class ArtifactIteratorQuery implements EntityIteratorQuery<Artifact> {
+
+        private boolean withStorageLocation;
+        private String prefix;
+
+        public ArtifactIteratorQuery(boolean withStorageLocation) {
+            this.withStorageLocation = withStorageLocation;
+        }
+
+        
+        public void setPrefix(String prefix) {
+            this.prefix = prefix;
         }
         
         @Override
-        public void execute(JdbcTemplate jdbc) {
-            jdbc.update(this);
+        public ResourceIterator<Artifact> query(DataSource ds) {
+            try {
+                Connection con = ds.getConnection();
+                ResultSet rs = executeQuery(con);
+                return new ArtifactResultSetIterator(con, rs);
+            } catch (SQLException ex) {
+                throw new RuntimeException("BUG: artifact iterator query failed", ex);
+            }
+        }
+        
+        /**
+         * Execute the query and iterate over the results in batches. The same ArtifactBatch
+         * instance is cleared and re-filled by each call to next().
+         * 
+         * @param ds data source
+         * @param batchSize maximum number of artifacts per batch
+         * @return iterator over batches of artifacts
+         */
+        public ResourceIterator<ArtifactBatch> batchQuery(DataSource ds, int batchSize) {
+            ArtifactBatch batch = new ArtifactBatch(batchSize);
+            try {
+                Connection con = ds.getConnection();
+                ResultSet rs = executeQuery(con);
+                return new ArtifactBatchResultSetIterator(con, rs, batch);
+            } catch (SQLException ex) {
+                throw new RuntimeException("BUG: artifact iterator query failed", ex);
+            }
+        }
+        
+        private ResultSet executeQuery(Connection con) throws SQLException {
+            String sql;
+            if (withStorageLocation) {
+                sql = (prefix != null ? storedPrefixIteratorSQL : storedIteratorSQL);
+            } else {
+                sql = (prefix != null ? unstoredPrefixIteratorSQL : unstoredIteratorSQL);
+            }
+            log.debug("sql: " + sql);
+            
+            log.debug("ArtifactIterator: setAutoCommit(false)");
+            con.setAutoCommit(false);
+            // defaults for options: ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY
+            PreparedStatement ps = con.prepareStatement(sql);
+            ps.setFetchSize(1000);
+            ps.setFetchDirection(ResultSet.FETCH_FORWARD);
+            if (prefix != null) {
+                log.debug("prefix: " + prefix);
+                if (withStorageLocation) {
+                    ps.setString(1, prefix + "%");
+                } else {
+                    setURIBucketPrefix(ps, 1, prefix);
+                }
+            }
+            return ps.executeQuery();
+        }
+        
+    }
+    
+    /**
+     * Keyset-paginated artifact query. Each page is a separate LIMIT query that starts after
+     * the last row of the previous page, so no cursor or transaction is held between pages.
+     * Stored artifacts are paged by (storageBucket, storageID): artifacts with a storageBucket
+     * first and then those with no storageBucket (same order as StorageLocation). Unstored 
+     * artifacts are paged by (lastModified, id).
+     */
+    class ArtifactPageQuery implements PreparedStatementCreator {
+        private final Calendar utc = Calendar.getInstance(DateUtil.UTC);
+        private final boolean withStorageLocation;
+        private String prefix;
+        private String minBucket;
+        private String maxBucket;
+        private int pageSize = 1000;
+        
+        // position: last row of the previous page
+        private boolean after = false;
+        private boolean nullBucket = false;
+        private String lastBucket;
+        private String lastStorageID;
+        private Date lastModified;
+        private UUID lastID;
+        
+        private boolean phaseDone = false;
+        private boolean done = false;
+
+        ArtifactPageQuery(boolean withStorageLocation) {
+            this.withStorageLocation = withStorageLocation;
+        }
+
+        public boolean isWithStorageLocation() {
+            return withStorageLocation;
         }
         
+        public void setPrefix(String prefix) {
+            this.prefix = prefix;
+        }
+
+        /**
+         * Restrict a stored query to a range of storageBucket values. Artifacts with no
+         * storageBucket are only included when there is no upper bound.
+         * 
+         * @param minBucket inclusive lower bound or null
+         * @param maxBucket exclusive upper bound or null
+         */
+        public void setBucketRange(String minBucket, String maxBucket) {
+            if (!withStorageLocation) {
+                throw new IllegalStateException("BUG: setBucketRange on unstored query");
+            }
+            this.minBucket = minBucket;
+            this.maxBucket = maxBucket;
+        }
+        
+        public void setPageSize(int pageSize) {
+            if (pageSize < 1) {
+                throw new IllegalArgumentException("invalid pageSize: " + pageSize);
+            }
+            this.pageSize = pageSize;
+        }
+        
+        /**
+         * Start after the specified stored artifact location.
+         * 
+         * @param loc storage location of the last artifact already processed
+         */
+        public void setPosition(StorageLocation loc) {
+            if (!withStorageLocation) {
+                throw new IllegalStateException("BUG: setPosition(StorageLocation) on unstored query");
+            }
+            this.after = true;
+            this.nullBucket = loc.storageBucket == null;
+            this.lastBucket = loc.storageBucket;
+            this.lastStorageID = loc.getStorageID().toASCIIString();
+        }
+        
+        /**
+         * Start after the specified unstored artifact.
+         * 
+         * @param lastModified lastModified of the last artifact already processed
+         * @param id id of the last artifact already processed
+         */
+        public void setPosition(Date lastModified, UUID id) {
+            if (withStorageLocation) {
+                throw new IllegalStateException("BUG: setPosition(Date,UUID) on stored query");
+            }
+            this.after = true;
+            this.lastModified = lastModified;
+            this.lastID = id;
+        }
+        
+        public boolean isDone() {
+            return done;
+        }
+        
+        /**
+         * Get the next page of artifacts.
+         * 
+         * @param jdbc template to execute with
+         * @return next page of artifacts, empty when there are no more
+         */
+        public List<Artifact> nextPage(JdbcTemplate jdbc) {
+            while (!done) {
+                if (phaseDone) {
+                    if (withStorageLocation && !nullBucket && prefix == null && maxBucket == null) {
+                        // continue with artifacts that have no storageBucket
+                        nullBucket = true;
+                        after = false;
+                        phaseDone = false;
+                    } else {
+                        done = true;
+                        break;
+                    }
+                }
+                List<Artifact> ret = jdbc.query(this, new RowMapper<Artifact>() {
+                    @Override
+                    public Artifact mapRow(ResultSet rs, int i) throws SQLException {
+                        return mapRowToArtifact(rs, utc);
+                    }
+                });
+                phaseDone = ret.size() < pageSize;
+                if (!ret.isEmpty()) {
+                    Artifact last = ret.get(ret.size() - 1);
+                    if (withStorageLocation) {
+                        setPosition(last.storageLocation);
+                    } else {
+                        setPosition(last.getLastModified(), last.getID());
+                    }
+                    return ret;
+                }
+            }
+            return new ArrayList<>();
+        }
+
         @Override
         public PreparedStatement createPreparedStatement(Connection conn) throws SQLException {
-            String sql = null;
-            if (update) {
-                sql = getUpdateSQL(ObsoleteStorageLocation.class);
-                       
-            } else {
-                sql = getInsertSQL(ObsoleteStorageLocation.class);
+            boolean usePrefix = prefix != null && !nullBucket;
+            boolean useMin = minBucket != null && !nullBucket;
+            boolean useMax = maxBucket != null && !nullBucket;
+            Set<Cond> conds = EnumSet.noneOf(Cond.class);
+            if (withStorageLocation) {
+                conds.add(Cond.STORED);
+            }
+            if (usePrefix) {
+                conds.add(Cond.PREFIX);
+            }
+            if (useMin) {
+                conds.add(Cond.MIN_BUCKET);
+            }
+            if (useMax) {
+                conds.add(Cond.MAX_BUCKET);
+            }
+            if (after) {
+                conds.add(Cond.AFTER);
             }
-            log.debug("ObsoleteStorageLocationPut: " + sql);
+            if (nullBucket) {
+                conds.add(Cond.NULL_BUCKET);
+            }
+            String sql = getArtifactPageSQL(new QueryVariant(Artifact.class, conds));
+            log.debug("ArtifactPageQuery: " + sql);
             PreparedStatement prep = conn.prepareStatement(sql);
             int col = 1;
-            
-            prep.setString(col++, value.getLocation().getStorageID().toASCIIString());
-            if (value.getLocation().storageBucket != null) {
-                safeSetString(prep, col++, value.getLocation().storageBucket);
-            } else {
-                safeSetString(prep, col++, null);
+            if (usePrefix) {
+                if (withStorageLocation) {
+                    prep.setString(col++, prefix + "%");
+                } else {
+                    col = setURIBucketPrefix(prep, col, prefix);
+                }
             }
-            
-            prep.setTimestamp(col++, new Timestamp(value.getLastModified().getTime()), utc);
-            prep.setString(col++, value.getMetaChecksum().toASCIIString());
-            prep.setObject(col++, value.getID());
-            
+            if (useMin) {
+                prep.setString(col++, minBucket);
+            }
+            if (useMax) {
+                prep.setString(col++, maxBucket);
+            }
+            if (after) {
+                if (withStorageLocation) {
+                    if (!nullBucket) {
+                        prep.setString(col++, lastBucket);
+                    }
+                    prep.setString(col++, lastStorageID);
+                } else {
+                    prep.setTimestamp(col++, new Timestamp(lastModified.getTime()), utc);
+                    prep.setObject(col++, lastID);
+                }
+            }
+            prep.setInt(col++, pageSize);
             return prep;
         }
-        
     }
     
-    private class HarvestStatePut implements EntityPut<HarvestState> {
-        private final Calendar utc = Calendar.getInstance(DateUtil.UTC);
-        private final boolean update;
-        private HarvestState value;
+    private class StorageSiteGet implements EntityGet<StorageSite> {
+        private UUID id;
+        private URI uri;
+
+        @Override
+        public void setID(UUID id) {
+            this.id = id;
+        }
+
+        @Override
+        public StorageSite execute(JdbcTemplate jdbc) {
+            return (StorageSite) jdbc.query(this, new StorageSiteExtractor());
+        }
+
+        @Override
+        public PreparedStatement createPreparedStatement(Connection conn) throws SQLException {
+            if (id == null) {
+                throw new IllegalStateException("primary key is null");
+            }
+            String sql = getEntitySQL(StorageSite.class).selectByID;
+            log.debug("StorageSiteGet: " + sql);
+            PreparedStatement prep = conn.prepareStatement(sql);
+            prep.setObject(1, id);
+            return prep;
+        }
+    }
+
+    private class StorageSiteList implements EntityList<StorageSite> {
+
+        @Override
+        public Set<StorageSite> query(JdbcTemplate jdbc) {
+            List<StorageSite> sites = (List<StorageSite>) jdbc.query(this, new StorageSiteRowMapper());
+            Set<StorageSite> ret = new TreeSet<>();
+            ret.addAll(sites);
+            return ret;
+        }
+
+        @Override
+        public PreparedStatement createPreparedStatement(Connection conn) throws SQLException {
+            String sql = getEntitySQL(StorageSite.class).selectAll;
+            log.debug("StorageSiteList: " + sql);
+            PreparedStatement prep = conn.prepareStatement(sql);
+            return prep;
+        }
+    }
+    
+    private void safeSetString(PreparedStatement prep, int col, String value) throws SQLException {
+        log.debug("safeSetString: " + col + " " + value);
+        if (value != null) {
+            prep.setString(col, value);
+        } else {
+            prep.setNull(col, Types.VARCHAR);
+        }
+    }
+    
+    // lastModified is null before the first upsert: the server assigns it
+    private void safeSetTimestamp(PreparedStatement prep, int col, Date value, Calendar cal) throws SQLException {
+        if (value != null) {
+            prep.setTimestamp(col, new Timestamp(value.getTime()), cal);
+        } else {
+            prep.setNull(col, Types.TIMESTAMP);
+        }
+    }
+    
+    private abstract class AbstractEntityPut<T extends Entity> implements EntityPut<T> {
+        protected final Calendar utc = Calendar.getInstance(DateUtil.UTC);
+        protected final Class entityClass;
+        protected final boolean update;
+        protected T value;
         
-        HarvestStatePut(boolean update) {
+        AbstractEntityPut(Class entityClass, boolean update) {
+            this.entityClass = entityClass;
             this.update = update;
         }
 
         @Override
-        public void setValue(HarvestState value) {
+        public void setValue(T value) {
             this.value = value;
         }
         
@@ -829,72 +1467,280 @@ public class SQLGenerator {
         
         @Override
         public PreparedStatement createPreparedStatement(Connection conn) throws SQLException {
-            String sql = null;
+            String sql = getSQL();
+            log.debug(getClass().getSimpleName() + ": " + sql);
+            PreparedStatement prep = conn.prepareStatement(sql);
+            setParameters(prep, value);
+            return prep;
+        }
+        
+        private String getSQL() {
             if (update) {
-                sql = getUpdateSQL(HarvestState.class);
-                       
-            } else {
-                sql = getInsertSQL(HarvestState.class);
+                return getEntitySQL(entityClass).update;
             }
-            log.debug("HarvestStatePut: " + sql);
-            PreparedStatement prep = conn.prepareStatement(sql);
-            int col = 1;
-            
-            prep.setString(col++, value.getName());
-            prep.setString(col++, value.getResourceID().toASCIIString());
-            if (value.curLastModified != null) {
-                prep.setTimestamp(col++, new Timestamp(value.curLastModified.getTime()), utc);
-            } else {
-                prep.setNull(col++, Types.TIMESTAMP);
+            return getEntitySQL(entityClass).insert;
+        }
+        
+        // bind all columns of one value in column order: same for insert and update
+        abstract void setParameters(PreparedStatement prep, T value) throws SQLException;
+    }
+    
+    private class EntityUpsertImpl<T extends Entity> implements EntityUpsert<T> {
+        private final Calendar utc = Calendar.getInstance(DateUtil.UTC);
+        private final AbstractEntityPut<T> put;
+        private T value;
+        private boolean forceUpdate;
+        
+        EntityUpsertImpl(AbstractEntityPut<T> put) {
+            this.put = put;
+        }
+
+        @Override
+        public void setValue(T value) {
+            this.value = value;
+        }
+
+        @Override
+        public void setForceUpdate(boolean forceUpdate) {
+            this.forceUpdate = forceUpdate;
+        }
+        
+        @Override
+        public boolean execute(JdbcTemplate jdbc) {
+            List<Object[]> rows = jdbc.query(this, new RowMapper<Object[]>() {
+                @Override
+                public Object[] mapRow(ResultSet rs, int i) throws SQLException {
+                    return new Object[] { Util.getDate(rs, 1, utc), rs.getBoolean(2) };
+                }
+            });
+            if (rows.isEmpty()) {
+                // concurrently deleted: nothing written and nothing to report
+                log.debug("EntityUpsert: no result for " + value.getID());
+                return false;
+            }
+            assignLastModified(value, (Date) rows.get(0)[0]);
+            return (Boolean) rows.get(0)[1];
+        }
+        
+        @Override
+        public void execute(JdbcTemplate jdbc, final List<T> values) {
+            if (values.isEmpty()) {
+                return;
             }
+            final EntitySQL esql = getEntitySQL(put.entityClass);
+            log.debug("EntityUpsert: " + esql.upsertBatch + " batch=" + values.size());
+            jdbc.batchUpdate(esql.upsertBatch, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement prep, int i) throws SQLException {
+                    put.setParameters(prep, values.get(i));
+                    prep.setBoolean(esql.numColumns + 1, forceUpdate);
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return values.size();
+                }
+            });
             
-            prep.setTimestamp(col++, new Timestamp(value.getLastModified().getTime()), utc);
-            prep.setString(col++, value.getMetaChecksum().toASCIIString());
+            // a batch cannot return rows: read back lastModified in the same transaction
+            Map<UUID,T> byID = new HashMap<>();
+            for (T v : values) {
+                byID.put(v.getID(), v);
+            }
+            SkeletonListGet get = new SkeletonListGet(put.entityClass);
+            get.setIDs(byID.keySet());
+            for (Entity cur : get.execute(jdbc)) {
+                assignLastModified(byID.get(cur.getID()), cur.getLastModified());
+            }
+        }
+        
+        // an insert or change always produces a value >= the caller-supplied one so this
+        // only skips the unchanged case where the caller supplied a later timestamp
+        private void assignLastModified(T value, Date lastModified) {
+            Date cur = value.getLastModified();
+            if (cur == null || cur.before(lastModified)) {
+                InventoryUtil.assignLastModified(value, lastModified);
+            }
+        }
+
+        @Override
+        public PreparedStatement createPreparedStatement(Connection conn) throws SQLException {
+            EntitySQL esql = getEntitySQL(put.entityClass);
+            String sql = esql.upsert;
+            log.debug("EntityUpsert: " + sql);
+            PreparedStatement prep = conn.prepareStatement(sql);
+            put.setParameters(prep, value);
+            int col = esql.numColumns + 1;
+            prep.setBoolean(col++, forceUpdate);
             prep.setObject(col++, value.getID());
-            
             return prep;
         }
-        
     }
     
-    private class DeletedEventPut implements EntityPut<Entity> {
+    // insert a new entity unless a row with the same PK or logical key exists
+    class EntityInsertIfAbsent<T extends Entity> implements PreparedStatementCreator {
         private final Calendar utc = Calendar.getInstance(DateUtil.UTC);
-        private final boolean update;
-        private Entity value;
+        private final AbstractEntityPut<T> put;
+        private T value;
         
-        DeletedEventPut(boolean update) {
-            this.update = update;
+        EntityInsertIfAbsent(AbstractEntityPut<T> put) {
+            this.put = put;
         }
 
-        @Override
-        public void setValue(Entity value) {
+        void setValue(T value) {
             this.value = value;
         }
         
+        // return true if inserted, false if there was a conflicting row
+        boolean execute(JdbcTemplate jdbc) {
+            List<Date> rows;
+            try {
+                rows = jdbc.query(this, new RowMapper<Date>() {
+                    @Override
+                    public Date mapRow(ResultSet rs, int i) throws SQLException {
+                        return Util.getDate(rs, 1, utc);
+                    }
+                });
+            } catch (DuplicateKeyException ex) {
+                // partitioned Artifact: ON CONFLICT only covers (id, uriBucket) so the same id
+                // in another partition is rejected by the unique id trigger (unique_violation)
+                log.debug("EntityInsertIfAbsent: conflict for " + value.getID() + ": " + ex.getMessage());
+                return false;
+            }
+            if (rows.isEmpty()) {
+                log.debug("EntityInsertIfAbsent: conflict for " + value.getID());
+                return false;
+            }
+            InventoryUtil.assignLastModified(value, rows.get(0));
+            return true;
+        }
+
         @Override
-        public void execute(JdbcTemplate jdbc) {
-            jdbc.update(this);
+        public PreparedStatement createPreparedStatement(Connection conn) throws SQLException {
+            EntitySQL esql = getEntitySQL(put.entityClass);
+            String sql = esql.insertIfAbsent;
+            log.debug("EntityInsertIfAbsent: " + sql);
+            PreparedStatement prep = conn.prepareStatement(sql);
+            put.setParameters(prep, value);
+            return prep;
         }
+    }
+    
+    private class ArtifactPut extends AbstractEntityPut<Artifact> {
         
+        ArtifactPut(boolean update) {
+            super(Artifact.class, update);
+        }
+
         @Override
-        public PreparedStatement createPreparedStatement(Connection conn) throws SQLException {
-            String sql = null;
-            if (update) {
-                sql = getUpdateSQL(value.getClass());
-                       
+        void setParameters(PreparedStatement prep, Artifact value) throws SQLException {
+            int col = 1;
+            prep.setString(col++, value.getURI().toASCIIString());
+            prep.setString(col++, value.getBucket());
+            prep.setBytes(col++, ChecksumCodec.encode(value.getContentChecksum()));
+            prep.setTimestamp(col++, new Timestamp(value.getContentLastModified().getTime()), utc);
+            prep.setLong(col++, value.getContentLength());
+            safeSetString(prep, col++, value.contentType);
+            safeSetString(prep, col++, value.contentEncoding);
+            
+            if (!value.siteLocations.isEmpty()) {
+                java.sql.Array arr = prep.getConnection().createArrayOf("uuid", value.getSiteIDs());
+                prep.setObject(col++, arr);
             } else {
-                sql = getInsertSQL(value.getClass());
+                prep.setObject(col++, null); // siteLocations uuid[]
             }
-            log.debug("DeletedEventPut: " + sql);
-            PreparedStatement prep = conn.prepareStatement(sql);
+            if (value.storageLocation != null) {
+                prep.setString(col++, value.storageLocation.getStorageID().toASCIIString());
+                safeSetString(prep, col++, value.storageLocation.storageBucket);
+            } else {
+                prep.setNull(col++, Types.VARCHAR); // storageLocation.storageID
+                prep.setNull(col++, Types.VARCHAR); // storageLocation.storageBucket
+            }
+            
+            safeSetTimestamp(prep, col++, value.getLastModified(), utc);
+            prep.setBytes(col++, ChecksumCodec.encode(value.getMetaChecksum()));
+            prep.setObject(col++, value.getID());
+        }
+    }
+
+    private class StorageSitePut extends AbstractEntityPut<StorageSite> {
+        
+        StorageSitePut(boolean update) {
+            super(StorageSite.class, update);
+        }
+
+        @Override
+        void setParameters(PreparedStatement prep, StorageSite value) throws SQLException {
             int col = 1;
-            prep.setTimestamp(col++, new Timestamp(value.getLastModified().getTime()), utc);
+            prep.setString(col++, value.getResourceID().toASCIIString());
+            prep.setString(col++, value.getName());
+            
+            safeSetTimestamp(prep, col++, value.getLastModified(), utc);
             prep.setString(col++, value.getMetaChecksum().toASCIIString());
             prep.setObject(col++, value.getID());
+        }
+    }
+    
+    private class ObsoleteStorageLocationPut extends AbstractEntityPut<ObsoleteStorageLocation> {
+        
+        ObsoleteStorageLocationPut(boolean update) {
+            super(ObsoleteStorageLocation.class, update);
+        }
+
+        @Override
+        void setParameters(PreparedStatement prep, ObsoleteStorageLocation value) throws SQLException {
+            int col = 1;
             
-            return prep;
+            prep.setString(col++, value.getLocation().getStorageID().toASCIIString());
+            if (value.getLocation().storageBucket != null) {
+                safeSetString(prep, col++, value.getLocation().storageBucket);
+            } else {
+                safeSetString(prep, col++, null);
+            }
+            
+            safeSetTimestamp(prep, col++, value.getLastModified(), utc);
+            prep.setString(col++, value.getMetaChecksum().toASCIIString());
+            prep.setObject(col++, value.getID());
         }
+    }
+    
+    private class HarvestStatePut extends AbstractEntityPut<HarvestState> {
+        
+        HarvestStatePut(boolean update) {
+            super(HarvestState.class, update);
+        }
+
+        @Override
+        void setParameters(PreparedStatement prep, HarvestState value) throws SQLException {
+            int col = 1;
+            
+            prep.setString(col++, value.getName());
+            prep.setString(col++, value.getResourceID().toASCIIString());
+            if (value.curLastModified != null) {
+                prep.setTimestamp(col++, new Timestamp(value.curLastModified.getTime()), utc);
+            } else {
+                prep.setNull(col++, Types.TIMESTAMP);
+            }
+            
+            safeSetTimestamp(prep, col++, value.getLastModified(), utc);
+            prep.setString(col++, value.getMetaChecksum().toASCIIString());
+            prep.setObject(col++, value.getID());
+        }
+    }
+    
+    private class DeletedEventPut extends AbstractEntityPut<Entity> {
         
+        DeletedEventPut(Class entityClass, boolean update) {
+            super(entityClass, update);
+        }
+
+        @Override
+        void setParameters(PreparedStatement prep, Entity value) throws SQLException {
+            int col = 1;
+            safeSetTimestamp(prep, col++, value.getLastModified(), utc);
+            prep.setString(col++, value.getMetaChecksum().toASCIIString());
+            prep.setObject(col++, value.getID());
+        }
     }
 
     private class EntityDeleteImpl implements EntityDelete {
@@ -917,7 +1763,7 @@ public class SQLGenerator {
 
         @Override
         public PreparedStatement createPreparedStatement(Connection conn) throws SQLException {
-            String sql = getDeleteSQL(entityClass);
+            String sql = getEntitySQL(entityClass).delete;
             log.debug("EntityDeleteImpl: " + sql);
             PreparedStatement prep = conn.prepareStatement(sql);
             prep.setObject(1, id);
@@ -925,28 +1771,326 @@ public class SQLGenerator {
         }
     }
     
-    private StringBuilder getSelectFromSQL(Class c, boolean entityCols) {
-        String tab = tableMap.get(c);
-        String[] cols = columnMap.get(c);
-        if (entityCols) {
-            cols = columnMap.get(Entity.class);
+    // get skeletons for a set of entities in one query
+    class SkeletonListGet implements PreparedStatementCreator {
+        private final Class entityClass;
+        private Collection<UUID> ids;
+        
+        SkeletonListGet(Class entityClass) {
+            this.entityClass = entityClass;
+        }
+        
+        public void setIDs(Collection<UUID> ids) {
+            this.ids = ids;
+        }
+        
+        public List<Entity> execute(JdbcTemplate jdbc) {
+            return jdbc.query(this, new SkeletonEntityRowMapper(entityClass));
+        }
+
+        @Override
+        public PreparedStatement createPreparedStatement(Connection conn) throws SQLException {
+            String sql = getEntitySQL(entityClass).skeletonByIDs;
+            log.debug("SkeletonListGet: " + sql + " n=" + ids.size());
+            PreparedStatement prep = conn.prepareStatement(sql);
+            setIDArray(prep, 1, ids);
+            return prep;
+        }
+    }
+    
+    // lock rows in primary key order so concurrent list locks cannot deadlock
+    class EntityListLock implements PreparedStatementCreator {
+        private final Class entityClass;
+        private Collection<UUID> ids;
+        
+        EntityListLock(Class entityClass) {
+            this.entityClass = entityClass;
+        }
+        
+        public void setIDs(Collection<UUID> ids) {
+            this.ids = ids;
+        }
+        
+        /**
+         * @param jdbc template to execute with
+         * @return the IDs that were found and locked
+         */
+        public List<UUID> execute(JdbcTemplate jdbc) {
+            return jdbc.query(this, new RowMapper<UUID>() {
+                @Override
+                public UUID mapRow(ResultSet rs, int i) throws SQLException {
+                    return Util.getUUID(rs, 1);
+                }
+            });
+        }
+
+        @Override
+        public PreparedStatement createPreparedStatement(Connection conn) throws SQLException {
+            String sql = getEntitySQL(entityClass).lockByIDs;
+            log.debug("EntityListLock: " + sql + " n=" + ids.size());
+            PreparedStatement prep = conn.prepareStatement(sql);
+            setIDArray(prep, 1, ids);
+            return prep;
+        }
+    }
+    
+    // IDs of artifacts modified or deleted since a point in time
+    class ArtifactChangeQuery implements PreparedStatementCreator {
+        private final Calendar utc = Calendar.getInstance(DateUtil.UTC);
+        private Date since;
+        
+        public void setSince(Date since) {
+            this.since = since;
+        }
+        
+        public List<UUID> execute(JdbcTemplate jdbc) {
+            return jdbc.query(this, new RowMapper<UUID>() {
+                @Override
+                public UUID mapRow(ResultSet rs, int i) throws SQLException {
+                    return Util.getUUID(rs, 1);
+                }
+            });
+        }
+
+        @Override
+        public PreparedStatement createPreparedStatement(Connection conn) throws SQLException {
+            String sql = artifactChangedSQL;
+            log.debug("ArtifactChangeQuery: " + sql + " since=" + since);
+            PreparedStatement prep = conn.prepareStatement(sql);
+            Timestamp ts = new Timestamp(since.getTime());
+            prep.setTimestamp(1, ts, utc);
+            prep.setTimestamp(2, ts, utc);
+            return prep;
+        }
+    }
+    
+    class EntityListDelete implements PreparedStatementCreator {
+        private final Class entityClass;
+        private Collection<UUID> ids;
+        
+        EntityListDelete(Class entityClass) {
+            this.entityClass = entityClass;
+        }
+        
+        public void setIDs(Collection<UUID> ids) {
+            this.ids = ids;
+        }
+        
+        /**
+         * @param jdbc template to execute with
+         * @return number of rows deleted
+         */
+        public int execute(JdbcTemplate jdbc) {
+            return jdbc.update(this);
+        }
+
+        @Override
+        public PreparedStatement createPreparedStatement(Connection conn) throws SQLException {
+            String sql = getEntitySQL(entityClass).deleteByIDs;
+            log.debug("EntityListDelete: " + sql + " n=" + ids.size());
+            PreparedStatement prep = conn.prepareStatement(sql);
+            setIDArray(prep, 1, ids);
+            return prep;
+        }
+    }
+    
+    // bind URI_BUCKET_PREFIX_SQL and return the next column
+    private static int setURIBucketPrefix(PreparedStatement prep, int col, String prefix) throws SQLException {
+        prep.setString(col++, prefix + "%");
+        prep.setString(col++, prefix);
+        prep.setString(col++, prefix + "g");
+        return col;
+    }
+    
+    private static void setIDArray(PreparedStatement prep, int col, Collection<UUID> ids) throws SQLException {
+        UUID[] arr = ids.toArray(new UUID[ids.size()]);
+        prep.setArray(col, prep.getConnection().createArrayOf("uuid", arr));
+    }
+    
+    private StringBuilder getSelectFromSQL(Class c, boolean entityCols) {
+        String tab = tableMap.get(c);
+        String[] cols = columnMap.get(c);
+        if (entityCols) {
+            cols = columnMap.get(Entity.class);
+        }
+        if (tab == null || cols == null) {
+            throw new IllegalArgumentException("BUG: no table/columns for class " + c.getName());
+        }
+        
+        StringBuilder sb = new StringBuilder();
+        sb.append("SELECT ");
+        for (int i = 0; i < cols.length; i++) {
+            sb.append(cols[i]);
+            if (i < cols.length - 1) {
+                sb.append(",");
+            }
+        }
+        sb.append(" FROM ");
+        sb.append(tab);
+        
+        return sb;
+    }
+    
+    private String getArtifactIteratorSQL(boolean withStorageLocation, boolean withPrefix) {
+        StringBuilder sb = getSelectFromSQL(Artifact.class, false);
+        sb.append(" WHERE ");
+        
+        if (withStorageLocation) {
+            if (withPrefix) {
+                sb.append("storageLocation_storageBucket LIKE ? AND");
+            }
+            sb.append(" storageLocation_storageID IS NOT NULL");
+        
+            // NOTE: StorageLocation.compare() specifies the correct order
+            // null storageBucket to come after non-null
+            // postgresql: the default order is equivalent to explicitly specifying ASC NULLS LAST
+            // default behaviour may not be db-agnostic
+            sb.append(" ORDER BY storageLocation_storageBucket, storageLocation_storageID");
+        } else {
+            if (withPrefix) {
+                sb.append(URI_BUCKET_PREFIX_SQL).append(" AND");
+            }
+            sb.append(" storageLocation_storageID IS NULL");
+            sb.append(" ORDER BY lastModified");
+        }
+        return sb.toString();
+    }
+    
+    // single statement add/remove of one site ID; the condition makes it a no-op if there is
+    // no change and multi-artifact updates lock rows in id order so they cannot deadlock
+    private String getSiteLocationSQL(boolean add, boolean multi) {
+        String tab = tableMap.get(Artifact.class);
+        String cond;
+        StringBuilder sb = new StringBuilder();
+        sb.append("UPDATE ").append(tab).append(" SET siteLocations = ");
+        if (add) {
+            sb.append("array_append(siteLocations, ?)");
+            cond = "(siteLocations IS NULL OR NOT (? = ANY(siteLocations)))";
+        } else {
+            // empty array is stored as null
+            sb.append("NULLIF(array_remove(siteLocations, ?), '{}')");
+            cond = "? = ANY(siteLocations)";
+        }
+        if (multi) {
+            sb.append(" WHERE id IN (SELECT id FROM ").append(tab).append(" WHERE id = ANY(?) AND ").append(cond);
+            sb.append(" ORDER BY id FOR UPDATE)");
+        } else {
+            sb.append(" WHERE id = ?");
+        }
+        sb.append(" AND ").append(cond);
+        return sb.toString();
+    }
+    
+    // data-modifying CTE: delete artifacts (rows locked in id order so concurrent bulk deletes
+    // cannot deadlock) and insert a DeletedArtifactEvent for each deleted row; conditional: an 
+    // artifact is only deleted if metaChecksum, lastModified, and storage location are unchanged
+    // (compare-and-set) and the given ObsoleteStorageLocation(s) are inserted for deleted rows
+    private String getArtifactBulkDeleteSQL(boolean conditional) {
+        String tab = tableMap.get(Artifact.class);
+        StringBuilder sb = new StringBuilder();
+        sb.append("WITH x AS (SELECT * FROM unnest(CAST(? AS uuid[]), CAST(? AS varchar[])");
+        if (conditional) {
+            sb.append(", CAST(? AS varchar[]), CAST(? AS bigint[]), CAST(? AS varchar[]), CAST(? AS varchar[])");
+            sb.append(", CAST(? AS uuid[]), CAST(? AS varchar[])");
         }
-        if (tab == null || cols == null) {
-            throw new IllegalArgumentException("BUG: no table/columns for class " + c.getName());
+        sb.append(") AS t(id, eventChecksum");
+        if (conditional) {
+            sb.append(", metaChecksum, lastModified, storageID, storageBucket, oslID, oslChecksum");
         }
+        sb.append("))");
         
-        StringBuilder sb = new StringBuilder();
-        sb.append("SELECT ");
-        for (int i = 0; i < cols.length; i++) {
-            sb.append(cols[i]);
-            if (i < cols.length - 1) {
-                sb.append(",");
+        sb.append(", d AS (DELETE FROM ").append(tab).append(" a USING x WHERE a.id = x.id");
+        if (conditional) {
+            sb.append(" AND a.metaChecksum = decode(x.metaChecksum, 'hex')");
+            sb.append(" AND a.lastModified = TIMESTAMP '1970-01-01' + x.lastModified * INTERVAL '1 millisecond'");
+            sb.append(" AND a.storageLocation_storageID IS NOT DISTINCT FROM x.storageID");
+            sb.append(" AND a.storageLocation_storageBucket IS NOT DISTINCT FROM x.storageBucket");
+        }
+        sb.append(" AND a.id IN (SELECT id FROM ").append(tab);
+        sb.append(" WHERE id IN (SELECT id FROM x) ORDER BY id FOR UPDATE)");
+        sb.append(" RETURNING a.id, a.storageLocation_storageID, a.storageLocation_storageBucket)");
+        
+        sb.append(", e AS (INSERT INTO ").append(tableMap.get(DeletedArtifactEvent.class));
+        sb.append(" (lastModified, metaChecksum, id) SELECT ").append(NOW_UTC);
+        sb.append(", x.eventChecksum, x.id FROM x JOIN d ON x.id = d.id");
+        sb.append(" ON CONFLICT (id) DO NOTHING)");
+        
+        if (conditional) {
+            // location already obsolete: keep the existing record
+            sb.append(", o AS (INSERT INTO ").append(tableMap.get(ObsoleteStorageLocation.class));
+            sb.append(" (location_storageID, location_storageBucket, lastModified, metaChecksum, id)");
+            sb.append(" SELECT d.storageLocation_storageID, d.storageLocation_storageBucket, ").append(NOW_UTC);
+            sb.append(", x.oslChecksum, x.oslID FROM x JOIN d ON x.id = d.id");
+            sb.append(" WHERE d.storageLocation_storageID IS NOT NULL AND x.oslID IS NOT NULL");
+            sb.append(" ON CONFLICT DO NOTHING)");
+        }
+        sb.append(" SELECT id FROM d");
+        return sb.toString();
+    }
+    
+    private String buildModifiedSQL(QueryVariant v) {
+        StringBuilder sb = getSelectFromSQL(v.entityClass, false);
+        List<String> cond = new ArrayList<>();
+        if (v.has(Cond.AFTER_TIME)) {
+            cond.add("lastModified > ?");
+        } else if (v.has(Cond.AFTER)) {
+            cond.add("(lastModified, id) > (?, ?)");
+        }
+        if (v.has(Cond.END)) {
+            cond.add("lastModified <= ?");
+        }
+        if (v.has(Cond.MIN_BUCKET)) {
+            cond.add("uriBucket >= ?");
+        }
+        if (v.has(Cond.MAX_BUCKET)) {
+            cond.add("uriBucket < ?");
+        }
+        for (int i = 0; i < cond.size(); i++) {
+            sb.append(i == 0 ? " WHERE " : " AND ").append(cond.get(i));
+        }
+        sb.append(" ORDER BY lastModified, id");
+        return sb.toString();
+    }
+    
+    private String buildArtifactPageSQL(QueryVariant v) {
+        final boolean after = v.has(Cond.AFTER);
+        StringBuilder sb = getSelectFromSQL(Artifact.class, false);
+        sb.append(" WHERE ");
+        if (v.has(Cond.STORED)) {
+            if (v.has(Cond.NULL_BUCKET)) {
+                sb.append("storageLocation_storageBucket IS NULL AND storageLocation_storageID IS NOT NULL");
+                if (after) {
+                    sb.append(" AND storageLocation_storageID > ?");
+                }
+                sb.append(" ORDER BY storageLocation_storageID");
+            } else {
+                if (v.has(Cond.PREFIX)) {
+                    sb.append("storageLocation_storageBucket LIKE ? AND ");
+                }
+                if (v.has(Cond.MIN_BUCKET)) {
+                    sb.append("storageLocation_storageBucket >= ? AND ");
+                }
+                if (v.has(Cond.MAX_BUCKET)) {
+                    sb.append("storageLocation_storageBucket < ? AND ");
+                }
+                sb.append("storageLocation_storageBucket IS NOT NULL AND storageLocation_storageID IS NOT NULL");
+                if (after) {
+                    sb.append(" AND (storageLocation_storageBucket, storageLocation_storageID) > (?, ?)");
+                }
+                sb.append(" ORDER BY storageLocation_storageBucket, storageLocation_storageID");
+            }
+        } else {
+            if (v.has(Cond.PREFIX)) {
+                sb.append(URI_BUCKET_PREFIX_SQL).append(" AND ");
+            }
+            sb.append("storageLocation_storageID IS NULL");
+            if (after) {
+                sb.append(" AND (lastModified, id) > (?, ?)");
             }
+            sb.append(" ORDER BY lastModified, id");
         }
-        sb.append(" FROM ");
-        sb.append(tab);
-        
-        return sb;
+        sb.append(" LIMIT ?");
+        return sb.toString();
     }
     
     private String getLockSQL(Class c) {
@@ -1002,6 +2146,148 @@ public class SQLGenerator {
         return sb.toString();
     }
     
+    // insert or update in one statement; the second SELECT returns the current row when the
+    // update was skipped because nothing changed so the caller always gets lastModified back
+    // millisecond precision to match timestamps written from java.util.Date
+    private static final String NOW_UTC = "date_trunc('milliseconds', now() AT TIME ZONE 'UTC')";
+    
+    private String getUpsertSQL(Class c) {
+        String tab = tableMap.get(c);
+        String pk = getKeyColumn(c, true);
+        StringBuilder sb = new StringBuilder();
+        sb.append("WITH ups AS (").append(getUpsertWriteSQL(c));
+        sb.append(" RETURNING lastModified, true)");
+        sb.append(" SELECT * FROM ups UNION ALL SELECT lastModified, false FROM ").append(tab);
+        sb.append(" WHERE ").append(pk).append(" = ? AND NOT EXISTS (SELECT 1 FROM ups)");
+        return sb.toString();
+    }
+    
+    // the write part of the upsert, also used on its own for batch put
+    private String getUpsertWriteSQL(Class c) {
+        String tab = tableMap.get(c);
+        String[] cols = columnMap.get(c);
+        StringBuilder sb = new StringBuilder();
+        sb.append("INSERT INTO ").append(tab).append(" AS cur (");
+        appendColumns(sb, cols, null);
+        sb.append(") VALUES (");
+        for (int i = 0; i < cols.length; i++) {
+            if (i > 0) {
+                sb.append(",");
+            }
+            if ("lastModified".equals(cols[i])) {
+                sb.append("GREATEST(CAST(? AS timestamp), ").append(NOW_UTC).append(")");
+            } else {
+                sb.append("?");
+            }
+        }
+        sb.append(")");
+        appendOnConflictUpdate(sb, c);
+        sb.append(" WHERE ? OR cur.metaChecksum IS DISTINCT FROM EXCLUDED.metaChecksum");
+        return sb.toString();
+    }
+    
+    // insert with the same lastModified rule as upsert; no row returned on any unique conflict
+    private String getInsertIfAbsentSQL(Class c) {
+        String tab = tableMap.get(c);
+        String[] cols = columnMap.get(c);
+        StringBuilder sb = new StringBuilder();
+        sb.append("INSERT INTO ").append(tab).append(" (");
+        appendColumns(sb, cols, null);
+        sb.append(") VALUES (");
+        for (int i = 0; i < cols.length; i++) {
+            if (i > 0) {
+                sb.append(",");
+            }
+            if ("lastModified".equals(cols[i])) {
+                sb.append("GREATEST(CAST(? AS timestamp), ").append(NOW_UTC).append(")");
+            } else {
+                sb.append("?");
+            }
+        }
+        sb.append(") ON CONFLICT DO NOTHING RETURNING lastModified");
+        return sb.toString();
+    }
+    
+    // insert into c AS cur ... ON CONFLICT: only advance lastModified and never go backwards
+    private void appendOnConflictUpdate(StringBuilder sb, Class c) {
+        String[] cols = columnMap.get(c);
+        sb.append(" ON CONFLICT (").append(getConflictColumns(c)).append(") DO UPDATE SET ");
+        for (int i = 0; i < cols.length - 1; i++) { // PK is last
+            if (i > 0) {
+                sb.append(",");
+            }
+            sb.append(cols[i]).append(" = ");
+            if ("lastModified".equals(cols[i])) {
+                sb.append("GREATEST(EXCLUDED.lastModified, cur.lastModified)");
+            } else {
+                sb.append("EXCLUDED.").append(cols[i]);
+            }
+        }
+    }
+    
+    // unique constraints on a partitioned table include the partition key: the same id with
+    // a different uriBucket does not conflict here and is rejected by the artifact_unique_id
+    // trigger (see inventory.Artifact-partitioned.sql)
+    private String getConflictColumns(Class c) {
+        String pk = getKeyColumn(c, true);
+        if (partitioned && Artifact.class.equals(c)) {
+            return pk + ", uriBucket";
+        }
+        return pk;
+    }
+    
+    private void appendColumns(StringBuilder sb, String[] cols, String alias) {
+        for (int i = 0; i < cols.length; i++) {
+            if (i > 0) {
+                sb.append(",");
+            }
+            if (alias != null) {
+                sb.append(alias).append(".");
+            }
+            sb.append(cols[i]);
+        }
+    }
+    
+    // bulk load: temporary staging table with the same columns as the target table
+    private String getStageTable(Class c) {
+        return "bulk_" + c.getSimpleName();
+    }
+    
+    private String getCopyInSQL(Class c) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("COPY ").append(getStageTable(c)).append(" (");
+        appendColumns(sb, columnMap.get(c), null);
+        sb.append(") FROM STDIN WITH (FORMAT binary)");
+        return sb.toString();
+    }
+    
+    // same rules as the single entity upsert; immutable event rows are never updated
+    private String buildBulkMergeSQL(Class c) {
+        String[] cols = columnMap.get(c);
+        StringBuilder sb = new StringBuilder();
+        sb.append("INSERT INTO ").append(tableMap.get(c)).append(" AS cur (");
+        appendColumns(sb, cols, null);
+        sb.append(") SELECT ");
+        for (int i = 0; i < cols.length; i++) {
+            if (i > 0) {
+                sb.append(",");
+            }
+            if ("lastModified".equals(cols[i])) {
+                sb.append("GREATEST(s.lastModified, ").append(NOW_UTC).append(")");
+            } else {
+                sb.append("s.").append(cols[i]);
+            }
+        }
+        sb.append(" FROM ").append(getStageTable(c)).append(" s");
+        if (DeletedArtifactEvent.class.equals(c) || DeletedStorageLocationEvent.class.equals(c)) {
+            sb.append(" ON CONFLICT (").append(getKeyColumn(c, true)).append(") DO NOTHING");
+        } else {
+            appendOnConflictUpdate(sb, c);
+            sb.append(" WHERE cur.metaChecksum IS DISTINCT FROM EXCLUDED.metaChecksum");
+        }
+        return sb.toString();
+    }
+    
     private String getDeleteSQL(Class c) {
         StringBuilder sb = new StringBuilder();
         sb.append("DELETE FROM ");
@@ -1030,16 +2316,37 @@ public class SQLGenerator {
     
     private class SkeletonEntityExtractor implements ResultSetExtractor {
 
-        final Calendar utc = Calendar.getInstance(DateUtil.UTC);
+        private final SkeletonEntityRowMapper mapper;
+        
+        SkeletonEntityExtractor(Class entityClass) {
+            this.mapper = new SkeletonEntityRowMapper(entityClass);
+        }
         
         @Override
         public Object extractData(ResultSet rs) throws SQLException, DataAccessException {
             if (!rs.next()) {
                 return null;
             }
+            return mapper.mapRow(rs, 1);
+        }
+    }
+    
+    private class SkeletonEntityRowMapper implements RowMapper<Entity> {
+
+        final Calendar utc = Calendar.getInstance(DateUtil.UTC);
+        
+        // only the Artifact checksum columns are bytea
+        private final boolean encodedChecksum;
+        
+        SkeletonEntityRowMapper(Class entityClass) {
+            this.encodedChecksum = Artifact.class.equals(entityClass);
+        }
+        
+        @Override
+        public Entity mapRow(ResultSet rs, int i) throws SQLException {
             int col = 1;
             final Date lastModified = Util.getDate(rs, col++, utc);
-            final URI metaChecksum = Util.getURI(rs, col++);
+            final URI metaChecksum = (encodedChecksum ? Util.getEncodedChecksum(rs, col++) : Util.getURI(rs, col++));
             final UUID id = Util.getUUID(rs, col++);
             
             Entity ret = new SkeletonEntity(id);
@@ -1124,11 +2431,186 @@ public class SQLGenerator {
         }
     }
     
+    // streaming iterator that owns the connection: rollback the read-only transaction and close when done
+    private class EntityResultSetIterator implements ResourceIterator<Entity> {
+        final Calendar utc = Calendar.getInstance(DateUtil.UTC);
+        private final Connection con;
+        private final ResultSet rs;
+        private final Class entityClass;
+        boolean hasRow;
+        
+        EntityResultSetIterator(Connection con, ResultSet rs, Class entityClass) throws SQLException {
+            this.con = con;
+            this.rs = rs;
+            this.entityClass = entityClass;
+            hasRow = rs.next();
+            log.debug("EntityResultSetIterator: " + super.toString() + " ctor " + hasRow);
+            if (!hasRow) {
+                release();
+            }
+        }
+        
+        private void release() {
+            log.debug("EntityResultSetIterator: " + super.toString() + " release connection");
+            hasRow = false;
+            try {
+                con.rollback();
+                con.setAutoCommit(true);
+            } catch (SQLException ex) {
+                log.debug("EntityResultSetIterator: failed to end transaction: " + ex);
+            } finally {
+                try {
+                    con.close();
+                } catch (SQLException ex) {
+                    log.debug("EntityResultSetIterator: failed to close connection: " + ex);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (hasRow) {
+                release();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return hasRow;
+        }
+
+        @Override
+        public Entity next() {
+            if (!hasRow) {
+                throw new NoSuchElementException();
+            }
+            try {
+                Entity ret;
+                if (Artifact.class.equals(entityClass)) {
+                    ret = mapRowToArtifact(rs, utc);
+                } else {
+                    ret = mapRowToDeletedEvent(entityClass, rs, utc);
+                }
+                hasRow = rs.next();
+                if (!hasRow) {
+                    release();
+                }
+                return ret;
+            } catch (SQLException ex) {
+                release();
+                throw new RuntimeException("BUG: modified iterator query failed while iterating", ex);
+            }
+        }
+    }
+    
+    private Entity mapRowToDeletedEvent(Class c, ResultSet rs, Calendar utc) throws SQLException {
+        int col = 1;
+        final Date lastModified = Util.getDate(rs, col++, utc);
+        final URI metaChecksum = Util.getURI(rs, col++);
+        final UUID id = Util.getUUID(rs, col++);
+        
+        Entity ret;
+        if (DeletedArtifactEvent.class.equals(c)) {
+            ret = new DeletedArtifactEvent(id);
+        } else {
+            ret = new DeletedStorageLocationEvent(id);
+        }
+        InventoryUtil.assignLastModified(ret, lastModified);
+        InventoryUtil.assignMetaChecksum(ret, metaChecksum);
+        return ret;
+    }
+    
+    private class ArtifactBatchResultSetIterator implements ResourceIterator<ArtifactBatch> {
+        final Calendar utc = Calendar.getInstance(DateUtil.UTC);
+        private final Connection con;
+        private final ResultSet rs;
+        private final ArtifactBatch batch;
+        boolean hasRow;
+        
+        ArtifactBatchResultSetIterator(Connection con, ResultSet rs, ArtifactBatch batch) throws SQLException {
+            this.con = con;
+            this.rs = rs;
+            this.batch = batch;
+            hasRow = rs.next();
+            log.debug("ArtifactBatchResultSetIterator: " + super.toString() + " ctor " + hasRow);
+            if (!hasRow) {
+                log.debug("ArtifactBatchResultSetIterator:  " + super.toString() + " ctor - setAutoCommit(true)");
+                con.setAutoCommit(true);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (hasRow) {
+                log.debug("ArtifactBatchResultSetIterator:  " + super.toString() + " close - setAutoCommit(true)");
+                try {
+                    con.setAutoCommit(true);
+                    hasRow = false;
+                } catch (SQLException ex) {
+                    throw new RuntimeException("BUG: artifact list query failed during close()", ex);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return hasRow;
+        }
+
+        @Override
+        public ArtifactBatch next() {
+            try {
+                batch.clear();
+                while (hasRow && !batch.isFull()) {
+                    mapRowToBatch(rs, utc, batch);
+                    hasRow = rs.next();
+                }
+                if (!hasRow) {
+                    log.debug("ArtifactBatchResultSetIterator:  " + super.toString() + " DONE - setAutoCommit(true)");
+                    con.setAutoCommit(true);
+                }
+                return batch;
+            } catch (Exception ex) {
+                if (hasRow) {
+                    log.debug("ArtifactBatchResultSetIterator:  " + super.toString() + " ResultSet.next() FAILED - setAutoCommit(true)");
+                    try {
+                        close();
+                        hasRow = false;
+                    } catch (IOException unexpected) {
+                        log.debug("BUG: unexpected IOException from close", unexpected);
+                    }
+                }
+                throw new RuntimeException("BUG: artifact list query failed while iterating", ex);
+            }
+        }
+    }
+    
+    // same columns as mapRowToArtifact: values go directly into the batch columns
+    private void mapRowToBatch(ResultSet rs, Calendar utc, ArtifactBatch batch) throws SQLException {
+        int col = 1;
+        final String uri = rs.getString(col++);
+        final String uriBucket = rs.getString(col++);
+        final String contentChecksum = ChecksumCodec.decodeString(rs.getBytes(col++));
+        final Timestamp contentLastModified = rs.getTimestamp(col++, utc);
+        final long contentLength = rs.getLong(col++);
+        final String contentType = rs.getString(col++);
+        final String contentEncoding = rs.getString(col++);
+        final UUID[] siteLocs = Util.getUUIDArray(rs, col++);
+        final String storLoc = rs.getString(col++);
+        final String storBucket = rs.getString(col++);
+        final Timestamp lastModified = rs.getTimestamp(col++, utc);
+        final String metaChecksum = ChecksumCodec.decodeString(rs.getBytes(col++));
+        final UUID id = Util.getUUID(rs, col++);
+        
+        batch.add(id, uri, uriBucket, contentChecksum, contentLastModified.getTime(), contentLength, 
+            contentType, contentEncoding, siteLocs, storLoc, storBucket, lastModified.getTime(), metaChecksum);
+    }
+    
     private Artifact mapRowToArtifact(ResultSet rs, Calendar utc) throws SQLException {
         int col = 1;
         final URI uri = Util.getURI(rs, col++);
-        col++; // uriBucket
-        final URI contentChecksum = Util.getURI(rs, col++);
+        final String uriBucket = rs.getString(col++);
+        final URI contentChecksum = Util.getEncodedChecksum(rs, col++);
         final Date contentLastModified = Util.getDate(rs, col++, utc);
         final Long contentLength = Util.getLong(rs, col++);
         final String contentType = rs.getString(col++);
@@ -1137,17 +2619,14 @@ public class SQLGenerator {
         final URI storLoc = Util.getURI(rs, col++);
         final String storBucket = rs.getString(col++);
         final Date lastModified = Util.getDate(rs, col++, utc);
-        final URI metaChecksum = Util.getURI(rs, col++);
+        final URI metaChecksum = Util.getEncodedChecksum(rs, col++);
         final UUID id = Util.getUUID(rs, col++);
 
-        Artifact a = new Artifact(id, uri, contentChecksum, contentLastModified, contentLength);
+        // values were validated before they were stored
+        Artifact a = InventoryUtil.reconstructArtifact(id, uri, uriBucket, contentChecksum, contentLastModified, contentLength);
         a.contentType = contentType;
         a.contentEncoding = contentEncoding;
-        if (siteLocs != null && siteLocs.length > 0) {
-            for (UUID s: siteLocs) {
-                a.siteLocations.add(new SiteLocation(s));
-            }
-        }
+        a.setSiteIDs(siteLocs);
         if (storLoc != null) {
             a.storageLocation = new StorageLocation(storLoc);
             a.storageLocation.storageBucket = storBucket;
@@ -164,6 +164,27 @@ public class Util {
         //throw new UnsupportedOperationException("converting " + o.getClass().getName() + " " + o + " to URI");
     }
 
+    /**
+     * Get a checksum URI from a bytea column (see ChecksumCodec).
+     *
+     * @param rs result set
+     * @param col column index
+     * @return checksum URI or null
+     * @throws SQLException failure to get value
+     */
+    public static URI getEncodedChecksum(ResultSet rs, int col)
+            throws SQLException {
+        byte[] b = rs.getBytes(col);
+        if (b == null) {
+            return null;
+        }
+        try {
+            return ChecksumCodec.decode(b);
+        } catch (Throwable t) {
+            throw new UnsupportedOperationException("converting bytea(" + b.length + ") to checksum URI", t);
+        }
+    }
+
     public static Object getObject(ResultSet rs, int col)
             throws SQLException {
         Object obj = rs.getObject(col);
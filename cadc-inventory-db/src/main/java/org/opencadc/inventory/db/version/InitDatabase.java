@@ -67,9 +67,14 @@
 
 package org.opencadc.inventory.db.version;
 
+import ca.nrc.cadc.db.DatabaseTransactionManager;
+import ca.nrc.cadc.db.TransactionManager;
+import java.io.IOException;
 import java.net.URL;
+import java.util.List;
 import javax.sql.DataSource;
 import org.apache.log4j.Logger;
+import org.springframework.jdbc.core.JdbcTemplate;
 
 /**
  *
@@ -79,8 +84,8 @@ public class InitDatabase extends ca.nrc.cadc.db.version.InitDatabase {
     private static final Logger log = Logger.getLogger(InitDatabase.class);
     
     public static final String MODEL_NAME = "storage-inventory";
-    public static final String MODEL_VERSION = "0.8";
-    public static final String PREV_MODEL_VERSION = "0.7";
+    public static final String MODEL_VERSION = "0.10";
+    public static final String PREV_MODEL_VERSION = "0.9";
     //public static final String PREV_MODEL_VERSION = "DO-NOT_UPGRADE-BY-ACCIDENT";
 
     static String[] CREATE_SQL = new String[] {
@@ -91,18 +96,44 @@ public class InitDatabase extends ca.nrc.cadc.db.version.InitDatabase {
         "inventory.DeletedArtifactEvent.sql",
         "inventory.DeletedStorageLocationEvent.sql",
         "inventory.HarvestState.sql",
+        "inventory.views.sql",
         "inventory.permissions.sql"
     };
     
     static String[] UPGRADE_SQL = new String[] {
-        "inventory.HarvestState.sql",
-        "inventory.upgrade-0.8.sql",
+        "inventory.upgrade-0.10.sql",
+        "inventory.views.sql",
         "inventory.permissions.sql"
     };
     
+    static final String PARTITIONED_ARTIFACT_SQL = "inventory.Artifact-partitioned.sql";
+    
+    private final DataSource dataSource;
+    private final String schema;
+    
     public InitDatabase(DataSource ds, String database, String schema) { 
+        this(ds, database, schema, false);
+    }
+    
+    /**
+     * Create or upgrade the inventory database. An existing database is not 
+     * converted between the plain and partitioned Artifact table; see 
+     * partitionArtifact() for that.
+     * 
+     * @param ds data source
+     * @param database database name
+     * @param schema schema name
+     * @param partitioned true to create the Artifact table partitioned by uriBucket (for
+     *     use with PartitionedSQLGenerator)
+     */
+    public InitDatabase(DataSource ds, String database, String schema, boolean partitioned) { 
         super(ds, database, schema, MODEL_NAME, MODEL_VERSION, PREV_MODEL_VERSION);
+        this.dataSource = ds;
+        this.schema = schema;
         for (String s : CREATE_SQL) {
+            if (partitioned && "inventory.Artifact.sql".equals(s)) {
+                s = PARTITIONED_ARTIFACT_SQL;
+            }
             createSQL.add(s);
         }
         for (String s : UPGRADE_SQL) {
@@ -110,6 +141,82 @@ public class InitDatabase extends ca.nrc.cadc.db.version.InitDatabase {
         }
     }
 
+    /**
+     * Convert the plain Artifact table of an existing database (current model version) to
+     * the partitioned table created with partitioned=true. The table is created from the
+     * same SQL file, all rows are copied before the indexes are created, and the views
+     * are re-created. This runs in a single transaction and holds an exclusive lock on 
+     * the Artifact table until done: stop all services that use the database first and
+     * configure them to use PartitionedSQLGenerator afterwards.
+     * 
+     * @return true if converted, false if the Artifact table is already partitioned
+     * @throws IOException failure to read the SQL files
+     */
+    public boolean partitionArtifact() throws IOException {
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        TransactionManager txn = new DatabaseTransactionManager(dataSource);
+        String tab = schema + ".Artifact";
+        String old = "Artifact_unpartitioned";
+        txn.startTransaction();
+        try {
+            jdbc.execute("lock table " + tab + " in access exclusive mode");
+            String kind = jdbc.queryForObject("select c.relkind from pg_class c"
+                    + " join pg_namespace n on c.relnamespace = n.oid"
+                    + " where n.nspname = ? and c.relname = 'artifact'", String.class, schema.toLowerCase());
+            if ("p".equals(kind)) {
+                log.info("partitionArtifact: " + tab + " is already partitioned");
+                txn.rollbackTransaction();
+                return false;
+            }
+            
+            // views depend on the table and are re-created below
+            jdbc.execute("drop view if exists " + schema + ".ArtifactView");
+            jdbc.execute("alter table " + tab + " rename to " + old);
+            List<String> indices = jdbc.queryForList("select indexname from pg_indexes"
+                    + " where schemaname = ? and tablename = ?", String.class, schema.toLowerCase(), old.toLowerCase());
+            for (String i : indices) {
+                jdbc.execute("alter index " + schema + "." + i + " rename to " + i + "_unpartitioned");
+            }
+            
+            // load before creating the secondary indexes and triggers
+            boolean loaded = false;
+            for (String sql : parseDDL(PARTITIONED_ARTIFACT_SQL, schema)) {
+                if (!loaded && !isCreateTable(sql)) {
+                    List<String> cols = jdbc.queryForList("select column_name from information_schema.columns"
+                            + " where table_schema = ? and table_name = 'artifact' order by ordinal_position",
+                            String.class, schema.toLowerCase());
+                    String cs = String.join(", ", cols);
+                    int num = jdbc.update("insert into " + tab + " (" + cs + ") select " + cs 
+                            + " from " + schema + "." + old);
+                    log.info("partitionArtifact: copied " + num + " rows");
+                    loaded = true;
+                }
+                log.debug("partitionArtifact: " + sql);
+                jdbc.execute(sql);
+            }
+            jdbc.execute("drop table " + schema + "." + old);
+            for (String fname : new String[] { "inventory.views.sql", "inventory.permissions.sql" }) {
+                for (String sql : parseDDL(fname, schema)) {
+                    log.debug("partitionArtifact: " + sql);
+                    jdbc.execute(sql);
+                }
+            }
+            txn.commitTransaction();
+        } finally {
+            if (txn.isOpen()) {
+                log.error("partitionArtifact: failed, rollback");
+                txn.rollbackTransaction();
+            }
+        }
+        jdbc.execute("analyze " + tab);
+        return true;
+    }
+    
+    private static boolean isCreateTable(String sql) {
+        String s = sql.replaceAll("(?m)^\\s*--.*$", "").trim().toLowerCase();
+        return s.startsWith("create table");
+    }
+    
     @Override
     protected URL findSQL(String fname) {
         // SQL files are stored inside the jar file
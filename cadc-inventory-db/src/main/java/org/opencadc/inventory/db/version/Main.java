@@ -109,7 +109,7 @@ public class Main implements Runnable {
                 System.exit(1);
             }
             
-            Main m = new Main(ss.get(0), ss.get(1), ss.get(2));
+            Main m = new Main(ss.get(0), ss.get(1), ss.get(2), am.isSet("partitioned"));
             m.run();
             
         } catch (Throwable unexpected) {
@@ -119,17 +119,21 @@ public class Main implements Runnable {
     }
     
     private static void usage() {
-        System.out.println("usage: cadc-inventory-db [-v|--verbose|-d|--debug] <server> <database> <schema>");
+        System.out.println("usage: cadc-inventory-db [-v|--verbose|-d|--debug] [--partitioned] <server> <database> <schema>");
+        System.out.println("       --partitioned : create the Artifact table partitioned by uriBucket or convert the");
+        System.out.println("                       Artifact table of an existing database (stop all services first)");
     }
     
     private final String server;
     private final String database;
     private final String schema;
+    private final boolean partitioned;
     
-    private Main(String server, String database, String schema) {
+    private Main(String server, String database, String schema, boolean partitioned) {
         this.server = server;
         this.database = database;
         this.schema = schema;
+        this.partitioned = partitioned;
     }
     
     public void run() {
@@ -143,13 +147,24 @@ public class Main implements Runnable {
             DataSource ds = DBUtil.getDataSource(cc);
             log.info("target: " + server + " " + database + " " + schema);
             
-            InitDatabase init = new InitDatabase(ds, database, schema);
+            InitDatabase init = new InitDatabase(ds, database, schema, partitioned);
             boolean result = init.doInit();
             if (result) {
                 log.info("init: complete");
             } else {
                 log.info("init: no-op");
             }
+            if (partitioned) {
+                try {
+                    if (init.partitionArtifact()) {
+                        log.info("partition Artifact: complete");
+                    } else {
+                        log.info("partition Artifact: no-op");
+                    }
+                } catch (IOException ex) {
+                    throw new RuntimeException("failed to read SQL: " + ex.getMessage(), ex);
+                }
+            }
         } catch (IOException ex) {
             throw new RuntimeException("failed to read connection info from $HOME/.dbrc", ex);
         }
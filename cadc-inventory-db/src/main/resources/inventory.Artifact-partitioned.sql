@@ -0,0 +1,84 @@
+
+-- optional partitioned Artifact table: 16 range partitions on the first uriBucket 
+-- character so queries with a uriBucket value or prefix range only touch one partition
+-- and each partition (with its indexes) can be vacuumed and cached independently
+--
+-- unique constraints on a partitioned table must include the partition key: 
+-- uriBucket is computed from uri so (uri, uriBucket) is equivalent to the uri
+-- constraint of the plain table, but the primary key (id, uriBucket) only makes id
+-- unique within a partition: the artifact_unique_id triggers below reject a write
+-- that creates a second row with the same id and a different uriBucket; writes of 
+-- the same id in concurrent, uncommitted transactions are not detected;
+-- storage_index cannot be unique across partitions
+
+create table <schema>.Artifact (
+    uri varchar(512) not null,
+    uriBucket char(5) not null,
+    contentChecksum bytea not null,
+    contentLastModified timestamp not null,
+    contentLength bigint not null,
+    contentType varchar(128),
+    contentEncoding varchar(128),
+
+    siteLocations uuid[],
+    storageLocation_storageID varchar(512),
+    storageLocation_storageBucket varchar(512),
+
+    lastModified timestamp not null,
+    metaChecksum bytea not null,
+    id uuid not null,
+
+    primary key (id, uriBucket)
+) partition by range (uriBucket);
+
+create table <schema>.Artifact_0 partition of <schema>.Artifact for values from (minvalue) to ('1');
+create table <schema>.Artifact_1 partition of <schema>.Artifact for values from ('1') to ('2');
+create table <schema>.Artifact_2 partition of <schema>.Artifact for values from ('2') to ('3');
+create table <schema>.Artifact_3 partition of <schema>.Artifact for values from ('3') to ('4');
+create table <schema>.Artifact_4 partition of <schema>.Artifact for values from ('4') to ('5');
+create table <schema>.Artifact_5 partition of <schema>.Artifact for values from ('5') to ('6');
+create table <schema>.Artifact_6 partition of <schema>.Artifact for values from ('6') to ('7');
+create table <schema>.Artifact_7 partition of <schema>.Artifact for values from ('7') to ('8');
+create table <schema>.Artifact_8 partition of <schema>.Artifact for values from ('8') to ('9');
+create table <schema>.Artifact_9 partition of <schema>.Artifact for values from ('9') to ('a');
+create table <schema>.Artifact_a partition of <schema>.Artifact for values from ('a') to ('b');
+create table <schema>.Artifact_b partition of <schema>.Artifact for values from ('b') to ('c');
+create table <schema>.Artifact_c partition of <schema>.Artifact for values from ('c') to ('d');
+create table <schema>.Artifact_d partition of <schema>.Artifact for values from ('d') to ('e');
+create table <schema>.Artifact_e partition of <schema>.Artifact for values from ('e') to ('f');
+create table <schema>.Artifact_f partition of <schema>.Artifact for values from ('f') to (maxvalue);
+
+create unique index uri_index on <schema>.Artifact(uri, uriBucket);
+
+create index bucket_index on <schema>.Artifact(uriBucket);
+
+create index a_stored_index on <schema>.Artifact(lastModified)
+    where storageLocation_storageID is not null;
+
+create index a_unstored_index on <schema>.Artifact(lastModified, id)
+    where storageLocation_storageID is null;
+
+create index a_modified_index on <schema>.Artifact(lastModified, id);
+
+create index storage_index on <schema>.Artifact(storageLocation_storageBucket,storageLocation_storageID)
+    where storageLocation_storageID is not null;
+
+-- id unique across partitions: one set-based check per statement (bulk merge included) 
+-- using the transition table of new rows; a violation is reported as a unique_violation 
+-- so it surfaces like a primary key conflict; no line of the function body may end with 
+-- a semicolon because statements in this file are split at lines ending with one
+create or replace function <schema>.artifact_unique_id() returns trigger as $$
+declare dup uuid; begin
+    select n.id into dup from new_rows n join <schema>.Artifact a 
+        on a.id = n.id and a.uriBucket != n.uriBucket limit 1; if dup is not null then
+        raise exception 'duplicate Artifact.id % with a different uriBucket', dup
+            using errcode = 'unique_violation'; end if; return null; end
+$$ language plpgsql;
+
+create trigger artifact_unique_id_insert after insert on <schema>.Artifact
+    referencing new table as new_rows
+    for each statement execute procedure <schema>.artifact_unique_id();
+
+create trigger artifact_unique_id_update after update on <schema>.Artifact
+    referencing new table as new_rows
+    for each statement execute procedure <schema>.artifact_unique_id();
@@ -5,4 +5,4 @@ create table <schema>.DeletedArtifactEvent (
     metaChecksum varchar(136) not null
 );
 
-create index dae_modified_index on <schema>.DeletedArtifactEvent(lastModified);
+create index dae_modified_index on <schema>.DeletedArtifactEvent(lastModified, id);
@@ -5,5 +5,5 @@ create table <schema>.DeletedStorageLocationEvent (
     metaChecksum varchar(136) not null
 );
 
-create index dsle_modified_index on <schema>.DeletedStorageLocationEvent(lastModified);
+create index dsle_modified_index on <schema>.DeletedStorageLocationEvent(lastModified, id);
 
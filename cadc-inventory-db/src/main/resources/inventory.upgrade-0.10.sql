@@ -0,0 +1,21 @@
+-- compact Artifact checksums: one byte algorithm tag + raw digest (see ChecksumCodec)
+-- this rewrites the table and rebuilds its indexes under an exclusive lock
+
+-- the view depends on the column types; re-created by inventory.views.sql
+drop view if exists <schema>.ArtifactView;
+
+alter table <schema>.Artifact
+    alter column contentChecksum type bytea using case
+        when contentChecksum ~ '^md5:[0-9a-f]{32}$' then decode('01' || substr(contentChecksum, 5), 'hex')
+        when contentChecksum ~ '^sha-1:[0-9a-f]{40}$' then decode('02' || substr(contentChecksum, 7), 'hex')
+        when contentChecksum ~ '^sha-256:[0-9a-f]{64}$' then decode('03' || substr(contentChecksum, 9), 'hex')
+        when contentChecksum ~ '^sha-512:[0-9a-f]{128}$' then decode('04' || substr(contentChecksum, 9), 'hex')
+        else decode('00', 'hex') || convert_to(contentChecksum, 'UTF8')
+    end,
+    alter column metaChecksum type bytea using case
+        when metaChecksum ~ '^md5:[0-9a-f]{32}$' then decode('01' || substr(metaChecksum, 5), 'hex')
+        when metaChecksum ~ '^sha-1:[0-9a-f]{40}$' then decode('02' || substr(metaChecksum, 7), 'hex')
+        when metaChecksum ~ '^sha-256:[0-9a-f]{64}$' then decode('03' || substr(metaChecksum, 9), 'hex')
+        when metaChecksum ~ '^sha-512:[0-9a-f]{128}$' then decode('04' || substr(metaChecksum, 9), 'hex')
+        else decode('00', 'hex') || convert_to(metaChecksum, 'UTF8')
+    end;
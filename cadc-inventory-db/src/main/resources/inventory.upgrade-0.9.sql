@@ -0,0 +1,14 @@
+
+-- incremental (lastModified, id) iterators
+create index a_modified_index on <schema>.Artifact(lastModified, id);
+
+-- keyset pages of unstored artifacts in (lastModified, id) order
+drop index <schema>.a_unstored_index;
+create index a_unstored_index on <schema>.Artifact(lastModified, id)
+    where storageLocation_storageID is null;
+
+drop index <schema>.dae_modified_index;
+create index dae_modified_index on <schema>.DeletedArtifactEvent(lastModified, id);
+
+drop index <schema>.dsle_modified_index;
+create index dsle_modified_index on <schema>.DeletedStorageLocationEvent(lastModified, id);
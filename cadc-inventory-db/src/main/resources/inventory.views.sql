@@ -0,0 +1,24 @@
+-- Artifact with the bytea checksum columns (see ChecksumCodec) in the original 
+-- {algorithm}:{hex value} form for TAP queries (luskan)
+
+-- decode a bytea checksum; a simple sql function (not strict) that is inlined into
+-- queries on the view
+create or replace function <schema>.checksum_text(cs bytea) returns varchar as $$
+    select (case get_byte(cs, 0)
+        when 1 then 'md5:' || encode(substr(cs, 2), 'hex')
+        when 2 then 'sha-1:' || encode(substr(cs, 2), 'hex')
+        when 3 then 'sha-256:' || encode(substr(cs, 2), 'hex')
+        when 4 then 'sha-512:' || encode(substr(cs, 2), 'hex')
+        else convert_from(substr(cs, 2), 'UTF8')
+    end)::varchar
+$$ language sql stable parallel safe;
+
+create or replace view <schema>.ArtifactView as
+select uri, uriBucket,
+    <schema>.checksum_text(contentChecksum)::varchar(136) as contentChecksum,
+    contentLastModified, contentLength, contentType, contentEncoding,
+    siteLocations, storageLocation_storageID, storageLocation_storageBucket,
+    lastModified,
+    <schema>.checksum_text(metaChecksum)::varchar(136) as metaChecksum,
+    id
+from <schema>.Artifact;
@@ -70,7 +70,6 @@ package org.opencadc.inventory;
 import java.net.URI;
 import java.util.Date;
 import java.util.Set;
-import java.util.TreeSet;
 import java.util.UUID;
 import org.apache.log4j.Logger;
 
@@ -82,6 +81,7 @@ import org.apache.log4j.Logger;
 public class Artifact extends Entity {
     private static final Logger log = Logger.getLogger(Artifact.class);
     public static final String URI_BUCKET_CHARS = "0123456789abcdef";
+    static final int URI_BUCKET_LENGTH = 5; // 5 hex characters: 16^5 = 1 megabuckets
 
     private URI uri;
     private String uriBucket;
@@ -89,6 +89,9 @@ public class Artifact extends Entity {
     private Date contentLastModified;
     private Long contentLength;
     
+    // backing set for siteLocations; use getSiteIDs/setSiteIDs to avoid SiteLocation objects
+    private final transient SiteLocationSet siteLocationSet = new SiteLocationSet();
+    
     public String contentType;
     public String contentEncoding;
     
@@ -104,7 +107,7 @@ public class Artifact extends Entity {
      * to have a copy of the artifact. This value is not part of the artifact entity state 
      * and adding/removing values does not change the metaChecksum of the artifact.
      */
-    public final transient Set<SiteLocation> siteLocations = new TreeSet<SiteLocation>();
+    public final transient Set<SiteLocation> siteLocations = siteLocationSet;
     
     /**
      * Create a new artifact.
@@ -133,6 +136,24 @@ public class Artifact extends Entity {
         init(uri, contentChecksum, contentLastModified, contentLength);
     }
     
+    // package access: reconstruct an artifact from trusted persistent state
+    Artifact(UUID id, URI uri, String uriBucket, URI contentChecksum, Date contentLastModified, Long contentLength) {
+        super(id);
+        InventoryUtil.assertNotNull(Artifact.class, "uri", uri);
+        InventoryUtil.assertNotNull(Artifact.class, "contentChecksum", contentChecksum);
+        InventoryUtil.assertNotNull(Artifact.class, "contentLastModified", contentLastModified);
+        InventoryUtil.assertNotNull(Artifact.class, "contentLength", contentLength);
+        this.uri = uri;
+        this.contentChecksum = contentChecksum;
+        this.contentLastModified = contentLastModified;
+        this.contentLength = contentLength;
+        if (uriBucket != null) {
+            this.uriBucket = uriBucket;
+        } else {
+            this.uriBucket = computeBucket(uri);
+        }
+    }
+    
     private void init(URI uri, URI contentChecksum, Date contentLastModified, Long contentLength) {
         InventoryUtil.assertNotNull(Artifact.class, "uri", uri);
         InventoryUtil.validateArtifactURI(Artifact.class, uri);
@@ -186,8 +207,28 @@ public class Artifact extends Entity {
         return contentLength;
     }
     
+    /**
+     * Get the IDs of the sites in siteLocations without creating SiteLocation objects, 
+     * e.g. to store in a database array column.
+     * 
+     * @return new array of site IDs in siteLocations order
+     */
+    public UUID[] getSiteIDs() {
+        return siteLocationSet.getSiteIDs();
+    }
+    
+    /**
+     * Replace the content of siteLocations with the specified site IDs without creating
+     * SiteLocation objects. Duplicates are removed.
+     * 
+     * @param siteIDs site IDs in any order, may be null
+     */
+    public void setSiteIDs(UUID[] siteIDs) {
+        siteLocationSet.setSiteIDs(siteIDs);
+    }
+    
     private String computeBucket(URI uri) {
-        return InventoryUtil.computeBucket(uri, 5); // 5 hex characters: 16^5 = 1 megabuckets
+        return InventoryUtil.computeBucket(uri, URI_BUCKET_LENGTH);
     }
 
     /**
@@ -0,0 +1,538 @@
+/*
+************************************************************************
+*******************  CANADIAN ASTRONOMY DATA CENTRE  *******************
+**************  CENTRE CANADIEN DE DONNÉES ASTRONOMIQUES  **************
+*
+*  (c) 2020.                            (c) 2020.
+*  Government of Canada                 Gouvernement du Canada
+*  National Research Council            Conseil national de recherches
+*  Ottawa, Canada, K1A 0R6              Ottawa, Canada, K1A 0R6
+*  All rights reserved                  Tous droits réservés
+*
+*  NRC disclaims any warranties,        Le CNRC dénie toute garantie
+*  expressed, implied, or               énoncée, implicite ou légale,
+*  statutory, of any kind with          de quelque nature que ce
+*  respect to the software,             soit, concernant le logiciel,
+*  including without limitation         y compris sans restriction
+*  any warranty of merchantability      toute garantie de valeur
+*  or fitness for a particular          marchande ou de pertinence
+*  purpose. NRC shall not be            pour un usage particulier.
+*  liable in any event for any          Le CNRC ne pourra en aucun cas
+*  damages, whether direct or           être tenu responsable de tout
+*  indirect, special or general,        dommage, direct ou indirect,
+*  consequential or incidental,         particulier ou général,
+*  arising from the use of the          accessoire ou fortuit, résultant
+*  software.  Neither the name          de l'utilisation du logiciel. Ni
+*  of the National Research             le nom du Conseil National de
+*  Council of Canada nor the            Recherches du Canada ni les noms
+*  names of its contributors may        de ses  participants ne peuvent
+*  be used to endorse or promote        être utilisés pour approuver ou
+*  products derived from this           promouvoir les produits dérivés
+*  software without specific prior      de ce logiciel sans autorisation
+*  written permission.                  préalable et particulière
+*                                       par écrit.
+*
+*  This file is part of the             Ce fichier fait partie du projet
+*  OpenCADC project.                    OpenCADC.
+*
+*  OpenCADC is free software:           OpenCADC est un logiciel libre ;
+*  you can redistribute it and/or       vous pouvez le redistribuer ou le
+*  modify it under the terms of         modifier suivant les termes de
+*  the GNU Affero General Public        la “GNU Affero General Public
+*  License as published by the          License” telle que publiée
+*  Free Software Foundation,            par la Free Software Foundation
+*  either version 3 of the              : soit la version 3 de cette
+*  License, or (at your option)         licence, soit (à votre gré)
+*  any later version.                   toute version ultérieure.
+*
+*  OpenCADC is distributed in the       OpenCADC est distribué
+*  hope that it will be useful,         dans l’espoir qu’il vous
+*  but WITHOUT ANY WARRANTY;            sera utile, mais SANS AUCUNE
+*  without even the implied             GARANTIE : sans même la garantie
+*  warranty of MERCHANTABILITY          implicite de COMMERCIALISABILITÉ
+*  or FITNESS FOR A PARTICULAR          ni d’ADÉQUATION À UN OBJECTIF
+*  PURPOSE.  See the GNU Affero         PARTICULIER. Consultez la Licence
+*  General Public License for           Générale Publique GNU Affero
+*  more details.                        pour plus de détails.
+*
+*  You should have received             Vous devriez avoir reçu une
+*  a copy of the GNU Affero             copie de la Licence Générale
+*  General Public License along         Publique GNU Affero avec
+*  with OpenCADC.  If not, see          OpenCADC ; si ce n’est
+*  <http://www.gnu.org/licenses/>.      pas le cas, consultez :
+*                                       <http://www.gnu.org/licenses/>.
+*
+************************************************************************
+*/
+
+package org.opencadc.inventory;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import org.apache.log4j.Logger;
+
+/**
+ * Column-oriented batch of artifacts for bulk processing. Instead of one Artifact object
+ * (with URI, Date, Long, TreeSet, and StorageLocation objects) per row, the values of all
+ * rows are held in a small number of primitive arrays: UUIDs as pairs of long, timestamps 
+ * and lengths as long, checksums as raw bytes in a shared byte array, and strings as
+ * offsets into a shared char array. A batch has a fixed capacity (number of rows) and is 
+ * intended to be filled, processed, cleared, and re-used.
+ * 
+ * <p>Values can be accessed by row index without creating an Artifact; getArtifact(int)
+ * creates an Artifact for the row when one is required. Instances are not thread-safe.
+ * 
+ * @author pdowler
+ */
+public class ArtifactBatch {
+    private static final Logger log = Logger.getLogger(ArtifactBatch.class);
+
+    // string columns
+    private static final int URI_COL = 0;
+    private static final int BUCKET_COL = 1;
+    private static final int TYPE_COL = 2;
+    private static final int ENCODING_COL = 3;
+    private static final int STORAGE_ID_COL = 4;
+    private static final int STORAGE_BUCKET_COL = 5;
+    private static final int NUM_STRING_COLS = 6;
+    
+    // checksum columns
+    private static final int CONTENT_CHECKSUM_COL = 0;
+    private static final int META_CHECKSUM_COL = 1;
+    private static final int NUM_CHECKSUM_COLS = 2;
+    
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    
+    private final int capacity;
+    private int size = 0;
+    
+    private final long[] ids;
+    private final long[] contentLastModified;
+    private final long[] contentLength;
+    private final long[] lastModified;
+    
+    // per row and string column: offset and length in chars, length -1 for null
+    private final int[] strings;
+    private char[] chars;
+    private int numChars = 0;
+    
+    // per row and checksum column: algorithm index, offset, length in checksumBytes; 
+    // algorithm index -1: value that is not {algorithm}:{lower case hex} stored in chars
+    private final int[] checksums;
+    private byte[] checksumBytes;
+    private int numChecksumBytes = 0;
+    private final List<String> algorithms = new ArrayList<>();
+    
+    // per row: offset and count in siteIDs (pairs of long)
+    private final int[] sites;
+    private long[] siteIDs;
+    private int numSiteIDs = 0;
+    
+    /**
+     * Create a batch with the specified capacity.
+     * 
+     * @param capacity maximum number of artifacts in the batch
+     */
+    public ArtifactBatch(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("invalid " + ArtifactBatch.class.getSimpleName() + ".capacity: " + capacity);
+        }
+        this.capacity = capacity;
+        this.ids = new long[2 * capacity];
+        this.contentLastModified = new long[capacity];
+        this.contentLength = new long[capacity];
+        this.lastModified = new long[capacity];
+        this.strings = new int[2 * NUM_STRING_COLS * capacity];
+        this.chars = new char[64 * capacity]; // typical uri + bucket + storageID
+        this.checksums = new int[3 * NUM_CHECKSUM_COLS * capacity];
+        this.checksumBytes = new byte[32 * capacity]; // two md5 checksums
+        this.sites = new int[2 * capacity];
+        this.siteIDs = new long[0];
+    }
+
+    /**
+     * @return maximum number of artifacts in the batch
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return current number of artifacts in the batch
+     */
+    public int size() {
+        return size;
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    public boolean isFull() {
+        return size == capacity;
+    }
+    
+    /**
+     * Remove all artifacts from the batch. Allocated storage is retained for re-use.
+     */
+    public void clear() {
+        size = 0;
+        numChars = 0;
+        numChecksumBytes = 0;
+        numSiteIDs = 0;
+    }
+    
+    /**
+     * Add an artifact to the batch. The artifact must have lastModified and metaChecksum
+     * assigned (e.g. it was persisted or harvested).
+     * 
+     * @param a the artifact
+     * @throws IllegalStateException if the batch is full
+     */
+    public void add(Artifact a) {
+        InventoryUtil.assertNotNull(ArtifactBatch.class, "artifact", a);
+        InventoryUtil.assertNotNull(ArtifactBatch.class, "artifact.lastModified", a.getLastModified());
+        InventoryUtil.assertNotNull(ArtifactBatch.class, "artifact.metaChecksum", a.getMetaChecksum());
+        UUID[] siteLocs = null;
+        if (!a.siteLocations.isEmpty()) {
+            siteLocs = a.getSiteIDs();
+        }
+        String storageID = null;
+        String storageBucket = null;
+        if (a.storageLocation != null) {
+            storageID = a.storageLocation.getStorageID().toASCIIString();
+            storageBucket = a.storageLocation.storageBucket;
+        }
+        add(a.getID(), a.getURI().toASCIIString(), a.getBucket(), a.getContentChecksum().toASCIIString(),
+            a.getContentLastModified().getTime(), a.getContentLength(), a.contentType, a.contentEncoding,
+            siteLocs, storageID, storageBucket, a.getLastModified().getTime(), a.getMetaChecksum().toASCIIString());
+    }
+    
+    /**
+     * Add an artifact to the batch from persisted values. This method is to support filling
+     * a batch from a database or other serialised form without creating an Artifact. Values
+     * are not validated.
+     * 
+     * @param id entity ID
+     * @param uri logical identifier
+     * @param uriBucket bucket of the uri
+     * @param contentChecksum checksum of the content, form: {algorithm}:{hexadecimal value}
+     * @param contentLastModified last-modified timestamp of the content
+     * @param contentLength number of bytes in the content
+     * @param contentType optional content type
+     * @param contentEncoding optional content encoding
+     * @param siteLocations optional site IDs
+     * @param storageID optional storage location identifier
+     * @param storageBucket optional storage location bucket
+     * @param lastModified entity last-modified timestamp
+     * @param metaChecksum entity metadata checksum, form: {algorithm}:{hexadecimal value}
+     * @throws IllegalStateException if the batch is full
+     */
+    public void add(UUID id, String uri, String uriBucket, String contentChecksum, 
+            long contentLastModified, long contentLength, String contentType, String contentEncoding,
+            UUID[] siteLocations, String storageID, String storageBucket, 
+            long lastModified, String metaChecksum) {
+        if (isFull()) {
+            throw new IllegalStateException("batch is full: " + capacity);
+        }
+        InventoryUtil.assertNotNull(ArtifactBatch.class, "id", id);
+        InventoryUtil.assertNotNull(ArtifactBatch.class, "uri", uri);
+        InventoryUtil.assertNotNull(ArtifactBatch.class, "contentChecksum", contentChecksum);
+        InventoryUtil.assertNotNull(ArtifactBatch.class, "metaChecksum", metaChecksum);
+        
+        final int row = size;
+        ids[2 * row] = id.getMostSignificantBits();
+        ids[2 * row + 1] = id.getLeastSignificantBits();
+        this.contentLastModified[row] = contentLastModified;
+        this.contentLength[row] = contentLength;
+        this.lastModified[row] = lastModified;
+        
+        setString(row, URI_COL, uri);
+        setString(row, BUCKET_COL, uriBucket);
+        setString(row, TYPE_COL, contentType);
+        setString(row, ENCODING_COL, contentEncoding);
+        setString(row, STORAGE_ID_COL, storageID);
+        setString(row, STORAGE_BUCKET_COL, storageBucket);
+        
+        setChecksum(row, CONTENT_CHECKSUM_COL, contentChecksum);
+        setChecksum(row, META_CHECKSUM_COL, metaChecksum);
+        
+        int n = (siteLocations == null ? 0 : siteLocations.length);
+        sites[2 * row] = numSiteIDs;
+        sites[2 * row + 1] = n;
+        if (n > 0) {
+            ensureSiteCapacity(2 * n);
+            for (UUID s : siteLocations) {
+                siteIDs[2 * numSiteIDs] = s.getMostSignificantBits();
+                siteIDs[2 * numSiteIDs + 1] = s.getLeastSignificantBits();
+                numSiteIDs++;
+            }
+        }
+        
+        size++;
+    }
+    
+    public UUID getID(int i) {
+        checkIndex(i);
+        return new UUID(ids[2 * i], ids[2 * i + 1]);
+    }
+    
+    public long getIDMostSignificantBits(int i) {
+        checkIndex(i);
+        return ids[2 * i];
+    }
+    
+    public long getIDLeastSignificantBits(int i) {
+        checkIndex(i);
+        return ids[2 * i + 1];
+    }
+    
+    public URI getURI(int i) {
+        return URI.create(getURIString(i));
+    }
+    
+    public String getURIString(int i) {
+        checkIndex(i);
+        return getString(i, URI_COL);
+    }
+    
+    public String getBucket(int i) {
+        checkIndex(i);
+        return getString(i, BUCKET_COL);
+    }
+    
+    public URI getContentChecksum(int i) {
+        checkIndex(i);
+        return URI.create(getChecksum(i, CONTENT_CHECKSUM_COL));
+    }
+    
+    /**
+     * Get the content checksum without going through the URI form.
+     * 
+     * @param i row index
+     * @return content checksum or null if the algorithm is not supported by ContentChecksum
+     */
+    public ContentChecksum getContentChecksumValue(int i) {
+        checkIndex(i);
+        int k = 3 * (NUM_CHECKSUM_COLS * i + CONTENT_CHECKSUM_COL);
+        if (checksums[k] < 0) {
+            return null;
+        }
+        ContentChecksum.Algorithm a = ContentChecksum.Algorithm.forName(algorithms.get(checksums[k]));
+        int off = checksums[k + 1];
+        int len = checksums[k + 2];
+        if (a == null || a.getLength() != len) {
+            return null;
+        }
+        return new ContentChecksum(a, Arrays.copyOfRange(checksumBytes, off, off + len));
+    }
+    
+    public Date getContentLastModified(int i) {
+        checkIndex(i);
+        return new Date(contentLastModified[i]);
+    }
+    
+    public long getContentLength(int i) {
+        checkIndex(i);
+        return contentLength[i];
+    }
+    
+    public String getContentType(int i) {
+        checkIndex(i);
+        return getString(i, TYPE_COL);
+    }
+    
+    public String getContentEncoding(int i) {
+        checkIndex(i);
+        return getString(i, ENCODING_COL);
+    }
+    
+    /**
+     * @param i row index
+     * @return storage location or null if not stored
+     */
+    public StorageLocation getStorageLocation(int i) {
+        checkIndex(i);
+        String sid = getString(i, STORAGE_ID_COL);
+        if (sid == null) {
+            return null;
+        }
+        StorageLocation ret = new StorageLocation(URI.create(sid));
+        ret.storageBucket = getString(i, STORAGE_BUCKET_COL);
+        return ret;
+    }
+    
+    /**
+     * @param i row index
+     * @return number of site locations of the artifact
+     */
+    public int getSiteLocationCount(int i) {
+        checkIndex(i);
+        return sites[2 * i + 1];
+    }
+    
+    /**
+     * @param i row index
+     * @param j site location index
+     * @return site ID
+     */
+    public UUID getSiteID(int i, int j) {
+        checkIndex(i);
+        if (j < 0 || j >= sites[2 * i + 1]) {
+            throw new IndexOutOfBoundsException("site location index: " + j);
+        }
+        int k = sites[2 * i] + j;
+        return new UUID(siteIDs[2 * k], siteIDs[2 * k + 1]);
+    }
+    
+    public Date getLastModified(int i) {
+        checkIndex(i);
+        return new Date(lastModified[i]);
+    }
+    
+    public URI getMetaChecksum(int i) {
+        checkIndex(i);
+        return URI.create(getChecksum(i, META_CHECKSUM_COL));
+    }
+    
+    /**
+     * Create an Artifact from the values in the specified row.
+     * 
+     * @param i row index
+     * @return new artifact
+     */
+    public Artifact getArtifact(int i) {
+        checkIndex(i);
+        Artifact ret = InventoryUtil.reconstructArtifact(getID(i), getURI(i), getBucket(i), 
+            getContentChecksum(i), getContentLastModified(i), contentLength[i]);
+        ret.contentType = getContentType(i);
+        ret.contentEncoding = getContentEncoding(i);
+        int n = sites[2 * i + 1];
+        if (n > 0) {
+            UUID[] siteIDs = new UUID[n];
+            for (int j = 0; j < n; j++) {
+                siteIDs[j] = getSiteID(i, j);
+            }
+            ret.setSiteIDs(siteIDs);
+        }
+        ret.storageLocation = getStorageLocation(i);
+        InventoryUtil.assignLastModified(ret, getLastModified(i));
+        InventoryUtil.assignMetaChecksum(ret, getMetaChecksum(i));
+        return ret;
+    }
+    
+    private void checkIndex(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("index: " + i + " size: " + size);
+        }
+    }
+    
+    private void setString(int row, int col, String s) {
+        int k = 2 * (NUM_STRING_COLS * row + col);
+        if (s == null) {
+            strings[k] = 0;
+            strings[k + 1] = -1;
+            return;
+        }
+        strings[k] = appendChars(s);
+        strings[k + 1] = s.length();
+    }
+    
+    private String getString(int row, int col) {
+        int k = 2 * (NUM_STRING_COLS * row + col);
+        int len = strings[k + 1];
+        if (len < 0) {
+            return null;
+        }
+        return new String(chars, strings[k], len);
+    }
+    
+    private int appendChars(String s) {
+        int len = s.length();
+        if (numChars + len > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(2 * chars.length, numChars + len));
+        }
+        int off = numChars;
+        s.getChars(0, len, chars, off);
+        numChars += len;
+        return off;
+    }
+    
+    private void setChecksum(int row, int col, String s) {
+        int k = 3 * (NUM_CHECKSUM_COLS * row + col);
+        int colon = s.indexOf(':');
+        int nhex = s.length() - colon - 1;
+        if (colon > 0 && nhex > 0 && nhex % 2 == 0 && isLowerHex(s, colon + 1)) {
+            int nbytes = nhex / 2;
+            if (numChecksumBytes + nbytes > checksumBytes.length) {
+                checksumBytes = Arrays.copyOf(checksumBytes, Math.max(2 * checksumBytes.length, numChecksumBytes + nbytes));
+            }
+            int off = numChecksumBytes;
+            for (int b = 0; b < nbytes; b++) {
+                int c = colon + 1 + 2 * b;
+                checksumBytes[off + b] = (byte) ((Character.digit(s.charAt(c), 16) << 4) | Character.digit(s.charAt(c + 1), 16));
+            }
+            numChecksumBytes += nbytes;
+            checksums[k] = algorithmIndex(s, colon);
+            checksums[k + 1] = off;
+            checksums[k + 2] = nbytes;
+        } else {
+            // keep exact value
+            checksums[k] = -1;
+            checksums[k + 1] = appendChars(s);
+            checksums[k + 2] = s.length();
+        }
+    }
+    
+    private String getChecksum(int row, int col) {
+        int k = 3 * (NUM_CHECKSUM_COLS * row + col);
+        int alg = checksums[k];
+        int off = checksums[k + 1];
+        int len = checksums[k + 2];
+        if (alg < 0) {
+            return new String(chars, off, len);
+        }
+        String a = algorithms.get(alg);
+        char[] ret = new char[a.length() + 1 + 2 * len];
+        a.getChars(0, a.length(), ret, 0);
+        int n = a.length();
+        ret[n++] = ':';
+        for (int b = 0; b < len; b++) {
+            int v = checksumBytes[off + b];
+            ret[n++] = HEX[(v >> 4) & 0xf];
+            ret[n++] = HEX[v & 0xf];
+        }
+        return new String(ret);
+    }
+    
+    private static boolean isLowerHex(String s, int start) {
+        for (int i = start; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private int algorithmIndex(String s, int len) {
+        for (int i = 0; i < algorithms.size(); i++) {
+            String a = algorithms.get(i);
+            if (a.length() == len && s.regionMatches(0, a, 0, len)) {
+                return i;
+            }
+        }
+        algorithms.add(s.substring(0, len));
+        return algorithms.size() - 1;
+    }
+    
+    private void ensureSiteCapacity(int n) {
+        if (2 * numSiteIDs + n > siteIDs.length) {
+            siteIDs = Arrays.copyOf(siteIDs, Math.max(2 * siteIDs.length, 2 * numSiteIDs + n));
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+************************************************************************
+*******************  CANADIAN ASTRONOMY DATA CENTRE  *******************
+**************  CENTRE CANADIEN DE DONNÉES ASTRONOMIQUES  **************
+*
+*  (c) 2020.                            (c) 2020.
+*  Government of Canada                 Gouvernement du Canada
+*  National Research Council            Conseil national de recherches
+*  Ottawa, Canada, K1A 0R6              Ottawa, Canada, K1A 0R6
+*  All rights reserved                  Tous droits réservés
+*
+*  NRC disclaims any warranties,        Le CNRC dénie toute garantie
+*  expressed, implied, or               énoncée, implicite ou légale,
+*  statutory, of any kind with          de quelque nature que ce
+*  respect to the software,             soit, concernant le logiciel,
+*  including without limitation         y compris sans restriction
+*  any warranty of merchantability      toute garantie de valeur
+*  or fitness for a particular          marchande ou de pertinence
+*  purpose. NRC shall not be            pour un usage particulier.
+*  liable in any event for any          Le CNRC ne pourra en aucun cas
+*  damages, whether direct or           être tenu responsable de tout
+*  indirect, special or general,        dommage, direct ou indirect,
+*  consequential or incidental,         particulier ou général,
+*  arising from the use of the          accessoire ou fortuit, résultant
+*  software.  Neither the name          de l'utilisation du logiciel. Ni
+*  of the National Research             le nom du Conseil National de
+*  Council of Canada nor the            Recherches du Canada ni les noms
+*  names of its contributors may        de ses  participants ne peuvent
+*  be used to endorse or promote        être utilisés pour approuver ou
+*  products derived from this           promouvoir les produits dérivés
+*  software without specific prior      de ce logiciel sans autorisation
+*  written permission.                  préalable et particulière
+*                                       par écrit.
+*
+*  This file is part of the             Ce fichier fait partie du projet
+*  OpenCADC project.                    OpenCADC.
+*
+*  OpenCADC is free software:           OpenCADC est un logiciel libre ;
+*  you can redistribute it and/or       vous pouvez le redistribuer ou le
+*  modify it under the terms of         modifier suivant les termes de
+*  the GNU Affero General Public        la “GNU Affero General Public
+*  License as published by the          License” telle que publiée
+*  Free Software Foundation,            par la Free Software Foundation
+*  either version 3 of the              : soit la version 3 de cette
+*  License, or (at your option)         licence, soit (à votre gré)
+*  any later version.                   toute version ultérieure.
+*
+*  OpenCADC is distributed in the       OpenCADC est distribué
+*  hope that it will be useful,         dans l’espoir qu’il vous
+*  but WITHOUT ANY WARRANTY;            sera utile, mais SANS AUCUNE
+*  without even the implied             GARANTIE : sans même la garantie
+*  warranty of MERCHANTABILITY          implicite de COMMERCIALISABILITÉ
+*  or FITNESS FOR A PARTICULAR          ni d’ADÉQUATION À UN OBJECTIF
+*  PURPOSE.  See the GNU Affero         PARTICULIER. Consultez la Licence
+*  General Public License for           Générale Publique GNU Affero
+*  more details.                        pour plus de détails.
+*
+*  You should have received             Vous devriez avoir reçu une
+*  a copy of the GNU Affero             copie de la Licence Générale
+*  General Public License along         Publique GNU Affero avec
+*  with OpenCADC.  If not, see          OpenCADC ; si ce n’est
+*  <http://www.gnu.org/licenses/>.      pas le cas, consultez :
+*                                       <http://www.gnu.org/licenses/>.
+*
+************************************************************************
+*/
+
+package org.opencadc.inventory;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+
+/**
+ * Validated artifact URI with the parts that services need: scheme, path (scheme-specific-part),
+ * filename, and uri bucket. Validation is a single pass over the scheme-specific-part with no 
+ * intermediate objects. The filename and bucket are computed when first requested.
+ * 
+ * @author pdowler
+ */
+public final class ArtifactURI {
+    
+    private final URI uri;
+    private final String path;
+    private final int lastSlash;
+    
+    private transient String filename;
+    private transient String bucket;
+    
+    private ArtifactURI(URI uri, String path, int lastSlash) {
+        this.uri = uri;
+        this.path = path;
+        this.lastSlash = lastSlash;
+    }
+    
+    /**
+     * Parse and validate an artifact URI.
+     * 
+     * @param caller class performing the parse (used in error messages)
+     * @param uri artifact URI string
+     * @return validated artifact URI
+     * @throws IllegalArgumentException if the uri is not a valid artifact URI
+     */
+    public static ArtifactURI parse(Class caller, String uri) {
+        InventoryUtil.assertNotNull(caller, "uri", uri);
+        try {
+            return valueOf(caller, new URI(uri));
+        } catch (URISyntaxException ex) {
+            throw new IllegalArgumentException(caller.getSimpleName() + ": invalid Artifact.uri: " + uri 
+                + " -- " + ex.getMessage());
+        }
+    }
+    
+    /**
+     * Validate an artifact URI.
+     * 
+     * @param caller class performing the validation (used in error messages)
+     * @param uri artifact URI
+     * @return validated artifact URI
+     * @throws IllegalArgumentException if the uri is not a valid artifact URI
+     */
+    public static ArtifactURI valueOf(Class caller, URI uri) {
+        InventoryUtil.assertNotNull(caller, "uri", uri);
+        int lastSlash = validate(caller, uri);
+        return new ArtifactURI(uri, uri.getSchemeSpecificPart(), lastSlash);
+    }
+
+    public URI getURI() {
+        return uri;
+    }
+    
+    public String getScheme() {
+        return uri.getScheme();
+    }
+
+    /**
+     * @return the scheme-specific-part: relative path of the artifact
+     */
+    public String getPath() {
+        return path;
+    }
+    
+    /**
+     * @return the last component of the path
+     */
+    public String getFilename() {
+        String ret = filename;
+        if (ret == null) {
+            ret = (lastSlash > 0 ? path.substring(lastSlash + 1) : path);
+            this.filename = ret;
+        }
+        return ret;
+    }
+    
+    /**
+     * @return the bucket the artifact is assigned to (same as Artifact.getBucket())
+     */
+    public String getBucket() {
+        String ret = bucket;
+        if (ret == null) {
+            ret = InventoryUtil.computeBucket(uri, Artifact.URI_BUCKET_LENGTH);
+            this.bucket = ret;
+        }
+        return ret;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o instanceof ArtifactURI) {
+            return uri.equals(((ArtifactURI) o).uri);
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return uri.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return uri.toString();
+    }
+    
+    /**
+     * Validate an artifact URI. This is the implementation of InventoryUtil.validateArtifactURI:
+     * the scheme-specific-part must be a relative path and each path component must be
+     * valid (see InventoryUtil.assertValidPathComponent).
+     * 
+     * @param caller class performing the validation
+     * @param uri artifact URI
+     * @return index of the last slash in the scheme-specific-part or -1 if there is none
+     * @throws IllegalArgumentException if the uri does not conform
+     */
+    static int validate(Class caller, URI uri) {
+        if (uri.getFragment() != null || uri.getQuery() != null
+            || uri.getUserInfo() != null
+            || uri.getAuthority() != null || uri.getHost() != null || uri.getPort() != -1) {
+            throw new IllegalArgumentException(caller.getSimpleName()
+                + ": invalid Artifact.uri: " + uri + " -- authority|query|fragment|host|port not permitted");
+        }
+
+        String scheme = uri.getScheme();
+        String ssp = uri.getSchemeSpecificPart();
+        if (scheme == null || ssp == null || ssp.isEmpty() || ssp.charAt(0) == '/') {
+            throw new IllegalArgumentException(caller.getSimpleName()
+                + ": invalid Artifact.uri: " + uri + " -- expected {scheme}:{scheme-specific-part} where {scheme-specific-part} is a relative path");
+        }
+        
+        int lastSlash = -1;
+        final int len = ssp.length();
+        for (int i = 0; i < len; i++) {
+            switch (ssp.charAt(i)) {
+                case '/':
+                    lastSlash = i;
+                    break;
+                case ' ':
+                case '\\':
+                case '%':
+                case ';':
+                case '&':
+                case '$':
+                case '?':
+                    // report the same component and message as assertValidPathComponent
+                    int start = ssp.lastIndexOf('/', i) + 1;
+                    int end = ssp.indexOf('/', i);
+                    String comp = ssp.substring(start, end < 0 ? len : end);
+                    InventoryUtil.assertValidPathComponent(null, "scheme-specific-part", comp);
+                    throw new IllegalStateException("BUG: expected invalid path component: " + comp);
+                default:
+                    break;
+            }
+        }
+        return lastSlash;
+    }
+}
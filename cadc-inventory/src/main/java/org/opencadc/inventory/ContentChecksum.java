@@ -0,0 +1,317 @@
+/*
+************************************************************************
+*******************  CANADIAN ASTRONOMY DATA CENTRE  *******************
+**************  CENTRE CANADIEN DE DONNÉES ASTRONOMIQUES  **************
+*
+*  (c) 2020.                            (c) 2020.
+*  Government of Canada                 Gouvernement du Canada
+*  National Research Council            Conseil national de recherches
+*  Ottawa, Canada, K1A 0R6              Ottawa, Canada, K1A 0R6
+*  All rights reserved                  Tous droits réservés
+*
+*  NRC disclaims any warranties,        Le CNRC dénie toute garantie
+*  expressed, implied, or               énoncée, implicite ou légale,
+*  statutory, of any kind with          de quelque nature que ce
+*  respect to the software,             soit, concernant le logiciel,
+*  including without limitation         y compris sans restriction
+*  any warranty of merchantability      toute garantie de valeur
+*  or fitness for a particular          marchande ou de pertinence
+*  purpose. NRC shall not be            pour un usage particulier.
+*  liable in any event for any          Le CNRC ne pourra en aucun cas
+*  damages, whether direct or           être tenu responsable de tout
+*  indirect, special or general,        dommage, direct ou indirect,
+*  consequential or incidental,         particulier ou général,
+*  arising from the use of the          accessoire ou fortuit, résultant
+*  software.  Neither the name          de l'utilisation du logiciel. Ni
+*  of the National Research             le nom du Conseil National de
+*  Council of Canada nor the            Recherches du Canada ni les noms
+*  names of its contributors may        de ses  participants ne peuvent
+*  be used to endorse or promote        être utilisés pour approuver ou
+*  products derived from this           promouvoir les produits dérivés
+*  software without specific prior      de ce logiciel sans autorisation
+*  written permission.                  préalable et particulière
+*                                       par écrit.
+*
+*  This file is part of the             Ce fichier fait partie du projet
+*  OpenCADC project.                    OpenCADC.
+*
+*  OpenCADC is free software:           OpenCADC est un logiciel libre ;
+*  you can redistribute it and/or       vous pouvez le redistribuer ou le
+*  modify it under the terms of         modifier suivant les termes de
+*  the GNU Affero General Public        la “GNU Affero General Public
+*  License as published by the          License” telle que publiée
+*  Free Software Foundation,            par la Free Software Foundation
+*  either version 3 of the              : soit la version 3 de cette
+*  License, or (at your option)         licence, soit (à votre gré)
+*  any later version.                   toute version ultérieure.
+*
+*  OpenCADC is distributed in the       OpenCADC est distribué
+*  hope that it will be useful,         dans l’espoir qu’il vous
+*  but WITHOUT ANY WARRANTY;            sera utile, mais SANS AUCUNE
+*  without even the implied             GARANTIE : sans même la garantie
+*  warranty of MERCHANTABILITY          implicite de COMMERCIALISABILITÉ
+*  or FITNESS FOR A PARTICULAR          ni d’ADÉQUATION À UN OBJECTIF
+*  PURPOSE.  See the GNU Affero         PARTICULIER. Consultez la Licence
+*  General Public License for           Générale Publique GNU Affero
+*  more details.                        pour plus de détails.
+*
+*  You should have received             Vous devriez avoir reçu une
+*  a copy of the GNU Affero             copie de la Licence Générale
+*  General Public License along         Publique GNU Affero avec
+*  with OpenCADC.  If not, see          OpenCADC ; si ce n’est
+*  <http://www.gnu.org/licenses/>.      pas le cas, consultez :
+*                                       <http://www.gnu.org/licenses/>.
+*
+************************************************************************
+*/
+
+package org.opencadc.inventory;
+
+import java.net.URI;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Immutable content checksum: a digest algorithm and the raw digest value. This is the 
+ * parsed form of the checksum URIs (<code>{algorithm}:{hex value}</code>) used in Artifact 
+ * and StorageMetadata. Equality compares the raw bytes (in constant time) so two checksums
+ * are equal even if the URIs differ in the case of the hex value. The URI, hex, and Base64 
+ * forms are computed once when first requested.
+ * 
+ * @author pdowler
+ */
+public final class ContentChecksum {
+    
+    public enum Algorithm {
+        MD5("md5", "MD5", 16),
+        SHA1("sha-1", "SHA-1", 20),
+        SHA256("sha-256", "SHA-256", 32),
+        SHA512("sha-512", "SHA-512", 64);
+        
+        private final String scheme;
+        private final String digestName;
+        private final int length;
+        
+        private Algorithm(String scheme, String digestName, int length) {
+            this.scheme = scheme;
+            this.digestName = digestName;
+            this.length = length;
+        }
+
+        /**
+         * @return URI scheme used for this algorithm
+         */
+        public String getScheme() {
+            return scheme;
+        }
+
+        /**
+         * @return algorithm name for MessageDigest.getInstance
+         */
+        public String getDigestName() {
+            return digestName;
+        }
+
+        /**
+         * @return digest length in bytes
+         */
+        public int getLength() {
+            return length;
+        }
+        
+        /**
+         * Find the algorithm for a checksum URI scheme or MessageDigest algorithm name.
+         * 
+         * @param name scheme or digest algorithm name (case insensitive)
+         * @return algorithm or null if not supported
+         */
+        public static Algorithm forName(String name) {
+            if (name == null) {
+                return null;
+            }
+            for (Algorithm a : values()) {
+                if (a.scheme.equalsIgnoreCase(name) || a.digestName.equalsIgnoreCase(name)) {
+                    return a;
+                }
+            }
+            return null;
+        }
+    }
+    
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    
+    private final Algorithm algorithm;
+    private final byte[] value;
+    private final int hash;
+    
+    private transient URI uri;
+    private transient String hex;
+    private transient String base64;
+    
+    /**
+     * Constructor.
+     * 
+     * @param algorithm digest algorithm
+     * @param value raw digest value
+     * @throws IllegalArgumentException if the value length does not match the algorithm
+     */
+    public ContentChecksum(Algorithm algorithm, byte[] value) {
+        InventoryUtil.assertNotNull(ContentChecksum.class, "algorithm", algorithm);
+        InventoryUtil.assertNotNull(ContentChecksum.class, "value", value);
+        if (value.length != algorithm.length) {
+            throw new IllegalArgumentException("invalid " + ContentChecksum.class.getSimpleName() + ".value: "
+                + value.length + " bytes -- expected " + algorithm.length + " for " + algorithm.scheme);
+        }
+        this.algorithm = algorithm;
+        this.value = Arrays.copyOf(value, value.length);
+        this.hash = 31 * algorithm.ordinal() + Arrays.hashCode(value);
+    }
+    
+    /**
+     * Create a checksum from the current digest value. This calls MessageDigest.digest()
+     * which also resets the digest.
+     * 
+     * @param digest digest of the content
+     * @return checksum
+     * @throws IllegalArgumentException if the digest algorithm is not supported
+     */
+    public static ContentChecksum create(MessageDigest digest) {
+        InventoryUtil.assertNotNull(ContentChecksum.class, "digest", digest);
+        Algorithm a = Algorithm.forName(digest.getAlgorithm());
+        if (a == null) {
+            throw new IllegalArgumentException("unsupported digest algorithm: " + digest.getAlgorithm());
+        }
+        return new ContentChecksum(a, digest.digest());
+    }
+    
+    /**
+     * Parse a checksum URI.
+     * 
+     * @param uri checksum URI of the form {algorithm}:{hex value}
+     * @return checksum
+     * @throws IllegalArgumentException if the URI is invalid or the algorithm is not supported
+     */
+    public static ContentChecksum parse(URI uri) {
+        InventoryUtil.assertNotNull(ContentChecksum.class, "uri", uri);
+        Algorithm a = Algorithm.forName(uri.getScheme());
+        if (a == null) {
+            throw new IllegalArgumentException("invalid checksum URI: " + uri + " reason: unsupported algorithm");
+        }
+        String sval = uri.getSchemeSpecificPart();
+        if (sval == null || sval.length() != 2 * a.length) {
+            throw new IllegalArgumentException("invalid checksum URI: " + uri + " reason: expected " 
+                + 2 * a.length + " hex chars for " + a.scheme);
+        }
+        byte[] b = new byte[a.length];
+        for (int i = 0; i < b.length; i++) {
+            int hi = Character.digit(sval.charAt(2 * i), 16);
+            int lo = Character.digit(sval.charAt(2 * i + 1), 16);
+            if (hi < 0 || lo < 0) {
+                throw new IllegalArgumentException("invalid checksum URI: " + uri + " reason: invalid hex chars");
+            }
+            b[i] = (byte) ((hi << 4) | lo);
+        }
+        return new ContentChecksum(a, b);
+    }
+
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @return copy of the raw digest value
+     */
+    public byte[] getBytes() {
+        return Arrays.copyOf(value, value.length);
+    }
+    
+    /**
+     * @return digest value as lower case hex
+     */
+    public String getHex() {
+        String ret = hex;
+        if (ret == null) {
+            char[] c = new char[2 * value.length];
+            for (int i = 0; i < value.length; i++) {
+                c[2 * i] = HEX[(value[i] >> 4) & 0xf];
+                c[2 * i + 1] = HEX[value[i] & 0xf];
+            }
+            ret = new String(c);
+            this.hex = ret;
+        }
+        return ret;
+    }
+    
+    /**
+     * @return digest value in Base64 (e.g. for a Content-MD5 header)
+     */
+    public String getBase64() {
+        String ret = base64;
+        if (ret == null) {
+            ret = Base64.getEncoder().encodeToString(value);
+            this.base64 = ret;
+        }
+        return ret;
+    }
+    
+    /**
+     * @return checksum URI of the form {algorithm}:{lower case hex value}
+     */
+    public URI toURI() {
+        URI ret = uri;
+        if (ret == null) {
+            ret = URI.create(algorithm.scheme + ":" + getHex());
+            this.uri = ret;
+        }
+        return ret;
+    }
+    
+    /**
+     * Compare to a checksum URI without creating a ContentChecksum.
+     * 
+     * @param u checksum URI
+     * @return true if the URI has the same algorithm and value (hex case insensitive)
+     */
+    public boolean matches(URI u) {
+        if (u == null || algorithm != Algorithm.forName(u.getScheme())) {
+            return false;
+        }
+        String sval = u.getSchemeSpecificPart();
+        if (sval == null || sval.length() != 2 * value.length) {
+            return false;
+        }
+        int diff = 0;
+        for (int i = 0; i < value.length; i++) {
+            int hi = Character.digit(sval.charAt(2 * i), 16);
+            int lo = Character.digit(sval.charAt(2 * i + 1), 16);
+            if (hi < 0 || lo < 0) {
+                return false;
+            }
+            diff |= ((hi << 4) | lo) ^ (value[i] & 0xff);
+        }
+        return diff == 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ContentChecksum)) {
+            return false;
+        }
+        ContentChecksum rhs = (ContentChecksum) o;
+        return algorithm == rhs.algorithm && MessageDigest.isEqual(value, rhs.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+    
+    @Override
+    public String toString() {
+        return toURI().toASCIIString();
+    }
+}
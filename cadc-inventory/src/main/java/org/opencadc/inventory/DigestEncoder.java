@@ -0,0 +1,214 @@
+/*
+************************************************************************
+*******************  CANADIAN ASTRONOMY DATA CENTRE  *******************
+**************  CENTRE CANADIEN DE DONNÉES ASTRONOMIQUES  **************
+*
+*  (c) 2020.                            (c) 2020.
+*  Government of Canada                 Gouvernement du Canada
+*  National Research Council            Conseil national de recherches
+*  Ottawa, Canada, K1A 0R6              Ottawa, Canada, K1A 0R6
+*  All rights reserved                  Tous droits réservés
+*
+*  NRC disclaims any warranties,        Le CNRC dénie toute garantie
+*  expressed, implied, or               énoncée, implicite ou légale,
+*  statutory, of any kind with          de quelque nature que ce
+*  respect to the software,             soit, concernant le logiciel,
+*  including without limitation         y compris sans restriction
+*  any warranty of merchantability      toute garantie de valeur
+*  or fitness for a particular          marchande ou de pertinence
+*  purpose. NRC shall not be            pour un usage particulier.
+*  liable in any event for any          Le CNRC ne pourra en aucun cas
+*  damages, whether direct or           être tenu responsable de tout
+*  indirect, special or general,        dommage, direct ou indirect,
+*  consequential or incidental,         particulier ou général,
+*  arising from the use of the          accessoire ou fortuit, résultant
+*  software.  Neither the name          de l'utilisation du logiciel. Ni
+*  of the National Research             le nom du Conseil National de
+*  Council of Canada nor the            Recherches du Canada ni les noms
+*  names of its contributors may        de ses  participants ne peuvent
+*  be used to endorse or promote        être utilisés pour approuver ou
+*  products derived from this           promouvoir les produits dérivés
+*  software without specific prior      de ce logiciel sans autorisation
+*  written permission.                  préalable et particulière
+*                                       par écrit.
+*
+*  This file is part of the             Ce fichier fait partie du projet
+*  OpenCADC project.                    OpenCADC.
+*
+*  OpenCADC is free software:           OpenCADC est un logiciel libre ;
+*  you can redistribute it and/or       vous pouvez le redistribuer ou le
+*  modify it under the terms of         modifier suivant les termes de
+*  the GNU Affero General Public        la “GNU Affero General Public
+*  License as published by the          License” telle que publiée
+*  Free Software Foundation,            par la Free Software Foundation
+*  either version 3 of the              : soit la version 3 de cette
+*  License, or (at your option)         licence, soit (à votre gré)
+*  any later version.                   toute version ultérieure.
+*
+*  OpenCADC is distributed in the       OpenCADC est distribué
+*  hope that it will be useful,         dans l’espoir qu’il vous
+*  but WITHOUT ANY WARRANTY;            sera utile, mais SANS AUCUNE
+*  without even the implied             GARANTIE : sans même la garantie
+*  warranty of MERCHANTABILITY          implicite de COMMERCIALISABILITÉ
+*  or FITNESS FOR A PARTICULAR          ni d’ADÉQUATION À UN OBJECTIF
+*  PURPOSE.  See the GNU Affero         PARTICULIER. Consultez la Licence
+*  General Public License for           Générale Publique GNU Affero
+*  more details.                        pour plus de détails.
+*
+*  You should have received             Vous devriez avoir reçu une
+*  a copy of the GNU Affero             copie de la Licence Générale
+*  General Public License along         Publique GNU Affero avec
+*  with OpenCADC.  If not, see          OpenCADC ; si ce n’est
+*  <http://www.gnu.org/licenses/>.      pas le cas, consultez :
+*                                       <http://www.gnu.org/licenses/>.
+*
+************************************************************************
+*/
+
+package org.opencadc.inventory;
+
+import java.net.URI;
+import java.security.MessageDigest;
+import java.util.Date;
+import java.util.UUID;
+import org.apache.log4j.Logger;
+
+/**
+ * Encode primitive and value types directly into a MessageDigest. The bytes passed to the 
+ * digest are the same as Entity.primitiveValueToBytes(...) produces, but values are written 
+ * into a re-usable scratch buffer instead of allocating new arrays for every value. Instances 
+ * are not thread-safe: use get() to obtain the instance for the current thread.
+ * 
+ * @author pdowler
+ */
+final class DigestEncoder {
+    private static final Logger log = Logger.getLogger(DigestEncoder.class);
+
+    private static final int BUFFER_SIZE = 512;
+    
+    private static final ThreadLocal<DigestEncoder> INSTANCE = new ThreadLocal<DigestEncoder>() {
+        @Override
+        protected DigestEncoder initialValue() {
+            return new DigestEncoder();
+        }
+    };
+    
+    private final byte[] buf = new byte[BUFFER_SIZE];
+    
+    private DigestEncoder() { 
+    }
+    
+    /**
+     * @return the encoder for the current thread
+     */
+    static DigestEncoder get() {
+        return INSTANCE.get();
+    }
+    
+    /**
+     * Update the digest with the bytes of the specified value.
+     * 
+     * @param digest digest to update
+     * @param o value to encode
+     * @throws UnsupportedOperationException if the value type is not supported
+     */
+    void update(MessageDigest digest, Object o) {
+        if (o instanceof String) {
+            updateString(digest, (String) o);
+        } else if (o instanceof URI) {
+            // toASCIIString returns the cached string when it is already pure ASCII
+            updateString(digest, ((URI) o).toASCIIString());
+        } else if (o instanceof UUID) {
+            UUID uuid = (UUID) o;
+            putLong(0, uuid.getMostSignificantBits());
+            putLong(8, uuid.getLeastSignificantBits());
+            digest.update(buf, 0, 16);
+        } else if (o instanceof Date) {
+            putLong(0, ((Date) o).getTime()); // milliseconds
+            digest.update(buf, 0, 8);
+        } else if (o instanceof Long) {
+            putLong(0, (Long) o);
+            digest.update(buf, 0, 8);
+        } else if (o instanceof Integer) {
+            putInt(0, (Integer) o);
+            digest.update(buf, 0, 4);
+        } else if (o instanceof Short) {
+            short s = (Short) o;
+            buf[0] = (byte) (s >> 8);
+            buf[1] = (byte) s;
+            digest.update(buf, 0, 2);
+        } else if (o instanceof Byte) {
+            digest.update((Byte) o);
+        } else if (o instanceof Boolean) {
+            digest.update((Boolean) o ? (byte) 1 : (byte) 0);
+        } else if (o instanceof Float) {
+            putInt(0, Float.floatToIntBits((Float) o)); // IEEE754 float
+            digest.update(buf, 0, 4);
+        } else if (o instanceof Double) {
+            putLong(0, Double.doubleToLongBits((Double) o)); // IEEE754 double
+            digest.update(buf, 0, 8);
+        } else {
+            throw new UnsupportedOperationException(
+                "unexpected primitive/value type: " + o.getClass().getName());
+        }
+    }
+    
+    // equivalent to s.trim().getBytes("UTF-8")
+    private void updateString(MessageDigest digest, String s) {
+        int start = 0;
+        int end = s.length();
+        while (start < end && s.charAt(start) <= ' ') {
+            start++;
+        }
+        while (start < end && s.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        
+        int n = 0;
+        for (int i = start; i < end; i++) {
+            if (n > BUFFER_SIZE - 4) {
+                digest.update(buf, 0, n);
+                n = 0;
+            }
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                buf[n++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[n++] = (byte) (0xc0 | (c >> 6));
+                buf[n++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    buf[n++] = (byte) (0xf0 | (cp >> 18));
+                    buf[n++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                    buf[n++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                    buf[n++] = (byte) (0x80 | (cp & 0x3f));
+                } else {
+                    buf[n++] = (byte) '?'; // same replacement as String.getBytes
+                }
+            } else {
+                buf[n++] = (byte) (0xe0 | (c >> 12));
+                buf[n++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buf[n++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        if (n > 0) {
+            digest.update(buf, 0, n);
+        }
+    }
+    
+    // network byte order == big endian
+    private void putLong(int off, long v) {
+        for (int i = 7; i >= 0; i--) {
+            buf[off + i] = (byte) v;
+            v >>>= 8;
+        }
+    }
+    
+    private void putInt(int off, int v) {
+        for (int i = 3; i >= 0; i--) {
+            buf[off + i] = (byte) v;
+            v >>>= 8;
+        }
+    }
+}
@@ -70,6 +70,9 @@ package org.opencadc.inventory;
 import ca.nrc.cadc.date.DateUtil;
 import ca.nrc.cadc.util.HexUtil;
 import java.io.UnsupportedEncodingException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.net.URI;
@@ -78,9 +81,11 @@ import java.security.MessageDigest;
 import java.text.DateFormat;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.log4j.Logger;
 
 /**
@@ -94,6 +99,9 @@ public abstract class Entity {
     private static final String PKG = Entity.class.getPackage().getName();
     private static final boolean MCS_DEBUG = false;
     
+    // state fields in metaChecksum order: computed once per class
+    private static final Map<Class, StateField[]> STATE_FIELDS = new ConcurrentHashMap<>();
+    
     private UUID id;
     private Date lastModified;
     private URI metaChecksum;
@@ -143,7 +151,7 @@ public abstract class Entity {
      */
     public URI computeMetaChecksum(MessageDigest digest) {
         try {
-            calcMetaChecksum(this.getClass(), this, digest);
+            calcMetaChecksum(this.getClass(), this, digest, DigestEncoder.get());
             byte[] metaChecksumBytes = digest.digest();
             String hexMetaChecksum = HexUtil.toHex(metaChecksumBytes);
             String alg = digest.getAlgorithm().toLowerCase();
@@ -154,7 +162,7 @@ public abstract class Entity {
         }
     }
     
-    private void calcMetaChecksum(Class c, Object o, MessageDigest digest) {
+    private void calcMetaChecksum(Class c, Object o, MessageDigest digest, DigestEncoder enc) {
         // calculation order:
         // 1. Entity.id for entities
         // 2. Entity.lastModified?? TBD
@@ -170,36 +178,32 @@ public abstract class Entity {
         // short: (2 bytes, network byte order == big endian))
         // integer: (4 bytes, network byte order == big endian)
         // long: (8 bytes, network byte order == big endian)
-        try {
-            if (o instanceof Entity) {
-                Entity ce = (Entity) o;
-                digest.update(primitiveValueToBytes(ce.id, "Entity.id", digest.getAlgorithm()));
-                if (MCS_DEBUG) {
-                    log.debug("metaChecksum: " + ce.getClass().getSimpleName() + ".id " + ce.id);
-                }
-                // TBD: include lastModified in metaChecksum: CAOM does not but it only supports one-direction
-                // harvesting and always copies lastModified from origin
+        if (o instanceof Entity) {
+            Entity ce = (Entity) o;
+            enc.update(digest, ce.id);
+            if (MCS_DEBUG) {
+                log.debug("metaChecksum: " + ce.getClass().getSimpleName() + ".id " + ce.id);
             }
+            // TBD: include lastModified in metaChecksum: CAOM does not but it only supports one-direction
+            // harvesting and always copies lastModified from origin
+        }
 
-            SortedSet<Field> fields = getStateFields(c);
-            for (Field f : fields) {
-                String cf = c.getSimpleName() + "." + f.getName();
-                f.setAccessible(true);
-                Object fo = f.get(o);
-                if (fo != null) {
-                    Class ac = fo.getClass();
-                    if (isLocalClass(ac)) {
-                        calcMetaChecksum(ac, fo, digest);
-                    } else {
-                        digest.update(primitiveValueToBytes(fo, cf, digest.getAlgorithm()));
+        StateField[] fields = getStateFields(c);
+        for (StateField f : fields) {
+            Object fo = f.get(o);
+            if (fo != null) {
+                Class ac = fo.getClass();
+                if (isLocalClass(ac)) {
+                    calcMetaChecksum(ac, fo, digest, enc);
+                } else {
+                    enc.update(digest, fo);
+                    if (MCS_DEBUG) {
+                        log.debug("metaChecksum: " + f.name + " " + fo);
                     }
-                } else if (MCS_DEBUG) {
-                    log.debug("skip null: " + cf);
                 }
+            } else if (MCS_DEBUG) {
+                log.debug("skip null: " + f.name);
             }
-
-        } catch (IllegalAccessException bug) {
-            throw new RuntimeException("Unable to calculate metaChecksum for class " + c.getName(), bug);
         }
     }
     
@@ -211,8 +215,23 @@ public abstract class Entity {
         return pname.startsWith(PKG);
     }
     
-    private SortedSet<Field> getStateFields(Class c)
-            throws IllegalAccessException {
+    // get the cached accessors for the state fields of the specified class
+    private static StateField[] getStateFields(Class c) {
+        StateField[] ret = STATE_FIELDS.get(c);
+        if (ret == null) {
+            // concurrent callers may both create: the result is the same
+            SortedSet<Field> fields = getFieldSet(c);
+            ret = new StateField[fields.size()];
+            int i = 0;
+            for (Field f : fields) {
+                ret[i++] = new StateField(c, f);
+            }
+            STATE_FIELDS.put(c, ret);
+        }
+        return ret;
+    }
+    
+    private static SortedSet<Field> getFieldSet(Class c) {
         SortedSet<Field> ret = new TreeSet<>(new FieldComparator());
         Field[] fields = c.getDeclaredFields();
         for (Field f : fields) {
@@ -229,12 +248,22 @@ public abstract class Entity {
         }
         Class sc = c.getSuperclass();
         while (sc != null && !Entity.class.equals(sc)) {
-            ret.addAll(getStateFields(sc));
+            ret.addAll(getFieldSet(sc));
             sc = sc.getSuperclass();
         }
         return ret;
     }
 
+    /**
+     * Convert a primitive or value type to the bytes used in checksum calculations. 
+     * Entity and bucket checksums are computed without this intermediate array; this 
+     * method documents the encoding and supports callers that need the bytes.
+     * 
+     * @param o value to convert
+     * @param name name of the value (for debugging)
+     * @param digestAlg digest algorithm (for debugging)
+     * @return encoded value
+     */
     public static byte[] primitiveValueToBytes(Object o, String name, String digestAlg) {
         byte[] ret = null;
         if (o instanceof Byte) {
@@ -300,10 +329,38 @@ public abstract class Entity {
                 "unexpected primitive/value type: " + o.getClass().getName());
     }
 
-    private class FieldComparator implements Comparator<Field> {
+    private static class FieldComparator implements Comparator<Field> {
         @Override
         public int compare(Field o1, Field o2) {
             return o1.getName().compareTo(o2.getName());
         }
     }
+    
+    // pre-computed accessor for a single state field
+    private static class StateField {
+        private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+        
+        final String name;
+        private final MethodHandle getter;
+        
+        StateField(Class c, Field f) {
+            this.name = c.getSimpleName() + "." + f.getName();
+            try {
+                f.setAccessible(true);
+                this.getter = MethodHandles.lookup().unreflectGetter(f).asType(GETTER_TYPE);
+            } catch (IllegalAccessException bug) {
+                throw new RuntimeException("Unable to calculate metaChecksum for class " + c.getName(), bug);
+            }
+        }
+        
+        Object get(Object o) {
+            try {
+                return (Object) getter.invokeExact(o);
+            } catch (RuntimeException | Error ex) {
+                throw ex;
+            } catch (Throwable bug) {
+                throw new RuntimeException("BUG: failed to read state field " + name, bug);
+            }
+        }
+    }
 }
@@ -73,11 +73,14 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URI;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
 import org.apache.log4j.Logger;
 
@@ -101,15 +104,66 @@ public abstract class InventoryUtil {
      * @return short code
      */
     public static String computeBucket(URI uri, int length) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            byte[] bytes = Entity.primitiveValueToBytes(uri, "File.uri", md.getAlgorithm());
-            md.update(bytes);
-            byte[] sha = md.digest();
-            String hex = HexUtil.toHex(sha);
-            return hex.substring(0, length);
-        } catch (NoSuchAlgorithmException ex) {
-            throw new RuntimeException("BUG: failed to get instance of SHA-1", ex);
+        return BUCKET_DIGEST.get().computeBucket(uri, length);
+    }
+
+    /**
+     * Compute short codes for a batch of URIs. This is equivalent to calling 
+     * computeBucket(URI, int) for each URI.
+     *
+     * @param uris the URIs to compute from
+     * @param length length of hex string
+     * @return map of URI to short code
+     */
+    public static Map<URI, String> computeBuckets(Collection<URI> uris, int length) {
+        BucketDigest bd = BUCKET_DIGEST.get();
+        Map<URI, String> ret = new HashMap<>(2 * uris.size());
+        for (URI uri : uris) {
+            ret.put(uri, bd.computeBucket(uri, length));
+        }
+        return ret;
+    }
+    
+    private static final ThreadLocal<BucketDigest> BUCKET_DIGEST = new ThreadLocal<BucketDigest>() {
+        @Override
+        protected BucketDigest initialValue() {
+            return new BucketDigest();
+        }
+    };
+    
+    // per-thread SHA-1 digest and output buffer for bucket calculation
+    private static class BucketDigest {
+        private final MessageDigest md;
+        private final byte[] sha;
+        
+        BucketDigest() {
+            try {
+                this.md = MessageDigest.getInstance("SHA-1");
+                this.sha = new byte[md.getDigestLength()];
+            } catch (NoSuchAlgorithmException ex) {
+                throw new RuntimeException("BUG: failed to get instance of SHA-1", ex);
+            }
+        }
+        
+        String computeBucket(URI uri, int length) {
+            if (length < 0 || length > 2 * sha.length) {
+                throw new IllegalArgumentException("invalid bucket length: " + length);
+            }
+            md.reset();
+            DigestEncoder.get().update(md, uri);
+            try {
+                md.digest(sha, 0, sha.length);
+            } catch (DigestException ex) {
+                throw new RuntimeException("BUG: failed to compute SHA-1 digest", ex);
+            }
+            // only the leading hex digits are needed
+            char[] ret = new char[length];
+            for (int i = 0; i < length; i++) {
+                int b = sha[i >> 1];
+                int n = ((i & 1) == 0) ? (b >> 4) : b;
+                ret[i] = Artifact.URI_BUCKET_CHARS.charAt(n & 0xf);
+            }
+            return new String(ret);
         }
     }
 
@@ -119,13 +173,7 @@ public abstract class InventoryUtil {
      * @return The filename
      */
     public static String computeArtifactFilename(URI uri) {
-        validateArtifactURI(InventoryUtil.class, uri);
-        String ssp = uri.getSchemeSpecificPart();
-        int lastSlash = ssp.lastIndexOf("/");
-        if (lastSlash > 0) {
-            return ssp.substring(lastSlash + 1);
-        }
-        return ssp;
+        return ArtifactURI.valueOf(InventoryUtil.class, uri).getFilename();
     }
 
     /**
@@ -210,27 +258,7 @@ public abstract class InventoryUtil {
      * @throws IllegalArgumentException if the uri does not conform
      */
     public static void validateArtifactURI(Class caller, URI uri) {
-        if (uri.getFragment() != null || uri.getQuery() != null
-            || uri.getUserInfo() != null
-            || uri.getAuthority() != null || uri.getHost() != null || uri.getPort() != -1) {
-            throw new IllegalArgumentException(caller.getSimpleName()
-                + ": invalid Artifact.uri: " + uri + " -- authority|query|fragment|host|port not permitted");
-        }
-
-        String scheme = uri.getScheme();
-        String ssp = uri.getSchemeSpecificPart();
-        if (scheme == null || ssp == null || ssp.isEmpty()) {
-            throw new IllegalArgumentException(caller.getSimpleName()
-                + ": invalid Artifact.uri: " + uri + " -- expected {scheme}:{scheme-specific-part} where {scheme-specific-part} is a relative path");
-        }
-        if (ssp.charAt(0) == '/') {
-            throw new IllegalArgumentException(caller.getSimpleName()
-                + ": invalid Artifact.uri: " + uri + " -- expected {scheme}:{scheme-specific-part} where {scheme-specific-part} is a relative path");
-        }
-        String[] comps = ssp.split("/");
-        for (String c : comps) {
-            assertValidPathComponent(null, "scheme-specific-part", c);
-        }
+        ArtifactURI.validate(caller, uri);
     }
 
     /**
@@ -265,6 +293,25 @@ public abstract class InventoryUtil {
         return null;
     }
 
+    /**
+     * Reconstruct an artifact from persisted state. This method is to support reading
+     * artifacts that were validated when they were stored (e.g. database rows): the URI 
+     * is not re-validated and the stored uriBucket is used as-is (it is only computed if 
+     * null). Callers must not use this for input from users or other untrusted sources.
+     *
+     * @param id entity ID
+     * @param uri logical identifier
+     * @param uriBucket stored bucket of the uri, may be null
+     * @param contentChecksum checksum of the content, form: {algorithm}:{hexadecimal value}
+     * @param contentLastModified last-modified timestamp of the content
+     * @param contentLength number of bytes in the content
+     * @return the artifact
+     */
+    public static Artifact reconstructArtifact(UUID id, URI uri, String uriBucket, URI contentChecksum, 
+            Date contentLastModified, Long contentLength) {
+        return new Artifact(id, uri, uriBucket, contentChecksum, contentLastModified, contentLength);
+    }
+
     /**
      * Assign last modified timestamp to an entity. This method is to support
      * persisting/serialising and reconstructing/deserialising an entity.
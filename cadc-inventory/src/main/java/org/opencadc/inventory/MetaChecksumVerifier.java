@@ -0,0 +1,316 @@
+/*
+************************************************************************
+*******************  CANADIAN ASTRONOMY DATA CENTRE  *******************
+**************  CENTRE CANADIEN DE DONNÉES ASTRONOMIQUES  **************
+*
+*  (c) 2020.                            (c) 2020.
+*  Government of Canada                 Gouvernement du Canada
+*  National Research Council            Conseil national de recherches
+*  Ottawa, Canada, K1A 0R6              Ottawa, Canada, K1A 0R6
+*  All rights reserved                  Tous droits réservés
+*
+*  NRC disclaims any warranties,        Le CNRC dénie toute garantie
+*  expressed, implied, or               énoncée, implicite ou légale,
+*  statutory, of any kind with          de quelque nature que ce
+*  respect to the software,             soit, concernant le logiciel,
+*  including without limitation         y compris sans restriction
+*  any warranty of merchantability      toute garantie de valeur
+*  or fitness for a particular          marchande ou de pertinence
+*  purpose. NRC shall not be            pour un usage particulier.
+*  liable in any event for any          Le CNRC ne pourra en aucun cas
+*  damages, whether direct or           être tenu responsable de tout
+*  indirect, special or general,        dommage, direct ou indirect,
+*  consequential or incidental,         particulier ou général,
+*  arising from the use of the          accessoire ou fortuit, résultant
+*  software.  Neither the name          de l'utilisation du logiciel. Ni
+*  of the National Research             le nom du Conseil National de
+*  Council of Canada nor the            Recherches du Canada ni les noms
+*  names of its contributors may        de ses  participants ne peuvent
+*  be used to endorse or promote        être utilisés pour approuver ou
+*  products derived from this           promouvoir les produits dérivés
+*  software without specific prior      de ce logiciel sans autorisation
+*  written permission.                  préalable et particulière
+*                                       par écrit.
+*
+*  This file is part of the             Ce fichier fait partie du projet
+*  OpenCADC project.                    OpenCADC.
+*
+*  OpenCADC is free software:           OpenCADC est un logiciel libre ;
+*  you can redistribute it and/or       vous pouvez le redistribuer ou le
+*  modify it under the terms of         modifier suivant les termes de
+*  the GNU Affero General Public        la “GNU Affero General Public
+*  License as published by the          License” telle que publiée
+*  Free Software Foundation,            par la Free Software Foundation
+*  either version 3 of the              : soit la version 3 de cette
+*  License, or (at your option)         licence, soit (à votre gré)
+*  any later version.                   toute version ultérieure.
+*
+*  OpenCADC is distributed in the       OpenCADC est distribué
+*  hope that it will be useful,         dans l’espoir qu’il vous
+*  but WITHOUT ANY WARRANTY;            sera utile, mais SANS AUCUNE
+*  without even the implied             GARANTIE : sans même la garantie
+*  warranty of MERCHANTABILITY          implicite de COMMERCIALISABILITÉ
+*  or FITNESS FOR A PARTICULAR          ni d’ADÉQUATION À UN OBJECTIF
+*  PURPOSE.  See the GNU Affero         PARTICULIER. Consultez la Licence
+*  General Public License for           Générale Publique GNU Affero
+*  more details.                        pour plus de détails.
+*
+*  You should have received             Vous devriez avoir reçu une
+*  a copy of the GNU Affero             copie de la Licence Générale
+*  General Public License along         Publique GNU Affero avec
+*  with OpenCADC.  If not, see          OpenCADC ; si ce n’est
+*  <http://www.gnu.org/licenses/>.      pas le cas, consultez :
+*                                       <http://www.gnu.org/licenses/>.
+*
+************************************************************************
+*/
+
+package org.opencadc.inventory;
+
+import java.net.URI;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import org.apache.log4j.Logger;
+
+/**
+ * Bulk verification of entity metaChecksum values. Checksums are computed on a ForkJoinPool 
+ * with one MessageDigest per worker thread. Results are returned in input order and a mismatch
+ * is reported in the result rather than stopping the stream, so the caller can decide how to 
+ * handle it (skip, log, abort). When verifying an iterator, the input is read in batches on the
+ * calling thread and the next batch is verified while the caller processes the current one.
+ * 
+ * <p>Instances must be closed to release the worker threads.
+ * 
+ * @author pdowler
+ */
+public class MetaChecksumVerifier implements AutoCloseable {
+    private static final Logger log = Logger.getLogger(MetaChecksumVerifier.class);
+
+    // entities per fork-join leaf task
+    private static final int LEAF_SIZE = 64;
+    
+    private final String digestAlgorithm;
+    private final ForkJoinPool pool;
+    private final ThreadLocal<MessageDigest> digests;
+    
+    /**
+     * Verifier with one worker per available processor.
+     * 
+     * @param digestAlgorithm MessageDigest algorithm used to compute metaChecksum (e.g. MD5)
+     */
+    public MetaChecksumVerifier(String digestAlgorithm) {
+        this(digestAlgorithm, Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * Verifier with the specified number of workers.
+     * 
+     * @param digestAlgorithm MessageDigest algorithm used to compute metaChecksum (e.g. MD5)
+     * @param parallelism number of worker threads
+     */
+    public MetaChecksumVerifier(String digestAlgorithm, int parallelism) {
+        InventoryUtil.assertNotNull(MetaChecksumVerifier.class, "digestAlgorithm", digestAlgorithm);
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("invalid " + MetaChecksumVerifier.class.getSimpleName() 
+                + ".parallelism: " + parallelism);
+        }
+        try {
+            MessageDigest.getInstance(digestAlgorithm);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalArgumentException("invalid " + MetaChecksumVerifier.class.getSimpleName() 
+                + ".digestAlgorithm: " + digestAlgorithm, ex);
+        }
+        this.digestAlgorithm = digestAlgorithm;
+        this.pool = new ForkJoinPool(parallelism);
+        this.digests = ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance(this.digestAlgorithm);
+            } catch (NoSuchAlgorithmException ex) {
+                throw new RuntimeException("BUG: failed to create MessageDigest: " + this.digestAlgorithm, ex);
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+    
+    /**
+     * Result of verifying one entity.
+     * 
+     * @param <E> entity type
+     */
+    public static class Result<E extends Entity> {
+        private final E entity;
+        private final URI computedMetaChecksum;
+
+        Result(E entity, URI computedMetaChecksum) {
+            this.entity = entity;
+            this.computedMetaChecksum = computedMetaChecksum;
+        }
+
+        public E getEntity() {
+            return entity;
+        }
+
+        /**
+         * @return the metaChecksum computed from the current entity state
+         */
+        public URI getComputedMetaChecksum() {
+            return computedMetaChecksum;
+        }
+        
+        /**
+         * @return true if the entity metaChecksum matches the computed value
+         */
+        public boolean isValid() {
+            return computedMetaChecksum.equals(entity.getMetaChecksum());
+        }
+
+        @Override
+        public String toString() {
+            return "Result[" + entity.getClass().getSimpleName() + "," + entity.getID() + "," + isValid() + "]";
+        }
+    }
+    
+    /**
+     * Verify a batch of entities.
+     * 
+     * @param <E> entity type
+     * @param entities entities with a metaChecksum
+     * @return results in the same order as the input
+     */
+    public <E extends Entity> List<Result<E>> verify(List<E> entities) {
+        return join(submit(entities));
+    }
+    
+    /**
+     * Verify a stream of entities. The input iterator is only accessed from the thread
+     * calling hasNext() and next() on the returned iterator.
+     * 
+     * @param <E> entity type
+     * @param entities input entities with a metaChecksum
+     * @param batchSize number of entities to read and verify at a time
+     * @return iterator over results in the same order as the input
+     */
+    public <E extends Entity> Iterator<Result<E>> verify(Iterator<E> entities, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("invalid batchSize: " + batchSize);
+        }
+        return new ResultIterator<>(entities, batchSize);
+    }
+    
+    private <E extends Entity> VerifyTask<E> submit(List<E> entities) {
+        @SuppressWarnings("unchecked")
+        Result<E>[] results = (Result<E>[]) new Result[entities.size()];
+        VerifyTask<E> task = new VerifyTask<>(entities, results, 0, entities.size());
+        pool.execute(task);
+        return task;
+    }
+    
+    private <E extends Entity> List<Result<E>> join(VerifyTask<E> task) {
+        try {
+            task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while verifying metaChecksum", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException("failed to verify metaChecksum", cause);
+        }
+        return Arrays.asList(task.results);
+    }
+    
+    private class VerifyTask<E extends Entity> extends RecursiveAction {
+        private final List<E> entities;
+        private final Result<E>[] results;
+        private final int start;
+        private final int end;
+
+        VerifyTask(List<E> entities, Result<E>[] results, int start, int end) {
+            this.entities = entities;
+            this.results = results;
+            this.start = start;
+            this.end = end;
+        }
+        
+        @Override
+        protected void compute() {
+            if (end - start <= LEAF_SIZE) {
+                MessageDigest md = digests.get();
+                for (int i = start; i < end; i++) {
+                    E e = entities.get(i);
+                    // discard partial state left by a previous failure on this thread
+                    md.reset();
+                    results[i] = new Result<>(e, e.computeMetaChecksum(md));
+                }
+                return;
+            }
+            int mid = (start + end) >>> 1;
+            ForkJoinTask.invokeAll(new VerifyTask<>(entities, results, start, mid), 
+                new VerifyTask<>(entities, results, mid, end));
+        }
+    }
+    
+    private class ResultIterator<E extends Entity> implements Iterator<Result<E>> {
+        private final Iterator<E> input;
+        private final int batchSize;
+        
+        private Iterator<Result<E>> current;
+        private VerifyTask<E> pending;
+
+        ResultIterator(Iterator<E> input, int batchSize) {
+            this.input = input;
+            this.batchSize = batchSize;
+            this.pending = submitNext();
+        }
+        
+        private VerifyTask<E> submitNext() {
+            List<E> batch = new ArrayList<>(batchSize);
+            while (batch.size() < batchSize && input.hasNext()) {
+                batch.add(input.next());
+            }
+            if (batch.isEmpty()) {
+                return null;
+            }
+            log.debug("submit: " + batch.size());
+            return submit(batch);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (current != null && current.hasNext()) {
+                return true;
+            }
+            if (pending == null) {
+                return false;
+            }
+            VerifyTask<E> task = pending;
+            // read and start the next batch before waiting for this one
+            pending = submitNext();
+            current = join(task).iterator();
+            return current.hasNext();
+        }
+
+        @Override
+        public Result<E> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+    }
+}
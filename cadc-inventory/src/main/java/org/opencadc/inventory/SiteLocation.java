@@ -106,6 +106,11 @@ public class SiteLocation implements Comparable<SiteLocation> {
         return siteID.equals(s.siteID);
     }
 
+    @Override
+    public int hashCode() {
+        return siteID.hashCode();
+    }
+
     @Override
     public int compareTo(SiteLocation t) {
         return siteID.compareTo(t.siteID);
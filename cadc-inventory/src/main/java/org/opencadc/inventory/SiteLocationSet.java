@@ -0,0 +1,304 @@
+/*
+************************************************************************
+*******************  CANADIAN ASTRONOMY DATA CENTRE  *******************
+**************  CENTRE CANADIEN DE DONNÉES ASTRONOMIQUES  **************
+*
+*  (c) 2020.                            (c) 2020.
+*  Government of Canada                 Gouvernement du Canada
+*  National Research Council            Conseil national de recherches
+*  Ottawa, Canada, K1A 0R6              Ottawa, Canada, K1A 0R6
+*  All rights reserved                  Tous droits réservés
+*
+*  NRC disclaims any warranties,        Le CNRC dénie toute garantie
+*  expressed, implied, or               énoncée, implicite ou légale,
+*  statutory, of any kind with          de quelque nature que ce
+*  respect to the software,             soit, concernant le logiciel,
+*  including without limitation         y compris sans restriction
+*  any warranty of merchantability      toute garantie de valeur
+*  or fitness for a particular          marchande ou de pertinence
+*  purpose. NRC shall not be            pour un usage particulier.
+*  liable in any event for any          Le CNRC ne pourra en aucun cas
+*  damages, whether direct or           être tenu responsable de tout
+*  indirect, special or general,        dommage, direct ou indirect,
+*  consequential or incidental,         particulier ou général,
+*  arising from the use of the          accessoire ou fortuit, résultant
+*  software.  Neither the name          de l'utilisation du logiciel. Ni
+*  of the National Research             le nom du Conseil National de
+*  Council of Canada nor the            Recherches du Canada ni les noms
+*  names of its contributors may        de ses  participants ne peuvent
+*  be used to endorse or promote        être utilisés pour approuver ou
+*  products derived from this           promouvoir les produits dérivés
+*  software without specific prior      de ce logiciel sans autorisation
+*  written permission.                  préalable et particulière
+*                                       par écrit.
+*
+*  This file is part of the             Ce fichier fait partie du projet
+*  OpenCADC project.                    OpenCADC.
+*
+*  OpenCADC is free software:           OpenCADC est un logiciel libre ;
+*  you can redistribute it and/or       vous pouvez le redistribuer ou le
+*  modify it under the terms of         modifier suivant les termes de
+*  the GNU Affero General Public        la “GNU Affero General Public
+*  License as published by the          License” telle que publiée
+*  Free Software Foundation,            par la Free Software Foundation
+*  either version 3 of the              : soit la version 3 de cette
+*  License, or (at your option)         licence, soit (à votre gré)
+*  any later version.                   toute version ultérieure.
+*
+*  OpenCADC is distributed in the       OpenCADC est distribué
+*  hope that it will be useful,         dans l’espoir qu’il vous
+*  but WITHOUT ANY WARRANTY;            sera utile, mais SANS AUCUNE
+*  without even the implied             GARANTIE : sans même la garantie
+*  warranty of MERCHANTABILITY          implicite de COMMERCIALISABILITÉ
+*  or FITNESS FOR A PARTICULAR          ni d’ADÉQUATION À UN OBJECTIF
+*  PURPOSE.  See the GNU Affero         PARTICULIER. Consultez la Licence
+*  General Public License for           Générale Publique GNU Affero
+*  more details.                        pour plus de détails.
+*
+*  You should have received             Vous devriez avoir reçu une
+*  a copy of the GNU Affero             copie de la Licence Générale
+*  General Public License along         Publique GNU Affero avec
+*  with OpenCADC.  If not, see          OpenCADC ; si ce n’est
+*  <http://www.gnu.org/licenses/>.      pas le cas, consultez :
+*                                       <http://www.gnu.org/licenses/>.
+*
+************************************************************************
+*/
+
+package org.opencadc.inventory;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+/**
+ * Sorted set of SiteLocation backed by a single long array (two longs per site ID).
+ * Elements are kept in SiteLocation (UUID) order so iteration order is the same as a 
+ * TreeSet&lt;SiteLocation&gt;. SiteLocation objects are created during iteration; the 
+ * UUID-based methods can be used to avoid that. Instances are not thread-safe.
+ * 
+ * @author pdowler
+ */
+public class SiteLocationSet extends AbstractSet<SiteLocation> {
+    
+    private static final long[] EMPTY = new long[0];
+    
+    private long[] ids = EMPTY;
+    private int size = 0;
+    private int modCount = 0;
+    
+    public SiteLocationSet() { 
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        modCount++;
+    }
+    
+    @Override
+    public boolean add(SiteLocation s) {
+        InventoryUtil.assertNotNull(SiteLocationSet.class, "siteLocation", s);
+        return add(s.getSiteID());
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (o instanceof SiteLocation) {
+            return contains(((SiteLocation) o).getSiteID());
+        }
+        return false;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o instanceof SiteLocation) {
+            return remove(((SiteLocation) o).getSiteID());
+        }
+        return false;
+    }
+    
+    /**
+     * @param siteID storage site ID
+     * @return true if the set was modified
+     */
+    public boolean add(UUID siteID) {
+        InventoryUtil.assertNotNull(SiteLocationSet.class, "siteID", siteID);
+        long msb = siteID.getMostSignificantBits();
+        long lsb = siteID.getLeastSignificantBits();
+        int i = indexOf(msb, lsb);
+        if (i >= 0) {
+            return false;
+        }
+        i = -(i + 1);
+        if (2 * (size + 1) > ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(4, 2 * ids.length));
+        }
+        System.arraycopy(ids, 2 * i, ids, 2 * i + 2, 2 * (size - i));
+        ids[2 * i] = msb;
+        ids[2 * i + 1] = lsb;
+        size++;
+        modCount++;
+        return true;
+    }
+    
+    /**
+     * @param siteID storage site ID
+     * @return true if the set contains the site
+     */
+    public boolean contains(UUID siteID) {
+        if (siteID == null) {
+            return false;
+        }
+        return indexOf(siteID.getMostSignificantBits(), siteID.getLeastSignificantBits()) >= 0;
+    }
+    
+    /**
+     * @param siteID storage site ID
+     * @return true if the set was modified
+     */
+    public boolean remove(UUID siteID) {
+        if (siteID == null) {
+            return false;
+        }
+        int i = indexOf(siteID.getMostSignificantBits(), siteID.getLeastSignificantBits());
+        if (i < 0) {
+            return false;
+        }
+        removeAt(i);
+        return true;
+    }
+    
+    /**
+     * Replace the content of this set with the specified site IDs, e.g. from a
+     * database array column. Duplicates are removed.
+     * 
+     * @param siteIDs site IDs in any order, may be null
+     */
+    public void setSiteIDs(UUID[] siteIDs) {
+        clear();
+        if (siteIDs == null || siteIDs.length == 0) {
+            return;
+        }
+        if (ids.length < 2 * siteIDs.length) {
+            ids = new long[2 * siteIDs.length];
+        }
+        boolean sorted = true;
+        for (int i = 0; i < siteIDs.length; i++) {
+            UUID u = siteIDs[i];
+            InventoryUtil.assertNotNull(SiteLocationSet.class, "siteID", u);
+            ids[2 * i] = u.getMostSignificantBits();
+            ids[2 * i + 1] = u.getLeastSignificantBits();
+            if (i > 0 && compare(ids[2 * i - 2], ids[2 * i - 1], ids[2 * i], ids[2 * i + 1]) >= 0) {
+                sorted = false;
+            }
+        }
+        size = siteIDs.length;
+        if (!sorted) {
+            size = 0;
+            for (UUID u : siteIDs) {
+                add(u);
+            }
+        }
+    }
+    
+    /**
+     * Get the site IDs in set order, e.g. to store in a database array column.
+     * 
+     * @return new array of site IDs
+     */
+    public UUID[] getSiteIDs() {
+        UUID[] ret = new UUID[size];
+        for (int i = 0; i < size; i++) {
+            ret[i] = new UUID(ids[2 * i], ids[2 * i + 1]);
+        }
+        return ret;
+    }
+
+    @Override
+    public Iterator<SiteLocation> iterator() {
+        return new Iterator<SiteLocation>() {
+            private int next = 0;
+            private int last = -1;
+            private int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public SiteLocation next() {
+                checkModCount();
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                last = next++;
+                return new SiteLocation(new UUID(ids[2 * last], ids[2 * last + 1]));
+            }
+
+            @Override
+            public void remove() {
+                if (last < 0) {
+                    throw new IllegalStateException();
+                }
+                checkModCount();
+                removeAt(last);
+                next = last;
+                last = -1;
+                expectedModCount = modCount;
+            }
+            
+            private void checkModCount() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+            }
+        };
+    }
+    
+    private void removeAt(int i) {
+        System.arraycopy(ids, 2 * i + 2, ids, 2 * i, 2 * (size - i - 1));
+        size--;
+        modCount++;
+    }
+    
+    // binary search: same order as UUID.compareTo
+    private int indexOf(long msb, long lsb) {
+        int lo = 0;
+        int hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compare(ids[2 * mid], ids[2 * mid + 1], msb, lsb);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+    
+    private static int compare(long msb1, long lsb1, long msb2, long lsb2) {
+        int ret = Long.compare(msb1, msb2);
+        if (ret == 0) {
+            ret = Long.compare(lsb1, lsb2);
+        }
+        return ret;
+    }
+}
@@ -68,6 +68,7 @@
 package org.opencadc.inventory;
 
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.Objects;
 
 /**
@@ -80,6 +81,10 @@ public class StorageLocation implements Comparable<StorageLocation> {
     private final URI storageID;
     public String storageBucket;
     
+    // sort key and the storageBucket it was computed with
+    private transient byte[] sortKey;
+    private transient String sortKeyBucket;
+    
     /**
      * Constructor with storage bucket null.
      * 
@@ -131,27 +136,85 @@ public class StorageLocation implements Comparable<StorageLocation> {
     /**
      * Fully ordered implementation. Instances are ordered by storageBucket and if storageBucket is
      * equal then by storageID. Two null storageBucket(s) are treated as equals and a single null
-     * storageBucket is sorted after a non-null storageBucket.
+     * storageBucket is sorted after a non-null storageBucket. Values are compared in code point 
+     * order (storageID in ASCII form), which matches the database ORDER BY 
+     * storageBucket, storageID (ASC NULLS LAST) with binary (C) collation.
      * 
      * @param rhs location to pare to
-     * @return -1|0|1 
+     * @return negative|0|positive 
      */
     @Override
     public int compareTo(StorageLocation rhs) {
-        if (storageBucket == null && rhs.storageBucket != null) {
-            return 1;
+        return compareSortKeys(getSortKey(), rhs.getSortKey());
+    }
+    
+    /**
+     * Get the binary sort key for this location. Unsigned lexicographic comparison
+     * of sort keys gives the same order as compareTo. The key is computed once and 
+     * re-computed only if storageBucket is modified. The returned array must not be
+     * modified.
+     * 
+     * @return order-preserving binary key
+     */
+    byte[] getSortKey() {
+        byte[] ret = sortKey;
+        if (ret == null || storageBucket != sortKeyBucket) {
+            String bucket = storageBucket;
+            ret = createSortKey(bucket, storageID);
+            this.sortKeyBucket = bucket;
+            this.sortKey = ret;
         }
-        if (storageBucket != null && rhs.storageBucket == null) {
-            return -1;
+        return ret;
+    }
+    
+    /**
+     * Unsigned lexicographic comparison of two sort keys.
+     * 
+     * @param lhs sort key
+     * @param rhs sort key
+     * @return negative|0|positive
+     */
+    static int compareSortKeys(byte[] lhs, byte[] rhs) {
+        int len = Math.min(lhs.length, rhs.length);
+        for (int i = 0; i < len; i++) {
+            int d = (lhs[i] & 0xff) - (rhs[i] & 0xff);
+            if (d != 0) {
+                return d;
+            }
         }
-        int ret = 0;
-        if (storageBucket != null && rhs.storageBucket != null) {
-            ret = this.storageBucket.compareTo(rhs.storageBucket);
+        return lhs.length - rhs.length;
+    }
+    
+    // key: 0x00 escaped(bucket) 0x00 0x00 storageID | 0x01 storageID
+    // 0x00 bytes in bucket are escaped as 0x00 0xff so the terminator sorts first
+    private static byte[] createSortKey(String bucket, URI storageID) {
+        byte[] sid = storageID.toASCIIString().getBytes(StandardCharsets.US_ASCII);
+        if (bucket == null) {
+            byte[] ret = new byte[1 + sid.length];
+            ret[0] = 0x01;
+            System.arraycopy(sid, 0, ret, 1, sid.length);
+            return ret;
         }
         
-        if (ret != 0) {
-            return ret;
+        byte[] b = bucket.getBytes(StandardCharsets.UTF_8);
+        int nzero = 0;
+        for (byte v : b) {
+            if (v == 0) {
+                nzero++;
+            }
+        }
+        byte[] ret = new byte[1 + b.length + nzero + 2 + sid.length];
+        int n = 0;
+        ret[n++] = 0x00;
+        for (byte v : b) {
+            ret[n++] = v;
+            if (v == 0) {
+                ret[n++] = (byte) 0xff;
+            }
         }
-        return this.storageID.compareTo(rhs.storageID);
+        ret[n++] = 0x00;
+        ret[n++] = 0x00;
+        System.arraycopy(sid, 0, ret, n, sid.length);
+        return ret;
     }
 }
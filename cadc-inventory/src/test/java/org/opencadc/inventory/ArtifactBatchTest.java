@@ -0,0 +1,208 @@
+/*
+************************************************************************
+*******************  CANADIAN ASTRONOMY DATA CENTRE  *******************
+**************  CENTRE CANADIEN DE DONNÉES ASTRONOMIQUES  **************
+*
+*  (c) 2020.                            (c) 2020.
+*  Government of Canada                 Gouvernement du Canada
+*  National Research Council            Conseil national de recherches
+*  Ottawa, Canada, K1A 0R6              Ottawa, Canada, K1A 0R6
+*  All rights reserved                  Tous droits réservés
+*
+*  NRC disclaims any warranties,        Le CNRC dénie toute garantie
+*  expressed, implied, or               énoncée, implicite ou légale,
+*  statutory, of any kind with          de quelque nature que ce
+*  respect to the software,             soit, concernant le logiciel,
+*  including without limitation         y compris sans restriction
+*  any warranty of merchantability      toute garantie de valeur
+*  or fitness for a particular          marchande ou de pertinence
+*  purpose. NRC shall not be            pour un usage particulier.
+*  liable in any event for any          Le CNRC ne pourra en aucun cas
+*  damages, whether direct or           être tenu responsable de tout
+*  indirect, special or general,        dommage, direct ou indirect,
+*  consequential or incidental,         particulier ou général,
+*  arising from the use of the          accessoire ou fortuit, résultant
+*  software.  Neither the name          de l'utilisation du logiciel. Ni
+*  of the National Research             le nom du Conseil National de
+*  Council of Canada nor the            Recherches du Canada ni les noms
+*  names of its contributors may        de ses  participants ne peuvent
+*  be used to endorse or promote        être utilisés pour approuver ou
+*  products derived from this           promouvoir les produits dérivés
+*  software without specific prior      de ce logiciel sans autorisation
+*  written permission.                  préalable et particulière
+*                                       par écrit.
+*
+*  This file is part of the             Ce fichier fait partie du projet
+*  OpenCADC project.                    OpenCADC.
+*
+*  OpenCADC is free software:           OpenCADC est un logiciel libre ;
+*  you can redistribute it and/or       vous pouvez le redistribuer ou le
+*  modify it under the terms of         modifier suivant les termes de
+*  the GNU Affero General Public        la “GNU Affero General Public
+*  License as published by the          License” telle que publiée
+*  Free Software Foundation,            par la Free Software Foundation
+*  either version 3 of the              : soit la version 3 de cette
+*  License, or (at your option)         licence, soit (à votre gré)
+*  any later version.                   toute version ultérieure.
+*
+*  OpenCADC is distributed in the       OpenCADC est distribué
+*  hope that it will be useful,         dans l’espoir qu’il vous
+*  but WITHOUT ANY WARRANTY;            sera utile, mais SANS AUCUNE
+*  without even the implied             GARANTIE : sans même la garantie
+*  warranty of MERCHANTABILITY          implicite de COMMERCIALISABILITÉ
+*  or FITNESS FOR A PARTICULAR          ni d’ADÉQUATION À UN OBJECTIF
+*  PURPOSE.  See the GNU Affero         PARTICULIER. Consultez la Licence
+*  General Public License for           Générale Publique GNU Affero
+*  more details.                        pour plus de détails.
+*
+*  You should have received             Vous devriez avoir reçu une
+*  a copy of the GNU Affero             copie de la Licence Générale
+*  General Public License along         Publique GNU Affero avec
+*  with OpenCADC.  If not, see          OpenCADC ; si ce n’est
+*  <http://www.gnu.org/licenses/>.      pas le cas, consultez :
+*                                       <http://www.gnu.org/licenses/>.
+*
+************************************************************************
+*/
+
+package org.opencadc.inventory;
+
+import ca.nrc.cadc.util.Log4jInit;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.util.Date;
+import java.util.UUID;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author pdowler
+ */
+public class ArtifactBatchTest {
+    private static final Logger log = Logger.getLogger(ArtifactBatchTest.class);
+
+    static {
+        Log4jInit.setLevel("org.opencadc.inventory", Level.INFO);
+    }
+    
+    public ArtifactBatchTest() { 
+    }
+    
+    private Artifact create(int i) throws Exception {
+        Artifact a = new Artifact(URI.create("cadc:FOO/bar" + i + ".fits"), 
+            URI.create("md5:d41d8cd98f00b204e9800998ecf8427e"), new Date(), 1024L + i);
+        if (i % 2 == 0) {
+            a.contentType = "application/fits";
+            a.contentEncoding = "gzip";
+            a.storageLocation = new StorageLocation(URI.create("foo:" + UUID.randomUUID()));
+        }
+        if (i % 3 == 0) {
+            a.storageLocation = new StorageLocation(URI.create("foo:" + UUID.randomUUID()));
+            a.storageLocation.storageBucket = "abc";
+            a.siteLocations.add(new SiteLocation(UUID.randomUUID()));
+            a.siteLocations.add(new SiteLocation(UUID.randomUUID()));
+        }
+        InventoryUtil.assignLastModified(a, new Date());
+        InventoryUtil.assignMetaChecksum(a, a.computeMetaChecksum(MessageDigest.getInstance("MD5")));
+        return a;
+    }
+    
+    @Test
+    public void testRoundTrip() {
+        try {
+            final int num = 10;
+            ArtifactBatch batch = new ArtifactBatch(num);
+            Assert.assertEquals(num, batch.getCapacity());
+            Assert.assertTrue(batch.isEmpty());
+            
+            Artifact[] expected = new Artifact[num];
+            for (int i = 0; i < num; i++) {
+                expected[i] = create(i);
+                batch.add(expected[i]);
+            }
+            Assert.assertTrue(batch.isFull());
+            Assert.assertEquals(num, batch.size());
+            
+            try {
+                batch.add(create(num));
+                Assert.fail("expected IllegalStateException");
+            } catch (IllegalStateException expectedEx) {
+                log.info("caught expected: " + expectedEx);
+            }
+            
+            for (int i = 0; i < num; i++) {
+                Artifact e = expected[i];
+                Assert.assertEquals(e.getID(), batch.getID(i));
+                Assert.assertEquals(e.getID().getMostSignificantBits(), batch.getIDMostSignificantBits(i));
+                Assert.assertEquals(e.getID().getLeastSignificantBits(), batch.getIDLeastSignificantBits(i));
+                Assert.assertEquals(e.getURI(), batch.getURI(i));
+                Assert.assertEquals(e.getBucket(), batch.getBucket(i));
+                Assert.assertEquals(e.getContentChecksum(), batch.getContentChecksum(i));
+                Assert.assertEquals(e.getContentLastModified(), batch.getContentLastModified(i));
+                Assert.assertEquals(e.getContentLength().longValue(), batch.getContentLength(i));
+                Assert.assertEquals(e.contentType, batch.getContentType(i));
+                Assert.assertEquals(e.contentEncoding, batch.getContentEncoding(i));
+                Assert.assertEquals(e.storageLocation, batch.getStorageLocation(i));
+                Assert.assertEquals(e.siteLocations.size(), batch.getSiteLocationCount(i));
+                Assert.assertEquals(e.getLastModified(), batch.getLastModified(i));
+                Assert.assertEquals(e.getMetaChecksum(), batch.getMetaChecksum(i));
+                
+                Artifact a = batch.getArtifact(i);
+                Assert.assertEquals(e.siteLocations, a.siteLocations);
+                Assert.assertEquals(e.storageLocation, a.storageLocation);
+                Assert.assertEquals(e.getMetaChecksum(), a.computeMetaChecksum(MessageDigest.getInstance("MD5")));
+            }
+            
+            try {
+                batch.getID(num);
+                Assert.fail("expected IndexOutOfBoundsException");
+            } catch (IndexOutOfBoundsException expectedEx) {
+                log.info("caught expected: " + expectedEx);
+            }
+            
+            // re-use
+            batch.clear();
+            Assert.assertTrue(batch.isEmpty());
+            Artifact a = create(1);
+            batch.add(a);
+            Assert.assertEquals(1, batch.size());
+            Assert.assertEquals(a.getURI(), batch.getURI(0));
+            Assert.assertEquals(a.getMetaChecksum(), batch.getMetaChecksum(0));
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    
+    @Test
+    public void testChecksumValues() {
+        try {
+            ArtifactBatch batch = new ArtifactBatch(4);
+            String[] checksums = new String[] {
+                "md5:d41d8cd98f00b204e9800998ecf8427e",
+                "sha-1:80fec9cd6feeadda20657ac9a15c3015c3329f90",
+                "md5:D41D8CD98F00B204E9800998ECF8427E", // not normalised
+                "md5:abc" // odd length: kept as is
+            };
+            for (String cs : checksums) {
+                batch.add(UUID.randomUUID(), "cadc:FOO/bar", "12345", cs, 1L, 2L, null, null, 
+                    null, null, null, 3L, "md5:d41d8cd98f00b204e9800998ecf8427e");
+            }
+            Assert.assertEquals(ContentChecksum.parse(URI.create(checksums[0])), batch.getContentChecksumValue(0));
+            Assert.assertEquals(ContentChecksum.parse(URI.create(checksums[1])), batch.getContentChecksumValue(1));
+            Assert.assertNull(batch.getContentChecksumValue(2));
+            Assert.assertNull(batch.getContentChecksumValue(3));
+            for (int i = 0; i < checksums.length; i++) {
+                Assert.assertEquals(URI.create(checksums[i]), batch.getContentChecksum(i));
+                Assert.assertNull(batch.getStorageLocation(i));
+                Assert.assertEquals(0, batch.getSiteLocationCount(i));
+            }
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+************************************************************************
+*******************  CANADIAN ASTRONOMY DATA CENTRE  *******************
+**************  CENTRE CANADIEN DE DONNÉES ASTRONOMIQUES  **************
+*
+*  (c) 2020.                            (c) 2020.
+*  Government of Canada                 Gouvernement du Canada
+*  National Research Council            Conseil national de recherches
+*  Ottawa, Canada, K1A 0R6              Ottawa, Canada, K1A 0R6
+*  All rights reserved                  Tous droits réservés
+*
+*  NRC disclaims any warranties,        Le CNRC dénie toute garantie
+*  expressed, implied, or               énoncée, implicite ou légale,
+*  statutory, of any kind with          de quelque nature que ce
+*  respect to the software,             soit, concernant le logiciel,
+*  including without limitation         y compris sans restriction
+*  any warranty of merchantability      toute garantie de valeur
+*  or fitness for a particular          marchande ou de pertinence
+*  purpose. NRC shall not be            pour un usage particulier.
+*  liable in any event for any          Le CNRC ne pourra en aucun cas
+*  damages, whether direct or           être tenu responsable de tout
+*  indirect, special or general,        dommage, direct ou indirect,
+*  consequential or incidental,         particulier ou général,
+*  arising from the use of the          accessoire ou fortuit, résultant
+*  software.  Neither the name          de l'utilisation du logiciel. Ni
+*  of the National Research             le nom du Conseil National de
+*  Council of Canada nor the            Recherches du Canada ni les noms
+*  names of its contributors may        de ses  participants ne peuvent
+*  be used to endorse or promote        être utilisés pour approuver ou
+*  products derived from this           promouvoir les produits dérivés
+*  software without specific prior      de ce logiciel sans autorisation
+*  written permission.                  préalable et particulière
+*                                       par écrit.
+*
+*  This file is part of the             Ce fichier fait partie du projet
+*  OpenCADC project.                    OpenCADC.
+*
+*  OpenCADC is free software:           OpenCADC est un logiciel libre ;
+*  you can redistribute it and/or       vous pouvez le redistribuer ou le
+*  modify it under the terms of         modifier suivant les termes de
+*  the GNU Affero General Public        la “GNU Affero General Public
+*  License as published by the          License” telle que publiée
+*  Free Software Foundation,            par la Free Software Foundation
+*  either version 3 of the              : soit la version 3 de cette
+*  License, or (at your option)         licence, soit (à votre gré)
+*  any later version.                   toute version ultérieure.
+*
+*  OpenCADC is distributed in the       OpenCADC est distribué
+*  hope that it will be useful,         dans l’espoir qu’il vous
+*  but WITHOUT ANY WARRANTY;            sera utile, mais SANS AUCUNE
+*  without even the implied             GARANTIE : sans même la garantie
+*  warranty of MERCHANTABILITY          implicite de COMMERCIALISABILITÉ
+*  or FITNESS FOR A PARTICULAR          ni d’ADÉQUATION À UN OBJECTIF
+*  PURPOSE.  See the GNU Affero         PARTICULIER. Consultez la Licence
+*  General Public License for           Générale Publique GNU Affero
+*  more details.                        pour plus de détails.
+*
+*  You should have received             Vous devriez avoir reçu une
+*  a copy of the GNU Affero             copie de la Licence Générale
+*  General Public License along         Publique GNU Affero avec
+*  with OpenCADC.  If not, see          OpenCADC ; si ce n’est
+*  <http://www.gnu.org/licenses/>.      pas le cas, consultez :
+*                                       <http://www.gnu.org/licenses/>.
+*
+************************************************************************
+*/
+
+package org.opencadc.inventory;
+
+import ca.nrc.cadc.util.Log4jInit;
+import java.net.URI;
+import java.util.Date;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author pdowler
+ */
+public class ArtifactURITest {
+    private static final Logger log = Logger.getLogger(ArtifactURITest.class);
+
+    static {
+        Log4jInit.setLevel("org.opencadc.inventory", Level.INFO);
+    }
+    
+    public ArtifactURITest() { 
+    }
+    
+    @Test
+    public void testParse() {
+        try {
+            String[] valid = new String[] {
+                "cadc:bar.fits", 
+                "cadc:FOO/bar.fits", 
+                "cadc:FOO/organised/into/directories/bar.fits",
+                "cadc:FOO/bar+baz.fits",
+                "vault:8b9b9a0e-6a4f-4b1f-9f5e-2a3c4d5e6f70"
+            };
+            String[] filenames = new String[] {
+                "bar.fits", "bar.fits", "bar.fits", "bar+baz.fits", "8b9b9a0e-6a4f-4b1f-9f5e-2a3c4d5e6f70"
+            };
+            for (int i = 0; i < valid.length; i++) {
+                ArtifactURI u = ArtifactURI.parse(ArtifactURITest.class, valid[i]);
+                log.info("parsed: " + u);
+                URI uri = URI.create(valid[i]);
+                Assert.assertEquals(uri, u.getURI());
+                Assert.assertEquals(uri.getScheme(), u.getScheme());
+                Assert.assertEquals(uri.getSchemeSpecificPart(), u.getPath());
+                Assert.assertEquals(filenames[i], u.getFilename());
+                Assert.assertEquals(InventoryUtil.computeArtifactFilename(uri), u.getFilename());
+                
+                Artifact a = new Artifact(uri, URI.create("md5:d41d8cd98f00b204e9800998ecf8427e"), new Date(), 1L);
+                Assert.assertEquals(a.getBucket(), u.getBucket());
+                
+                Assert.assertEquals(u, ArtifactURI.valueOf(ArtifactURITest.class, uri));
+                Assert.assertEquals(u.hashCode(), ArtifactURI.valueOf(ArtifactURITest.class, uri).hashCode());
+            }
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    
+    @Test
+    public void testInvalid() {
+        String[] invalid = new String[] {
+            "cadc:FOO/bar baz.fits",
+            "cadc:FOO/bar%20baz.fits", // decoded to space
+            "cadc:FOO/bar\\baz.fits",
+            "cadc:FOO/bar;baz.fits",
+            "cadc:FOO/bar&baz.fits",
+            "cadc:FOO/bar$baz.fits",
+            "cadc:FOO/bar%25baz.fits", // decoded to percent
+            "cadc:/FOO/bar.fits",
+            "cadc://host/FOO/bar.fits",
+            "cadc:FOO/bar.fits?query",
+            "cadc:FOO/bar.fits#frag",
+            "FOO/bar.fits",
+            "cadc:FOO bar"
+        };
+        for (String s : invalid) {
+            try {
+                ArtifactURI u = ArtifactURI.parse(ArtifactURITest.class, s);
+                Assert.fail("expected IllegalArgumentException, parsed: " + u);
+            } catch (IllegalArgumentException expected) {
+                log.info("caught expected: " + expected);
+            }
+        }
+    }
+}
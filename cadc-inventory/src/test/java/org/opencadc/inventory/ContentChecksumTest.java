@@ -0,0 +1,178 @@
+/*
+************************************************************************
+*******************  CANADIAN ASTRONOMY DATA CENTRE  *******************
+**************  CENTRE CANADIEN DE DONNÉES ASTRONOMIQUES  **************
+*
+*  (c) 2020.                            (c) 2020.
+*  Government of Canada                 Gouvernement du Canada
+*  National Research Council            Conseil national de recherches
+*  Ottawa, Canada, K1A 0R6              Ottawa, Canada, K1A 0R6
+*  All rights reserved                  Tous droits réservés
+*
+*  NRC disclaims any warranties,        Le CNRC dénie toute garantie
+*  expressed, implied, or               énoncée, implicite ou légale,
+*  statutory, of any kind with          de quelque nature que ce
+*  respect to the software,             soit, concernant le logiciel,
+*  including without limitation         y compris sans restriction
+*  any warranty of merchantability      toute garantie de valeur
+*  or fitness for a particular          marchande ou de pertinence
+*  purpose. NRC shall not be            pour un usage particulier.
+*  liable in any event for any          Le CNRC ne pourra en aucun cas
+*  damages, whether direct or           être tenu responsable de tout
+*  indirect, special or general,        dommage, direct ou indirect,
+*  consequential or incidental,         particulier ou général,
+*  arising from the use of the          accessoire ou fortuit, résultant
+*  software.  Neither the name          de l'utilisation du logiciel. Ni
+*  of the National Research             le nom du Conseil National de
+*  Council of Canada nor the            Recherches du Canada ni les noms
+*  names of its contributors may        de ses  participants ne peuvent
+*  be used to endorse or promote        être utilisés pour approuver ou
+*  products derived from this           promouvoir les produits dérivés
+*  software without specific prior      de ce logiciel sans autorisation
+*  written permission.                  préalable et particulière
+*                                       par écrit.
+*
+*  This file is part of the             Ce fichier fait partie du projet
+*  OpenCADC project.                    OpenCADC.
+*
+*  OpenCADC is free software:           OpenCADC est un logiciel libre ;
+*  you can redistribute it and/or       vous pouvez le redistribuer ou le
+*  modify it under the terms of         modifier suivant les termes de
+*  the GNU Affero General Public        la “GNU Affero General Public
+*  License as published by the          License” telle que publiée
+*  Free Software Foundation,            par la Free Software Foundation
+*  either version 3 of the              : soit la version 3 de cette
+*  License, or (at your option)         licence, soit (à votre gré)
+*  any later version.                   toute version ultérieure.
+*
+*  OpenCADC is distributed in the       OpenCADC est distribué
+*  hope that it will be useful,         dans l’espoir qu’il vous
+*  but WITHOUT ANY WARRANTY;            sera utile, mais SANS AUCUNE
+*  without even the implied             GARANTIE : sans même la garantie
+*  warranty of MERCHANTABILITY          implicite de COMMERCIALISABILITÉ
+*  or FITNESS FOR A PARTICULAR          ni d’ADÉQUATION À UN OBJECTIF
+*  PURPOSE.  See the GNU Affero         PARTICULIER. Consultez la Licence
+*  General Public License for           Générale Publique GNU Affero
+*  more details.                        pour plus de détails.
+*
+*  You should have received             Vous devriez avoir reçu une
+*  a copy of the GNU Affero             copie de la Licence Générale
+*  General Public License along         Publique GNU Affero avec
+*  with OpenCADC.  If not, see          OpenCADC ; si ce n’est
+*  <http://www.gnu.org/licenses/>.      pas le cas, consultez :
+*                                       <http://www.gnu.org/licenses/>.
+*
+************************************************************************
+*/
+
+package org.opencadc.inventory;
+
+import ca.nrc.cadc.util.HexUtil;
+import ca.nrc.cadc.util.Log4jInit;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author pdowler
+ */
+public class ContentChecksumTest {
+    private static final Logger log = Logger.getLogger(ContentChecksumTest.class);
+
+    static {
+        Log4jInit.setLevel("org.opencadc.inventory", Level.INFO);
+    }
+    
+    public ContentChecksumTest() { 
+    }
+    
+    @Test
+    public void testRoundTrip() {
+        try {
+            byte[] data = "hello world".getBytes(StandardCharsets.UTF_8);
+            for (ContentChecksum.Algorithm a : ContentChecksum.Algorithm.values()) {
+                MessageDigest md = MessageDigest.getInstance(a.getDigestName());
+                byte[] expected = md.digest(data);
+                md.update(data);
+                
+                ContentChecksum cs = ContentChecksum.create(md);
+                log.info("created: " + cs);
+                Assert.assertEquals(a, cs.getAlgorithm());
+                Assert.assertArrayEquals(expected, cs.getBytes());
+                Assert.assertEquals(HexUtil.toHex(expected), cs.getHex());
+                Assert.assertEquals(Base64.getEncoder().encodeToString(expected), cs.getBase64());
+                URI u = URI.create(a.getScheme() + ":" + HexUtil.toHex(expected));
+                Assert.assertEquals(u, cs.toURI());
+                Assert.assertSame(cs.toURI(), cs.toURI());
+                
+                ContentChecksum cs2 = ContentChecksum.parse(u);
+                Assert.assertEquals(cs, cs2);
+                Assert.assertEquals(cs.hashCode(), cs2.hashCode());
+                Assert.assertTrue(cs.matches(u));
+                
+                ContentChecksum upper = ContentChecksum.parse(URI.create(a.getScheme() + ":" + cs.getHex().toUpperCase()));
+                Assert.assertEquals(cs, upper);
+                Assert.assertEquals(u, upper.toURI());
+                Assert.assertTrue(cs.matches(URI.create(a.getScheme().toUpperCase() + ":" + cs.getHex().toUpperCase())));
+            }
+            
+            // leading zero byte
+            byte[] b = new byte[16];
+            b[15] = 1;
+            ContentChecksum z = new ContentChecksum(ContentChecksum.Algorithm.MD5, b);
+            Assert.assertEquals(URI.create("md5:00000000000000000000000000000001"), z.toURI());
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    
+    @Test
+    public void testNotEqual() {
+        try {
+            ContentChecksum md5 = ContentChecksum.parse(URI.create("md5:d41d8cd98f00b204e9800998ecf8427e"));
+            Assert.assertFalse(md5.equals(ContentChecksum.parse(URI.create("md5:d41d8cd98f00b204e9800998ecf8427f"))));
+            Assert.assertFalse(md5.matches(URI.create("md5:d41d8cd98f00b204e9800998ecf8427f")));
+            Assert.assertFalse(md5.matches(URI.create("sha-1:d41d8cd98f00b204e9800998ecf8427e")));
+            Assert.assertFalse(md5.matches(URI.create("md5:d41d8cd98f00b204e9800998ecf842")));
+            Assert.assertFalse(md5.matches(URI.create("md5:d41d8cd98f00b204e9800998ecf842zz")));
+            Assert.assertFalse(md5.matches(null));
+            Assert.assertFalse(md5.equals(null));
+            Assert.assertFalse(md5.equals(md5.toURI()));
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    
+    @Test
+    public void testInvalid() {
+        String[] invalid = new String[] {
+            "foo:d41d8cd98f00b204e9800998ecf8427e", // unsupported algorithm
+            "md5:d41d8cd98f00b204e9800998ecf8427", // odd length
+            "md5:d41d8cd98f00b204e9800998ecf842", // too short
+            "sha-1:d41d8cd98f00b204e9800998ecf8427e", // wrong length for algorithm
+            "md5:d41d8cd98f00b204e9800998ecf842zz" // not hex
+        };
+        for (String s : invalid) {
+            try {
+                ContentChecksum cs = ContentChecksum.parse(URI.create(s));
+                Assert.fail("expected IllegalArgumentException, created: " + cs);
+            } catch (IllegalArgumentException expected) {
+                log.info("caught expected: " + expected);
+            }
+        }
+        try {
+            ContentChecksum cs = new ContentChecksum(ContentChecksum.Algorithm.SHA1, new byte[16]);
+            Assert.fail("expected IllegalArgumentException, created: " + cs);
+        } catch (IllegalArgumentException expected) {
+            log.info("caught expected: " + expected);
+        }
+    }
+}
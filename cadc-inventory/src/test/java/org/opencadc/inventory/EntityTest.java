@@ -179,6 +179,50 @@ public class EntityTest {
         }
     }
     
+    @Test
+    public void testReconstructArtifact() {
+        URI uri = URI.create("cadc:FOO/bar");
+        URI contentChecksum = URI.create("md5:d41d8cd98f00b204e9800998ecf8427e");
+        Date contentLastModified = new Date();
+        Long contentLength = 1024L;
+
+        try {
+            Artifact orig = new Artifact(uri, contentChecksum, contentLastModified, contentLength);
+            Artifact recon = InventoryUtil.reconstructArtifact(orig.getID(), uri, orig.getBucket(),
+                contentChecksum, contentLastModified, contentLength);
+            log.info("created: " + recon);
+            Assert.assertEquals(orig.getID(), recon.getID());
+            Assert.assertEquals(uri, recon.getURI());
+            Assert.assertEquals(orig.getBucket(), recon.getBucket());
+            Assert.assertEquals(contentChecksum, recon.getContentChecksum());
+            Assert.assertEquals(contentLastModified, recon.getContentLastModified());
+            Assert.assertEquals(contentLength, recon.getContentLength());
+            Assert.assertEquals(orig.computeMetaChecksum(MessageDigest.getInstance("MD5")),
+                recon.computeMetaChecksum(MessageDigest.getInstance("MD5")));
+
+            // stored bucket is trusted
+            Artifact trusted = InventoryUtil.reconstructArtifact(orig.getID(), uri, "abcde",
+                contentChecksum, contentLastModified, contentLength);
+            Assert.assertEquals("abcde", trusted.getBucket());
+
+            // missing bucket is computed
+            Artifact computed = InventoryUtil.reconstructArtifact(orig.getID(), uri, null,
+                contentChecksum, contentLastModified, contentLength);
+            Assert.assertEquals(orig.getBucket(), computed.getBucket());
+
+            try {
+                Artifact invalid = InventoryUtil.reconstructArtifact(orig.getID(), null, null,
+                    contentChecksum, contentLastModified, contentLength);
+                Assert.fail("created: " + invalid);
+            } catch (IllegalArgumentException expected) {
+                log.info("expected: " + expected);
+            }
+        } catch (Exception ex) {
+            log.error("unexpected exception", ex);
+            Assert.fail("unexpected exception: " + ex);
+        }
+    }
+
     @Test
     public void testArtifactTransientState() {
         URI uri = URI.create("cadc:FOO/bar");
@@ -214,6 +258,77 @@ public class EntityTest {
         }
     }
     
+    @Test
+    public void testMetaChecksumStable() {
+        // expected values computed with the original reflection-based implementation:
+        // changes to the calculation must not change these
+        try {
+            Artifact a = new Artifact(UUID.fromString("8b9b9a0e-6a4f-4b1f-9f5e-2a3c4d5e6f70"),
+                URI.create("cadc:FOO/bar.fits"), URI.create("md5:d41d8cd98f00b204e9800998ecf8427e"),
+                new Date(1577836800123L), 1024L);
+            Assert.assertEquals("34fa1", a.getBucket());
+            Assert.assertEquals(URI.create("md5:19492c79b8fae6502a8789197256d637"),
+                a.computeMetaChecksum(MessageDigest.getInstance("MD5")));
+
+            a.contentType = "application/fits";
+            a.contentEncoding = " gzip ";
+            for (int i = 0; i < 3; i++) {
+                Assert.assertEquals(URI.create("md5:04d00f11723f2d205ebe3b81b28d1642"),
+                    a.computeMetaChecksum(MessageDigest.getInstance("MD5")));
+            }
+            Assert.assertEquals(URI.create("sha-1:80fec9cd6feeadda20657ac9a15c3015c3329f90"),
+                a.computeMetaChecksum(MessageDigest.getInstance("SHA-1")));
+
+            StorageSite s = new StorageSite(UUID.fromString("00000000-0000-0000-0000-0000000000ff"),
+                URI.create("ivo://example.net/minoc"), "Ex\u00e9mple");
+            Assert.assertEquals(URI.create("md5:04b0dc24e422b27805beee60d044402d"),
+                s.computeMetaChecksum(MessageDigest.getInstance("MD5")));
+
+            DeletedArtifactEvent d = new DeletedArtifactEvent(UUID.fromString("fedcba98-7654-3210-0123-456789abcdef"));
+            Assert.assertEquals(URI.create("md5:9f67a2456241334d87a81ed612f7af47"),
+                d.computeMetaChecksum(MessageDigest.getInstance("MD5")));
+        } catch (Exception ex) {
+            log.error("unexpected exception", ex);
+            Assert.fail("unexpected exception: " + ex);
+        }
+    }
+
+    @Test
+    public void testDigestEncoder() {
+        StringBuilder longString = new StringBuilder();
+        for (int i = 0; i < 400; i++) {
+            longString.append("\u00e9\u4e2d");
+        }
+        Object[] values = new Object[] {
+            "", " ", "foo", "  foo bar\t\n", "caf\u00e9", "\u4e2d\u6587", "\ud83d\ude00 smile",
+            "bad \ud800 surrogate", "trailing high \ud800", "\udc00 leading low", longString.toString(),
+            URI.create("cadc:FOO/bar"), URI.create("ivo://example.net/foo?bar#baz"),
+            UUID.randomUUID(), new UUID(0L, 0L), new UUID(-1L, Long.MIN_VALUE),
+            new Date(), new Date(-1L), Long.MAX_VALUE, -2L, Integer.MIN_VALUE, 42, (short) -3, (byte) 0x7f,
+            Boolean.TRUE, Boolean.FALSE, 3.14f, Float.NaN, -2.71828, Double.NEGATIVE_INFINITY
+        };
+        try {
+            DigestEncoder enc = DigestEncoder.get();
+            for (Object o : values) {
+                MessageDigest expected = MessageDigest.getInstance("MD5");
+                expected.update(Entity.primitiveValueToBytes(o, "test", expected.getAlgorithm()));
+                MessageDigest actual = MessageDigest.getInstance("MD5");
+                enc.update(actual, o);
+                Assert.assertArrayEquals(o.getClass().getSimpleName() + " " + o, expected.digest(), actual.digest());
+            }
+
+            try {
+                enc.update(MessageDigest.getInstance("MD5"), new Object());
+                Assert.fail("expected UnsupportedOperationException");
+            } catch (UnsupportedOperationException expected) {
+                log.info("expected: " + expected);
+            }
+        } catch (Exception ex) {
+            log.error("unexpected exception", ex);
+            Assert.fail("unexpected exception: " + ex);
+        }
+    }
+
     @Test
     public void testDeletedArtifactEvent() {
         try {
@@ -67,10 +67,15 @@
 
 package org.opencadc.inventory;
 
+import ca.nrc.cadc.util.HexUtil;
 import ca.nrc.cadc.util.Log4jInit;
 
 import java.net.URI;
+import java.security.MessageDigest;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.apache.log4j.Level;
@@ -204,6 +209,43 @@ public class InventoryUtilTest {
         }
     }
 
+    @Test
+    public void testComputeBucket() {
+        try {
+            Assert.assertEquals("34fa1", InventoryUtil.computeBucket(URI.create("cadc:FOO/bar.fits"), 5));
+            Assert.assertEquals("a70", InventoryUtil.computeBucket(URI.create("ceph:abc"), 3));
+            Assert.assertEquals("", InventoryUtil.computeBucket(URI.create("ceph:abc"), 0));
+
+            List<URI> uris = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                uris.add(URI.create("cadc:FOO/" + UUID.randomUUID() + ".fits"));
+            }
+            for (URI u : uris) {
+                MessageDigest md = MessageDigest.getInstance("SHA-1");
+                String hex = HexUtil.toHex(md.digest(u.toASCIIString().getBytes("UTF-8")));
+                for (int len = 1; len <= hex.length(); len++) {
+                    Assert.assertEquals(hex.substring(0, len), InventoryUtil.computeBucket(u, len));
+                }
+            }
+
+            Map<URI, String> buckets = InventoryUtil.computeBuckets(uris, 5);
+            Assert.assertEquals(uris.size(), buckets.size());
+            for (URI u : uris) {
+                Assert.assertEquals(InventoryUtil.computeBucket(u, 5), buckets.get(u));
+            }
+
+            try {
+                String b = InventoryUtil.computeBucket(uris.get(0), 41);
+                Assert.fail("expected IllegalArgumentException, got: " + b);
+            } catch (IllegalArgumentException expected) {
+                log.info("caught expected: " + expected);
+            }
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+
     @Test
     public void testComputeArtifactFilename() {
         try {
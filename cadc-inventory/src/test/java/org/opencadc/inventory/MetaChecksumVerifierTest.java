@@ -0,0 +1,192 @@
+/*
+************************************************************************
+*******************  CANADIAN ASTRONOMY DATA CENTRE  *******************
+**************  CENTRE CANADIEN DE DONNÉES ASTRONOMIQUES  **************
+*
+*  (c) 2020.                            (c) 2020.
+*  Government of Canada                 Gouvernement du Canada
+*  National Research Council            Conseil national de recherches
+*  Ottawa, Canada, K1A 0R6              Ottawa, Canada, K1A 0R6
+*  All rights reserved                  Tous droits réservés
+*
+*  NRC disclaims any warranties,        Le CNRC dénie toute garantie
+*  expressed, implied, or               énoncée, implicite ou légale,
+*  statutory, of any kind with          de quelque nature que ce
+*  respect to the software,             soit, concernant le logiciel,
+*  including without limitation         y compris sans restriction
+*  any warranty of merchantability      toute garantie de valeur
+*  or fitness for a particular          marchande ou de pertinence
+*  purpose. NRC shall not be            pour un usage particulier.
+*  liable in any event for any          Le CNRC ne pourra en aucun cas
+*  damages, whether direct or           être tenu responsable de tout
+*  indirect, special or general,        dommage, direct ou indirect,
+*  consequential or incidental,         particulier ou général,
+*  arising from the use of the          accessoire ou fortuit, résultant
+*  software.  Neither the name          de l'utilisation du logiciel. Ni
+*  of the National Research             le nom du Conseil National de
+*  Council of Canada nor the            Recherches du Canada ni les noms
+*  names of its contributors may        de ses  participants ne peuvent
+*  be used to endorse or promote        être utilisés pour approuver ou
+*  products derived from this           promouvoir les produits dérivés
+*  software without specific prior      de ce logiciel sans autorisation
+*  written permission.                  préalable et particulière
+*                                       par écrit.
+*
+*  This file is part of the             Ce fichier fait partie du projet
+*  OpenCADC project.                    OpenCADC.
+*
+*  OpenCADC is free software:           OpenCADC est un logiciel libre ;
+*  you can redistribute it and/or       vous pouvez le redistribuer ou le
+*  modify it under the terms of         modifier suivant les termes de
+*  the GNU Affero General Public        la “GNU Affero General Public
+*  License as published by the          License” telle que publiée
+*  Free Software Foundation,            par la Free Software Foundation
+*  either version 3 of the              : soit la version 3 de cette
+*  License, or (at your option)         licence, soit (à votre gré)
+*  any later version.                   toute version ultérieure.
+*
+*  OpenCADC is distributed in the       OpenCADC est distribué
+*  hope that it will be useful,         dans l’espoir qu’il vous
+*  but WITHOUT ANY WARRANTY;            sera utile, mais SANS AUCUNE
+*  without even the implied             GARANTIE : sans même la garantie
+*  warranty of MERCHANTABILITY          implicite de COMMERCIALISABILITÉ
+*  or FITNESS FOR A PARTICULAR          ni d’ADÉQUATION À UN OBJECTIF
+*  PURPOSE.  See the GNU Affero         PARTICULIER. Consultez la Licence
+*  General Public License for           Générale Publique GNU Affero
+*  more details.                        pour plus de détails.
+*
+*  You should have received             Vous devriez avoir reçu une
+*  a copy of the GNU Affero             copie de la Licence Générale
+*  General Public License along         Publique GNU Affero avec
+*  with OpenCADC.  If not, see          OpenCADC ; si ce n’est
+*  <http://www.gnu.org/licenses/>.      pas le cas, consultez :
+*                                       <http://www.gnu.org/licenses/>.
+*
+************************************************************************
+*/
+
+package org.opencadc.inventory;
+
+import ca.nrc.cadc.util.Log4jInit;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author pdowler
+ */
+public class MetaChecksumVerifierTest {
+    private static final Logger log = Logger.getLogger(MetaChecksumVerifierTest.class);
+
+    static {
+        Log4jInit.setLevel("org.opencadc.inventory", Level.INFO);
+    }
+    
+    public MetaChecksumVerifierTest() { 
+    }
+    
+    private List<Artifact> createArtifacts(int num) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("MD5");
+        List<Artifact> ret = new ArrayList<>();
+        for (int i = 0; i < num; i++) {
+            Artifact a = new Artifact(URI.create("cadc:FOO/bar" + i + ".fits"), 
+                URI.create("md5:d41d8cd98f00b204e9800998ecf8427e"), new Date(), 1024L + i);
+            InventoryUtil.assignMetaChecksum(a, a.computeMetaChecksum(md));
+            if (i % 7 == 0) {
+                // modified after checksum was assigned
+                a.contentType = "text/plain";
+            }
+            ret.add(a);
+        }
+        return ret;
+    }
+    
+    @Test
+    public void testVerifyList() {
+        try (MetaChecksumVerifier v = new MetaChecksumVerifier("MD5", 4)) {
+            List<Artifact> artifacts = createArtifacts(1000);
+            List<MetaChecksumVerifier.Result<Artifact>> results = v.verify(artifacts);
+            Assert.assertEquals(artifacts.size(), results.size());
+            for (int i = 0; i < artifacts.size(); i++) {
+                MetaChecksumVerifier.Result<Artifact> r = results.get(i);
+                Assert.assertSame(artifacts.get(i), r.getEntity());
+                Assert.assertEquals("result " + i, i % 7 != 0, r.isValid());
+            }
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    
+    @Test
+    public void testVerifyIterator() {
+        try (MetaChecksumVerifier v = new MetaChecksumVerifier("MD5", 3)) {
+            List<Artifact> artifacts = createArtifacts(1000);
+            MessageDigest md = MessageDigest.getInstance("MD5");
+            int[] batchSizes = new int[] { 1, 37, 1000, 5000 };
+            for (int bs : batchSizes) {
+                Iterator<MetaChecksumVerifier.Result<Artifact>> iter = v.verify(artifacts.iterator(), bs);
+                int num = 0;
+                int invalid = 0;
+                while (iter.hasNext()) {
+                    MetaChecksumVerifier.Result<Artifact> r = iter.next();
+                    Assert.assertSame(artifacts.get(num), r.getEntity());
+                    Assert.assertEquals(r.getEntity().computeMetaChecksum(md), r.getComputedMetaChecksum());
+                    if (!r.isValid()) {
+                        invalid++;
+                    }
+                    num++;
+                }
+                log.info("batchSize: " + bs + " verified: " + num + " invalid: " + invalid);
+                Assert.assertEquals(artifacts.size(), num);
+                Assert.assertEquals((artifacts.size() + 6) / 7, invalid);
+            }
+            
+            Iterator<MetaChecksumVerifier.Result<Artifact>> empty = v.verify(new ArrayList<Artifact>().iterator(), 10);
+            Assert.assertFalse(empty.hasNext());
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    @Test
+    public void testFailureResetsDigest() {
+        try (MetaChecksumVerifier v = new MetaChecksumVerifier("MD5", 1)) {
+            List<BadEntity> bad = new ArrayList<>();
+            bad.add(new BadEntity());
+            try {
+                v.verify(bad);
+                Assert.fail("expected UnsupportedOperationException");
+            } catch (UnsupportedOperationException expected) {
+                log.info("caught expected: " + expected);
+            }
+            
+            // same worker thread and digest after the failure
+            List<Artifact> artifacts = createArtifacts(10);
+            MessageDigest md = MessageDigest.getInstance("MD5");
+            for (MetaChecksumVerifier.Result<Artifact> r : v.verify(artifacts)) {
+                Assert.assertEquals(r.getEntity().computeMetaChecksum(md), r.getComputedMetaChecksum());
+            }
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    
+    // id is added to the digest before the unsupported field fails
+    private static class BadEntity extends Entity {
+        private final Object state = new StringBuilder("unsupported");
+        
+        BadEntity() {
+            super();
+        }
+    }
+}
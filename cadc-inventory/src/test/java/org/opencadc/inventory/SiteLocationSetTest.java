@@ -0,0 +1,228 @@
+/*
+************************************************************************
+*******************  CANADIAN ASTRONOMY DATA CENTRE  *******************
+**************  CENTRE CANADIEN DE DONNÉES ASTRONOMIQUES  **************
+*
+*  (c) 2020.                            (c) 2020.
+*  Government of Canada                 Gouvernement du Canada
+*  National Research Council            Conseil national de recherches
+*  Ottawa, Canada, K1A 0R6              Ottawa, Canada, K1A 0R6
+*  All rights reserved                  Tous droits réservés
+*
+*  NRC disclaims any warranties,        Le CNRC dénie toute garantie
+*  expressed, implied, or               énoncée, implicite ou légale,
+*  statutory, of any kind with          de quelque nature que ce
+*  respect to the software,             soit, concernant le logiciel,
+*  including without limitation         y compris sans restriction
+*  any warranty of merchantability      toute garantie de valeur
+*  or fitness for a particular          marchande ou de pertinence
+*  purpose. NRC shall not be            pour un usage particulier.
+*  liable in any event for any          Le CNRC ne pourra en aucun cas
+*  damages, whether direct or           être tenu responsable de tout
+*  indirect, special or general,        dommage, direct ou indirect,
+*  consequential or incidental,         particulier ou général,
+*  arising from the use of the          accessoire ou fortuit, résultant
+*  software.  Neither the name          de l'utilisation du logiciel. Ni
+*  of the National Research             le nom du Conseil National de
+*  Council of Canada nor the            Recherches du Canada ni les noms
+*  names of its contributors may        de ses  participants ne peuvent
+*  be used to endorse or promote        être utilisés pour approuver ou
+*  products derived from this           promouvoir les produits dérivés
+*  software without specific prior      de ce logiciel sans autorisation
+*  written permission.                  préalable et particulière
+*                                       par écrit.
+*
+*  This file is part of the             Ce fichier fait partie du projet
+*  OpenCADC project.                    OpenCADC.
+*
+*  OpenCADC is free software:           OpenCADC est un logiciel libre ;
+*  you can redistribute it and/or       vous pouvez le redistribuer ou le
+*  modify it under the terms of         modifier suivant les termes de
+*  the GNU Affero General Public        la “GNU Affero General Public
+*  License as published by the          License” telle que publiée
+*  Free Software Foundation,            par la Free Software Foundation
+*  either version 3 of the              : soit la version 3 de cette
+*  License, or (at your option)         licence, soit (à votre gré)
+*  any later version.                   toute version ultérieure.
+*
+*  OpenCADC is distributed in the       OpenCADC est distribué
+*  hope that it will be useful,         dans l’espoir qu’il vous
+*  but WITHOUT ANY WARRANTY;            sera utile, mais SANS AUCUNE
+*  without even the implied             GARANTIE : sans même la garantie
+*  warranty of MERCHANTABILITY          implicite de COMMERCIALISABILITÉ
+*  or FITNESS FOR A PARTICULAR          ni d’ADÉQUATION À UN OBJECTIF
+*  PURPOSE.  See the GNU Affero         PARTICULIER. Consultez la Licence
+*  General Public License for           Générale Publique GNU Affero
+*  more details.                        pour plus de détails.
+*
+*  You should have received             Vous devriez avoir reçu une
+*  a copy of the GNU Affero             copie de la Licence Générale
+*  General Public License along         Publique GNU Affero avec
+*  with OpenCADC.  If not, see          OpenCADC ; si ce n’est
+*  <http://www.gnu.org/licenses/>.      pas le cas, consultez :
+*                                       <http://www.gnu.org/licenses/>.
+*
+************************************************************************
+*/
+
+package org.opencadc.inventory;
+
+import ca.nrc.cadc.util.Log4jInit;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author pdowler
+ */
+public class SiteLocationSetTest {
+    private static final Logger log = Logger.getLogger(SiteLocationSetTest.class);
+
+    static {
+        Log4jInit.setLevel("org.opencadc.inventory", Level.INFO);
+    }
+    
+    public SiteLocationSetTest() { 
+    }
+    
+    @Test
+    public void testSameAsTreeSet() {
+        try {
+            Random rnd = new Random(42L);
+            List<UUID> ids = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                ids.add(new UUID(rnd.nextLong(), rnd.nextLong()));
+            }
+            // signed compare edge cases
+            ids.add(new UUID(Long.MIN_VALUE, 0L));
+            ids.add(new UUID(Long.MAX_VALUE, -1L));
+            ids.add(new UUID(0L, Long.MIN_VALUE));
+            ids.add(new UUID(0L, Long.MAX_VALUE));
+            
+            TreeSet<SiteLocation> expected = new TreeSet<>();
+            SiteLocationSet actual = new SiteLocationSet();
+            for (UUID u : ids) {
+                Assert.assertEquals(expected.add(new SiteLocation(u)), actual.add(new SiteLocation(u)));
+                Assert.assertEquals(expected.add(new SiteLocation(u)), actual.add(u)); // duplicate
+            }
+            Assert.assertEquals(expected.size(), actual.size());
+            Assert.assertEquals(expected, actual);
+            Assert.assertEquals(actual, expected);
+            Assert.assertEquals(expected.hashCode(), actual.hashCode());
+            assertSameOrder(expected, actual);
+            
+            // remove every third
+            for (int i = 0; i < ids.size(); i += 3) {
+                UUID u = ids.get(i);
+                Assert.assertEquals(expected.remove(new SiteLocation(u)), actual.remove(new SiteLocation(u)));
+                Assert.assertFalse(actual.remove(u));
+                Assert.assertFalse(actual.contains(u));
+                Assert.assertFalse(actual.contains(new SiteLocation(u)));
+            }
+            for (int i = 1; i < ids.size(); i += 3) {
+                Assert.assertTrue(actual.contains(ids.get(i)));
+            }
+            assertSameOrder(expected, actual);
+            
+            // iterator remove
+            Iterator<SiteLocation> ei = expected.iterator();
+            Iterator<SiteLocation> ai = actual.iterator();
+            int n = 0;
+            while (ei.hasNext()) {
+                Assert.assertEquals(ei.next(), ai.next());
+                if (n++ % 2 == 0) {
+                    ei.remove();
+                    ai.remove();
+                }
+            }
+            Assert.assertFalse(ai.hasNext());
+            assertSameOrder(expected, actual);
+            
+            // round trip through array
+            SiteLocationSet copy = new SiteLocationSet();
+            copy.setSiteIDs(actual.getSiteIDs());
+            assertSameOrder(expected, copy);
+            
+            UUID[] unsorted = ids.toArray(new UUID[0]);
+            copy.setSiteIDs(unsorted);
+            Assert.assertEquals(new TreeSet<>(ids).size(), copy.size());
+            for (UUID u : ids) {
+                Assert.assertTrue(copy.contains(u));
+            }
+            
+            copy.setSiteIDs(null);
+            Assert.assertTrue(copy.isEmpty());
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    
+    @Test
+    public void testArtifactSiteIDs() {
+        try {
+            // declared type of the public field is part of the binary API
+            Assert.assertEquals(Set.class, Artifact.class.getField("siteLocations").getType());
+            
+            Artifact a = new Artifact(URI.create("cadc:TEST/file.fits"), 
+                    URI.create("md5:d41d8cd98f00b204e9800998ecf8427e"), new Date(), 1L);
+            Assert.assertEquals(0, a.getSiteIDs().length);
+            
+            UUID s1 = new UUID(2L, 0L);
+            UUID s2 = new UUID(1L, 0L);
+            a.setSiteIDs(new UUID[] { s1, s2, s1 });
+            Assert.assertEquals(2, a.siteLocations.size());
+            Assert.assertTrue(a.siteLocations.contains(new SiteLocation(s1)));
+            Assert.assertArrayEquals(new UUID[] { s2, s1 }, a.getSiteIDs());
+            
+            a.siteLocations.remove(new SiteLocation(s2));
+            Assert.assertArrayEquals(new UUID[] { s1 }, a.getSiteIDs());
+            
+            a.setSiteIDs(null);
+            Assert.assertTrue(a.siteLocations.isEmpty());
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    
+    @Test
+    public void testConcurrentModification() {
+        SiteLocationSet s = new SiteLocationSet();
+        s.add(UUID.randomUUID());
+        s.add(UUID.randomUUID());
+        Iterator<SiteLocation> i = s.iterator();
+        i.next();
+        s.add(UUID.randomUUID());
+        try {
+            i.next();
+            Assert.fail("expected ConcurrentModificationException");
+        } catch (ConcurrentModificationException expected) {
+            log.info("caught expected: " + expected);
+        }
+    }
+    
+    private void assertSameOrder(TreeSet<SiteLocation> expected, SiteLocationSet actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        Iterator<SiteLocation> ai = actual.iterator();
+        UUID[] ids = actual.getSiteIDs();
+        int n = 0;
+        for (SiteLocation e : expected) {
+            Assert.assertEquals(e, ai.next());
+            Assert.assertEquals(e.getSiteID(), ids[n++]);
+        }
+        Assert.assertFalse(ai.hasNext());
+    }
+}
@@ -69,7 +69,9 @@ package org.opencadc.inventory;
 
 import ca.nrc.cadc.util.Log4jInit;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import org.apache.log4j.Level;
@@ -150,4 +152,72 @@ public class StorageLocationTest {
             Assert.fail("unexpected exception: " + unexpected);
         }
     }
+    
+    @Test
+    public void testSortKey() {
+        try {
+            String[] buckets = new String[] { null, "", "a", "ab", "abc", "b", "a\u0000", "a\u0000b", "\u00e9", "\uffff", "\ud83d\ude00" };
+            String[] ids = new String[] { "foo:1", "foo:12", "foo:2", "bar:1", "a1:x", "a:y", "file:///tmp/a", "file:///tmp/B" };
+            List<StorageLocation> locs = new ArrayList<>();
+            for (String b : buckets) {
+                for (String id : ids) {
+                    StorageLocation s = new StorageLocation(URI.create(id));
+                    s.storageBucket = b;
+                    locs.add(s);
+                }
+            }
+            for (StorageLocation lhs : locs) {
+                for (StorageLocation rhs : locs) {
+                    int expected = Integer.signum(compareReference(lhs, rhs));
+                    int actual = Integer.signum(lhs.compareTo(rhs));
+                    Assert.assertEquals(lhs + " vs " + rhs, expected, actual);
+                    Assert.assertEquals(expected == 0, lhs.equals(rhs));
+                }
+            }
+            
+            // key tracks storageBucket changes
+            StorageLocation s1 = new StorageLocation(URI.create("foo:1"));
+            StorageLocation s2 = new StorageLocation(URI.create("foo:1"));
+            s2.storageBucket = "a";
+            Assert.assertTrue(s1.compareTo(s2) > 0);
+            s1.storageBucket = "a";
+            Assert.assertEquals(0, s1.compareTo(s2));
+            s1.storageBucket = "b";
+            Assert.assertTrue(s1.compareTo(s2) > 0);
+            s1.storageBucket = null;
+            Assert.assertTrue(s1.compareTo(s2) > 0);
+        } catch (Exception unexpected) {
+            log.error("unexpected exception", unexpected);
+            Assert.fail("unexpected exception: " + unexpected);
+        }
+    }
+    
+    // database order: storageBucket ASC NULLS LAST, storageID; code point order
+    private static int compareReference(StorageLocation lhs, StorageLocation rhs) {
+        if (lhs.storageBucket == null && rhs.storageBucket == null) {
+            return lhs.getStorageID().toASCIIString().compareTo(rhs.getStorageID().toASCIIString());
+        }
+        if (lhs.storageBucket == null) {
+            return 1;
+        }
+        if (rhs.storageBucket == null) {
+            return -1;
+        }
+        int ret = compareCodePoints(lhs.storageBucket, rhs.storageBucket);
+        if (ret != 0) {
+            return ret;
+        }
+        return lhs.getStorageID().toASCIIString().compareTo(rhs.getStorageID().toASCIIString());
+    }
+    
+    private static int compareCodePoints(String lhs, String rhs) {
+        int[] l = lhs.codePoints().toArray();
+        int[] r = rhs.codePoints().toArray();
+        for (int i = 0; i < Math.min(l.length, r.length); i++) {
+            if (l[i] != r[i]) {
+                return Integer.compare(l[i], r[i]);
+            }
+        }
+        return Integer.compare(l.length, r.length);
+    }
 }
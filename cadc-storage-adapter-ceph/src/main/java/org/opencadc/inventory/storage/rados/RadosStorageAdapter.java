@@ -90,7 +90,6 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.math.BigInteger;
 import java.net.URI;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
@@ -112,6 +111,7 @@ import nom.tam.util.ArrayDataOutput;
 import nom.tam.util.BufferedDataOutputStream;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
+import org.opencadc.inventory.ContentChecksum;
 import org.opencadc.inventory.StorageLocation;
 import org.opencadc.inventory.storage.NewArtifact;
 import org.opencadc.inventory.storage.StorageAdapter;
@@ -206,8 +206,7 @@ public class RadosStorageAdapter implements StorageAdapter {
     }
 
     private URI createChecksum(final MessageDigest messageDigest) {
-        return URI.create(String.format("%s:%s", messageDigest.getAlgorithm().toLowerCase(),
-                                        new BigInteger(1, messageDigest.digest()).toString(16)));
+        return ContentChecksum.create(messageDigest).toURI();
     }
 
     private IoCTX contextConnect(final Rados client, final String poolName) throws RadosException {
@@ -77,7 +77,6 @@ import ca.nrc.cadc.net.IncorrectContentLengthException;
 import ca.nrc.cadc.net.ResourceAlreadyExistsException;
 import ca.nrc.cadc.net.ResourceNotFoundException;
 import ca.nrc.cadc.net.TransientException;
-import ca.nrc.cadc.util.HexUtil;
 import ca.nrc.cadc.util.StringUtil;
 
 import java.io.File;
@@ -101,6 +100,7 @@ import java.util.SortedSet;
 import java.util.TreeSet;
 
 import org.apache.log4j.Logger;
+import org.opencadc.inventory.ContentChecksum;
 import org.opencadc.inventory.InventoryUtil;
 import org.opencadc.inventory.StorageLocation;
 import org.opencadc.inventory.storage.NewArtifact;
@@ -495,6 +495,7 @@ abstract class S3StorageAdapter implements StorageAdapter {
         final StorageLocation loc = generateStorageLocation();
 
         String checksum = "N/A";
+        ContentChecksum expectedChecksum = null;
 
         try {
             InternalBucket b = toInternalBucket(loc);
@@ -512,10 +513,9 @@ abstract class S3StorageAdapter implements StorageAdapter {
                 metadata.put(CHECKSUM_KEY, newArtifact.contentChecksum.toASCIIString());
                 
                 ensureChecksum(newArtifact.contentChecksum);
-                final String md5SumValue = newArtifact.contentChecksum.getSchemeSpecificPart();
-                // Reconvert to Hex bytes before Base64 encoding it as per what S3 expects.
-                final byte[] value = HexUtil.toBytes(md5SumValue);
-                checksum = new String(Base64.getEncoder().encode(value));
+                // S3 expects the Base64 encoded digest bytes
+                expectedChecksum = ContentChecksum.parse(newArtifact.contentChecksum);
+                checksum = expectedChecksum.getBase64();
                 putObjectRequestBuilder.contentMD5(checksum);
             } else { 
                 // exception thrown above makes this not reachable (see TODO below)
@@ -539,12 +539,13 @@ abstract class S3StorageAdapter implements StorageAdapter {
                 // newArtifact.contentChecksum was null
                 DigestInputStream dis = (DigestInputStream) source;
                 MessageDigest md = dis.getMessageDigest();
-                contentChecksum = URI.create(DEFAULT_CHECKSUM_ALGORITHM + ":" + HexUtil.toHex(md.digest()));
-                if (!contentChecksum.equals(s3checksum)) {
+                ContentChecksum actual = ContentChecksum.create(md);
+                contentChecksum = actual.toURI();
+                if (!actual.matches(s3checksum)) {
                     throw new RuntimeException("checksum mismatch (S3StorageAdapter vs S3): " + contentChecksum + " != " + s3checksum);
                 }
             }
-            if (newArtifact.contentChecksum != null && !newArtifact.contentChecksum.equals(s3checksum)) {
+            if (expectedChecksum != null && !expectedChecksum.matches(s3checksum)) {
                 throw new RuntimeException("checksum mismatch (client vs S3) undetected: " + newArtifact.contentChecksum + " != " + s3checksum);
             }
             if (newArtifact.contentChecksum == null) {
@@ -74,7 +74,6 @@ import ca.nrc.cadc.net.IncorrectContentChecksumException;
 import ca.nrc.cadc.net.IncorrectContentLengthException;
 import ca.nrc.cadc.net.ResourceNotFoundException;
 import ca.nrc.cadc.net.TransientException;
-import ca.nrc.cadc.util.HexUtil;
 import ca.nrc.cadc.util.MultiValuedProperties;
 import ca.nrc.cadc.util.PropertiesReader;
 
@@ -105,6 +104,7 @@ import java.util.TreeSet;
 import java.util.UUID;
 
 import org.apache.log4j.Logger;
+import org.opencadc.inventory.ContentChecksum;
 import org.opencadc.inventory.InventoryUtil;
 import org.opencadc.inventory.StorageLocation;
 import org.opencadc.inventory.storage.NewArtifact;
@@ -360,9 +360,8 @@ public class OpaqueFileSystemStorageAdapter implements StorageAdapter {
             threadedIO.ioLoop(digestOut, source);
             digestOut.flush();
 
-            byte[] md5sum = digest.digest();
-            String md5Val = HexUtil.toHex(md5sum);
-            checksum = URI.create(MD5_CHECKSUM_SCHEME + ":" + md5Val);
+            ContentChecksum actual = ContentChecksum.create(digest);
+            checksum = actual.toURI();
             log.debug("calculated md5sum: " + checksum);
             length = Files.size(txnTarget);
             log.debug("calculated file size: " + length);
@@ -370,12 +369,10 @@ public class OpaqueFileSystemStorageAdapter implements StorageAdapter {
             boolean checksumProvided = newArtifact.contentChecksum != null && newArtifact.contentChecksum.getScheme().equals(MD5_CHECKSUM_SCHEME);
             // checksum comparison
             if (checksumProvided) {
-                String expectedMD5 = newArtifact.contentChecksum.getSchemeSpecificPart();
-                String actualMD5 = checksum.getSchemeSpecificPart();
-                if (!expectedMD5.equals(actualMD5)) {
+                if (!actual.matches(newArtifact.contentChecksum)) {
                     throw new IncorrectContentChecksumException(
-                        "expected md5 checksum [" + expectedMD5 + "] "
-                        + "but calculated [" + actualMD5 + "]");
+                        "expected md5 checksum [" + newArtifact.contentChecksum.getSchemeSpecificPart() + "] "
+                        + "but calculated [" + actual.getHex() + "]");
                 }
             } else {
                 log.debug("Uncomparable or no contentChecksum provided.");
@@ -89,6 +89,7 @@ public class FileSync {
     private static final Logger log = Logger.getLogger(FileSync.class);
 
     private static final int MAX_THREADS = 16;
+    private static final int PAGE_SIZE = 1000; // artifacts per unstored query
     
     private final ArtifactDAO artifactDAO;
     private final ArtifactDAO jobArtifactDAO;
@@ -162,7 +163,7 @@ public class FileSync {
             while (bucketSelector.hasNext()) {
                 String bucket = bucketSelector.next();
                 log.info("processing bucket " + bucket);
-                Iterator<Artifact> unstoredArtifacts = artifactDAO.unstoredIterator(bucket);
+                Iterator<Artifact> unstoredArtifacts = artifactDAO.unstoredIterator(bucket, PAGE_SIZE, null);
 
                 while (unstoredArtifacts.hasNext()) {
                     Artifact curArtifact = unstoredArtifacts.next();
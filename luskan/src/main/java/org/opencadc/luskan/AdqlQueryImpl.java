@@ -112,6 +112,10 @@ public class AdqlQueryImpl extends AdqlQuery {
         tnc.put("tap_schema.columns", "tap_schema.columns11");
         tnc.put("tap_schema.keys", "tap_schema.keys11");
         tnc.put("tap_schema.key_columns", "tap_schema.key_columns11");
+
+        // Artifact has bytea checksum columns: query the view that
+        // renders checksums as {algorithm}:{hex value}
+        tnc.put("inventory.artifact", "inventory.ArtifactView");
         TableNameReferenceConverter tnrc = new TableNameReferenceConverter(tnc.map);
         super.navigatorList.add(new SelectNavigator(new ExpressionNavigator(), tnrc, tnc));
 
@@ -98,7 +98,9 @@ import org.opencadc.gms.GroupClient;
 import org.opencadc.gms.GroupURI;
 import org.opencadc.gms.GroupUtil;
 import org.opencadc.inventory.Artifact;
+import org.opencadc.inventory.ArtifactURI;
 import org.opencadc.inventory.InventoryUtil;
+import org.opencadc.inventory.db.AbstractDAO;
 import org.opencadc.inventory.db.ArtifactDAO;
 import org.opencadc.inventory.db.SQLGenerator;
 import org.opencadc.inventory.permissions.Grant;
@@ -117,6 +119,10 @@ import org.opencadc.inventory.storage.StorageAdapter;
 public abstract class ArtifactAction extends RestAction {
     private static final Logger log = Logger.getLogger(ArtifactAction.class);
     
+    // max attempts for an optimistic (compare-and-set) write before giving up with a 
+    // TransientException; each retry re-reads the artifact modified by a concurrent writer
+    static final int MAX_WRITE_ATTEMPTS = 5;
+    
     // The target artifact
     URI artifactURI;
     
@@ -371,16 +377,9 @@ public abstract class ArtifactAction extends RestAction {
      * @return The artifact uri object.
      */
     private URI createArtifactURI(String uri) {
-        try {
-            log.debug("artifactURI: " + uri);
-            artifactURI = new URI(uri);
-            InventoryUtil.validateArtifactURI(ArtifactAction.class, artifactURI);
-            return artifactURI;
-        } catch (URISyntaxException e) {
-            String message = "illegal artifact URI: " + uri;
-            log.debug(message, e);
-            throw new IllegalArgumentException(message);
-        }
+        log.debug("artifactURI: " + uri);
+        artifactURI = ArtifactURI.parse(ArtifactAction.class, uri).getURI();
+        return artifactURI;
     }
 
     static StorageAdapter getStorageAdapter(MultiValuedProperties config) {
@@ -462,6 +461,9 @@ public abstract class ArtifactAction extends RestAction {
         }
         config.put("schema", schemaList.get(0));
         config.put("database", null);
+        
+        // optional artifact cache
+        AbstractDAO.putArtifactCacheConfig(config, props);
 
         return config;
     }
@@ -67,14 +67,11 @@
 
 package org.opencadc.minoc;
 
-import ca.nrc.cadc.db.TransactionManager;
 import ca.nrc.cadc.net.ResourceNotFoundException;
+import ca.nrc.cadc.net.TransientException;
 
 import org.apache.log4j.Logger;
 import org.opencadc.inventory.Artifact;
-import org.opencadc.inventory.DeletedArtifactEvent;
-import org.opencadc.inventory.db.DeletedEventDAO;
-import org.opencadc.inventory.db.EntityNotFoundException;
 import org.opencadc.inventory.db.ObsoleteStorageLocation;
 import org.opencadc.inventory.db.ObsoleteStorageLocationDAO;
 import org.opencadc.inventory.permissions.WriteGrant;
@@ -108,62 +105,47 @@ public class DeleteAction extends ArtifactAction {
             throw new ResourceNotFoundException("not found: " + artifactURI);
         }
         
-        DeletedEventDAO eventDAO = new DeletedEventDAO(artifactDAO);
-        TransactionManager txnMgr = artifactDAO.getTransactionManager();
-        
+        // optimistic concurrency: delete the artifact we read only if it is unchanged and
+        // re-read and retry if it was modified by a concurrent writer; the delete is a single
+        // statement so no transaction is needed
+        ObsoleteStorageLocationDAO locDAO = new ObsoleteStorageLocationDAO(artifactDAO);
         try {
-            log.debug("starting transaction");
-            txnMgr.startTransaction();
-            log.debug("start txn: OK");
-            
-            boolean locked = false;
-            while (existing != null && !locked) {
-                try { 
-                    artifactDAO.lock(existing);
-                    locked = true;
-                } catch (EntityNotFoundException ex) {
-                    // entity deleted
+            ObsoleteStorageLocation dsl = null;
+            boolean deleted = false;
+            int attempts = 0;
+            while (!deleted) {
+                attempts++;
+                dsl = null;
+                if (existing.storageLocation != null) {
+                    dsl = new ObsoleteStorageLocation(existing.storageLocation);
+                }
+                // single statement: artifact, DeletedArtifactEvent, and ObsoleteStorageLocation
+                deleted = artifactDAO.deleteIfUnchanged(existing, dsl);
+                if (!deleted) {
+                    if (attempts >= MAX_WRITE_ATTEMPTS) {
+                        throw new TransientException("concurrent update: " + artifactURI);
+                    }
+                    log.debug("concurrent update: " + artifactURI + " attempt " + attempts);
                     existing = artifactDAO.get(artifactURI);
+                    if (existing == null) {
+                        // artifact deleted by a concurrent request
+                        throw new ResourceNotFoundException("not found: " + artifactURI);
+                    }
                 }
             }
-            if (existing == null) {
-                // artifact deleted while trying to get a lock
-                throw new ResourceNotFoundException("not found: " + artifactURI);
-            }
-            
-            DeletedArtifactEvent deletedArtifact = new DeletedArtifactEvent(existing.getID());
-            artifactDAO.delete(existing.getID());
-            eventDAO.put(deletedArtifact);
-            ObsoleteStorageLocation dsl = null;
-            ObsoleteStorageLocationDAO locDAO = new ObsoleteStorageLocationDAO(artifactDAO);
-            if (existing.storageLocation != null) {
-                dsl = new ObsoleteStorageLocation(existing.storageLocation);
-                locDAO.put(dsl);
-            }
-            
-            log.debug("committing transaction");
-            txnMgr.commitTransaction();
-            log.debug("commit txn: OK");
+            log.debug("delete artifact: OK");
             
             // this block could be passed off to a thread so request completes
             if (dsl != null) {
                 log.debug("deleting from storage...");
-                storageAdapter.delete(existing.storageLocation);
+                storageAdapter.delete(dsl.getLocation());
                 log.debug("delete from storage: OK");
                 // obsolete tracker record no longer needed
                 locDAO.delete(dsl.getID());
             }
         } catch (Exception e) {
             log.error("failed to delete " + artifactURI, e);
-            txnMgr.rollbackTransaction();
-            log.debug("rollback txn: OK");
             throw e;
-        } finally {
-            if (txnMgr.isOpen()) {
-                log.error("BUG - open transaction in finally");
-                txnMgr.rollbackTransaction();
-                log.error("rollback txn: OK");
-            }
         }
     }
 
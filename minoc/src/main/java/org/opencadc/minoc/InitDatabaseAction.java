@@ -85,6 +85,7 @@ import javax.sql.DataSource;
 
 import org.apache.log4j.Logger;
 import org.opencadc.inventory.StorageSite;
+import org.opencadc.inventory.db.PartitionedSQLGenerator;
 import org.opencadc.inventory.db.SQLGenerator;
 import org.opencadc.inventory.db.StorageSiteDAO;
 import org.opencadc.inventory.db.version.InitDatabase;
@@ -227,7 +228,10 @@ public class InitDatabaseAction extends InitAction {
             DataSource ds = DBUtil.findJNDIDataSource(JNDI_DATASOURCE);
             String database = (String) daoConfig.get("database");
             String schema = (String) daoConfig.get("schema");
-            InitDatabase init = new InitDatabase(ds, database, schema);
+            // new database: create the table layout the configured SQLGenerator expects
+            Class genClass = (Class) daoConfig.get(SQLGEN_KEY);
+            boolean partitioned = PartitionedSQLGenerator.class.isAssignableFrom(genClass);
+            InitDatabase init = new InitDatabase(ds, database, schema, partitioned);
             init.doInit();
             log.info("initDatabase: " + JNDI_DATASOURCE + " " + schema + " OK");
         } catch (Exception ex) {
@@ -87,9 +87,6 @@ import java.util.Date;
 
 import org.apache.log4j.Logger;
 import org.opencadc.inventory.Artifact;
-import org.opencadc.inventory.DeletedArtifactEvent;
-import org.opencadc.inventory.db.DeletedEventDAO;
-import org.opencadc.inventory.db.EntityNotFoundException;
 import org.opencadc.inventory.db.ObsoleteStorageLocation;
 import org.opencadc.inventory.db.ObsoleteStorageLocationDAO;
 import org.opencadc.inventory.permissions.WriteGrant;
@@ -207,61 +204,65 @@ public class PutAction extends ArtifactAction {
         Artifact existing = artifactDAO.get(artifactURI);
         profiler.checkpoint("artifactDAO.get.ok");
         
+        // optimistic concurrency: replace the artifact we read only if it is unchanged and 
+        // insert only if no other artifact has the URI; no row locks are held while reading,
+        // so on conflict we re-read and retry
         TransactionManager txnMgr = artifactDAO.getTransactionManager();
         try {
-            log.debug("starting transaction");
-            txnMgr.startTransaction();
-            log.debug("start txn: OK");
-            
-            boolean locked = false;
-            while (existing != null && !locked) {
-                try { 
-                    artifactDAO.lock(existing);
-                    profiler.checkpoint("artifactDAO.lock.ok");
-                    locked = true;
-                } catch (EntityNotFoundException ex) {
-                    profiler.checkpoint("artifactDAO.lock.fail");
-                    // entity deleted
-                    existing = artifactDAO.get(artifactURI);
-                    profiler.checkpoint("artifactDAO.get.ok");
+            ObsoleteStorageLocation newOSL = null;
+            boolean done = false;
+            int attempts = 0;
+            while (!done) {
+                attempts++;
+                log.debug("starting transaction");
+                txnMgr.startTransaction();
+                log.debug("start txn: OK");
+
+                ObsoleteStorageLocation prevOSL = locDAO.get(artifact.storageLocation);
+                if (prevOSL != null) {
+                    // no longer obsolete
+                    locDAO.delete(prevOSL.getID());
+                    profiler.checkpoint("locDAO.delete.ok");
                 }
-            }
 
-            ObsoleteStorageLocation prevOSL = locDAO.get(artifact.storageLocation);
-            if (prevOSL != null) {
-                // no longer obsolete
-                locDAO.delete(prevOSL.getID());
-                profiler.checkpoint("locDAO.delete.ok");
-            }
-            
-            ObsoleteStorageLocation newOSL = null;
-            if (existing != null) {
-                DeletedEventDAO eventDAO = new DeletedEventDAO(artifactDAO);
-                DeletedArtifactEvent deletedArtifact = new DeletedArtifactEvent(existing.getID());
-                artifactDAO.delete(existing.getID());
-                profiler.checkpoint("artifactDAO.delete.ok");
-                eventDAO.put(deletedArtifact);
-                profiler.checkpoint("eventDAO.put.ok");
-            }
-            
-            artifactDAO.put(artifact);
-            profiler.checkpoint("artifactDAO.put.ok");
-            log.debug("put artifact in database: " + artifactURI);
-            
-            if (existing != null) {
-                if (!artifact.storageLocation.equals(existing.storageLocation)) {
-                    newOSL = new ObsoleteStorageLocation(existing.storageLocation);
-                    locDAO.put(newOSL);
-                    profiler.checkpoint("locDAO.put.ok");
-                    log.debug("marked obsolete: " + existing.storageLocation);
+                newOSL = null;
+                boolean conflict = false;
+                if (existing != null) {
+                    if (existing.storageLocation != null 
+                            && !artifact.storageLocation.equals(existing.storageLocation)) {
+                        newOSL = new ObsoleteStorageLocation(existing.storageLocation);
+                    }
+                    // also creates the DeletedArtifactEvent and ObsoleteStorageLocation
+                    conflict = !artifactDAO.deleteIfUnchanged(existing, newOSL);
+                    profiler.checkpoint("artifactDAO.deleteIfUnchanged");
+                }
+                if (!conflict) {
+                    conflict = !artifactDAO.insert(artifact);
+                    profiler.checkpoint("artifactDAO.insert");
+                }
+
+                if (conflict) {
+                    txnMgr.rollbackTransaction();
+                    log.debug("rollback txn: OK");
+                    if (attempts >= MAX_WRITE_ATTEMPTS) {
+                        throw new TransientException("concurrent update: " + artifactURI);
+                    }
+                    log.debug("concurrent update: " + artifactURI + " attempt " + attempts);
+                    existing = artifactDAO.get(artifactURI);
+                    profiler.checkpoint("artifactDAO.get.ok");
+                } else {
+                    log.debug("put artifact in database: " + artifactURI);
+                    if (newOSL != null) {
+                        log.debug("marked obsolete: " + newOSL.getLocation());
+                    }
+                    log.debug("committing transaction");
+                    txnMgr.commitTransaction();
+                    profiler.checkpoint("transaction.commit.ok");
+                    log.debug("commit txn: OK");
+                    done = true;
                 }
             }
             
-            log.debug("committing transaction");
-            txnMgr.commitTransaction();
-            profiler.checkpoint("transaction.commit.ok");
-            log.debug("commit txn: OK");
-            
             // this block could be passed off to a thread so request completes??
             if (newOSL != null) {
                 log.debug("deleting from storage...");
@@ -274,8 +275,10 @@ public class PutAction extends ArtifactAction {
             }
         } catch (Exception e) {
             log.error("failed to persist " + artifactURI, e);
-            txnMgr.rollbackTransaction();
-            log.debug("rollback txn: OK");
+            if (txnMgr.isOpen()) {
+                txnMgr.rollbackTransaction();
+                log.debug("rollback txn: OK");
+            }
             throw e;
         } finally {
             if (txnMgr.isOpen()) {
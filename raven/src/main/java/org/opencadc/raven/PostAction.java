@@ -105,6 +105,7 @@ import org.opencadc.inventory.Artifact;
 import org.opencadc.inventory.InventoryUtil;
 import org.opencadc.inventory.SiteLocation;
 import org.opencadc.inventory.StorageSite;
+import org.opencadc.inventory.db.AbstractDAO;
 import org.opencadc.inventory.db.ArtifactDAO;
 import org.opencadc.inventory.db.DeletedEventDAO;
 import org.opencadc.inventory.db.SQLGenerator;
@@ -354,6 +355,9 @@ public class PostAction extends RestAction {
             ret.put("jndiDataSourceName", JNDI_DATASOURCE);
             ret.put("schema", props.getFirstPropertyValue(SCHEMA_KEY));
             //config.put("database", null);
+            
+            // optional artifact cache
+            AbstractDAO.putArtifactCacheConfig(ret, props);
             return ret;
         } catch (ClassNotFoundException ex) {
             throw new IllegalStateException("invalid config: failed to load SQLGenerator: " + cname);
@@ -78,6 +78,7 @@ import ca.nrc.cadc.util.MultiValuedProperties;
 import ca.nrc.cadc.util.StringUtil;
 
 import java.security.PrivilegedExceptionAction;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -114,6 +115,9 @@ public class BucketValidator implements ValidateEventListener {
 
     private static final String APPLICATION_CONFIG_KEY_PREFIX = "org.opencadc.tantar";
 
+    // artifacts per inventory query: pages avoid holding one transaction open for the whole bucket
+    private static final int INVENTORY_PAGE_SIZE = 1000;
+
     private final String bucket;
     private final StorageAdapter storageAdapter;
     private final Subject runUser;
@@ -422,29 +426,12 @@ public class BucketValidator implements ValidateEventListener {
     @Override
     public void delete(final Artifact artifact) {
         if (canTakeAction()) {
-            final TransactionManager transactionManager = artifactDAO.getTransactionManager();
             try {
-                LOGGER.debug("Start transaction.");
-                transactionManager.startTransaction();
-
-                final DeletedEventDAO deletedEventDAO = new DeletedEventDAO(artifactDAO);
-                final DeletedArtifactEvent deletedArtifactEvent = new DeletedArtifactEvent(artifact.getID());
-
-                artifactDAO.delete(artifact.getID());
-                deletedEventDAO.put(deletedArtifactEvent);
-
-                transactionManager.commitTransaction();
+                // artifact and DeletedArtifactEvent in a single statement
+                artifactDAO.deleteWithEvents(Collections.singletonList(artifact.getID()));
             } catch (Exception e) {
                 LOGGER.error(String.format("Failed to delete Artifact %s.", artifact.getURI()), e);
-                transactionManager.rollbackTransaction();
-                LOGGER.debug("Rollback Transaction: OK");
                 throw e;
-            } finally {
-                if (transactionManager.isOpen()) {
-                    LOGGER.error("BUG - Open transaction in finally");
-                    transactionManager.rollbackTransaction();
-                    LOGGER.error("Transaction rolled back successfully.");
-                }
             }
         }
     }
@@ -613,6 +600,6 @@ public class BucketValidator implements ValidateEventListener {
      * @return Iterator instance of Artifact objects
      */
     Iterator<Artifact> iterateInventory() {
-        return iteratorDAO.storedIterator(bucket);
+        return iteratorDAO.storedIterator(bucket, INVENTORY_PAGE_SIZE, null);
     }
 }
@@ -69,7 +69,9 @@
 
 package org.opencadc.tantar.policy;
 
+import java.net.URI;
 import org.opencadc.inventory.Artifact;
+import org.opencadc.inventory.ContentChecksum;
 import org.opencadc.inventory.storage.StorageMetadata;
 import org.opencadc.tantar.Reporter;
 import org.opencadc.tantar.ValidateEventListener;
@@ -93,10 +95,25 @@ public abstract class ResolutionPolicy {
      * @return          True if the metadata that verify the structure of the Entity differ.  False otherwise.
      */
     protected final boolean haveDifferentStructure(final Artifact artifact, final StorageMetadata storageMetadata) {
-        return !(artifact.getContentChecksum().equals(storageMetadata.getContentChecksum()))
+        return !sameChecksum(artifact.getContentChecksum(), storageMetadata.getContentChecksum())
                || !(artifact.getContentLength().equals(storageMetadata.getContentLength()));
     }
 
+    // compare URIs first and only parse the values when they differ (e.g. hex case)
+    private static boolean sameChecksum(final URI lhs, final URI rhs) {
+        if (lhs.equals(rhs)) {
+            return true;
+        }
+        if (rhs == null || ContentChecksum.Algorithm.forName(lhs.getScheme()) == null) {
+            return false;
+        }
+        try {
+            return ContentChecksum.parse(lhs).matches(rhs);
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
     /**
      * Use the logic of this Policy to correct a conflict caused by the two given items.  One of the arguments can
      * be null, but not both.